@@ -221,6 +221,10 @@ public class Analytics {
 
         public void setMissedReason(long missedReason) {
         }
+
+        public void addCallFilterTiming(String filterName, long readyTimeMillis,
+                long queueWaitMillis, long durationMillis, boolean isOnCriticalPath) {
+        }
     }
 
     /**
@@ -253,6 +257,7 @@ public class Analytics {
         public boolean isVideo = false;
         public List<TelecomLogClass.VideoEvent> videoEvents;
         public List<TelecomLogClass.InCallServiceInfo> inCallServiceInfos;
+        public List<TelecomLogClass.CallFilterTiming> callFilterTimings;
         public int callProperties = 0;
         public int callSource = CALL_SOURCE_UNSPECIFIED;
         public long missedReason;
@@ -268,6 +273,7 @@ public class Analytics {
             connectionService = "";
             videoEvents = new LinkedList<>();
             inCallServiceInfos = new LinkedList<>();
+            callFilterTimings = new LinkedList<>();
             missedReason = 0;
         }
 
@@ -285,6 +291,7 @@ public class Analytics {
             this.callEvents = other.callEvents;
             this.isVideo = other.isVideo;
             this.videoEvents = other.videoEvents;
+            this.callFilterTimings = other.callFilterTimings;
             this.callProperties = other.callProperties;
             this.callSource = other.callSource;
             this.missedReason = other.missedReason;
@@ -401,6 +408,17 @@ public class Analytics {
                     .setIsNullBinding(isNullBinding));
         }
 
+        @Override
+        public void addCallFilterTiming(String filterName, long readyTimeMillis,
+                long queueWaitMillis, long durationMillis, boolean isOnCriticalPath) {
+            callFilterTimings.add(new TelecomLogClass.CallFilterTiming()
+                    .setFilterName(filterName)
+                    .setReadyTimeMillis(readyTimeMillis)
+                    .setQueueWaitMillis(queueWaitMillis)
+                    .setDurationMillis(durationMillis)
+                    .setIsOnCriticalPath(isOnCriticalPath));
+        }
+
         @Override
         public void addCallProperties(int properties) {
             this.callProperties |= properties;
@@ -429,6 +447,7 @@ public class Analytics {
                     + "    callProperties: " + Connection.propertiesToStringShort(callProperties)
                     + '\n'
                     + "    callSource: " + getCallSourceString() + '\n'
+                    + "    callFilters: " + getCallFilterTimingsString() + '\n'
                     + "}\n";
         }
 
@@ -513,6 +532,8 @@ public class Analytics {
                     videoEvents.toArray(new TelecomLogClass.VideoEvent[videoEvents.size()]);
             result.inCallServices = inCallServiceInfos.toArray(
                     new TelecomLogClass.InCallServiceInfo[inCallServiceInfos.size()]);
+            result.callFilterTimings = callFilterTimings.toArray(
+                    new TelecomLogClass.CallFilterTiming[callFilterTimings.size()]);
 
             return result;
         }
@@ -599,6 +620,30 @@ public class Analytics {
             return s.toString();
         }
 
+        private String getCallFilterTimingsString() {
+            StringBuilder s = new StringBuilder();
+            s.append("[\n");
+            if (callFilterTimings != null) {
+                for (TelecomLogClass.CallFilterTiming timing : callFilterTimings) {
+                    s.append("    ");
+                    s.append("name: ");
+                    s.append(timing.getFilterName());
+                    s.append(" ready: ");
+                    s.append(timing.getReadyTimeMillis());
+                    s.append(" queue wait: ");
+                    s.append(timing.getQueueWaitMillis());
+                    s.append(" duration: ");
+                    s.append(timing.getDurationMillis());
+                    if (timing.getIsOnCriticalPath()) {
+                        s.append(" critical");
+                    }
+                    s.append("\n");
+                }
+            }
+            s.append("]");
+            return s.toString();
+        }
+
         private String getCallSourceString() {
             switch (callSource) {
                 case CALL_SOURCE_UNSPECIFIED:
@@ -708,9 +753,11 @@ public class Analytics {
                     .toArray(TelecomLogClass.LogSessionTiming[]::new);
             result.setHardwareRevision(SystemProperties.get("ro.boot.revision", ""));
             result.setCarrierId(getCarrierId(context));
+            result.listenerLatencies = ListenerLatencyStats.toProto();
             if (args.length > 1 && CLEAR_ANALYTICS_ARG.equals(args[1])) {
                 sCallIdToInfo.clear();
                 sSessionTimings.clear();
+                ListenerLatencyStats.reset();
             }
         }
         String encodedProto = Base64.encodeToString(
@@ -777,6 +824,7 @@ public class Analytics {
                     .forEach(e -> writer.printf("%s: %.2f\n",
                             sSessionIdToLogSession.get(e.getKey()), e.getValue()));
             writer.println("Hardware Version: " + SystemProperties.get("ro.boot.revision", ""));
+            ListenerLatencyStats.dump(writer);
             writer.println("Past analytics dumps: ");
             writer.increaseIndent();
             for (long time : sDumpTimes) {
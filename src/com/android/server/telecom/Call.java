@@ -85,6 +85,7 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -122,6 +123,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     public interface Listener {
         void onSuccessfulOutgoingCall(Call call, int callState);
         void onFailedOutgoingCall(Call call, DisconnectCause disconnectCause);
+        void onStateChanged(Call call, int oldState, int newState);
         void onSuccessfulIncomingCall(Call call);
         void onFailedIncomingCall(Call call);
         void onSuccessfulUnknownCall(Call call, int callState);
@@ -174,6 +176,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         @Override
         public void onFailedOutgoingCall(Call call, DisconnectCause disconnectCause) {}
         @Override
+        public void onStateChanged(Call call, int oldState, int newState) {}
+        @Override
         public void onSuccessfulIncomingCall(Call call) {}
         @Override
         public void onFailedIncomingCall(Call call) {}
@@ -437,6 +441,13 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     /** Caller information retrieved from the latest contact query. */
     private CallerInfo mCallerInfo;
 
+    /**
+     * The photos of {@link #mCallerInfo}.  Kept apart from it because a caller info may be shared
+     * with other calls from the same number, so this call must not clear its photos.
+     */
+    private Drawable mContactPhoto;
+    private Bitmap mContactPhotoIcon;
+
     /** The latest token used with a contact info query. */
     private int mQueryToken = 0;
 
@@ -829,6 +840,25 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         }
     }
 
+    /**
+     * Invokes a callback on each listener, recording how long each listener takes in
+     * {@link ListenerLatencyStats}.
+     *
+     * @param callback The name of the callback, for logging slow callbacks.
+     * @param notification Invokes the callback on a listener.
+     */
+    private void notifyListeners(String callback, Consumer<Listener> notification) {
+        for (Listener l : mListeners) {
+            long startNanos = SystemClock.elapsedRealtimeNanos();
+            try {
+                notification.accept(l);
+            } finally {
+                ListenerLatencyStats.record(l, callback,
+                        SystemClock.elapsedRealtimeNanos() - startNanos);
+            }
+        }
+    }
+
     public void initAnalytics() {
         initAnalytics(null, null);
     }
@@ -860,10 +890,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         // We should not keep these bitmaps around because the Call objects may be held for logging
         // purposes.
         // TODO: Make a container object that only stores the information we care about for Logging.
-        if (mCallerInfo != null) {
-            mCallerInfo.cachedPhotoIcon = null;
-            mCallerInfo.cachedPhoto = null;
-        }
+        mContactPhotoIcon = null;
+        mContactPhoto = null;
         closeRttStreams();
 
         Log.addEvent(this, LogUtils.Events.DESTROYED);
@@ -1172,6 +1200,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
             updateVideoHistoryViaState(mState, newState);
 
+            int oldState = mState;
             mState = newState;
             maybeLoadCannedSmsResponses();
 
@@ -1252,15 +1281,15 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                     getDisconnectCause().getCode() : DisconnectCause.UNKNOWN;
             TelecomStatsLog.write(TelecomStatsLog.CALL_STATE_CHANGED, newState,
                     statsdDisconnectCause, isSelfManaged(), isExternalCall());
+            notifyListeners("onStateChanged", l -> l.onStateChanged(this, oldState, newState));
         }
         return true;
     }
 
     void setRingbackRequested(boolean ringbackRequested) {
         mRingbackRequested = ringbackRequested;
-        for (Listener l : mListeners) {
-            l.onRingbackRequested(this, mRingbackRequested);
-        }
+        notifyListeners("onRingbackRequested",
+                l -> l.onRingbackRequested(this, mRingbackRequested));
     }
 
     public boolean isRingbackRequested() {
@@ -1331,8 +1360,9 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     public void setCallerNumberVerificationStatus(
             @Connection.VerificationStatus int callerNumberVerificationStatus) {
         mCallerNumberVerificationStatus = callerNumberVerificationStatus;
-        mListeners.forEach(l -> l.onCallerNumberVerificationStatusChanged(this,
-                callerNumberVerificationStatus));
+        notifyListeners("onCallerNumberVerificationStatusChanged",
+                l -> l.onCallerNumberVerificationStatusChanged(this,
+                        callerNumberVerificationStatus));
     }
 
     public @Connection.VerificationStatus int getCallerNumberVerificationStatus() {
@@ -1380,9 +1410,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                         isTestEmergencyCall(mHandle.getSchemeSpecificPart());
             }
             startCallerInfoLookup();
-            for (Listener l : mListeners) {
-                l.onHandleChanged(this);
-            }
+            notifyListeners("onHandleChanged", l -> l.onHandleChanged(this));
         }
     }
 
@@ -1414,9 +1442,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                 presentation != mCallerDisplayNamePresentation) {
             mCallerDisplayName = callerDisplayName;
             mCallerDisplayNamePresentation = presentation;
-            for (Listener l : mListeners) {
-                l.onCallerDisplayNameChanged(this);
-            }
+            notifyListeners("onCallerDisplayNameChanged", l -> l.onCallerDisplayNameChanged(this));
         }
     }
 
@@ -1429,11 +1455,11 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     }
 
     public Bitmap getPhotoIcon() {
-        return mCallerInfo == null ? null : mCallerInfo.cachedPhotoIcon;
+        return mContactPhotoIcon;
     }
 
     public Drawable getPhoto() {
-        return mCallerInfo == null ? null : mCallerInfo.cachedPhoto;
+        return mContactPhoto;
     }
 
     /**
@@ -1522,9 +1548,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     public void setConnectionManagerPhoneAccount(PhoneAccountHandle accountHandle) {
         if (!Objects.equals(mConnectionManagerPhoneAccountHandle, accountHandle)) {
             mConnectionManagerPhoneAccountHandle = accountHandle;
-            for (Listener l : mListeners) {
-                l.onConnectionManagerPhoneAccountChanged(this);
-            }
+            notifyListeners("onConnectionManagerPhoneAccountChanged",
+                    l -> l.onConnectionManagerPhoneAccountChanged(this));
         }
         checkIfRttCapable();
     }
@@ -1577,9 +1602,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     public void setTargetPhoneAccount(PhoneAccountHandle accountHandle) {
         if (!Objects.equals(mTargetPhoneAccountHandle, accountHandle)) {
             mTargetPhoneAccountHandle = accountHandle;
-            for (Listener l : mListeners) {
-                l.onTargetPhoneAccountChanged(this);
-            }
+            notifyListeners("onTargetPhoneAccountChanged",
+                    l -> l.onTargetPhoneAccountChanged(this));
             configureCallAttributes();
         }
         checkIfVideoCapable();
@@ -1931,9 +1955,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         if (forceUpdate || mConnectionCapabilities != connectionCapabilities) {
             int previousCapabilities = mConnectionCapabilities;
             mConnectionCapabilities = connectionCapabilities;
-            for (Listener l : mListeners) {
-                l.onConnectionCapabilitiesChanged(this);
-            }
+            notifyListeners("onConnectionCapabilitiesChanged",
+                    l -> l.onConnectionCapabilitiesChanged(this));
 
             int strippedCaps = getConnectionCapabilities();
             int xorCaps = previousCapabilities ^ strippedCaps;
@@ -2008,9 +2031,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             mWasHighDefAudio = (connectionProperties & Connection.PROPERTY_HIGH_DEF_AUDIO) ==
                     Connection.PROPERTY_HIGH_DEF_AUDIO;
             mWasWifi = (connectionProperties & Connection.PROPERTY_WIFI) > 0;
-            for (Listener l : mListeners) {
-                l.onConnectionPropertiesChanged(this, didRttChange);
-            }
+            notifyListeners("onConnectionPropertiesChanged",
+                    l -> l.onConnectionPropertiesChanged(this, didRttChange));
 
             boolean wasExternal = (previousProperties & Connection.PROPERTY_IS_EXTERNAL_CALL)
                     == Connection.PROPERTY_IS_EXTERNAL_CALL;
@@ -2026,9 +2048,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                     boolean isInEmergencyCall = mCallsManager.isInEmergencyCall();
                     setIsPullExternalCallSupported(!isInEmergencyCall);
                 }
-                for (Listener l : mListeners) {
-                    l.onExternalCallChanged(this, isExternal);
-                }
+                notifyListeners("onExternalCallChanged",
+                        l -> l.onExternalCallChanged(this, isExternal));
             }
 
             boolean wasDowngradedConference =
@@ -2207,15 +2228,11 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             case CALL_DIRECTION_INCOMING:
                 // Listeners (just CallsManager for now) will be responsible for checking whether
                 // the call should be blocked.
-                for (Listener l : mListeners) {
-                    l.onSuccessfulIncomingCall(this);
-                }
+                notifyListeners("onSuccessfulIncomingCall", l -> l.onSuccessfulIncomingCall(this));
                 break;
             case CALL_DIRECTION_OUTGOING:
-                for (Listener l : mListeners) {
-                    l.onSuccessfulOutgoingCall(this,
-                            getStateFromConnectionState(conference.getState()));
-                }
+                notifyListeners("onSuccessfulOutgoingCall", l -> l.onSuccessfulOutgoingCall(this,
+                        getStateFromConnectionState(conference.getState())));
                 break;
         }
     }
@@ -2251,21 +2268,16 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
                 // Listeners (just CallsManager for now) will be responsible for checking whether
                 // the call should be blocked.
-                for (Listener l : mListeners) {
-                    l.onSuccessfulIncomingCall(this);
-                }
+                notifyListeners("onSuccessfulIncomingCall", l -> l.onSuccessfulIncomingCall(this));
                 break;
             case CALL_DIRECTION_OUTGOING:
-                for (Listener l : mListeners) {
-                    l.onSuccessfulOutgoingCall(this,
-                            getStateFromConnectionState(connection.getState()));
-                }
+                notifyListeners("onSuccessfulOutgoingCall", l -> l.onSuccessfulOutgoingCall(this,
+                        getStateFromConnectionState(connection.getState())));
                 break;
             case CALL_DIRECTION_UNKNOWN:
-                for (Listener l : mListeners) {
-                    l.onSuccessfulUnknownCall(this, getStateFromConnectionState(connection
-                            .getState()));
-                }
+                notifyListeners("onSuccessfulUnknownCall",
+                        l -> l.onSuccessfulUnknownCall(this,
+                                getStateFromConnectionState(connection.getState())));
                 break;
         }
     }
@@ -2278,14 +2290,12 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
         switch (mCallDirection) {
             case CALL_DIRECTION_INCOMING:
-                for (Listener listener : mListeners) {
-                    listener.onFailedIncomingCall(this);
-                }
+                notifyListeners("onFailedIncomingCall",
+                        listener -> listener.onFailedIncomingCall(this));
                 break;
             case CALL_DIRECTION_OUTGOING:
-                for (Listener listener : mListeners) {
-                    listener.onFailedOutgoingCall(this, disconnectCause);
-                }
+                notifyListeners("onFailedOutgoingCall",
+                        listener -> listener.onFailedOutgoingCall(this, disconnectCause));
                 break;
         }
     }
@@ -2298,19 +2308,16 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
         switch (mCallDirection) {
             case CALL_DIRECTION_INCOMING:
-                for (Listener listener : mListeners) {
-                    listener.onFailedIncomingCall(this);
-                }
+                notifyListeners("onFailedIncomingCall",
+                        listener -> listener.onFailedIncomingCall(this));
                 break;
             case CALL_DIRECTION_OUTGOING:
-                for (Listener listener : mListeners) {
-                    listener.onFailedOutgoingCall(this, disconnectCause);
-                }
+                notifyListeners("onFailedOutgoingCall",
+                        listener -> listener.onFailedOutgoingCall(this, disconnectCause));
                 break;
             case CALL_DIRECTION_UNKNOWN:
-                for (Listener listener : mListeners) {
-                    listener.onFailedUnknownCall(this);
-                }
+                notifyListeners("onFailedUnknownCall",
+                        listener -> listener.onFailedUnknownCall(this));
                 break;
         }
     }
@@ -2749,9 +2756,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         }
         mExtras.putAll(extras);
 
-        for (Listener l : mListeners) {
-            l.onExtrasChanged(this, source, extras);
-        }
+        notifyListeners("onExtrasChanged", l -> l.onExtrasChanged(this, source, extras));
 
         // If mExtra shows that the call using Volte, record it with mWasVolte
         if (mExtras.containsKey(TelecomManager.EXTRA_CALL_NETWORK_TYPE) &&
@@ -2813,9 +2818,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             mExtras.remove(key);
         }
 
-        for (Listener l : mListeners) {
-            l.onExtrasRemoved(this, source, keys);
-        }
+        notifyListeners("onExtrasRemoved", l -> l.onExtrasRemoved(this, source, keys));
 
         // If the change originated from an InCallService, notify the connection service.
         if (source == SOURCE_INCALL_SERVICE) {
@@ -2861,15 +2864,11 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     }
 
     void onPostDialWait(String remaining) {
-        for (Listener l : mListeners) {
-            l.onPostDialWait(this, remaining);
-        }
+        notifyListeners("onPostDialWait", l -> l.onPostDialWait(this, remaining));
     }
 
     void onPostDialChar(char nextChar) {
-        for (Listener l : mListeners) {
-            l.onPostDialChar(this, nextChar);
-        }
+        notifyListeners("onPostDialChar", l -> l.onPostDialChar(this, nextChar));
     }
 
     void postDialContinue(boolean proceed) {
@@ -2931,9 +2930,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                     mConferenceLevelActiveCall = null;
                     break;
             }
-            for (Listener l : mListeners) {
-                l.onCdmaConferenceSwap(this);
-            }
+            notifyListeners("onCdmaConferenceSwap", l -> l.onCdmaConferenceSwap(this));
         }
     }
 
@@ -3083,9 +3080,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
      */
     void notifyBluetoothCallQualityReport(@NonNull BluetoothCallQualityReport report) {
         Log.addEvent(this, LogUtils.Events.BT_QUALITY_REPORT, "choppy=" + report.isChoppyVoice());
-        for (Listener l : mListeners) {
-            l.onBluetoothCallQualityReport(this, report);
-        }
+        notifyListeners("onBluetoothCallQualityReport",
+                l -> l.onBluetoothCallQualityReport(this, report));
     }
 
     /**
@@ -3120,9 +3116,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
      */
     void notifyParentChanged(Call parentCall) {
         Log.addEvent(this, LogUtils.Events.SET_PARENT, parentCall);
-        for (Listener l : mListeners) {
-            l.onParentChanged(this);
-        }
+        notifyListeners("onParentChanged", l -> l.onParentChanged(this));
     }
 
     /**
@@ -3172,9 +3166,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         }
         Log.addEvent(this, LogUtils.Events.CONF_CALLS_CHANGED, confCallIds);
 
-        for (Listener l : mListeners) {
-            l.onConferenceableCallsChanged(this);
-        }
+        notifyListeners("onConferenceableCallsChanged", l -> l.onConferenceableCallsChanged(this));
     }
 
     @VisibleForTesting
@@ -3207,9 +3199,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
             Log.addEvent(this, LogUtils.Events.ADD_CHILD, call);
 
-            for (Listener l : mListeners) {
-                l.onChildrenChanged(this);
-            }
+            notifyListeners("onChildrenChanged", l -> l.onChildrenChanged(this));
         }
     }
 
@@ -3240,9 +3230,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     private void removeChildCall(Call call) {
         if (mChildCalls.remove(call)) {
             Log.addEvent(this, LogUtils.Events.REMOVE_CHILD, call);
-            for (Listener l : mListeners) {
-                l.onChildrenChanged(this);
-            }
+            notifyListeners("onChildrenChanged", l -> l.onChildrenChanged(this));
         }
     }
 
@@ -3352,6 +3340,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
      */
     private void startCallerInfoLookup() {
         mCallerInfo = null;
+        mContactPhoto = null;
+        mContactPhotoIcon = null;
         mCallsManager.getCallerInfoLookupHelper().startLookup(mHandle, mCallerInfoQueryListener);
     }
 
@@ -3374,13 +3364,13 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         }
 
         mCallerInfo = callerInfo;
+        mContactPhoto = callerInfo.cachedPhoto;
+        mContactPhotoIcon = callerInfo.cachedPhotoIcon;
         Log.i(this, "CallerInfo received for %s: %s", Log.piiHandle(mHandle), callerInfo);
 
         if (mCallerInfo.getContactDisplayPhotoUri() == null ||
-                mCallerInfo.cachedPhotoIcon != null || mCallerInfo.cachedPhoto != null) {
-            for (Listener l : mListeners) {
-                l.onCallerInfoChanged(this);
-            }
+                mContactPhotoIcon != null || mContactPhoto != null) {
+            notifyListeners("onCallerInfoChanged", l -> l.onCallerInfoChanged(this));
         }
 
         Trace.endSection();
@@ -3403,9 +3393,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                             if (result.length > 0) {
                                 Log.d(this, "maybeLoadCannedSmsResponses: got %s", result[0]);
                                 mCannedSmsResponses = result[0];
-                                for (Listener l : mListeners) {
-                                    l.onCannedSmsResponsesLoaded(Call.this);
-                                }
+                                notifyListeners("onCannedSmsResponsesLoaded",
+                                        l -> l.onCannedSmsResponsesLoaded(Call.this));
                             }
                         }
 
@@ -3476,9 +3465,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
     public void onRttConnectionFailure(int reason) {
         Log.i(this, "Got RTT initiation failure with reason %d", reason);
-        for (Listener l : mListeners) {
-            l.onRttInitiationFailure(this, reason);
-        }
+        notifyListeners("onRttInitiationFailure", l -> l.onRttInitiationFailure(this, reason));
     }
 
     public void onRemoteRttRequest() {
@@ -3488,9 +3475,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         }
 
         mPendingRttRequestId = mCallsManager.getNextRttRequestId();
-        for (Listener l : mListeners) {
-            l.onRemoteRttRequest(this, mPendingRttRequestId);
-        }
+        notifyListeners("onRemoteRttRequest",
+                l -> l.onRemoteRttRequest(this, mPendingRttRequestId));
     }
 
     public void handleRttRequestResponse(int id, boolean accept) {
@@ -3565,9 +3551,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             }
         }
 
-        for (Listener l : mListeners) {
-            l.onVideoCallProviderChanged(Call.this);
-        }
+        notifyListeners("onVideoCallProviderChanged", l -> l.onVideoCallProviderChanged(Call.this));
     }
 
     /**
@@ -3639,9 +3623,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         if (mVideoState != previousVideoState) {
             Log.addEvent(this, LogUtils.Events.VIDEO_STATE_CHANGED,
                     VideoProfile.videoStateToString(videoState));
-            for (Listener l : mListeners) {
-                l.onVideoStateChanged(this, previousVideoState, mVideoState);
-            }
+            notifyListeners("onVideoStateChanged",
+                    l -> l.onVideoStateChanged(this, previousVideoState, mVideoState));
         }
 
         if (VideoProfile.isVideo(videoState)) {
@@ -3658,9 +3641,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             Log.addEvent(this, LogUtils.Events.SET_VOIP_MODE, audioModeIsVoip ? "Y" : "N");
         }
         mIsVoipAudioMode = audioModeIsVoip;
-        for (Listener l : mListeners) {
-            l.onIsVoipAudioModeChanged(this);
-        }
+        notifyListeners("onIsVoipAudioModeChanged", l -> l.onIsVoipAudioModeChanged(this));
     }
 
     public StatusHints getStatusHints() {
@@ -3669,9 +3650,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
     public void setStatusHints(StatusHints statusHints) {
         mStatusHints = statusHints;
-        for (Listener l : mListeners) {
-            l.onStatusHintsChanged(this);
-        }
+        notifyListeners("onStatusHintsChanged", l -> l.onStatusHintsChanged(this));
     }
 
     public boolean isUnknown() {
@@ -3812,23 +3791,15 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             Log.addEvent(this, LogUtils.Events.REMOTELY_HELD);
             // Inform listeners of the fact that a call hold tone was received.  This will trigger
             // the CallAudioManager to play a tone via the InCallTonePlayer.
-            for (Listener l : mListeners) {
-                l.onHoldToneRequested(this);
-            }
+            notifyListeners("onHoldToneRequested", l -> l.onHoldToneRequested(this));
         } else if (Connection.EVENT_ON_HOLD_TONE_END.equals(event)) {
             mIsRemotelyHeld = false;
             Log.addEvent(this, LogUtils.Events.REMOTELY_UNHELD);
-            for (Listener l : mListeners) {
-                l.onHoldToneRequested(this);
-            }
+            notifyListeners("onHoldToneRequested", l -> l.onHoldToneRequested(this));
         } else if (Connection.EVENT_CALL_HOLD_FAILED.equals(event)) {
-            for (Listener l : mListeners) {
-                l.onCallHoldFailed(this);
-            }
+            notifyListeners("onCallHoldFailed", l -> l.onCallHoldFailed(this));
         } else if (Connection.EVENT_CALL_SWITCH_FAILED.equals(event)) {
-            for (Listener l : mListeners) {
-                l.onCallSwitchFailed(this);
-            }
+            notifyListeners("onCallSwitchFailed", l -> l.onCallSwitchFailed(this));
         } else if (Connection.EVENT_DEVICE_TO_DEVICE_MESSAGE.equals(event)
                 && extras != null && extras.containsKey(
                 Connection.EXTRA_DEVICE_TO_DEVICE_MESSAGE_TYPE)
@@ -3837,19 +3808,15 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             // CallDiagnosticService.
             int messageType = extras.getInt(Connection.EXTRA_DEVICE_TO_DEVICE_MESSAGE_TYPE);
             int messageValue = extras.getInt(Connection.EXTRA_DEVICE_TO_DEVICE_MESSAGE_VALUE);
-            for (Listener l : mListeners) {
-                l.onReceivedDeviceToDeviceMessage(this, messageType, messageValue);
-            }
+            notifyListeners("onReceivedDeviceToDeviceMessage",
+                    l -> l.onReceivedDeviceToDeviceMessage(this, messageType, messageValue));
         } else if (Connection.EVENT_CALL_QUALITY_REPORT.equals(event)
                 && extras != null && extras.containsKey(Connection.EXTRA_CALL_QUALITY_REPORT)) {
             CallQuality callQuality = extras.getParcelable(Connection.EXTRA_CALL_QUALITY_REPORT);
-            for (Listener l : mListeners) {
-                l.onReceivedCallQualityReport(this, callQuality);
-            }
+            notifyListeners("onReceivedCallQualityReport",
+                    l -> l.onReceivedCallQualityReport(this, callQuality));
         } else {
-            for (Listener l : mListeners) {
-                l.onConnectionEvent(this, event, extras);
-            }
+            notifyListeners("onConnectionEvent", l -> l.onConnectionEvent(this, event, extras));
         }
     }
 
@@ -3866,16 +3833,12 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         if (mConnectionService != null) {
             mConnectionService.handoverComplete(this);
         }
-        for (Listener l : mListeners) {
-            l.onHandoverComplete(this);
-        }
+        notifyListeners("onHandoverComplete", l -> l.onHandoverComplete(this));
     }
 
     public void onHandoverFailed(int handoverError) {
         Log.i(this, "onHandoverFailed; callId=%s, handoverError=%d", getId(), handoverError);
-        for (Listener l : mListeners) {
-            l.onHandoverFailed(this, handoverError);
-        }
+        notifyListeners("onHandoverFailed", l -> l.onHandoverFailed(this, handoverError));
     }
 
     public void setOriginalConnectionId(String originalConnectionId) {
@@ -3932,9 +3895,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
      */
     private void requestHandover(PhoneAccountHandle handoverToHandle, int videoState,
                                  Bundle extras, boolean isLegacy) {
-        for (Listener l : mListeners) {
-            l.onHandoverRequested(this, handoverToHandle, videoState, extras, isLegacy);
-        }
+        notifyListeners("onHandoverRequested",
+                l -> l.onHandoverRequested(this, handoverToHandle, videoState, extras, isLegacy));
     }
 
     private TelephonyManager getTelephonyManager() {
@@ -3950,9 +3912,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         Log.addEvent(this, LogUtils.Events.CONF_STATE_CHANGED, "isConference=" + isConference);
         // Ultimately CallsManager needs to know so it can update the "add call" state and inform
         // the UI to update itself.
-        for (Listener l : mListeners) {
-            l.onConferenceStateChanged(this, isConference);
-        }
+        notifyListeners("onConferenceStateChanged",
+                l -> l.onConferenceStateChanged(this, isConference));
     }
 
     /**
@@ -43,6 +43,18 @@ import java.util.concurrent.CompletableFuture;
 public class CallScreeningServiceHelper {
     private static final String TAG = CallScreeningServiceHelper.class.getSimpleName();
 
+    /** Binding flags while a call screening service is screening a call. */
+    public static final int BIND_FLAGS_ACTIVE = Context.BIND_AUTO_CREATE
+            | Context.BIND_FOREGROUND_SERVICE | Context.BIND_SCHEDULE_LIKE_TOP_APP;
+
+    /**
+     * Binding flags for a call screening service kept bound while idle; these keep the service
+     * running without raising the priority of its app.
+     */
+    public static final int BIND_FLAGS_IDLE = Context.BIND_AUTO_CREATE
+            | Context.BIND_NOT_FOREGROUND | Context.BIND_NOT_PERCEPTIBLE
+            | Context.BIND_ALLOW_OOM_MANAGEMENT;
+
     /**
      * Implementation of {@link CallScreeningService} adapter AIDL; provides a means for responses
      * from the call screening service to be handled.
@@ -194,9 +206,24 @@ public class CallScreeningServiceHelper {
      */
     public static boolean bindCallScreeningService(Context context, UserHandle userHandle,
             String packageName, ServiceConnection serviceConnection) {
+        ComponentName componentName =
+                resolveCallScreeningService(context, userHandle, packageName);
+        return componentName != null && bindCallScreeningService(context, componentName,
+                serviceConnection, BIND_FLAGS_ACTIVE);
+    }
+
+    /**
+     * Finds the {@link CallScreeningService} of a package.
+     * @param context The current context.
+     * @param userHandle User to look up the service for.
+     * @param packageName Package name of the {@link CallScreeningService}.
+     * @return The service, or {@code null} if the package has no valid call screening service.
+     */
+    public static ComponentName resolveCallScreeningService(Context context,
+            UserHandle userHandle, String packageName) {
         if (TextUtils.isEmpty(packageName)) {
             Log.i(TAG, "PackageName is empty. Not performing call screening.");
-            return false;
+            return null;
         }
 
         Intent intent = new Intent(CallScreeningService.SERVICE_INTERFACE)
@@ -205,30 +232,43 @@ public class CallScreeningServiceHelper {
                 intent, 0, userHandle.getIdentifier());
         if (entries.isEmpty()) {
             Log.i(TAG, packageName + " has no call screening service defined.");
-            return false;
+            return null;
         }
 
         ResolveInfo entry = entries.get(0);
         if (entry.serviceInfo == null) {
             Log.w(TAG, packageName + " call screening service has invalid service info");
-            return false;
+            return null;
         }
 
         if (entry.serviceInfo.permission == null || !entry.serviceInfo.permission.equals(
                 Manifest.permission.BIND_SCREENING_SERVICE)) {
             Log.w(TAG, "CallScreeningService must require BIND_SCREENING_SERVICE permission: " +
                     entry.serviceInfo.packageName);
-            return false;
+            return null;
         }
 
-        ComponentName componentName =
-                new ComponentName(entry.serviceInfo.packageName, entry.serviceInfo.name);
-        intent.setComponent(componentName);
+        return new ComponentName(entry.serviceInfo.packageName, entry.serviceInfo.name);
+    }
+
+    /**
+     * Binds to a {@link CallScreeningService} found by
+     * {@link #resolveCallScreeningService(Context, UserHandle, String)}.
+     * @param context The current context.
+     * @param componentName The {@link CallScreeningService}.
+     * @param serviceConnection The {@link ServiceConnection} to be notified of binding.
+     * @param flags {@link #BIND_FLAGS_ACTIVE} or {@link #BIND_FLAGS_IDLE}.
+     * @return {@code true} if binding succeeds, {@code false} otherwise.
+     */
+    public static boolean bindCallScreeningService(Context context, ComponentName componentName,
+            ServiceConnection serviceConnection, int flags) {
+        Intent intent = new Intent(CallScreeningService.SERVICE_INTERFACE)
+                .setPackage(componentName.getPackageName())
+                .setComponent(componentName);
         if (context.bindServiceAsUser(
                 intent,
                 serviceConnection,
-                Context.BIND_AUTO_CREATE | Context.BIND_FOREGROUND_SERVICE
-                | Context.BIND_SCHEDULE_LIKE_TOP_APP,
+                flags,
                 UserHandle.CURRENT)) {
             Log.d(TAG, "bindService, found service, waiting for it to connect");
             return true;
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.annotation.Nullable;
+import android.telecom.PhoneAccountHandle;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+/**
+ * Indexes the calls tracked by {@link CallsManager} by {@link CallState} so that the number of
+ * calls in a given state can be determined without visiting every call.
+ * <p>
+ * Each call is classified as a managed or self-managed top-level call, an external call, or a
+ * child call.  Only managed and self-managed top-level calls are counted by
+ * {@link #getCount(int, boolean, boolean, Call, PhoneAccountHandle)}, matching the calls which
+ * {@link CallsManager} considers when enforcing its call limits, and only these calls are
+ * returned by {@link #getFirstCall(int, Call)}.  The index must be told about
+ * every change to the state, parent, or connection properties of a call via {@link #update(Call)}.
+ */
+@VisibleForTesting
+public class CallStateIndex {
+    private static final int CATEGORY_MANAGED = 0;
+    private static final int CATEGORY_SELF_MANAGED = 1;
+    private static final int CATEGORY_EXTERNAL = 2;
+    private static final int CATEGORY_CHILD = 3;
+
+    /** The state and category of a call as of its last update. */
+    private static final class Entry {
+        int state;
+        int category;
+    }
+
+    private final ArrayMap<Call, Entry> mEntries = new ArrayMap<>();
+    private final SparseArray<ArraySet<Call>> mCallsByState = new SparseArray<>();
+    private final SparseIntArray mManagedCounts = new SparseIntArray();
+    private final SparseIntArray mSelfManagedCounts = new SparseIntArray();
+    private final SparseIntArray mExternalCounts = new SparseIntArray();
+
+    /**
+     * Adds a call to the index, or re-indexes a call which is already indexed.
+     *
+     * @param call The call.
+     */
+    public synchronized void add(Call call) {
+        Entry entry = mEntries.get(call);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(call, entry);
+        } else {
+            unindex(call, entry);
+        }
+        index(call, entry);
+    }
+
+    /**
+     * Re-indexes a call after a change to its state, parent or connection properties.  Calls which
+     * were never added are ignored.
+     *
+     * @param call The call.
+     */
+    public synchronized void update(Call call) {
+        Entry entry = mEntries.get(call);
+        if (entry == null) {
+            return;
+        }
+        int state = call.getState();
+        int category = getCategory(call);
+        if (entry.state == state && entry.category == category) {
+            return;
+        }
+        unindex(call, entry);
+        index(call, entry);
+    }
+
+    /**
+     * @param call The call to remove.
+     */
+    public synchronized void remove(Call call) {
+        Entry entry = mEntries.remove(call);
+        if (entry != null) {
+            unindex(call, entry);
+        }
+    }
+
+    /**
+     * Counts the top-level, non-external calls in a state.  Without a phone account this takes
+     * constant time.
+     *
+     * @param state The {@link CallState}.
+     * @param includeManaged Whether managed calls are counted.
+     * @param includeSelfManaged Whether self-managed calls are counted.
+     * @param excludeCall Where {@code non-null}, this call is not counted.
+     * @param phoneAccountHandle Where {@code non-null}, only calls for this phone account are
+     *                           counted.
+     * @return The number of matching calls.
+     */
+    public synchronized int getCount(int state, boolean includeManaged,
+            boolean includeSelfManaged, @Nullable Call excludeCall,
+            @Nullable PhoneAccountHandle phoneAccountHandle) {
+        if (phoneAccountHandle != null) {
+            ArraySet<Call> calls = mCallsByState.get(state);
+            if (calls == null) {
+                return 0;
+            }
+            int count = 0;
+            for (int i = 0; i < calls.size(); i++) {
+                Call call = calls.valueAt(i);
+                if (call != excludeCall
+                        && isCounted(mEntries.get(call).category, includeManaged,
+                                includeSelfManaged)
+                        && phoneAccountHandle.equals(call.getTargetPhoneAccount())) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        int count = (includeManaged ? mManagedCounts.get(state) : 0)
+                + (includeSelfManaged ? mSelfManagedCounts.get(state) : 0);
+        if (excludeCall != null) {
+            Entry entry = mEntries.get(excludeCall);
+            if (entry != null && entry.state == state
+                    && isCounted(entry.category, includeManaged, includeSelfManaged)) {
+                count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds a top-level, non-external call in a state.  Takes time proportional to the number of
+     * calls in the state rather than the number of calls.
+     *
+     * @param state The {@link CallState}.
+     * @param excludeCall Where {@code non-null}, this call is never returned.
+     * @return A matching call, or {@code null} if there is none.
+     */
+    public synchronized @Nullable Call getFirstCall(int state, @Nullable Call excludeCall) {
+        ArraySet<Call> calls = mCallsByState.get(state);
+        if (calls == null) {
+            return null;
+        }
+        for (int i = 0; i < calls.size(); i++) {
+            Call call = calls.valueAt(i);
+            if (call != excludeCall && isCounted(mEntries.get(call).category, true, true)) {
+                return call;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param state The {@link CallState}.
+     * @return The number of top-level external calls in the state.
+     */
+    public synchronized int getExternalCount(int state) {
+        return mExternalCounts.get(state);
+    }
+
+    /**
+     * @return The number of indexed calls.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized void dump(IndentingPrintWriter pw) {
+        pw.println("CallStateIndex: calls=" + mEntries.size());
+        pw.increaseIndent();
+        for (int i = 0; i < mCallsByState.size(); i++) {
+            int state = mCallsByState.keyAt(i);
+            pw.println(CallState.toString(state) + ": calls=" + mCallsByState.valueAt(i).size()
+                    + ", managed=" + mManagedCounts.get(state)
+                    + ", selfManaged=" + mSelfManagedCounts.get(state)
+                    + ", external=" + mExternalCounts.get(state));
+        }
+        pw.decreaseIndent();
+    }
+
+    private void index(Call call, Entry entry) {
+        entry.state = call.getState();
+        entry.category = getCategory(call);
+        ArraySet<Call> calls = mCallsByState.get(entry.state);
+        if (calls == null) {
+            calls = new ArraySet<>();
+            mCallsByState.put(entry.state, calls);
+        }
+        calls.add(call);
+        adjustCount(entry, 1);
+    }
+
+    private void unindex(Call call, Entry entry) {
+        ArraySet<Call> calls = mCallsByState.get(entry.state);
+        if (calls != null) {
+            calls.remove(call);
+            if (calls.isEmpty()) {
+                mCallsByState.remove(entry.state);
+            }
+        }
+        adjustCount(entry, -1);
+    }
+
+    private void adjustCount(Entry entry, int delta) {
+        SparseIntArray counts;
+        switch (entry.category) {
+            case CATEGORY_MANAGED:
+                counts = mManagedCounts;
+                break;
+            case CATEGORY_SELF_MANAGED:
+                counts = mSelfManagedCounts;
+                break;
+            case CATEGORY_EXTERNAL:
+                counts = mExternalCounts;
+                break;
+            default:
+                return;
+        }
+        int count = counts.get(entry.state) + delta;
+        if (count == 0) {
+            counts.delete(entry.state);
+        } else {
+            counts.put(entry.state, count);
+        }
+    }
+
+    private static int getCategory(Call call) {
+        if (call.getParentCall() != null) {
+            return CATEGORY_CHILD;
+        } else if (call.isExternalCall()) {
+            return CATEGORY_EXTERNAL;
+        }
+        return call.isSelfManaged() ? CATEGORY_SELF_MANAGED : CATEGORY_MANAGED;
+    }
+
+    private static boolean isCounted(int category, boolean includeManaged,
+            boolean includeSelfManaged) {
+        return (category == CATEGORY_MANAGED && includeManaged)
+                || (category == CATEGORY_SELF_MANAGED && includeSelfManaged);
+    }
+}
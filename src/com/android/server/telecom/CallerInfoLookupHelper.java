@@ -17,27 +17,53 @@
 package com.android.server.telecom;
 
 import android.annotation.Nullable;
+import android.content.ContentResolver;
 import android.content.Context;
+import android.database.ContentObserver;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
 import android.telecom.Log;
 import android.telecom.Logging.Runnable;
 import android.telecom.Logging.Session;
+import android.telecom.PhoneAccount;
+import android.telephony.PhoneNumberUtils;
 import android.text.TextUtils;
 import android.util.Pair;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
 import android.telecom.CallerInfo;
 import android.telecom.CallerInfoAsyncQuery;
 
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
+/**
+ * Looks up the {@link CallerInfo} and contact photo of handles.  Concurrent lookups of a handle
+ * share one query, and the results of completed lookups are kept for a while so that a repeat
+ * caller does not need another query.  The kept results are bounded both in number and in the
+ * size of their photos, and are dropped when the contacts change.
+ * <p>
+ * Handles can also be {@link #prefetch prefetched} ahead of a call from them, in which case their
+ * results are kept for longer.
+ */
 public class CallerInfoLookupHelper {
+    @VisibleForTesting
+    public static final int MAX_CACHED_CALLER_INFOS = 64;
+    @VisibleForTesting
+    public static final long MAX_CACHED_PHOTO_BYTES = 4 * 1024 * 1024;
+
     public interface OnQueryCompleteListener {
         /**
          * Called when the query returns with the caller info
@@ -52,12 +78,36 @@ public class CallerInfoLookupHelper {
         public CallerInfo callerInfo;
         public List<OnQueryCompleteListener> listeners;
         public boolean imageQueryPending = false;
+        // Whether every lookup of the handle so far can wait behind other lookups.
+        public boolean isBackground = true;
+        // Whether the handle is only being looked up by a prefetch.
+        public boolean isPrefetch = false;
+        public long startMillis;
+        public long nameLookupMillis;
 
         public CallerInfoQueryInfo() {
             listeners = new LinkedList<>();
         }
     }
 
+    private static class CachedCallerInfo {
+        public final CallerInfo callerInfo;
+        public final long expiryMillis;
+        public final long photoBytes;
+        public final boolean isPrefetched;
+        // How long the caller info took to look up.
+        public final long nameLookupMillis;
+
+        public CachedCallerInfo(CallerInfo callerInfo, long expiryMillis, long photoBytes,
+                boolean isPrefetched, long nameLookupMillis) {
+            this.callerInfo = callerInfo;
+            this.expiryMillis = expiryMillis;
+            this.photoBytes = photoBytes;
+            this.isPrefetched = isPrefetched;
+            this.nameLookupMillis = nameLookupMillis;
+        }
+    }
+
     private final Map<Uri, CallerInfoQueryInfo> mQueryEntries = new HashMap<>();
 
     private final CallerInfoAsyncQueryFactory mCallerInfoAsyncQueryFactory;
@@ -65,15 +115,81 @@ public class CallerInfoLookupHelper {
     private final Context mContext;
     private final TelecomSystem.SyncRoot mLock;
     private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ClockProxy mClockProxy;
+    private final long mCacheTtlMillis;
+    private final long mPrefetchTtlMillis;
+    private final ContentObserver mContactsObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            synchronized (mLock) {
+                invalidateCache("contacts changed");
+            }
+        }
+    };
+
+    // Completed lookups by normalized handle, least recently used first.  Guarded by mLock.
+    private final LinkedHashMap<String, CachedCallerInfo> mCache =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long mCachedPhotoBytes;
+    private boolean mObserverRegistered;
+    private long mCacheHits;
+    private long mCacheMisses;
+    private long mCacheEvictions;
+    private long mCacheExpirations;
+    private long mCacheInvalidations;
+    private long mPrefetches;
+    private long mPrefetchHits;
+    private long mPrefetchSavedMillis;
 
     public CallerInfoLookupHelper(Context context,
             CallerInfoAsyncQueryFactory callerInfoAsyncQueryFactory,
             ContactsAsyncHelper contactsAsyncHelper,
             TelecomSystem.SyncRoot lock) {
+        this(context, callerInfoAsyncQueryFactory, contactsAsyncHelper, lock,
+                new ClockProxy() {
+                    @Override
+                    public long currentTimeMillis() {
+                        return System.currentTimeMillis();
+                    }
+
+                    @Override
+                    public long elapsedRealtime() {
+                        return SystemClock.elapsedRealtime();
+                    }
+                }, 0);
+    }
+
+    /**
+     * @param cacheTtlMillis How long the result of a lookup is kept; 0 keeps none.
+     */
+    public CallerInfoLookupHelper(Context context,
+            CallerInfoAsyncQueryFactory callerInfoAsyncQueryFactory,
+            ContactsAsyncHelper contactsAsyncHelper,
+            TelecomSystem.SyncRoot lock,
+            ClockProxy clockProxy,
+            long cacheTtlMillis) {
+        this(context, callerInfoAsyncQueryFactory, contactsAsyncHelper, lock, clockProxy,
+                cacheTtlMillis, cacheTtlMillis);
+    }
+
+    /**
+     * @param cacheTtlMillis How long the result of a lookup is kept; 0 keeps none.
+     * @param prefetchTtlMillis How long the result of a prefetch is kept.
+     */
+    public CallerInfoLookupHelper(Context context,
+            CallerInfoAsyncQueryFactory callerInfoAsyncQueryFactory,
+            ContactsAsyncHelper contactsAsyncHelper,
+            TelecomSystem.SyncRoot lock,
+            ClockProxy clockProxy,
+            long cacheTtlMillis,
+            long prefetchTtlMillis) {
         mCallerInfoAsyncQueryFactory = callerInfoAsyncQueryFactory;
         mContactsAsyncHelper = contactsAsyncHelper;
         mContext = context;
         mLock = lock;
+        mClockProxy = clockProxy;
+        mCacheTtlMillis = cacheTtlMillis;
+        mPrefetchTtlMillis = prefetchTtlMillis;
     }
 
     /**
@@ -118,6 +234,64 @@ public class CallerInfoLookupHelper {
     }
 
     public void startLookup(final Uri handle, OnQueryCompleteListener listener) {
+        startLookup(handle, listener, false);
+    }
+
+    /**
+     * Looks up the caller info and contact photo of a handle.
+     *
+     * @param isBackground {@code true} if the result is not needed right away, in which case
+     *        the contact photo is loaded after those needed by calls being set up.
+     */
+    public void startLookup(final Uri handle, OnQueryCompleteListener listener,
+            boolean isBackground) {
+        startLookup(handle, listener, isBackground, false);
+    }
+
+    /**
+     * Looks up a handle in the background so that its result is kept for a later call from it.
+     *
+     * @return {@code false} if the handle was not looked up because its result is already kept
+     *         or being looked up, or because no results are kept.
+     */
+    public boolean prefetch(Uri handle) {
+        if (handle == null || TextUtils.isEmpty(handle.getSchemeSpecificPart())) {
+            return false;
+        }
+        synchronized (mLock) {
+            if (mCacheTtlMillis <= 0 || mQueryEntries.containsKey(handle)) {
+                return false;
+            }
+            registerObserverIfNeeded();
+            CachedCallerInfo cached = mCache.get(getCacheKey(handle));
+            if (cached != null && mClockProxy.elapsedRealtime() < cached.expiryMillis) {
+                return false;
+            }
+            mPrefetches++;
+        }
+        startLookup(handle, new OnQueryCompleteListener() {
+            @Override
+            public void onCallerInfoQueryComplete(Uri handle, CallerInfo info) {
+            }
+
+            @Override
+            public void onContactPhotoQueryComplete(Uri handle, CallerInfo info) {
+            }
+        }, true, true);
+        return true;
+    }
+
+    /**
+     * @return The size of the photos of the kept lookup results.
+     */
+    public long getCachedPhotoBytes() {
+        synchronized (mLock) {
+            return mCachedPhotoBytes;
+        }
+    }
+
+    private void startLookup(final Uri handle, OnQueryCompleteListener listener,
+            boolean isBackground, boolean isPrefetch) {
         if (handle == null) {
             listener.onCallerInfoQueryComplete(handle, null);
             return;
@@ -130,8 +304,33 @@ public class CallerInfoLookupHelper {
         }
 
         synchronized (mLock) {
+            CachedCallerInfo cached = isPrefetch ? null : getCachedCallerInfo(handle);
+            if (cached != null) {
+                Log.i(this, "Using cached caller info for handle %s", Log.piiHandle(handle));
+                if (cached.isPrefetched && !isBackground) {
+                    mPrefetchHits++;
+                    mPrefetchSavedMillis += cached.nameLookupMillis;
+                }
+                CallerInfo cachedCallerInfo = cached.callerInfo;
+                listener.onCallerInfoQueryComplete(handle, cachedCallerInfo);
+                if (cachedCallerInfo.cachedPhoto != null
+                        || cachedCallerInfo.cachedPhotoIcon != null) {
+                    listener.onContactPhotoQueryComplete(handle, cachedCallerInfo);
+                }
+                return;
+            }
             if (mQueryEntries.containsKey(handle)) {
                 CallerInfoQueryInfo info = mQueryEntries.get(handle);
+                if (!isPrefetch) {
+                    info.isPrefetch = false;
+                }
+                if (info.isBackground && !isBackground) {
+                    info.isBackground = false;
+                    if (info.imageQueryPending) {
+                        mContactsAsyncHelper.prioritize(
+                                info.callerInfo.getContactDisplayPhotoUri());
+                    }
+                }
                 if (info.callerInfo != null) {
                     Log.i(this, "Caller info already exists for handle %s; using cached value",
                             Log.piiHandle(handle));
@@ -154,6 +353,9 @@ public class CallerInfoLookupHelper {
             } else {
                 CallerInfoQueryInfo info = new CallerInfoQueryInfo();
                 info.listeners.add(listener);
+                info.isBackground = isBackground;
+                info.isPrefetch = isPrefetch;
+                info.startMillis = mClockProxy.elapsedRealtime();
                 mQueryEntries.put(handle, info);
             }
         }
@@ -188,6 +390,7 @@ public class CallerInfoLookupHelper {
                         Log.i(CallerInfoLookupHelper.this, "CI query for handle %s has completed;" +
                                 " notifying all listeners.", Log.piiHandle(handle));
                         CallerInfoQueryInfo info = mQueryEntries.get(handle);
+                        info.nameLookupMillis = mClockProxy.elapsedRealtime() - info.startMillis;
                         for (OnQueryCompleteListener l : info.listeners) {
                             l.onCallerInfoQueryComplete(handle, ci);
                         }
@@ -195,6 +398,7 @@ public class CallerInfoLookupHelper {
                             Log.i(CallerInfoLookupHelper.this, "There is no photo for this " +
                                     "contact, skipping photo query");
                             mQueryEntries.remove(handle);
+                            cacheCallerInfo(handle, ci, info);
                         } else {
                             info.callerInfo = ci;
                             info.imageQueryPending = true;
@@ -215,11 +419,24 @@ public class CallerInfoLookupHelper {
         mHandler.post(new Runnable("CILH.sPL", null) {
             @Override
             public void loggedRun() {
+                boolean isBackground;
+                synchronized (mLock) {
+                    // A foreground lookup may have joined since the photo lookup was posted.
+                    CallerInfoQueryInfo info = mQueryEntries.get(handle);
+                    isBackground = info != null && info.isBackground;
+                }
                 Session continuedSession = Log.createSubsession();
                 try {
-                    mContactsAsyncHelper.startObtainPhotoAsync(
-                            0, mContext, contactPhotoUri,
-                            makeContactPhotoListener(handle), continuedSession);
+                    if (isBackground) {
+                        mContactsAsyncHelper.startObtainPhotoAsync(
+                                0, mContext, contactPhotoUri,
+                                makeContactPhotoListener(handle), continuedSession,
+                                ContactsAsyncHelper.PRIORITY_BACKGROUND);
+                    } else {
+                        mContactsAsyncHelper.startObtainPhotoAsync(
+                                0, mContext, contactPhotoUri,
+                                makeContactPhotoListener(handle), continuedSession);
+                    }
                 } catch (Throwable t) {
                     Log.cancelSubsession(continuedSession);
                     throw t;
@@ -248,6 +465,7 @@ public class CallerInfoLookupHelper {
                             l.onContactPhotoQueryComplete(handle, info.callerInfo);
                         }
                         mQueryEntries.remove(handle);
+                        cacheCallerInfo(handle, info.callerInfo, info);
                     } else {
                         Log.i(CallerInfoLookupHelper.this, "Photo query for handle %s has" +
                                 " completed, but there are no listeners left.",
@@ -260,6 +478,149 @@ public class CallerInfoLookupHelper {
         };
     }
 
+    /**
+     * Drops every kept lookup result.
+     *
+     * @param reason Why, for the log.
+     */
+    public void invalidateCache(String reason) {
+        synchronized (mLock) {
+            if (mCache.isEmpty()) {
+                return;
+            }
+            Log.i(this, "Invalidating %d cached caller infos: %s", mCache.size(), reason);
+            mCache.clear();
+            mCachedPhotoBytes = 0;
+            mCacheInvalidations++;
+        }
+    }
+
+    /**
+     * registerContentObserver is really hard to mock out, so here is a getter method for the
+     * content observer for testing instead.
+     * @return The content observer
+     */
+    @VisibleForTesting
+    public ContentObserver getContentObserver() {
+        return mContactsObserver;
+    }
+
+    private CachedCallerInfo getCachedCallerInfo(Uri handle) {
+        if (mCacheTtlMillis <= 0) {
+            return null;
+        }
+        registerObserverIfNeeded();
+        String key = getCacheKey(handle);
+        CachedCallerInfo cached = mCache.get(key);
+        if (cached != null && mClockProxy.elapsedRealtime() >= cached.expiryMillis) {
+            removeCached(key);
+            mCacheExpirations++;
+            cached = null;
+        }
+        if (cached == null) {
+            mCacheMisses++;
+            return null;
+        }
+        mCacheHits++;
+        return cached;
+    }
+
+    private void cacheCallerInfo(Uri handle, CallerInfo callerInfo, CallerInfoQueryInfo info) {
+        if (mCacheTtlMillis <= 0 || callerInfo == null) {
+            return;
+        }
+        String key = getCacheKey(handle);
+        removeCached(key);
+        long photoBytes = getPhotoBytes(callerInfo);
+        if (photoBytes > MAX_CACHED_PHOTO_BYTES) {
+            return;
+        }
+        long ttlMillis = info.isPrefetch ? mPrefetchTtlMillis : mCacheTtlMillis;
+        mCache.put(key, new CachedCallerInfo(callerInfo,
+                mClockProxy.elapsedRealtime() + ttlMillis, photoBytes, info.isPrefetch,
+                info.nameLookupMillis));
+        mCachedPhotoBytes += photoBytes;
+
+        // The number of caller infos and the size of their photos are bounded separately.
+        Iterator<CachedCallerInfo> it = mCache.values().iterator();
+        while (it.hasNext() && (mCache.size() > MAX_CACHED_CALLER_INFOS
+                || mCachedPhotoBytes > MAX_CACHED_PHOTO_BYTES)) {
+            CachedCallerInfo eldest = it.next();
+            if (mCache.size() > MAX_CACHED_CALLER_INFOS || eldest.photoBytes > 0) {
+                it.remove();
+                mCachedPhotoBytes -= eldest.photoBytes;
+                mCacheEvictions++;
+            }
+        }
+    }
+
+    private void removeCached(String key) {
+        CachedCallerInfo removed = mCache.remove(key);
+        if (removed != null) {
+            mCachedPhotoBytes -= removed.photoBytes;
+        }
+    }
+
+    private void registerObserverIfNeeded() {
+        if (mObserverRegistered) {
+            return;
+        }
+        mObserverRegistered = true;
+        try {
+            ContentResolver resolver = mContext.getContentResolver();
+            if (resolver != null) {
+                resolver.registerContentObserver(ContactsContract.AUTHORITY_URI, true,
+                        mContactsObserver);
+            }
+        } catch (Exception e) {
+            Log.w(this, "Unable to observe contacts: %s", e);
+        }
+    }
+
+    private static String getCacheKey(Uri handle) {
+        String number = handle.getSchemeSpecificPart();
+        if (PhoneAccount.SCHEME_TEL.equals(handle.getScheme())) {
+            number = PhoneNumberUtils.normalizeNumber(number);
+        }
+        return handle.getScheme() + ":" + number;
+    }
+
+    private static long getPhotoBytes(CallerInfo callerInfo) {
+        long bytes = 0;
+        Bitmap icon = callerInfo.cachedPhotoIcon;
+        if (icon != null) {
+            bytes += icon.getAllocationByteCount();
+        }
+        Drawable photo = callerInfo.cachedPhoto;
+        if (photo instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) photo).getBitmap();
+            if (bitmap != null && bitmap != icon) {
+                bytes += bitmap.getAllocationByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        synchronized (mLock) {
+            long lookups = mCacheHits + mCacheMisses;
+            pw.println("CallerInfoLookupHelper: ttlMillis=" + mCacheTtlMillis
+                    + ", cached=" + mCache.size()
+                    + ", photoBytes=" + mCachedPhotoBytes
+                    + ", pending=" + mQueryEntries.size()
+                    + ", hits=" + mCacheHits
+                    + ", misses=" + mCacheMisses
+                    + ", hitRate=" + (lookups == 0 ? 0 : mCacheHits * 100 / lookups) + "%"
+                    + ", evictions=" + mCacheEvictions
+                    + ", expirations=" + mCacheExpirations
+                    + ", invalidations=" + mCacheInvalidations
+                    + ", prefetches=" + mPrefetches
+                    + ", prefetchHits=" + mPrefetchHits
+                    + ", prefetchSavedNameMillis=" + mPrefetchSavedMillis);
+        }
+        mContactsAsyncHelper.dump(pw);
+    }
+
     @VisibleForTesting
     public Map<Uri, CallerInfoQueryInfo> getCallerInfoEntries() {
         return mQueryEntries;
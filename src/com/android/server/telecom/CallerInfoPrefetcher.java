@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.PowerManager;
+import android.os.UserHandle;
+import android.provider.CallLog.Calls;
+import android.provider.Settings;
+import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.telecom.Log;
+import android.telecom.PhoneAccount;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Warms the {@link CallerInfoLookupHelper} cache with the numbers most likely to call next, so
+ * that the name and photo of a call from them are available as soon as it rings.
+ * <p>
+ * The candidates are the most recent and most frequent numbers in the call log, and the numbers
+ * of starred contacts.  They are looked up one at a time in the background, up to a number of
+ * handles and a budget of photo bytes, and prefetching waits while the device is in battery
+ * saver or is getting hot.
+ */
+public class CallerInfoPrefetcher {
+    private static final String TAG = CallerInfoPrefetcher.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_NUMBERS = 32;
+    @VisibleForTesting
+    public static final long MAX_PREFETCH_PHOTO_BYTES =
+            CallerInfoLookupHelper.MAX_CACHED_PHOTO_BYTES / 2;
+    // Lets the call log be written before it is read after a call.
+    @VisibleForTesting
+    public static final long START_DELAY_MILLIS = 5000L;
+    // Spaces the lookups out so that they do not compete with a call.
+    @VisibleForTesting
+    public static final long LOOKUP_INTERVAL_MILLIS = 200L;
+    @VisibleForTesting
+    public static final long CONSTRAINED_RETRY_MILLIS = 60000L;
+    private static final int CALL_LOG_SCAN_LIMIT = 500;
+    private static final String MAX_NUMBERS_KEY = "telecom.caller_info_prefetch_max_numbers";
+
+    /**
+     * Reads the candidates and the device state, so that they can be faked in tests.
+     */
+    public interface Adapter {
+        /**
+         * @return Numbers worth prefetching, most likely to call first.
+         */
+        List<String> getCandidateNumbers(Context context, UserHandle userHandle, int maxNumbers);
+
+        /**
+         * @return {@code true} if background work should wait, such as in battery saver.
+         */
+        boolean isConstrained(Context context);
+    }
+
+    public static class AdapterImpl implements Adapter {
+        @Override
+        public List<String> getCandidateNumbers(Context context, UserHandle userHandle,
+                int maxNumbers) {
+            List<String> recent = new ArrayList<>();
+            Map<String, Integer> callCounts = new HashMap<>();
+            Uri callLogUri = ContentProvider.maybeAddUserId(Calls.CONTENT_URI,
+                    userHandle.getIdentifier()).buildUpon()
+                    .appendQueryParameter(Calls.LIMIT_PARAM_KEY,
+                            String.valueOf(CALL_LOG_SCAN_LIMIT))
+                    .build();
+            try (Cursor cursor = context.getContentResolver().query(callLogUri,
+                    new String[] { Calls.NUMBER },
+                    Calls.NUMBER_PRESENTATION + "=" + Calls.PRESENTATION_ALLOWED, null,
+                    Calls.DEFAULT_SORT_ORDER)) {
+                while (cursor != null && cursor.moveToNext()) {
+                    String number = cursor.getString(0);
+                    if (TextUtils.isEmpty(number)) {
+                        continue;
+                    }
+                    Integer count = callCounts.get(number);
+                    if (count == null) {
+                        recent.add(number);
+                        count = 0;
+                    }
+                    callCounts.put(number, count + 1);
+                }
+            }
+
+            List<String> frequent = new ArrayList<>(recent);
+            frequent.sort((a, b) -> callCounts.get(b) - callCounts.get(a));
+
+            List<String> starred = new ArrayList<>();
+            Uri phonesUri = ContentProvider.maybeAddUserId(Phone.CONTENT_URI,
+                    userHandle.getIdentifier());
+            try (Cursor cursor = context.getContentResolver().query(phonesUri,
+                    new String[] { Phone.NUMBER }, Phone.STARRED + "=1", null,
+                    Phone.TIMES_CONTACTED + " DESC")) {
+                while (cursor != null && cursor.moveToNext()) {
+                    String number = cursor.getString(0);
+                    if (!TextUtils.isEmpty(number)) {
+                        starred.add(number);
+                    }
+                }
+            }
+            return mergeCandidates(maxNumbers, frequent, recent, starred);
+        }
+
+        @Override
+        public boolean isConstrained(Context context) {
+            PowerManager powerManager = context.getSystemService(PowerManager.class);
+            return powerManager != null && (powerManager.isPowerSaveMode()
+                    || powerManager.getCurrentThermalStatus()
+                            >= PowerManager.THERMAL_STATUS_MODERATE);
+        }
+    }
+
+    private final Context mContext;
+    private final CallerInfoLookupHelper mCallerInfoLookupHelper;
+    private final Adapter mAdapter;
+    private final int mMaxNumbers;
+    private Handler mHandler;
+
+    // Guarded by this.
+    private final List<Uri> mQueue = new ArrayList<>();
+    private UserHandle mUserHandle;
+    private long mRuns;
+    private long mPrefetched;
+    private long mSkipped;
+    private long mConstrainedPauses;
+    private long mBudgetStops;
+
+    /**
+     * @param maxNumbers The most handles prefetched per run; 0 disables prefetching.
+     */
+    public CallerInfoPrefetcher(Context context, CallerInfoLookupHelper callerInfoLookupHelper,
+            int maxNumbers) {
+        this(context, callerInfoLookupHelper, new AdapterImpl(), maxNumbers, null);
+    }
+
+    @VisibleForTesting
+    public CallerInfoPrefetcher(Context context, CallerInfoLookupHelper callerInfoLookupHelper,
+            Adapter adapter, int maxNumbers, Handler handler) {
+        mContext = context;
+        mCallerInfoLookupHelper = callerInfoLookupHelper;
+        mAdapter = adapter;
+        mMaxNumbers = maxNumbers;
+        mHandler = handler;
+    }
+
+    /**
+     * Returns the most handles whose caller info is prefetched after boot and after calls; 0
+     * disables prefetching.
+     */
+    public static int getMaxNumbers(ContentResolver contentResolver) {
+        return Settings.Secure.getIntForUser(contentResolver, MAX_NUMBERS_KEY,
+                DEFAULT_MAX_NUMBERS, contentResolver.getUserId());
+    }
+
+    /**
+     * Starts prefetching for a user, replacing any prefetching in progress.
+     *
+     * @param reason Why, for the log.
+     */
+    public void prefetch(String reason, UserHandle userHandle) {
+        if (mMaxNumbers <= 0) {
+            return;
+        }
+        Handler handler = getHandler();
+        synchronized (this) {
+            mUserHandle = userHandle;
+            mQueue.clear();
+        }
+        Log.i(TAG, "Prefetching caller info: %s", reason);
+        handler.removeCallbacksAndMessages(null);
+        handler.postDelayed(this::loadCandidates, START_DELAY_MILLIS);
+    }
+
+    private void loadCandidates() {
+        if (mAdapter.isConstrained(mContext)) {
+            synchronized (this) {
+                mConstrainedPauses++;
+            }
+            Log.i(TAG, "Device is constrained; pausing caller info prefetch");
+            mHandler.postDelayed(this::loadCandidates, CONSTRAINED_RETRY_MILLIS);
+            return;
+        }
+        UserHandle userHandle;
+        synchronized (this) {
+            userHandle = mUserHandle;
+        }
+        List<String> numbers;
+        try {
+            numbers = mAdapter.getCandidateNumbers(mContext, userHandle, mMaxNumbers);
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to read prefetch candidates: %s", e);
+            return;
+        }
+        synchronized (this) {
+            mRuns++;
+            mQueue.clear();
+            for (String number : numbers) {
+                mQueue.add(Uri.fromParts(PhoneNumberUtils.isUriNumber(number)
+                        ? PhoneAccount.SCHEME_SIP : PhoneAccount.SCHEME_TEL, number, null));
+            }
+        }
+        prefetchNext();
+    }
+
+    private void prefetchNext() {
+        if (mAdapter.isConstrained(mContext)) {
+            synchronized (this) {
+                if (mQueue.isEmpty()) {
+                    return;
+                }
+                mConstrainedPauses++;
+            }
+            Log.i(TAG, "Device is constrained; pausing caller info prefetch");
+            mHandler.postDelayed(this::prefetchNext, CONSTRAINED_RETRY_MILLIS);
+            return;
+        }
+        // The lookup helper takes the Telecom lock, so it is never called with this held.
+        while (true) {
+            boolean isOverBudget =
+                    mCallerInfoLookupHelper.getCachedPhotoBytes() >= MAX_PREFETCH_PHOTO_BYTES;
+            Uri handle;
+            synchronized (this) {
+                if (mQueue.isEmpty()) {
+                    return;
+                }
+                if (isOverBudget) {
+                    Log.i(TAG, "Photo budget reached; stopping caller info prefetch");
+                    mBudgetStops++;
+                    mQueue.clear();
+                    return;
+                }
+                handle = mQueue.remove(0);
+            }
+            boolean isStarted = mCallerInfoLookupHelper.prefetch(handle);
+            synchronized (this) {
+                if (!isStarted) {
+                    mSkipped++;
+                    continue;
+                }
+                mPrefetched++;
+                if (mQueue.isEmpty()) {
+                    return;
+                }
+            }
+            mHandler.postDelayed(this::prefetchNext, LOOKUP_INTERVAL_MILLIS);
+            return;
+        }
+    }
+
+    private synchronized Handler getHandler() {
+        if (mHandler == null) {
+            HandlerThread thread = new HandlerThread(TAG);
+            thread.start();
+            mHandler = new Handler(thread.getLooper());
+        }
+        return mHandler;
+    }
+
+    /**
+     * Interleaves lists of numbers, best first, dropping repeats of a number.
+     */
+    @VisibleForTesting
+    @SafeVarargs
+    public static List<String> mergeCandidates(int maxNumbers, List<String>... lists) {
+        Map<String, String> merged = new LinkedHashMap<>();
+        List<Iterator<String>> iterators = new ArrayList<>();
+        for (List<String> list : lists) {
+            iterators.add(list.iterator());
+        }
+        boolean added = true;
+        while (added && merged.size() < maxNumbers) {
+            added = false;
+            for (Iterator<String> it : iterators) {
+                if (it.hasNext() && merged.size() < maxNumbers) {
+                    String number = it.next();
+                    merged.putIfAbsent(getKey(number), number);
+                    added = true;
+                }
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private static String getKey(String number) {
+        return PhoneNumberUtils.isUriNumber(number) ? number
+                : PhoneNumberUtils.normalizeNumber(number);
+    }
+
+    public synchronized void dump(IndentingPrintWriter pw) {
+        pw.println("CallerInfoPrefetcher: maxNumbers=" + mMaxNumbers
+                + ", runs=" + mRuns
+                + ", prefetched=" + mPrefetched
+                + ", skipped=" + mSkipped
+                + ", queued=" + mQueue.size()
+                + ", constrainedPauses=" + mConstrainedPauses
+                + ", budgetStops=" + mBudgetStops);
+    }
+}
@@ -61,7 +61,6 @@ import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.PersistableBundle;
 import android.os.Process;
@@ -108,12 +107,20 @@ import com.android.server.telecom.bluetooth.BluetoothRouteManager;
 import com.android.server.telecom.bluetooth.BluetoothStateReceiver;
 import com.android.server.telecom.callfiltering.BlockCheckerAdapter;
 import com.android.server.telecom.callfiltering.BlockCheckerFilter;
+import com.android.server.telecom.callfiltering.BlockedNumberIndex;
+import com.android.server.telecom.callfiltering.CallFilterLatencyStats;
 import com.android.server.telecom.callfiltering.CallFilterResultCallback;
+import com.android.server.telecom.callfiltering.CallFilteringExecutor;
 import com.android.server.telecom.callfiltering.CallFilteringResult;
+import com.android.server.telecom.callfiltering.CallFilteringResultCache;
 import com.android.server.telecom.callfiltering.CallFilteringResult.Builder;
+import com.android.server.telecom.callfiltering.CallScreeningServiceConnectionPool;
 import com.android.server.telecom.callfiltering.CallScreeningServiceFilter;
 import com.android.server.telecom.callfiltering.DirectToVoicemailFilter;
+import com.android.server.telecom.callfiltering.IncomingCallBatcher;
 import com.android.server.telecom.callfiltering.IncomingCallFilterGraph;
+import com.android.server.telecom.callfiltering.NumberRuleFilter;
+import com.android.server.telecom.callfiltering.NumberRuleStore;
 import com.android.server.telecom.callredirection.CallRedirectionProcessor;
 import com.android.server.telecom.components.ErrorDialogActivity;
 import com.android.server.telecom.components.TelecomBroadcastReceiver;
@@ -125,6 +132,7 @@ import com.android.server.telecom.ui.DisconnectedCallNotifier;
 import com.android.server.telecom.ui.IncomingCallNotifier;
 import com.android.server.telecom.ui.ToastFactory;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -132,21 +140,16 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 /**
  * Singleton.
@@ -283,6 +286,12 @@ public class CallsManager extends Call.ListenerBase
     private final Set<Call> mCalls = Collections.newSetFromMap(
             new ConcurrentHashMap<Call, Boolean>(8, 0.9f, 1));
 
+    /**
+     * The calls in {@link #mCalls} indexed by state, used to count calls in given states without
+     * visiting every call.
+     */
+    private final CallStateIndex mCallStateIndex = new CallStateIndex();
+
     /**
      * A pending call is one which requires user-intervention in order to be placed.
      * Used by {@link #startCallConfirmation}.
@@ -344,8 +353,7 @@ public class CallsManager extends Call.ListenerBase
     private RespondViaSmsManager mRespondViaSmsManager;
     private final Ringer mRinger;
     private final InCallWakeLockController mInCallWakeLockController;
-    private final CopyOnWriteArrayList<CallsManagerListener> mListeners =
-            new CopyOnWriteArrayList<>();
+    private final CallsManagerListenerSet mListeners = new CallsManagerListenerSet();
     private final HeadsetMediaButton mHeadsetMediaButton;
     private final WiredHeadsetManager mWiredHeadsetManager;
     private final SystemStateHelper mSystemStateHelper;
@@ -362,6 +370,7 @@ public class CallsManager extends Call.ListenerBase
     private final DisconnectedCallNotifier mDisconnectedCallNotifier;
     private IncomingCallNotifier mIncomingCallNotifier;
     private final CallerInfoLookupHelper mCallerInfoLookupHelper;
+    private final CallerInfoPrefetcher mCallerInfoPrefetcher;
     private final DefaultDialerCache mDefaultDialerCache;
     private final Timeouts.Adapter mTimeoutsAdapter;
     private final PhoneNumberUtilsAdapter mPhoneNumberUtilsAdapter;
@@ -398,7 +407,12 @@ public class CallsManager extends Call.ListenerBase
 
     private Runnable mStopTone;
 
-    private LinkedList<HandlerThread> mGraphHandlerThreads;
+    private final CallFilteringExecutor mCallFilteringExecutor;
+    private final BlockedNumberIndex mBlockedNumberIndex;
+    private final NumberRuleStore mNumberRuleStore;
+    private final CallFilteringResultCache mCallFilteringResultCache;
+    private final CallScreeningServiceConnectionPool mCallScreeningServiceConnectionPool;
+    private final IncomingCallBatcher mIncomingCallBatcher;
 
     private boolean mHasActiveRttCall = false;
 
@@ -438,6 +452,14 @@ public class CallsManager extends Call.ListenerBase
                     || SystemContract.ACTION_BLOCK_SUPPRESSION_STATE_CHANGED.equals(action)) {
                 new UpdateEmergencyCallNotificationTask().doInBackground(
                         Pair.create(context, Log.createSubsession()));
+                mCallFilteringResultCache.invalidate(action);
+            }
+            if (CarrierConfigManager.ACTION_CARRIER_CONFIG_CHANGED.equals(action)
+                    || Intent.ACTION_BOOT_COMPLETED.equals(action)) {
+                prebindCallScreeningServices(action);
+            }
+            if (Intent.ACTION_BOOT_COMPLETED.equals(action)) {
+                mCallerInfoPrefetcher.prefetch(action, mCurrentUserHandle);
             }
         }
     };
@@ -494,8 +516,14 @@ public class CallsManager extends Call.ListenerBase
             InCallControllerFactory inCallControllerFactory,
             CallDiagnosticServiceController callDiagnosticServiceController,
             RoleManagerAdapter roleManagerAdapter,
-            ToastFactory toastFactory) {
+            ToastFactory toastFactory,
+            CallFilteringExecutor callFilteringExecutor) {
         mContext = context;
+        mCallFilteringExecutor = callFilteringExecutor;
+        mBlockedNumberIndex = new BlockedNumberIndex(context);
+        mNumberRuleStore = new NumberRuleStore(
+                new File(context.getFilesDir(), NumberRuleStore.RULES_FILE_NAME));
+        mNumberRuleStore.startWatching(mCallFilteringExecutor.getIoExecutor());
         mLock = lock;
         mPhoneNumberUtilsAdapter = phoneNumberUtilsAdapter;
         mPhoneAccountRegistrar = phoneAccountRegistrar;
@@ -509,8 +537,12 @@ public class CallsManager extends Call.ListenerBase
         mBluetoothRouteManager = bluetoothManager;
         mDockManager = new DockManager(context);
         mTimeoutsAdapter = timeoutsAdapter;
+        ListenerLatencyStats.setSlowCallbackThresholdMillis(
+                Timeouts.getSlowListenerCallbackThresholdMillis(mContext.getContentResolver()));
         mEmergencyCallHelper = emergencyCallHelper;
         mCallerInfoLookupHelper = callerInfoLookupHelper;
+        mCallerInfoPrefetcher = new CallerInfoPrefetcher(context, callerInfoLookupHelper,
+                CallerInfoPrefetcher.getMaxNumbers(context.getContentResolver()));
 
         mDtmfLocalTonePlayer =
                 new DtmfLocalTonePlayer(new DtmfLocalTonePlayer.ToneGeneratorProxy());
@@ -572,6 +604,20 @@ public class CallsManager extends Call.ListenerBase
                 new ConnectionServiceRepository(mPhoneAccountRegistrar, mContext, mLock, this);
         mInCallWakeLockController = inCallWakeLockControllerFactory.create(context, this);
         mClockProxy = clockProxy;
+        mCallFilteringResultCache = new CallFilteringResultCache(context, clockProxy,
+                Timeouts.getCallFilteringResultCacheTtlMillis(context.getContentResolver()));
+        // A cached result may predate a rule which now blocks the caller.
+        mNumberRuleStore.addListener(store -> mCallFilteringResultCache.invalidate(
+                "number rules changed"));
+        mCallScreeningServiceConnectionPool = new CallScreeningServiceConnectionPool(context,
+                Timeouts.getCallScreeningWarmConnectionIdleMillis(context.getContentResolver()));
+        mIncomingCallBatcher = new IncomingCallBatcher(clockProxy,
+                Timeouts.getIncomingCallBatchWindowMillis(context.getContentResolver()),
+                call -> {
+                    // Load the blocked number index while the first call of the burst is still
+                    // being filtered, so that the block checks of the rest are answered from it.
+                    mCallFilteringExecutor.getIoExecutor().execute(mBlockedNumberIndex::preload);
+                });
         mToastFactory = toastFactory;
         mRoleManagerAdapter = roleManagerAdapter;
 
@@ -601,8 +647,14 @@ public class CallsManager extends Call.ListenerBase
         IntentFilter intentFilter = new IntentFilter(
                 CarrierConfigManager.ACTION_CARRIER_CONFIG_CHANGED);
         intentFilter.addAction(SystemContract.ACTION_BLOCK_SUPPRESSION_STATE_CHANGED);
+        intentFilter.addAction(Intent.ACTION_BOOT_COMPLETED);
         context.registerReceiver(mReceiver, intentFilter, Context.RECEIVER_EXPORTED);
-        mGraphHandlerThreads = new LinkedList<>();
+
+        // Keep the connections to the call screening apps warm as those apps change.
+        mRoleManagerAdapter.observeDefaultDialerApp(context.getMainExecutor(),
+                userId -> prebindCallScreeningServices("default dialer changed"));
+        mRoleManagerAdapter.observeCallScreeningApp(context.getMainExecutor(),
+                userId -> prebindCallScreeningServices("call screening app changed"));
     }
 
     public void setIncomingCallNotifier(IncomingCallNotifier incomingCallNotifier) {
@@ -650,9 +702,9 @@ public class CallsManager extends Call.ListenerBase
         }
 
         // The call's ConnectionService has been updated.
-        for (CallsManagerListener listener : mListeners) {
-            listener.onConnectionServiceChanged(call, null, call.getConnectionService());
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_CONNECTION_SERVICE_CHANGED,
+                listener -> listener.onConnectionServiceChanged(call, null,
+                        call.getConnectionService()));
 
         markCallAsDialing(call);
     }
@@ -691,53 +743,111 @@ public class CallsManager extends Call.ListenerBase
             return;
         }
 
-        IncomingCallFilterGraph graph = setUpCallFilterGraph(incomingCall);
-        graph.performFiltering();
-    }
-
-    private IncomingCallFilterGraph setUpCallFilterGraph(Call incomingCall) {
         incomingCall.setIsUsingCallFiltering(true);
         String carrierPackageName = getCarrierPackageName();
         String defaultDialerPackageName = TelecomManager.from(mContext).getDefaultDialerPackage();
         String userChosenPackageName = getRoleManagerAdapter().getDefaultCallScreeningApp();
+        String cacheKey = CallFilteringResultCache.getKey(incomingCall, carrierPackageName,
+                defaultDialerPackageName, userChosenPackageName);
+        mIncomingCallBatcher.admit(incomingCall,
+                () -> filterIncomingCall(incomingCall, carrierPackageName,
+                        defaultDialerPackageName, userChosenPackageName, cacheKey));
+    }
+
+    private void filterIncomingCall(Call incomingCall, String carrierPackageName,
+            String defaultDialerPackageName, String userChosenPackageName, String cacheKey) {
+        CallFilteringResult cachedResult = mCallFilteringResultCache.get(cacheKey);
+        if (cachedResult != null) {
+            Log.addEvent(incomingCall, LogUtils.Events.FILTERING_RESULT_CACHED, cachedResult);
+            onCallFilteringComplete(incomingCall, cachedResult, false);
+            return;
+        }
+
+        IncomingCallFilterGraph graph = setUpCallFilterGraph(incomingCall, carrierPackageName,
+                defaultDialerPackageName, userChosenPackageName, cacheKey);
+        graph.performFiltering();
+    }
+
+    private IncomingCallFilterGraph setUpCallFilterGraph(Call incomingCall,
+            String carrierPackageName, String defaultDialerPackageName,
+            String userChosenPackageName, String cacheKey) {
         AppLabelProxy appLabelProxy = packageName -> AppLabelProxy.Util.getAppLabel(
                 mContext.getPackageManager(), packageName);
         ParcelableCallUtils.Converter converter = new ParcelableCallUtils.Converter();
 
-        IncomingCallFilterGraph graph = new IncomingCallFilterGraph(incomingCall,
-                this::onCallFilteringComplete, mContext, mTimeoutsAdapter, mLock);
+        CallFilterResultCallback callback = (call, result, timeout) -> {
+            if (!timeout) {
+                mCallFilteringResultCache.put(cacheKey, result);
+            }
+            onCallFilteringComplete(call, result, timeout);
+        };
+        IncomingCallFilterGraph graph = new IncomingCallFilterGraph(incomingCall, callback,
+                mContext, mTimeoutsAdapter, mLock, mCallFilteringExecutor);
         DirectToVoicemailFilter voicemailFilter = new DirectToVoicemailFilter(incomingCall,
                 mCallerInfoLookupHelper);
         BlockCheckerFilter blockCheckerFilter = new BlockCheckerFilter(mContext, incomingCall,
-                mCallerInfoLookupHelper, new BlockCheckerAdapter());
+                mCallerInfoLookupHelper, new BlockCheckerAdapter(mBlockedNumberIndex),
+                mCallFilteringExecutor);
+        NumberRuleFilter numberRuleFilter = new NumberRuleFilter(mContext, incomingCall,
+                mNumberRuleStore, mCallFilteringExecutor.getIoExecutor());
         CallScreeningServiceFilter carrierCallScreeningServiceFilter =
                 new CallScreeningServiceFilter(incomingCall, carrierPackageName,
                         CallScreeningServiceFilter.PACKAGE_TYPE_CARRIER, mContext, this,
-                        appLabelProxy, converter);
+                        appLabelProxy, converter, mCallScreeningServiceConnectionPool);
         CallScreeningServiceFilter callScreeningServiceFilter;
         if ((userChosenPackageName != null)
                 && (!userChosenPackageName.equals(defaultDialerPackageName))) {
             callScreeningServiceFilter = new CallScreeningServiceFilter(incomingCall,
                     userChosenPackageName, CallScreeningServiceFilter.PACKAGE_TYPE_USER_CHOSEN,
-                    mContext, this, appLabelProxy, converter);
+                    mContext, this, appLabelProxy, converter, mCallScreeningServiceConnectionPool);
         } else {
             callScreeningServiceFilter = new CallScreeningServiceFilter(incomingCall,
                     defaultDialerPackageName,
                     CallScreeningServiceFilter.PACKAGE_TYPE_DEFAULT_DIALER,
-                    mContext, this, appLabelProxy, converter);
+                    mContext, this, appLabelProxy, converter, mCallScreeningServiceConnectionPool);
         }
         graph.addFilter(voicemailFilter);
         graph.addFilter(blockCheckerFilter);
+        graph.addFilter(numberRuleFilter);
         graph.addFilter(carrierCallScreeningServiceFilter);
         graph.addFilter(callScreeningServiceFilter);
         IncomingCallFilterGraph.addEdge(voicemailFilter, carrierCallScreeningServiceFilter);
         IncomingCallFilterGraph.addEdge(blockCheckerFilter, carrierCallScreeningServiceFilter);
+        IncomingCallFilterGraph.addEdge(numberRuleFilter, carrierCallScreeningServiceFilter);
         IncomingCallFilterGraph.addEdge(carrierCallScreeningServiceFilter,
                 callScreeningServiceFilter);
-        mGraphHandlerThreads.add(graph.getHandlerThread());
         return graph;
     }
 
+    /**
+     * Binds to the call screening apps the next incoming call would be sent to, so that the
+     * call is not held up binding to them.
+     *
+     * @param reason Why, for the log.
+     */
+    private void prebindCallScreeningServices(String reason) {
+        Log.i(this, "prebindCallScreeningServices: %s", reason);
+        UserHandle userHandle = getCurrentUserHandle();
+        mCallScreeningServiceConnectionPool.prebind(getCarrierPackageName(), userHandle);
+        String defaultDialerPackageName = TelecomManager.from(mContext).getDefaultDialerPackage();
+        String userChosenPackageName = getRoleManagerAdapter().getDefaultCallScreeningApp();
+        if (userChosenPackageName != null
+                && !userChosenPackageName.equals(defaultDialerPackageName)) {
+            mCallScreeningServiceConnectionPool.prebind(userChosenPackageName, userHandle);
+        } else {
+            mCallScreeningServiceConnectionPool.prebind(defaultDialerPackageName, userHandle);
+        }
+    }
+
+    /**
+     * Drops idle call screening connections when the system is low on memory.
+     *
+     * @param level The trim level, see {@link android.content.ComponentCallbacks2}.
+     */
+    public void onTrimMemory(int level) {
+        mCallScreeningServiceConnectionPool.onTrimMemory(level);
+    }
+
     private String getCarrierPackageName() {
         ComponentName componentName = null;
         CarrierConfigManager configManager = (CarrierConfigManager) mContext.getSystemService
@@ -758,7 +868,6 @@ public class CallsManager extends Call.ListenerBase
         // that the connection service disconnected the call before it was even added to Telecom, in
         // which case it makes no sense to set it back to a ringing state.
         Log.i(this, "onCallFilteringComplete");
-        mGraphHandlerThreads.clear();
 
         if (timeout) {
             Log.i(this, "onCallFilteringCompleted: Call filters timeout!");
@@ -921,9 +1030,8 @@ public class CallsManager extends Call.ListenerBase
 
     @Override
     public void onRingbackRequested(Call call, boolean ringback) {
-        for (CallsManagerListener listener : mListeners) {
-            listener.onRingbackRequested(call, ringback);
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_RINGBACK_REQUESTED,
+                listener -> listener.onRingbackRequested(call, ringback));
     }
 
     @Override
@@ -969,58 +1077,64 @@ public class CallsManager extends Call.ListenerBase
 
     @Override
     public void onConnectionPropertiesChanged(Call call, boolean didRttChange) {
+        // The external and self-managed properties determine how a call is counted.
+        mCallStateIndex.update(call);
         if (didRttChange) {
             updateHasActiveRttCall();
         }
     }
 
+    @Override
+    public void onStateChanged(Call call, int oldState, int newState) {
+        mCallStateIndex.update(call);
+    }
+
     @Override
     public void onParentChanged(Call call) {
+        mCallStateIndex.update(call);
         // parent-child relationship affects which call should be foreground, so do an update.
         updateCanAddCall();
-        for (CallsManagerListener listener : mListeners) {
-            listener.onIsConferencedChanged(call);
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_IS_CONFERENCED_CHANGED,
+                listener -> listener.onIsConferencedChanged(call));
     }
 
     @Override
     public void onChildrenChanged(Call call) {
+        mCallStateIndex.update(call);
+        for (Call child : call.getChildCalls()) {
+            mCallStateIndex.update(child);
+        }
         // parent-child relationship affects which call should be foreground, so do an update.
         updateCanAddCall();
-        for (CallsManagerListener listener : mListeners) {
-            listener.onIsConferencedChanged(call);
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_IS_CONFERENCED_CHANGED,
+                listener -> listener.onIsConferencedChanged(call));
     }
 
     @Override
     public void onConferenceStateChanged(Call call, boolean isConference) {
         // Conference changed whether it is treated as a conference or not.
         updateCanAddCall();
-        for (CallsManagerListener listener : mListeners) {
-            listener.onConferenceStateChanged(call, isConference);
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_CONFERENCE_STATE_CHANGED,
+                listener -> listener.onConferenceStateChanged(call, isConference));
     }
 
     @Override
     public void onCdmaConferenceSwap(Call call) {
         // SWAP was executed on a CDMA conference
-        for (CallsManagerListener listener : mListeners) {
-            listener.onCdmaConferenceSwap(call);
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_CDMA_CONFERENCE_SWAP,
+                listener -> listener.onCdmaConferenceSwap(call));
     }
 
     @Override
     public void onIsVoipAudioModeChanged(Call call) {
-        for (CallsManagerListener listener : mListeners) {
-            listener.onIsVoipAudioModeChanged(call);
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_IS_VOIP_AUDIO_MODE_CHANGED,
+                listener -> listener.onIsVoipAudioModeChanged(call));
     }
 
     @Override
     public void onVideoStateChanged(Call call, int previousVideoState, int newVideoState) {
-        for (CallsManagerListener listener : mListeners) {
-            listener.onVideoStateChanged(call, previousVideoState, newVideoState);
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_VIDEO_STATE_CHANGED,
+                listener -> listener.onVideoStateChanged(call, previousVideoState, newVideoState));
     }
 
     @Override
@@ -1074,9 +1188,8 @@ public class CallsManager extends Call.ListenerBase
         Log.v(TAG, "onSessionModifyRequestReceived : videoProfile = " + VideoProfile
                 .videoStateToString(videoState));
 
-        for (CallsManagerListener listener : mListeners) {
-            listener.onSessionModifyRequestReceived(call, videoProfile);
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_SESSION_MODIFY_REQUEST_RECEIVED,
+                listener -> listener.onSessionModifyRequestReceived(call, videoProfile));
     }
 
     /**
@@ -1086,9 +1199,8 @@ public class CallsManager extends Call.ListenerBase
      */
     @Override
     public void onSetCamera(Call call, String cameraId) {
-        for (CallsManagerListener listener : mListeners) {
-            listener.onSetCamera(call, cameraId);
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_SET_CAMERA,
+                listener -> listener.onSetCamera(call, cameraId));
     }
 
     public Collection<Call> getCalls() {
@@ -1105,9 +1217,8 @@ public class CallsManager extends Call.ListenerBase
      */
     @Override
     public void onHoldToneRequested(Call call) {
-        for (CallsManagerListener listener : mListeners) {
-            listener.onHoldToneRequested(call);
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_HOLD_TONE_REQUESTED,
+                listener -> listener.onHoldToneRequested(call));
     }
 
     /**
@@ -2395,6 +2506,8 @@ public class CallsManager extends Call.ListenerBase
         }
 
         if (call.isEmergencyCall()) {
+            // Blocking is suppressed after an emergency call, so cached rejections no longer hold.
+            mCallFilteringResultCache.invalidate("emergency call");
             Executors.defaultThreadFactory().newThread(() ->
                     BlockedNumberContract.SystemContract.notifyEmergencyContact(mContext))
                     .start();
@@ -2626,9 +2739,9 @@ public class CallsManager extends Call.ListenerBase
         if (!mCalls.contains(call)) {
             Log.i(this, "Request to reject a non-existent call %s", call);
         } else {
-            for (CallsManagerListener listener : mListeners) {
-                listener.onIncomingCallRejected(call, rejectWithMessage, textMessage);
-            }
+            mListeners.dispatch(CallsManagerListenerSet.EVENT_INCOMING_CALL_REJECTED,
+                    listener -> listener.onIncomingCallRejected(call, rejectWithMessage,
+                            textMessage));
             call.reject(rejectWithMessage, textMessage);
         }
     }
@@ -2643,10 +2756,9 @@ public class CallsManager extends Call.ListenerBase
         if (!mCalls.contains(call)) {
             Log.i(this, "Request to reject a non-existent call %s", call);
         } else {
-            for (CallsManagerListener listener : mListeners) {
-                listener.onIncomingCallRejected(call, false /* rejectWithMessage */,
-                        null /* textMessage */);
-            }
+            mListeners.dispatch(CallsManagerListenerSet.EVENT_INCOMING_CALL_REJECTED,
+                    listener -> listener.onIncomingCallRejected(call,
+                            false /* rejectWithMessage */, null /* textMessage */));
             call.reject(rejectReason);
         }
     }
@@ -2736,9 +2848,8 @@ public class CallsManager extends Call.ListenerBase
             mLocallyDisconnectingCalls.add(call);
             int previousState = call.getState();
             call.disconnect();
-            for (CallsManagerListener listener : mListeners) {
-                listener.onCallStateChanged(call, previousState, call.getState());
-            }
+            mListeners.dispatch(CallsManagerListenerSet.EVENT_CALL_STATE_CHANGED,
+                    listener -> listener.onCallStateChanged(call, previousState, call.getState()));
             // Cancel any of the outgoing call futures if they're still around.
             if (mPendingCallConfirm != null && !mPendingCallConfirm.isDone()) {
                 mPendingCallConfirm.complete(null);
@@ -2932,9 +3043,9 @@ public class CallsManager extends Call.ListenerBase
     @Override
     public void onExternalCallChanged(Call call, boolean isExternalCall) {
         Log.v(this, "onConnectionPropertiesChanged: %b", isExternalCall);
-        for (CallsManagerListener listener : mListeners) {
-            listener.onExternalCallChanged(call, isExternalCall);
-        }
+        mCallStateIndex.update(call);
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_EXTERNAL_CALL_CHANGED,
+                listener -> listener.onExternalCallChanged(call, isExternalCall));
     }
 
     private void handleCallTechnologyChange(Call call) {
@@ -3029,9 +3140,8 @@ public class CallsManager extends Call.ListenerBase
     public void onCallAudioStateChanged(CallAudioState oldAudioState, CallAudioState
             newAudioState) {
         Log.v(this, "onAudioStateChanged, audioState: %s -> %s", oldAudioState, newAudioState);
-        for (CallsManagerListener listener : mListeners) {
-            listener.onCallAudioStateChanged(oldAudioState, newAudioState);
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_CALL_AUDIO_STATE_CHANGED,
+                listener -> listener.onCallAudioStateChanged(oldAudioState, newAudioState));
     }
 
     /**
@@ -3044,9 +3154,8 @@ public class CallsManager extends Call.ListenerBase
     @VisibleForTesting
     public void onDisconnectedTonePlaying(boolean isTonePlaying) {
         Log.v(this, "onDisconnectedTonePlaying, %s", isTonePlaying ? "started" : "stopped");
-        for (CallsManagerListener listener : mListeners) {
-            listener.onDisconnectedTonePlaying(isTonePlaying);
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_DISCONNECTED_TONE_PLAYING,
+                listener -> listener.onDisconnectedTonePlaying(isTonePlaying));
     }
 
     void markCallAsRinging(Call call) {
@@ -3553,35 +3662,35 @@ public class CallsManager extends Call.ListenerBase
      * @param callToSkip Call that this method should skip while searching
      */
     Call getFirstCallWithState(Call callToSkip, int... states) {
+        Call foregroundCall = getForegroundCall();
         for (int currentState : states) {
             // check the foreground first
-            Call foregroundCall = getForegroundCall();
             if (foregroundCall != null && foregroundCall.getState() == currentState) {
                 return foregroundCall;
             }
 
-            for (Call call : mCalls) {
-                if (Objects.equals(callToSkip, call)) {
-                    continue;
-                }
-
-                // Only operate on top-level calls
-                if (call.getParentCall() != null) {
-                    continue;
-                }
-
-                if (call.isExternalCall()) {
-                    continue;
-                }
-
-                if (currentState == call.getState()) {
-                    return call;
-                }
+            // Only top-level, non-external calls are returned by the index.
+            Call call = mCallStateIndex.getFirstCall(currentState, callToSkip);
+            if (call != null) {
+                return call;
             }
         }
         return null;
     }
 
+    /**
+     * @return The index of the first occurrence of the state in the states, or the number of
+     *         states if it does not occur.
+     */
+    private static int getStateRank(int state, int[] states) {
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] == state) {
+                return i;
+            }
+        }
+        return states.length;
+    }
+
     Call createConferenceCall(
             String callId,
             PhoneAccountHandle phoneAccount,
@@ -3720,6 +3829,7 @@ public class CallsManager extends Call.ListenerBase
         Log.i(this, "addCall(%s)", call);
         call.addListener(this);
         mCalls.add(call);
+        mCallStateIndex.add(call);
 
         // Specifies the time telecom finished routing the call. This is used by the dialer for
         // analytics.
@@ -3731,15 +3841,8 @@ public class CallsManager extends Call.ListenerBase
         updateHasActiveRttCall();
         updateExternalCallCanPullSupport();
         // onCallAdded for calls which immediately take the foreground (like the first call).
-        for (CallsManagerListener listener : mListeners) {
-            if (LogUtils.SYSTRACE_DEBUG) {
-                Trace.beginSection(listener.getClass().toString() + " addCall");
-            }
-            listener.onCallAdded(call);
-            if (LogUtils.SYSTRACE_DEBUG) {
-                Trace.endSection();
-            }
-        }
+        mListeners.dispatch(CallsManagerListenerSet.EVENT_CALL_ADDED,
+                listener -> listener.onCallAdded(call));
         Trace.endSection();
     }
 
@@ -3756,6 +3859,7 @@ public class CallsManager extends Call.ListenerBase
         boolean shouldNotify = false;
         if (mCalls.contains(call)) {
             mCalls.remove(call);
+            mCallStateIndex.remove(call);
             shouldNotify = true;
         }
 
@@ -3765,14 +3869,10 @@ public class CallsManager extends Call.ListenerBase
         if (shouldNotify) {
             updateCanAddCall();
             updateHasActiveRttCall();
-            for (CallsManagerListener listener : mListeners) {
-                if (LogUtils.SYSTRACE_DEBUG) {
-                    Trace.beginSection(listener.getClass().toString() + " onCallRemoved");
-                }
-                listener.onCallRemoved(call);
-                if (LogUtils.SYSTRACE_DEBUG) {
-                    Trace.endSection();
-                }
+            mListeners.dispatch(CallsManagerListenerSet.EVENT_CALL_REMOVED,
+                    listener -> listener.onCallRemoved(call));
+            if (!hasAnyCalls()) {
+                mCallerInfoPrefetcher.prefetch("calls ended", mCurrentUserHandle);
             }
         }
         Trace.endSection();
@@ -3856,16 +3956,8 @@ public class CallsManager extends Call.ListenerBase
         if (mCalls.contains(call)) {
             updateCanAddCall();
             updateHasActiveRttCall();
-            for (CallsManagerListener listener : mListeners) {
-                if (LogUtils.SYSTRACE_DEBUG) {
-                    Trace.beginSection(listener.getClass().toString() +
-                            " onCallStateChanged");
-                }
-                listener.onCallStateChanged(call, oldState, newState);
-                if (LogUtils.SYSTRACE_DEBUG) {
-                    Trace.endSection();
-                }
-            }
+            mListeners.dispatch(CallsManagerListenerSet.EVENT_CALL_STATE_CHANGED,
+                    listener -> listener.onCallStateChanged(call, oldState, newState));
         }
     }
 
@@ -3996,15 +4088,8 @@ public class CallsManager extends Call.ListenerBase
         boolean newCanAddCall = canAddCall();
         if (newCanAddCall != mCanAddCall) {
             mCanAddCall = newCanAddCall;
-            for (CallsManagerListener listener : mListeners) {
-                if (LogUtils.SYSTRACE_DEBUG) {
-                    Trace.beginSection(listener.getClass().toString() + " updateCanAddCall");
-                }
-                listener.onCanAddCallChanged(mCanAddCall);
-                if (LogUtils.SYSTRACE_DEBUG) {
-                    Trace.endSection();
-                }
-            }
+            mListeners.dispatch(CallsManagerListenerSet.EVENT_CAN_ADD_CALL_CHANGED,
+                    listener -> listener.onCanAddCallChanged(mCanAddCall));
         }
     }
 
@@ -4074,31 +4159,17 @@ public class CallsManager extends Call.ListenerBase
     @VisibleForTesting
     public int getNumCallsWithState(final int callFilter, Call excludeCall,
                                     PhoneAccountHandle phoneAccountHandle, int... states) {
-
-        Set<Integer> desiredStates = IntStream.of(states).boxed().collect(Collectors.toSet());
-
-        Stream<Call> callsStream = mCalls.stream()
-                .filter(call -> desiredStates.contains(call.getState()) &&
-                        call.getParentCall() == null && !call.isExternalCall());
-
-        if (callFilter == CALL_FILTER_MANAGED) {
-            callsStream = callsStream.filter(call -> !call.isSelfManaged());
-        } else if (callFilter == CALL_FILTER_SELF_MANAGED) {
-            callsStream = callsStream.filter(call -> call.isSelfManaged());
-        }
-
-        // If a call to exclude was specified, filter it out.
-        if (excludeCall != null) {
-            callsStream = callsStream.filter(call -> call != excludeCall);
-        }
-
-        // If a phone account handle was specified, only consider calls for that phone account.
-        if (phoneAccountHandle != null) {
-            callsStream = callsStream.filter(
-                    call -> phoneAccountHandle.equals(call.getTargetPhoneAccount()));
+        final boolean includeManaged = callFilter != CALL_FILTER_SELF_MANAGED;
+        final boolean includeSelfManaged = callFilter != CALL_FILTER_MANAGED;
+        int count = 0;
+        for (int i = 0; i < states.length; i++) {
+            // A state listed more than once is only counted once.
+            if (getStateRank(states[i], states) == i) {
+                count += mCallStateIndex.getCount(states[i], includeManaged, includeSelfManaged,
+                        excludeCall, phoneAccountHandle);
+            }
         }
-
-        return (int) callsStream.count();
+        return count;
     }
 
     private boolean hasMaximumLiveCalls(Call exceptCall) {
@@ -4645,6 +4716,8 @@ public class CallsManager extends Call.ListenerBase
         mCurrentUserHandle = userHandle;
         mMissedCallNotifier.setCurrentUserHandle(userHandle);
         mRoleManagerAdapter.setCurrentUserHandle(userHandle);
+        mCallerInfoLookupHelper.invalidateCache("user switched");
+        mCallerInfoPrefetcher.prefetch("user switched", userHandle);
         final UserManager userManager = UserManager.get(mContext);
         List<UserInfo> profiles = userManager.getEnabledProfiles(userHandle.getIdentifier());
         for (UserInfo profile : profiles) {
@@ -4906,6 +4979,18 @@ public class CallsManager extends Call.ListenerBase
                     Collectors.joining(", ")));
         }
 
+        mCallStateIndex.dump(pw);
+        mListeners.dump(pw);
+        mCallFilteringExecutor.dump(pw);
+        CallFilterLatencyStats.dump(pw);
+        mBlockedNumberIndex.dump(pw);
+        mNumberRuleStore.dump(pw);
+        mCallFilteringResultCache.dump(pw);
+        mCallScreeningServiceConnectionPool.dump(pw);
+        mIncomingCallBatcher.dump(pw);
+        mCallerInfoLookupHelper.dump(pw);
+        mCallerInfoPrefetcher.dump(pw);
+
         if (mCallAudioManager != null) {
             pw.println("mCallAudioManager:");
             pw.increaseIndent();
@@ -5472,9 +5557,8 @@ public class CallsManager extends Call.ListenerBase
         public void performAction() {
             synchronized (mLock) {
                 Log.d(this, "perform answer call for %s, videoState = %d", mCall, mVideoState);
-                for (CallsManagerListener listener : mListeners) {
-                    listener.onIncomingCallAnswered(mCall);
-                }
+                mListeners.dispatch(CallsManagerListenerSet.EVENT_INCOMING_CALL_ANSWERED,
+                        listener -> listener.onIncomingCallAnswered(mCall));
 
                 // We do not update the UI until we get confirmation of the answer() through
                 // {@link #markCallAsActive}.
@@ -5521,9 +5605,8 @@ public class CallsManager extends Call.ListenerBase
         call.setConnectTimeMillis(System.currentTimeMillis());
         call.setConnectElapsedTimeMillis(SystemClock.elapsedRealtime());
         if (mCalls.contains(call)) {
-            for (CallsManagerListener listener : mListeners) {
-                listener.onConnectionTimeChanged(call);
-            }
+            mListeners.dispatch(CallsManagerListenerSet.EVENT_CONNECTION_TIME_CHANGED,
+                    listener -> listener.onConnectionTimeChanged(call));
         }
     }
 
@@ -5610,8 +5693,9 @@ public class CallsManager extends Call.ListenerBase
         return PhoneAccountHandle.areFromSamePackage(call1TargetAcct, call2TargetAcct);
     }
 
-    public LinkedList<HandlerThread> getGraphHandlerThreads() {
-        return mGraphHandlerThreads;
+    @VisibleForTesting
+    public CallFilteringExecutor getCallFilteringExecutor() {
+        return mCallFilteringExecutor;
     }
 
     private void maybeSendPostCallScreenIntent(Call call) {
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.os.SystemClock;
+import android.os.Trace;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * The {@link CallsManager.CallsManagerListener}s registered with {@link CallsManager}.
+ * <p>
+ * Most listeners extend {@link CallsManagerListenerBase} and override only a few callbacks.  When
+ * a listener is added, the callbacks its class overrides are determined once by reflection, and
+ * each event is then dispatched only to the listeners which override its callback, in the order
+ * the listeners were added.  Listeners which do not extend {@link CallsManagerListenerBase}
+ * receive every event.  The time taken by each callback is recorded in
+ * {@link ListenerLatencyStats}.
+ */
+@VisibleForTesting
+public class CallsManagerListenerSet {
+    public static final int EVENT_CALL_ADDED = 0;
+    public static final int EVENT_CALL_REMOVED = 1;
+    public static final int EVENT_CALL_STATE_CHANGED = 2;
+    public static final int EVENT_CONNECTION_SERVICE_CHANGED = 3;
+    public static final int EVENT_INCOMING_CALL_ANSWERED = 4;
+    public static final int EVENT_INCOMING_CALL_REJECTED = 5;
+    public static final int EVENT_CALL_AUDIO_STATE_CHANGED = 6;
+    public static final int EVENT_RINGBACK_REQUESTED = 7;
+    public static final int EVENT_IS_CONFERENCED_CHANGED = 8;
+    public static final int EVENT_IS_VOIP_AUDIO_MODE_CHANGED = 9;
+    public static final int EVENT_VIDEO_STATE_CHANGED = 10;
+    public static final int EVENT_CAN_ADD_CALL_CHANGED = 11;
+    public static final int EVENT_SESSION_MODIFY_REQUEST_RECEIVED = 12;
+    public static final int EVENT_HOLD_TONE_REQUESTED = 13;
+    public static final int EVENT_EXTERNAL_CALL_CHANGED = 14;
+    public static final int EVENT_DISCONNECTED_TONE_PLAYING = 15;
+    public static final int EVENT_CONNECTION_TIME_CHANGED = 16;
+    public static final int EVENT_CONFERENCE_STATE_CHANGED = 17;
+    public static final int EVENT_CDMA_CONFERENCE_SWAP = 18;
+    public static final int EVENT_SET_CAMERA = 19;
+
+    /** The {@link CallsManager.CallsManagerListener} method for each event. */
+    private static final String[] EVENT_METHODS = {
+            "onCallAdded",
+            "onCallRemoved",
+            "onCallStateChanged",
+            "onConnectionServiceChanged",
+            "onIncomingCallAnswered",
+            "onIncomingCallRejected",
+            "onCallAudioStateChanged",
+            "onRingbackRequested",
+            "onIsConferencedChanged",
+            "onIsVoipAudioModeChanged",
+            "onVideoStateChanged",
+            "onCanAddCallChanged",
+            "onSessionModifyRequestReceived",
+            "onHoldToneRequested",
+            "onExternalCallChanged",
+            "onDisconnectedTonePlaying",
+            "onConnectionTimeChanged",
+            "onConferenceStateChanged",
+            "onCdmaConferenceSwap",
+            "onSetCamera",
+    };
+
+    private static final int EVENT_COUNT = EVENT_METHODS.length;
+    private static final int ALL_EVENTS = (1 << EVENT_COUNT) - 1;
+
+    /** Interest masks by listener class, so that each class is only reflected on once. */
+    private static final Map<Class<?>, Integer> sInterestsByClass = new ConcurrentHashMap<>();
+
+    private static final class Registration {
+        final CallsManager.CallsManagerListener listener;
+        final int interests;
+        final ListenerLatencyStats.Histogram latency;
+
+        Registration(CallsManager.CallsManagerListener listener, int interests) {
+            this.listener = listener;
+            this.interests = interests;
+            this.latency = ListenerLatencyStats.getHistogram(listener);
+        }
+    }
+
+    private final CopyOnWriteArrayList<Registration> mRegistrations =
+            new CopyOnWriteArrayList<>();
+    /** The registrations interested in each event, in registration order. */
+    private volatile Registration[][] mRegistrationsByEvent = buildRegistrationsByEvent();
+    private final AtomicLongArray mDispatches = new AtomicLongArray(EVENT_COUNT);
+    private final AtomicLongArray mCallbacks = new AtomicLongArray(EVENT_COUNT);
+
+    /**
+     * Adds a listener.  A listener added more than once receives each event once per time it was
+     * added, as with a list of listeners.
+     *
+     * @param listener The listener.
+     */
+    public synchronized void add(CallsManager.CallsManagerListener listener) {
+        mRegistrations.add(new Registration(listener, getInterests(listener)));
+        mRegistrationsByEvent = buildRegistrationsByEvent();
+    }
+
+    /**
+     * Removes the first registration of a listener.
+     *
+     * @param listener The listener.
+     */
+    public synchronized void remove(CallsManager.CallsManagerListener listener) {
+        for (Registration registration : mRegistrations) {
+            if (registration.listener == listener) {
+                mRegistrations.remove(registration);
+                mRegistrationsByEvent = buildRegistrationsByEvent();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param event One of the {@code EVENT_*} constants.
+     * @param listener The listener.
+     * @return Whether the listener receives the event.
+     */
+    @VisibleForTesting
+    public boolean isInterested(int event, CallsManager.CallsManagerListener listener) {
+        for (Registration registration : mRegistrationsByEvent[event]) {
+            if (registration.listener == listener) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Invokes a callback on every listener interested in an event.
+     *
+     * @param event One of the {@code EVENT_*} constants.
+     * @param callback Invokes the callback for the event on a listener.
+     */
+    public void dispatch(int event, Consumer<CallsManager.CallsManagerListener> callback) {
+        Registration[] registrations = mRegistrationsByEvent[event];
+        mDispatches.incrementAndGet(event);
+        mCallbacks.addAndGet(event, registrations.length);
+        for (Registration registration : registrations) {
+            if (LogUtils.SYSTRACE_DEBUG) {
+                Trace.beginSection(registration.listener.getClass().toString() + " "
+                        + EVENT_METHODS[event]);
+            }
+            long startNanos = SystemClock.elapsedRealtimeNanos();
+            try {
+                callback.accept(registration.listener);
+            } finally {
+                registration.latency.record(EVENT_METHODS[event],
+                        SystemClock.elapsedRealtimeNanos() - startNanos);
+                if (LogUtils.SYSTRACE_DEBUG) {
+                    Trace.endSection();
+                }
+            }
+        }
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        pw.println("CallsManagerListeners: listeners=" + mRegistrations.size());
+        pw.increaseIndent();
+        pw.println("Events:");
+        pw.increaseIndent();
+        for (int event = 0; event < EVENT_COUNT; event++) {
+            pw.println(EVENT_METHODS[event] + ": dispatches=" + mDispatches.get(event)
+                    + ", callbacks=" + mCallbacks.get(event)
+                    + ", interestedListeners=" + mRegistrationsByEvent[event].length);
+        }
+        pw.decreaseIndent();
+        pw.println("Listeners:");
+        pw.increaseIndent();
+        for (Registration registration : mRegistrations) {
+            pw.println(registration.listener.getClass().getName()
+                    + ": events=" + Integer.bitCount(registration.interests) + "/" + EVENT_COUNT
+                    + ", callbacks=" + registration.latency.getCount()
+                    + ", totalMillis=" + registration.latency.getTotalMillis()
+                    + ", maxMillis=" + registration.latency.getMaxMillis()
+                    + ", slow=" + registration.latency.getSlowCount());
+        }
+        pw.decreaseIndent();
+        pw.decreaseIndent();
+    }
+
+    private Registration[][] buildRegistrationsByEvent() {
+        Registration[][] registrationsByEvent = new Registration[EVENT_COUNT][];
+        for (int event = 0; event < EVENT_COUNT; event++) {
+            List<Registration> interested = new ArrayList<>();
+            for (Registration registration : mRegistrations) {
+                if ((registration.interests & (1 << event)) != 0) {
+                    interested.add(registration);
+                }
+            }
+            registrationsByEvent[event] = interested.toArray(new Registration[0]);
+        }
+        return registrationsByEvent;
+    }
+
+    private static int getInterests(CallsManager.CallsManagerListener listener) {
+        return sInterestsByClass.computeIfAbsent(listener.getClass(),
+                CallsManagerListenerSet::computeInterests);
+    }
+
+    /**
+     * @return A mask with the bit of each event whose callback the class overrides.
+     */
+    private static int computeInterests(Class<?> listenerClass) {
+        if (!CallsManagerListenerBase.class.isAssignableFrom(listenerClass)) {
+            return ALL_EVENTS;
+        }
+        int interests = 0;
+        for (Method method : CallsManager.CallsManagerListener.class.getMethods()) {
+            int event = getEvent(method.getName());
+            if (event < 0) {
+                continue;
+            }
+            try {
+                Method implementation = listenerClass.getMethod(method.getName(),
+                        method.getParameterTypes());
+                if (implementation.getDeclaringClass() != CallsManagerListenerBase.class) {
+                    interests |= 1 << event;
+                }
+            } catch (NoSuchMethodException | SecurityException e) {
+                // Err on the side of delivering the event.
+                interests |= 1 << event;
+            }
+        }
+        return interests;
+    }
+
+    private static int getEvent(String methodName) {
+        for (int event = 0; event < EVENT_COUNT; event++) {
+            if (EVENT_METHODS[event].equals(methodName)) {
+                return event;
+            }
+        }
+        return -1;
+    }
+}
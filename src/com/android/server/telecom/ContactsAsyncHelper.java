@@ -17,29 +17,62 @@
 package com.android.server.telecom;
 
 import android.app.Notification;
+import android.content.ContentResolver;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.provider.ContactsContract;
 import android.telecom.Log;
 import android.net.Uri;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Looper;
-import android.os.Message;
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import com.android.internal.util.IndentingPrintWriter;
 
 // TODO: Needed for move to system service: import com.android.internal.R;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Helper class for loading contacts photo asynchronously.
+ * <p>
+ * Telecom only renders contact photos as notification icons, so photos are decoded no larger
+ * than needed for that, and are kept in a cache bounded by bytes which is shared by everything
+ * loading photos through this helper.  Concurrent loads of the same photo share one decode.
+ * <p>
+ * Photos are loaded by a small pool of workers.  Loads for calls being set up are run before
+ * background loads, such as the reloading of missed call notifications at boot.
  */
 public class ContactsAsyncHelper {
     private static final String LOG_TAG = ContactsAsyncHelper.class.getSimpleName();
 
+    public static final int MAX_CACHED_PHOTO_BYTES = 4 * 1024 * 1024;
+
+    /** Priority of a photo needed for a call being set up. */
+    public static final int PRIORITY_FOREGROUND = 0;
+    /** Priority of a photo which is not needed right away. */
+    public static final int PRIORITY_BACKGROUND = 1;
+
+    private static final int WORKER_COUNT = 2;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30;
+
     public static class Factory {
         public ContactsAsyncHelper create(ContentResolverAdapter adapter) {
             return new ContactsAsyncHelper(adapter);
@@ -47,7 +80,7 @@ public class ContactsAsyncHelper {
     }
 
     /**
-     * Interface for a WorkerHandler result return.
+     * Interface for a photo load result return.
      */
     public interface OnImageLoadCompleteListener {
         /**
@@ -72,23 +105,64 @@ public class ContactsAsyncHelper {
         InputStream openInputStream(Context context, Uri uri) throws FileNotFoundException;
     }
 
-    // constants
-    private static final int EVENT_LOAD_IMAGE = 1;
-
-    /** Handler run on a worker thread to load photo asynchronously. */
+    /** Handler to load photos on instead of the workers, for testing. */
     private Handler mThreadHandler;
+    // Created when the first photo is loaded.  Guarded by this.
+    private ThreadPoolExecutor mExecutor;
     private final ContentResolverAdapter mContentResolverAdapter;
 
+    private static final class CachedPhoto {
+        public final Bitmap photo;
+        public final Bitmap photoIcon;
+
+        public CachedPhoto(Bitmap photo, Bitmap photoIcon) {
+            this.photo = photo;
+            this.photoIcon = photoIcon;
+        }
+
+        public int getByteCount() {
+            return photo.getAllocationByteCount()
+                    + (photoIcon == null || photoIcon == photo
+                            ? 0 : photoIcon.getAllocationByteCount());
+        }
+    }
+
+    private final LruCache<Uri, CachedPhoto> mPhotoCache =
+            new LruCache<Uri, CachedPhoto>(MAX_CACHED_PHOTO_BYTES) {
+                @Override
+                protected int sizeOf(Uri uri, CachedPhoto cachedPhoto) {
+                    return cachedPhoto.getByteCount();
+                }
+            };
+    // The load of each photo which has not finished.  Guarded by itself.
+    private final Map<Uri, LoadTask> mPendingLoads = new HashMap<>();
+    private final ContentObserver mContactsObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            mPhotoCache.evictAll();
+        }
+    };
+    private volatile boolean mObserverRegistered;
+    private final AtomicLong mNextSequence = new AtomicLong();
+    private long mCollapsedLoads;
+    private long mPromotedLoads;
+    private final AtomicLong mDecodes = new AtomicLong();
+    private final AtomicLong mDecodedBytes = new AtomicLong();
+    private final AtomicLong mFullSizeBytes = new AtomicLong();
+    // Queue wait of loads by priority.  Guarded by itself.
+    private final long[][] mQueueWaitStats = new long[2][3];
+
     public ContactsAsyncHelper(ContentResolverAdapter contentResolverAdapter) {
         mContentResolverAdapter = contentResolverAdapter;
     }
 
     public ContactsAsyncHelper(ContentResolverAdapter contentResolverAdapter, Looper looper) {
         mContentResolverAdapter = contentResolverAdapter;
-        mThreadHandler = new WorkerHandler(looper);
+        mThreadHandler = new Handler(looper);
     }
 
     private static final class WorkerArgs {
+        public int token;
         public Context context;
         public Uri displayPhotoUri;
         public Drawable photo;
@@ -98,100 +172,158 @@ public class ContactsAsyncHelper {
     }
 
     /**
-     * Thread worker class that handles the task of opening the stream and loading
-     * the images.
+     * Loads a photo for every request for it which arrived before the load finished.
      */
-    private class WorkerHandler extends Handler {
-        public WorkerHandler(Looper looper) {
-            super(looper);
+    private final class LoadTask implements Runnable, Comparable<LoadTask> {
+        public final Uri displayPhotoUri;
+        public final Context context;
+        // Guarded by mPendingLoads.
+        public final List<WorkerArgs> loads = new ArrayList<>();
+        // Only changed while the task is not queued.
+        public volatile int priority;
+        public final long sequence = mNextSequence.getAndIncrement();
+        public final long enqueueMillis = SystemClock.elapsedRealtime();
+
+        public LoadTask(Uri displayPhotoUri, Context context, int priority) {
+            this.displayPhotoUri = displayPhotoUri;
+            this.context = context;
+            this.priority = priority;
         }
 
         @Override
-        public void handleMessage(Message msg) {
-            WorkerArgs args = (WorkerArgs) msg.obj;
-
-            switch (msg.arg1) {
-                case EVENT_LOAD_IMAGE:
-                    InputStream inputStream = null;
-                    try {
-                        try {
-                            inputStream = mContentResolverAdapter.openInputStream(
-                                    args.context, args.displayPhotoUri);
-                        } catch (Exception e) {
-                            Log.e(this, e, "Error opening photo input stream");
-                        }
-
-                        if (inputStream != null) {
-                            args.photo = Drawable.createFromStream(inputStream,
-                                    args.displayPhotoUri.toString());
-
-                            // This assumes Drawable coming from contact database is usually
-                            // BitmapDrawable and thus we can have (down)scaled version of it.
-                            args.photoIcon = getPhotoIconWhenAppropriate(args.context, args.photo);
-
-                            Log.d(this, "Loading image: " + msg.arg1 +
-                                    " token: " + msg.what + " image URI: " + args.displayPhotoUri);
-                        } else {
-                            args.photo = null;
-                            args.photoIcon = null;
-                            Log.d(this, "Problem with image: " + msg.arg1 +
-                                    " token: " + msg.what + " image URI: " + args.displayPhotoUri +
-                                    ", using default image.");
-                        }
-                    } finally {
-                        if (inputStream != null) {
-                            try {
-                                inputStream.close();
-                            } catch (IOException e) {
-                                Log.e(this, e, "Unable to close input stream.");
-                            }
-                        }
-                    }
-
-                    // Listener will synchronize as needed
-                    Log.d(this, "Notifying listener: " + args.listener.toString() +
-                            " image: " + args.displayPhotoUri + " completed");
-                    args.listener.onImageLoadComplete(msg.what, args.photo, args.photoIcon,
-                                args.cookie);
-                    break;
-                default:
-                    break;
+        public int compareTo(LoadTask other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
             }
+            return Long.compare(sequence, other.sequence);
         }
 
-        /**
-         * Returns a Bitmap object suitable for {@link Notification}'s large icon. This might
-         * return null when the given Drawable isn't BitmapDrawable, or if the system fails to
-         * create a scaled Bitmap for the Drawable.
-         */
-        private Bitmap getPhotoIconWhenAppropriate(Context context, Drawable photo) {
-            if (!(photo instanceof BitmapDrawable)) {
+        @Override
+        public void run() {
+            recordQueueWait(priority, SystemClock.elapsedRealtime() - enqueueMillis);
+            CachedPhoto cachedPhoto = mPhotoCache.get(displayPhotoUri);
+            if (cachedPhoto == null) {
+                cachedPhoto = loadPhoto(context, displayPhotoUri);
+                if (cachedPhoto != null) {
+                    mPhotoCache.put(displayPhotoUri, cachedPhoto);
+                }
+            }
+
+            List<WorkerArgs> finishedLoads;
+            synchronized (mPendingLoads) {
+                mPendingLoads.remove(displayPhotoUri);
+                finishedLoads = new ArrayList<>(loads);
+            }
+            for (WorkerArgs load : finishedLoads) {
+                if (cachedPhoto != null) {
+                    // Each listener gets its own drawable, as drawables hold state.
+                    load.photo = new BitmapDrawable(load.context.getResources(),
+                            cachedPhoto.photo);
+                    load.photoIcon = cachedPhoto.photoIcon;
+                }
+                if (load.listener == null) {
+                    continue;
+                }
+                // Listener will synchronize as needed
+                Log.d(this, "Notifying listener: " + load.listener.toString() +
+                        " image: " + load.displayPhotoUri + " completed");
+                load.listener.onImageLoadComplete(load.token, load.photo, load.photoIcon,
+                        load.cookie);
+            }
+        }
+    }
+
+    /**
+     * Decodes a photo, downsampled to no less than the notification icon size.
+     *
+     * @return The photo, or {@code null} if it could not be loaded.
+     */
+    private CachedPhoto loadPhoto(Context context, Uri displayPhotoUri) {
+        byte[] data = readPhoto(context, displayPhotoUri);
+        if (data == null) {
+            Log.d(this, "Problem with image: " + displayPhotoUri
+                    + ", using default image.");
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        int iconSize = context.getResources()
+                .getDimensionPixelSize(R.dimen.notification_icon_size);
+        int longerEdge = Math.max(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (longerEdge / (sampleSize * 2) >= iconSize) {
+            sampleSize *= 2;
+        }
+        options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap photo = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (photo == null) {
+            Log.d(this, "Unable to decode image: " + displayPhotoUri);
+            return null;
+        }
+        mDecodes.incrementAndGet();
+        mDecodedBytes.addAndGet(photo.getAllocationByteCount());
+        mFullSizeBytes.addAndGet((long) photo.getAllocationByteCount() * sampleSize * sampleSize);
+        Log.d(this, "Loaded image: " + displayPhotoUri + " sampleSize: " + sampleSize);
+        return new CachedPhoto(photo, getPhotoIconWhenAppropriate(context, photo));
+    }
+
+    private byte[] readPhoto(Context context, Uri displayPhotoUri) {
+        InputStream inputStream = null;
+        try {
+            inputStream = mContentResolverAdapter.openInputStream(context, displayPhotoUri);
+            if (inputStream == null) {
                 return null;
             }
-            int iconSize = context.getResources()
-                    .getDimensionPixelSize(R.dimen.notification_icon_size);
-            Bitmap orgBitmap = ((BitmapDrawable) photo).getBitmap();
-            int orgWidth = orgBitmap.getWidth();
-            int orgHeight = orgBitmap.getHeight();
-            int longerEdge = orgWidth > orgHeight ? orgWidth : orgHeight;
-            // We want downscaled one only when the original icon is too big.
-            if (longerEdge > iconSize) {
-                float ratio = ((float) longerEdge) / iconSize;
-                int newWidth = (int) (orgWidth / ratio);
-                int newHeight = (int) (orgHeight / ratio);
-                // If the longer edge is much longer than the shorter edge, the latter may
-                // become 0 which will cause a crash.
-                if (newWidth <= 0 || newHeight <= 0) {
-                    Log.w(this, "Photo icon's width or height become 0.");
-                    return null;
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                data.write(buffer, 0, read);
+            }
+            return data.toByteArray();
+        } catch (Exception e) {
+            Log.e(this, e, "Error reading photo input stream");
+            return null;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    Log.e(this, e, "Unable to close input stream.");
                 }
+            }
+        }
+    }
 
-                // It is sure ratio >= 1.0f in any case and thus the newly created Bitmap
-                // should be smaller than the original.
-                return Bitmap.createScaledBitmap(orgBitmap, newWidth, newHeight, true);
-            } else {
-                return orgBitmap;
+    /**
+     * Returns a Bitmap object suitable for {@link Notification}'s large icon. This might
+     * return null if the system fails to create a scaled Bitmap for the photo.
+     */
+    private Bitmap getPhotoIconWhenAppropriate(Context context, Bitmap orgBitmap) {
+        int iconSize = context.getResources()
+                .getDimensionPixelSize(R.dimen.notification_icon_size);
+        int orgWidth = orgBitmap.getWidth();
+        int orgHeight = orgBitmap.getHeight();
+        int longerEdge = orgWidth > orgHeight ? orgWidth : orgHeight;
+        // We want downscaled one only when the original icon is too big.
+        if (longerEdge > iconSize) {
+            float ratio = ((float) longerEdge) / iconSize;
+            int newWidth = (int) (orgWidth / ratio);
+            int newHeight = (int) (orgHeight / ratio);
+            // If the longer edge is much longer than the shorter edge, the latter may
+            // become 0 which will cause a crash.
+            if (newWidth <= 0 || newHeight <= 0) {
+                Log.w(this, "Photo icon's width or height become 0.");
+                return null;
             }
+
+            // It is sure ratio >= 1.0f in any case and thus the newly created Bitmap
+            // should be smaller than the original.
+            return Bitmap.createScaledBitmap(orgBitmap, newWidth, newHeight, true);
+        } else {
+            return orgBitmap;
         }
     }
 
@@ -213,8 +345,18 @@ public class ContactsAsyncHelper {
      */
     public void startObtainPhotoAsync(int token, Context context, Uri displayPhotoUri,
             OnImageLoadCompleteListener listener, Object cookie) {
-        ensureAsyncHandlerStarted();
+        startObtainPhotoAsync(token, context, displayPhotoUri, listener, cookie,
+                PRIORITY_FOREGROUND);
+    }
 
+    /**
+     * Starts an asynchronous image load, as
+     * {@link #startObtainPhotoAsync(int, Context, Uri, OnImageLoadCompleteListener, Object)}.
+     *
+     * @param priority {@link #PRIORITY_FOREGROUND} or {@link #PRIORITY_BACKGROUND}.
+     */
+    public void startObtainPhotoAsync(int token, Context context, Uri displayPhotoUri,
+            OnImageLoadCompleteListener listener, Object cookie, int priority) {
         // in case the source caller info is null, the URI will be null as well.
         // just update using the placeholder image in this case.
         if (displayPhotoUri == null) {
@@ -222,33 +364,139 @@ public class ContactsAsyncHelper {
             return;
         }
 
+        registerObserverIfNeeded(context);
+
         // Added additional Cookie field in the callee to handle arguments
         // sent to the callback function.
 
         // setup arguments
         WorkerArgs args = new WorkerArgs();
+        args.token = token;
         args.cookie = cookie;
         args.context = context;
         args.displayPhotoUri = displayPhotoUri;
         args.listener = listener;
 
-        // setup message arguments
-        Message msg = mThreadHandler.obtainMessage(token);
-        msg.arg1 = EVENT_LOAD_IMAGE;
-        msg.obj = args;
+        LoadTask task;
+        synchronized (mPendingLoads) {
+            task = mPendingLoads.get(displayPhotoUri);
+            if (task != null) {
+                // The photo is already being loaded; share the result.
+                task.loads.add(args);
+                mCollapsedLoads++;
+                if (priority < task.priority) {
+                    promote(task, priority);
+                }
+                return;
+            }
+            task = new LoadTask(displayPhotoUri, context, priority);
+            task.loads.add(args);
+            mPendingLoads.put(displayPhotoUri, task);
+        }
 
         Log.d(LOG_TAG, "Begin loading image: " + args.displayPhotoUri +
                 ", displaying default image for now.");
 
         // notify the thread to begin working
-        mThreadHandler.sendMessage(msg);
+        if (mThreadHandler != null) {
+            mThreadHandler.post(task);
+        } else {
+            getExecutor().execute(task);
+        }
     }
 
-    private void ensureAsyncHandlerStarted() {
-        if (mThreadHandler == null) {
-            HandlerThread thread = new HandlerThread("ContactsAsyncWorker");
-            thread.start();
-            mThreadHandler = new WorkerHandler(thread.getLooper());
+    /**
+     * Moves a pending load of a photo ahead of the background loads, for instance because a call
+     * being set up now needs it.
+     */
+    public void prioritize(Uri displayPhotoUri) {
+        synchronized (mPendingLoads) {
+            LoadTask task = mPendingLoads.get(displayPhotoUri);
+            if (task != null && task.priority > PRIORITY_FOREGROUND) {
+                promote(task, PRIORITY_FOREGROUND);
+            }
+        }
+    }
+
+    private void promote(LoadTask task, int priority) {
+        // A task can only be reordered by taking it out of the queue; if it is not queued it
+        // has already started.
+        ThreadPoolExecutor executor = mThreadHandler == null ? getExecutor() : null;
+        if (executor != null && executor.remove(task)) {
+            task.priority = priority;
+            executor.execute(task);
+            mPromotedLoads++;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (mExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            mExecutor = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT,
+                    WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                    r -> new Thread(r, "ContactsAsyncWorker-" + threadCount.incrementAndGet()));
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+        return mExecutor;
+    }
+
+    private void recordQueueWait(int priority, long waitMillis) {
+        synchronized (mQueueWaitStats) {
+            long[] stats = mQueueWaitStats[priority];
+            stats[0]++;
+            stats[1] += waitMillis;
+            stats[2] = Math.max(stats[2], waitMillis);
+        }
+    }
+
+    private void registerObserverIfNeeded(Context context) {
+        if (mObserverRegistered) {
+            return;
+        }
+        mObserverRegistered = true;
+        try {
+            ContentResolver resolver = context.getContentResolver();
+            if (resolver != null) {
+                // Contact photos can change without their URI changing.
+                resolver.registerContentObserver(ContactsContract.AUTHORITY_URI, true,
+                        mContactsObserver);
+            }
+        } catch (Exception e) {
+            Log.w(LOG_TAG, "Unable to observe contacts: %s", e);
+        }
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        long collapsedLoads;
+        long promotedLoads;
+        int pendingLoads;
+        synchronized (mPendingLoads) {
+            collapsedLoads = mCollapsedLoads;
+            promotedLoads = mPromotedLoads;
+            pendingLoads = mPendingLoads.size();
+        }
+        pw.println("ContactsAsyncHelper: cachedBytes=" + mPhotoCache.size()
+                + ", maxBytes=" + mPhotoCache.maxSize()
+                + ", hits=" + mPhotoCache.hitCount()
+                + ", misses=" + mPhotoCache.missCount()
+                + ", evictions=" + mPhotoCache.evictionCount()
+                + ", pendingLoads=" + pendingLoads
+                + ", collapsedLoads=" + collapsedLoads
+                + ", promotedLoads=" + promotedLoads
+                + ", decodes=" + mDecodes
+                + ", decodedBytes=" + mDecodedBytes
+                + ", fullSizeBytes=" + mFullSizeBytes);
+        pw.increaseIndent();
+        synchronized (mQueueWaitStats) {
+            for (int priority = PRIORITY_FOREGROUND; priority <= PRIORITY_BACKGROUND;
+                    priority++) {
+                long[] stats = mQueueWaitStats[priority];
+                pw.println((priority == PRIORITY_FOREGROUND ? "foreground" : "background")
+                        + " queue wait: loads=" + stats[0]
+                        + ", avgMillis=" + (stats[0] == 0 ? 0 : stats[1] / stats[0])
+                        + ", maxMillis=" + stats[2]);
+            }
         }
+        pw.decreaseIndent();
     }
 }
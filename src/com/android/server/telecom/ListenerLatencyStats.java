@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms for the callbacks made to {@link CallsManager.CallsManagerListener}s and
+ * {@link Call.Listener}s, keyed by listener class.  These callbacks are almost always made while
+ * holding the Telecom lock, so a single slow listener stalls the rest of Telecom; callbacks which
+ * exceed the slow callback threshold are logged as they happen.
+ */
+public class ListenerLatencyStats {
+    private static final String TAG = "ListenerLatencyStats";
+
+    /** The upper bound of each histogram bucket but the last, which is unbounded. */
+    @VisibleForTesting
+    public static final long[] BUCKET_UPPER_BOUNDS_MILLIS =
+            {1, 2, 4, 8, 16, 32, 64, 128, 256, 512};
+
+    public static final long DEFAULT_SLOW_CALLBACK_THRESHOLD_MILLIS = 100L;
+
+    /**
+     * The latency of the callbacks made to one listener class.
+     */
+    public static final class Histogram {
+        private final String mListenerName;
+        private final AtomicLongArray mBucketCounts =
+                new AtomicLongArray(BUCKET_UPPER_BOUNDS_MILLIS.length + 1);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mTotalNanos = new AtomicLong();
+        private final AtomicLong mMaxNanos = new AtomicLong();
+        private final AtomicLong mSlowCount = new AtomicLong();
+
+        private Histogram(String listenerName) {
+            mListenerName = listenerName;
+        }
+
+        /**
+         * Records a callback to the listener, logging a warning if it was slow.
+         *
+         * @param callback The name of the callback, for the warning.
+         * @param durationNanos How long the callback took.
+         */
+        public void record(String callback, long durationNanos) {
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+            mBucketCounts.incrementAndGet(getBucket(durationMillis));
+            mCount.incrementAndGet();
+            mTotalNanos.addAndGet(durationNanos);
+            mMaxNanos.accumulateAndGet(durationNanos, Math::max);
+            if (durationMillis >= sSlowCallbackThresholdMillis) {
+                mSlowCount.incrementAndGet();
+                Log.w(TAG, "Slow callback: %s.%s took %dms", mListenerName, callback,
+                        durationMillis);
+            }
+        }
+
+        public String getListenerName() {
+            return mListenerName;
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getTotalMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(mTotalNanos.get());
+        }
+
+        public long getMaxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(mMaxNanos.get());
+        }
+
+        public long getSlowCount() {
+            return mSlowCount.get();
+        }
+
+        /**
+         * @return The number of callbacks in each bucket; see
+         *         {@link #BUCKET_UPPER_BOUNDS_MILLIS}.
+         */
+        public long[] getBucketCounts() {
+            long[] counts = new long[mBucketCounts.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = mBucketCounts.get(i);
+            }
+            return counts;
+        }
+
+        private void reset() {
+            for (int i = 0; i < mBucketCounts.length(); i++) {
+                mBucketCounts.set(i, 0);
+            }
+            mCount.set(0);
+            mTotalNanos.set(0);
+            mMaxNanos.set(0);
+            mSlowCount.set(0);
+        }
+
+        private TelecomLogClass.ListenerLatency toProto() {
+            TelecomLogClass.ListenerLatency proto = new TelecomLogClass.ListenerLatency()
+                    .setListenerName(mListenerName)
+                    .setCallbackCount(getCount())
+                    .setTotalTimeMillis(getTotalMillis())
+                    .setMaxTimeMillis(getMaxMillis())
+                    .setSlowCallbackCount(getSlowCount());
+            proto.bucketUpperBoundsMillis = BUCKET_UPPER_BOUNDS_MILLIS.clone();
+            proto.bucketCounts = getBucketCounts();
+            return proto;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(mListenerName)
+                    .append(": callbacks=").append(getCount())
+                    .append(", totalMillis=").append(getTotalMillis())
+                    .append(", maxMillis=").append(getMaxMillis())
+                    .append(", slow=").append(getSlowCount())
+                    .append(", buckets=[");
+            for (int i = 0; i < mBucketCounts.length(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(i < BUCKET_UPPER_BOUNDS_MILLIS.length
+                        ? "<" + BUCKET_UPPER_BOUNDS_MILLIS[i]
+                        : ">=" + BUCKET_UPPER_BOUNDS_MILLIS[i - 1])
+                        .append("ms:").append(mBucketCounts.get(i));
+            }
+            return sb.append("]").toString();
+        }
+    }
+
+    private static final Map<String, Histogram> sHistograms = new ConcurrentHashMap<>();
+    private static volatile long sSlowCallbackThresholdMillis =
+            DEFAULT_SLOW_CALLBACK_THRESHOLD_MILLIS;
+
+    private ListenerLatencyStats() {
+    }
+
+    /**
+     * @param listener The listener.
+     * @return The histogram for the listener's class, which callers may hold on to in order to
+     *         avoid looking it up for every callback.
+     */
+    public static Histogram getHistogram(Object listener) {
+        return sHistograms.computeIfAbsent(listener.getClass().getName(), Histogram::new);
+    }
+
+    /**
+     * Records a callback to a listener.
+     *
+     * @param listener The listener.
+     * @param callback The name of the callback.
+     * @param durationNanos How long the callback took.
+     */
+    public static void record(Object listener, String callback, long durationNanos) {
+        getHistogram(listener).record(callback, durationNanos);
+    }
+
+    /**
+     * @param thresholdMillis Callbacks taking at least this long are logged and counted as slow.
+     */
+    public static void setSlowCallbackThresholdMillis(long thresholdMillis) {
+        sSlowCallbackThresholdMillis = thresholdMillis;
+    }
+
+    public static long getSlowCallbackThresholdMillis() {
+        return sSlowCallbackThresholdMillis;
+    }
+
+    /**
+     * Zeroes the histograms.  They are not removed, as callers may hold on to them.
+     */
+    public static void reset() {
+        for (Histogram histogram : sHistograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * @return The histograms of the listeners called since the last reset, slowest listener in
+     *         total first.
+     */
+    public static List<Histogram> getHistograms() {
+        List<Histogram> histograms = new ArrayList<>();
+        for (Histogram histogram : sHistograms.values()) {
+            if (histogram.getCount() > 0) {
+                histograms.add(histogram);
+            }
+        }
+        histograms.sort((h1, h2) -> Long.compare(h2.mTotalNanos.get(), h1.mTotalNanos.get()));
+        return histograms;
+    }
+
+    public static TelecomLogClass.ListenerLatency[] toProto() {
+        return getHistograms().stream()
+                .map(Histogram::toProto)
+                .toArray(TelecomLogClass.ListenerLatency[]::new);
+    }
+
+    public static void dump(IndentingPrintWriter pw) {
+        pw.println("Listener callback latency: slowCallbackThresholdMillis="
+                + sSlowCallbackThresholdMillis);
+        pw.increaseIndent();
+        for (Histogram histogram : getHistograms()) {
+            pw.println(histogram);
+        }
+        pw.decreaseIndent();
+    }
+
+    private static int getBucket(long durationMillis) {
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS_MILLIS.length; i++) {
+            if (durationMillis < BUCKET_UPPER_BOUNDS_MILLIS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_UPPER_BOUNDS_MILLIS.length;
+    }
+}
@@ -165,11 +165,15 @@ public class LogUtils {
         public static final String CALL_IDENTIFICATION_SET = "CALL_IDENTIFICATION_SET";
         public static final String BLOCK_CHECK_INITIATED = "BLOCK_CHECK_INITIATED";
         public static final String BLOCK_CHECK_FINISHED = "BLOCK_CHECK_FINISHED";
+        public static final String NUMBER_RULE_CHECK_FINISHED = "NUMBER_RULE_CHECK_FINISHED";
         public static final String DIRECT_TO_VM_INITIATED = "DIRECT_TO_VM_INITIATED";
         public static final String DIRECT_TO_VM_FINISHED = "DIRECT_TO_VM_FINISHED";
         public static final String FILTERING_INITIATED = "FILTERING_INITIATED";
         public static final String FILTERING_COMPLETED = "FILTERING_COMPLETED";
         public static final String FILTERING_TIMED_OUT = "FILTERING_TIMED_OUT";
+        public static final String FILTERING_COMPLETED_EARLY = "FILTERING_COMPLETED_EARLY";
+        public static final String FILTERING_LATENCY_SAVED = "FILTERING_LATENCY_SAVED";
+        public static final String FILTERING_RESULT_CACHED = "FILTERING_RESULT_CACHED";
         public static final String REMOTELY_HELD = "REMOTELY_HELD";
         public static final String REMOTELY_UNHELD = "REMOTELY_UNHELD";
         public static final String REQUEST_PULL = "PULL";
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.graphics.drawable.Icon;
+import android.telecom.Log;
+import android.util.AtomicFile;
+import android.util.LruCache;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores {@link android.telecom.PhoneAccount} icons as blob files named by the SHA-256 hash of
+ * their serialized form.  Accounts with identical icons, such as the many accounts a VoIP app may
+ * register, share a single blob.  Decoded icons are kept in an LRU cache bounded by their
+ * approximate size in bytes and are otherwise only read from disk when requested.
+ */
+@VisibleForTesting
+public class PhoneAccountIconStore {
+    private static final class CachedIcon {
+        final Icon icon;
+        final int sizeBytes;
+
+        CachedIcon(Icon icon, int sizeBytes) {
+            this.icon = icon;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+
+    private final File mDirectory;
+    private final LruCache<String, CachedIcon> mCache;
+    /**
+     * The hashes of icons stored recently, so that storing the same icon again does not hash it
+     * again.  {@link Icon} does not override equals, so icons are matched by identity.
+     */
+    private final Map<Icon, String> mStoredHashes =
+            Collections.synchronizedMap(new WeakHashMap<>());
+    private final AtomicLong mCacheHits = new AtomicLong();
+    private final AtomicLong mCacheMisses = new AtomicLong();
+
+    /**
+     * @param directory The directory holding the icon blobs; created on first use.
+     * @param maxCacheBytes The upper bound on the size of the decoded icon cache.
+     */
+    public PhoneAccountIconStore(@NonNull File directory, int maxCacheBytes) {
+        mDirectory = directory;
+        mCache = new LruCache<String, CachedIcon>(Math.max(1, maxCacheBytes)) {
+            @Override
+            protected int sizeOf(String key, CachedIcon value) {
+                return value.sizeBytes;
+            }
+        };
+    }
+
+    /**
+     * Stores an icon, writing its blob only if no identical icon is stored yet.  Storing an icon
+     * which was stored before, and whose blob still exists, only checks for the blob.
+     *
+     * @param icon The icon to store.
+     * @return The hash under which the icon can be retrieved.
+     * @throws IOException if the icon cannot be serialized or written.
+     */
+    public @NonNull String put(@NonNull Icon icon) throws IOException {
+        String storedHash = mStoredHashes.get(icon);
+        if (storedHash != null && getBlobFile(storedHash).exists()) {
+            return storedHash;
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        icon.writeToStream(stream);
+        byte[] data = stream.toByteArray();
+        String hash = hash(data);
+
+        File blob = getBlobFile(hash);
+        if (!blob.exists()) {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Unable to create " + mDirectory);
+            }
+            AtomicFile atomicFile = new AtomicFile(blob);
+            FileOutputStream fileOutput = null;
+            try {
+                fileOutput = atomicFile.startWrite();
+                fileOutput.write(data);
+                atomicFile.finishWrite(fileOutput);
+            } catch (IOException e) {
+                atomicFile.failWrite(fileOutput);
+                throw e;
+            }
+        }
+        mCache.put(hash, new CachedIcon(icon, getSizeBytes(icon, data.length)));
+        mStoredHashes.put(icon, hash);
+        return hash;
+    }
+
+    /**
+     * @param hash The hash returned by {@link #put(Icon)}.
+     * @return The icon, or {@code null} if it is not stored or cannot be read.
+     */
+    public @Nullable Icon get(@NonNull String hash) {
+        CachedIcon cached = mCache.get(hash);
+        if (cached != null) {
+            mCacheHits.incrementAndGet();
+            return cached.icon;
+        }
+        mCacheMisses.incrementAndGet();
+        try {
+            byte[] data = new AtomicFile(getBlobFile(hash)).readFully();
+            Icon icon = Icon.createFromStream(new ByteArrayInputStream(data));
+            if (icon != null) {
+                mCache.put(hash, new CachedIcon(icon, getSizeBytes(icon, data.length)));
+            }
+            return icon;
+        } catch (FileNotFoundException e) {
+            Log.w(this, "get: no icon stored for %s", hash);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(this, e, "get: unable to read icon %s", hash);
+        }
+        return null;
+    }
+
+    /**
+     * Deletes the blob for the given hash.  Callers must ensure no account still refers to it.
+     *
+     * @param hash The hash of the icon to delete.
+     */
+    public void delete(@NonNull String hash) {
+        mCache.remove(hash);
+        new AtomicFile(getBlobFile(hash)).delete();
+    }
+
+    /**
+     * Deletes every blob whose hash is not in the given set, such as blobs left behind when the
+     * registry was not persisted after an icon was stored.
+     *
+     * @param referencedHashes The hashes which are still in use.
+     * @return The number of blobs deleted.
+     */
+    public int retainOnly(@NonNull Set<String> referencedHashes) {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File file : files) {
+            // AtomicFile leaves ".bak" and ".new" files next to the blob while it is written.
+            String hash = file.getName();
+            int suffix = hash.indexOf('.');
+            if (suffix >= 0) {
+                hash = hash.substring(0, suffix);
+            }
+            if (!referencedHashes.contains(hash)) {
+                mCache.remove(hash);
+                if (file.delete()) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        String[] blobs = mDirectory.list();
+        pw.println("iconStore: blobs=" + (blobs == null ? 0 : blobs.length)
+                + ", cachedBytes=" + mCache.size() + "/" + mCache.maxSize()
+                + ", hits=" + mCacheHits.get()
+                + ", misses=" + mCacheMisses.get());
+    }
+
+    private File getBlobFile(String hash) {
+        return new File(mDirectory, hash);
+    }
+
+    /**
+     * Approximates the heap used by a decoded icon.  Bitmap icons hold their decoded pixels,
+     * which are usually far larger than the compressed blob; other icon types are about the size
+     * of their serialized form.
+     */
+    private static int getSizeBytes(Icon icon, int serializedBytes) {
+        int type = icon.getType();
+        if ((type == Icon.TYPE_BITMAP || type == Icon.TYPE_ADAPTIVE_BITMAP)
+                && icon.getBitmap() != null) {
+            return Math.max(serializedBytes, icon.getBitmap().getAllocationByteCount());
+        }
+        return serializedBytes;
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is always available on Android.
+            throw new IllegalStateException(e);
+        }
+    }
+}
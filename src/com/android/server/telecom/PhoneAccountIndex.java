@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.os.UserHandle;
+import android.telecom.PhoneAccount;
+import android.telecom.PhoneAccountHandle;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory index over the {@link PhoneAccount}s known to the {@link PhoneAccountRegistrar}.
+ * Accounts are indexed by {@link PhoneAccountHandle}, by package name, by owning user, by each
+ * capability bit and by each supported URI scheme so that registrar queries only visit the
+ * accounts which can possibly match rather than the whole registry.
+ * <p>
+ * Each entry also tracks the position of its account in the registrar's sorted account list so
+ * that query results come back in the same order as a scan of the list would produce.
+ */
+@VisibleForTesting
+public class PhoneAccountIndex {
+    private static final class Entry {
+        final PhoneAccount account;
+        int ordinal;
+
+        Entry(PhoneAccount account, int ordinal) {
+            this.account = account;
+            this.ordinal = ordinal;
+        }
+    }
+
+    private static final Comparator<Entry> BY_ORDINAL =
+            (e1, e2) -> Integer.compare(e1.ordinal, e2.ordinal);
+
+    private final Map<PhoneAccountHandle, Entry> mByHandle = new HashMap<>();
+    private final Map<String, Set<Entry>> mByPackage = new HashMap<>();
+    private final Map<String, Set<Entry>> mByScheme = new HashMap<>();
+    private final Map<UserHandle, Set<Entry>> mByUser = new HashMap<>();
+    private final List<Set<Entry>> mByCapabilityBit = new ArrayList<>(Integer.SIZE);
+    private int mNextOrdinal = 0;
+    private int mUsersVersion = 0;
+
+    public PhoneAccountIndex() {
+        for (int i = 0; i < Integer.SIZE; i++) {
+            mByCapabilityBit.add(new HashSet<>());
+        }
+    }
+
+    /**
+     * Discards the current contents of the index and re-indexes the given accounts, in order.
+     *
+     * @param accounts The accounts to index.
+     */
+    public synchronized void rebuild(@NonNull List<PhoneAccount> accounts) {
+        mByHandle.clear();
+        mByPackage.clear();
+        mByScheme.clear();
+        mByUser.clear();
+        mUsersVersion++;
+        for (Set<Entry> bucket : mByCapabilityBit) {
+            bucket.clear();
+        }
+        mNextOrdinal = 0;
+        for (PhoneAccount account : accounts) {
+            add(account);
+        }
+    }
+
+    /**
+     * Adds an account to the index, replacing any account with the same handle.  The account is
+     * ordered after all accounts currently in the index.
+     *
+     * @param account The account to add.
+     */
+    public synchronized void add(@NonNull PhoneAccount account) {
+        PhoneAccountHandle handle = account.getAccountHandle();
+        remove(handle);
+
+        Entry entry = new Entry(account, mNextOrdinal++);
+        mByHandle.put(handle, entry);
+        addToBucket(mByPackage, getPackageName(handle), entry);
+        if (addToBucket(mByUser, handle.getUserHandle(), entry)) {
+            mUsersVersion++;
+        }
+        List<String> schemes = account.getSupportedUriSchemes();
+        if (schemes != null) {
+            for (String scheme : schemes) {
+                if (scheme != null) {
+                    addToBucket(mByScheme, scheme, entry);
+                }
+            }
+        }
+        int capabilities = account.getCapabilities();
+        for (int bit = 0; bit < Integer.SIZE; bit++) {
+            if ((capabilities & (1 << bit)) != 0) {
+                mByCapabilityBit.get(bit).add(entry);
+            }
+        }
+    }
+
+    /**
+     * Replaces an account with an updated copy, keeping its position in registrar order.  An
+     * account which is not in the index is added as by {@link #add(PhoneAccount)}.
+     *
+     * @param account The updated account.
+     */
+    public synchronized void replace(@NonNull PhoneAccount account) {
+        Entry old = mByHandle.get(account.getAccountHandle());
+        add(account);
+        if (old != null) {
+            mByHandle.get(account.getAccountHandle()).ordinal = old.ordinal;
+        }
+    }
+
+    /**
+     * Removes the account with the given handle from the index.
+     *
+     * @param handle The handle of the account to remove.
+     * @return {@code true} if an account was removed, {@code false} otherwise.
+     */
+    public synchronized boolean remove(@Nullable PhoneAccountHandle handle) {
+        Entry entry = mByHandle.remove(handle);
+        if (entry == null) {
+            return false;
+        }
+        removeFromBucket(mByPackage, getPackageName(handle), entry);
+        if (removeFromBucket(mByUser, handle.getUserHandle(), entry)) {
+            mUsersVersion++;
+        }
+        List<String> schemes = entry.account.getSupportedUriSchemes();
+        if (schemes != null) {
+            for (String scheme : schemes) {
+                if (scheme != null) {
+                    removeFromBucket(mByScheme, scheme, entry);
+                }
+            }
+        }
+        for (Set<Entry> bucket : mByCapabilityBit) {
+            bucket.remove(entry);
+        }
+        return true;
+    }
+
+    /**
+     * Updates the relative order of the indexed accounts to match the given list.  Called after
+     * the registrar re-sorts its accounts.
+     *
+     * @param accounts The accounts, in their new order.
+     */
+    public synchronized void updateOrdering(@NonNull List<PhoneAccount> accounts) {
+        int ordinal = 0;
+        for (PhoneAccount account : accounts) {
+            Entry entry = mByHandle.get(account.getAccountHandle());
+            if (entry != null) {
+                entry.ordinal = ordinal++;
+            }
+        }
+        mNextOrdinal = ordinal;
+    }
+
+    /**
+     * @param handle The handle to look up.
+     * @return The account registered with the given handle, or {@code null} if none.
+     */
+    public synchronized @Nullable PhoneAccount get(@Nullable PhoneAccountHandle handle) {
+        Entry entry = mByHandle.get(handle);
+        return entry == null ? null : entry.account;
+    }
+
+    /**
+     * @return The number of accounts in the index.
+     */
+    public synchronized int size() {
+        return mByHandle.size();
+    }
+
+    /**
+     * @return The users which own at least one indexed account.
+     */
+    public synchronized @NonNull Set<UserHandle> getUsers() {
+        return new HashSet<>(mByUser.keySet());
+    }
+
+    /**
+     * @return The packages which own at least one indexed account.
+     */
+    public synchronized @NonNull Set<String> getPackages() {
+        return new HashSet<>(mByPackage.keySet());
+    }
+
+    /**
+     * @param user The owning user.
+     * @return The accounts owned by the user, in registrar order.  Unlike
+     *         {@link #getCandidates(int, String, String, UserHandle)} this excludes accounts owned
+     *         by other users which have {@link PhoneAccount#CAPABILITY_MULTI_USER}.
+     */
+    public synchronized @NonNull List<PhoneAccount> getOwnedBy(@Nullable UserHandle user) {
+        Set<Entry> owned = mByUser.get(user);
+        return owned == null ? new ArrayList<>() : inRegistrarOrder(owned);
+    }
+
+    /**
+     * @return A number which changes whenever the set returned by {@link #getUsers()} changes.
+     */
+    public synchronized int getUsersVersion() {
+        return mUsersVersion;
+    }
+
+    /**
+     * Equivalent to {@link #getCandidates(int, String, String, UserHandle)} without a user.
+     */
+    public @NonNull List<PhoneAccount> getCandidates(int capabilities,
+            @Nullable String uriScheme, @Nullable String packageName) {
+        return getCandidates(capabilities, uriScheme, packageName, null);
+    }
+
+    /**
+     * Returns the accounts which may match a query with the given criteria, in registrar order.
+     * The smallest index bucket matching one of the criteria is used, so callers must still check
+     * each returned account against the full set of criteria.
+     *
+     * @param capabilities Capabilities the account must have; ignored if 0.
+     * @param uriScheme URI scheme the account must support; ignored if {@code null}.
+     * @param packageName Package the account must belong to; ignored if {@code null}.
+     * @param user User who must own the account unless it has
+     *             {@link PhoneAccount#CAPABILITY_MULTI_USER}; ignored if {@code null}.
+     * @return The candidate accounts.
+     */
+    public synchronized @NonNull List<PhoneAccount> getCandidates(int capabilities,
+            @Nullable String uriScheme, @Nullable String packageName, @Nullable UserHandle user) {
+        Collection<Entry> smallest = mByHandle.values();
+        if (user != null) {
+            // Accounts owned by the user plus those visible to every user.
+            Set<Entry> owned = mByUser.get(user);
+            Set<Entry> multiUser = mByCapabilityBit.get(
+                    Integer.numberOfTrailingZeros(PhoneAccount.CAPABILITY_MULTI_USER));
+            if (owned == null || owned.isEmpty()) {
+                smallest = smaller(smallest, multiUser);
+            } else if (owned.size() + multiUser.size() < smallest.size()) {
+                Set<Entry> visible = new HashSet<>(owned);
+                visible.addAll(multiUser);
+                smallest = visible;
+            }
+        }
+        if (packageName != null) {
+            smallest = smaller(smallest, mByPackage.get(packageName));
+        }
+        if (uriScheme != null) {
+            smallest = smaller(smallest, mByScheme.get(uriScheme));
+        }
+        for (int bit = 0; bit < Integer.SIZE && !smallest.isEmpty(); bit++) {
+            if ((capabilities & (1 << bit)) != 0) {
+                smallest = smaller(smallest, mByCapabilityBit.get(bit));
+            }
+        }
+
+        return inRegistrarOrder(smallest);
+    }
+
+    private static List<PhoneAccount> inRegistrarOrder(Collection<Entry> bucket) {
+        List<Entry> entries = new ArrayList<>(bucket);
+        entries.sort(BY_ORDINAL);
+        List<PhoneAccount> accounts = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            accounts.add(entry.account);
+        }
+        return accounts;
+    }
+
+    private static Collection<Entry> smaller(Collection<Entry> current,
+            @Nullable Set<Entry> bucket) {
+        if (bucket == null) {
+            // Nothing is indexed under this key, so nothing can match.
+            return new HashSet<>();
+        }
+        return bucket.size() < current.size() ? bucket : current;
+    }
+
+    /**
+     * @return {@code true} if a new bucket was created for the key.
+     */
+    private static <K> boolean addToBucket(Map<K, Set<Entry>> buckets, K key, Entry entry) {
+        Set<Entry> bucket = buckets.get(key);
+        boolean created = bucket == null;
+        if (created) {
+            bucket = new HashSet<>();
+            buckets.put(key, bucket);
+        }
+        bucket.add(entry);
+        return created;
+    }
+
+    /**
+     * @return {@code true} if the bucket for the key was emptied and removed.
+     */
+    private static <K> boolean removeFromBucket(Map<K, Set<Entry>> buckets, K key,
+            Entry entry) {
+        Set<Entry> bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.remove(entry);
+            if (bucket.isEmpty()) {
+                buckets.remove(key);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getPackageName(PhoneAccountHandle handle) {
+        return handle.getComponentName() == null ? null
+                : handle.getComponentName().getPackageName();
+    }
+}
@@ -34,9 +34,9 @@ import android.graphics.drawable.Icon;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Bundle;
-import android.os.AsyncTask;
 import android.os.PersistableBundle;
 import android.os.Process;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.provider.Settings;
@@ -55,6 +55,7 @@ import android.text.TextUtils;
 import android.util.AtomicFile;
 import android.util.Base64;
 import android.util.EventLog;
+import android.util.Pair;
 import android.util.Xml;
 
 // TODO: Needed for move to system service: import com.android.internal.R;
@@ -72,7 +73,6 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.Integer;
@@ -82,13 +82,20 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -138,18 +145,101 @@ public class PhoneAccountRegistrar {
     }
 
     /**
-     * Receiver for detecting when a managed profile has been removed so that PhoneAccountRegistrar
-     * can clean up orphan {@link PhoneAccount}s
+     * How many accounts one of the orphaned account cleanup paths removed, and how long it took.
+     */
+    private static final class CleanupStats {
+        private final String mName;
+        private final AtomicLong mRuns = new AtomicLong();
+        private final AtomicLong mRemoved = new AtomicLong();
+        private final AtomicLong mTotalMillis = new AtomicLong();
+
+        CleanupStats(String name) {
+            mName = name;
+        }
+
+        void record(int removed, long startTime) {
+            mRuns.incrementAndGet();
+            mRemoved.addAndGet(removed);
+            mTotalMillis.addAndGet(SystemClock.elapsedRealtime() - startTime);
+        }
+
+        @Override
+        public String toString() {
+            return mName + "=" + mRuns.get() + " runs/" + mRemoved.get() + " removed/"
+                    + mTotalMillis.get() + "ms";
+        }
+    }
+
+    /**
+     * The users whose accounts are visible across profiles to a given user, computed from the
+     * owners of the registered accounts.
+     */
+    private static final class ProfileGroupVisibility {
+        /** The account owners considered when this was computed. */
+        final Set<UserHandle> considered;
+        /** The subset of {@link #considered} in the same profile group as the user. */
+        final Set<UserHandle> visible;
+
+        ProfileGroupVisibility(Set<UserHandle> considered, Set<UserHandle> visible) {
+            this.considered = considered;
+            this.visible = visible;
+        }
+    }
+
+    /**
+     * Receiver for detecting when a user or managed profile has been removed so that
+     * PhoneAccountRegistrar can remove the {@link PhoneAccount}s it owned, and for user and profile
+     * changes which change which accounts are visible across profiles.
      */
     private final BroadcastReceiver mManagedProfileReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
             Log.startSession("PARbR.oR");
             try {
-                synchronized (mLock) {
-                    if (intent.getAction().equals(Intent.ACTION_MANAGED_PROFILE_REMOVED)) {
-                        cleanupOrphanedPhoneAccounts();
+                invalidateProfileGroupVisibility();
+                String action = intent.getAction();
+                if (Intent.ACTION_MANAGED_PROFILE_REMOVED.equals(action)
+                        || Intent.ACTION_USER_REMOVED.equals(action)) {
+                    UserHandle removedUser = intent.getParcelableExtra(Intent.EXTRA_USER);
+                    if (removedUser == null) {
+                        int userId = intent.getIntExtra(Intent.EXTRA_USER_HANDLE,
+                                UserHandle.USER_NULL);
+                        if (userId != UserHandle.USER_NULL) {
+                            removedUser = UserHandle.of(userId);
+                        }
+                    }
+                    synchronized (mLock) {
+                        if (removedUser != null) {
+                            clearAccountsForUser(removedUser);
+                        } else {
+                            cleanupOrphanedPhoneAccounts();
+                        }
+                    }
+                }
+            } finally {
+                Log.endSession();
+            }
+        }
+    };
+
+    /**
+     * Receiver for package and user changes which may change how a {@link PhoneAccount}'s
+     * {@link ConnectionService} resolves, so that cached resolutions can be discarded.
+     */
+    private final BroadcastReceiver mComponentResolutionReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.startSession("PAR.cRR");
+            try {
+                String action = intent.getAction();
+                if (Intent.ACTION_USER_REMOVED.equals(action)) {
+                    int removedUser = intent.getIntExtra(Intent.EXTRA_USER_HANDLE,
+                            UserHandle.USER_NULL);
+                    if (removedUser != UserHandle.USER_NULL) {
+                        invalidateResolvedComponents(null, UserHandle.of(removedUser));
                     }
+                } else if (intent.getData() != null) {
+                    invalidateResolvedComponents(intent.getData().getSchemeSpecificPart(), null);
                 }
             } finally {
                 Log.endSession();
@@ -157,13 +247,37 @@ public class PhoneAccountRegistrar {
         }
     };
 
+    /**
+     * Receiver for device shutdown, so that pending changes to the registry are written before
+     * the process goes away.
+     */
+    private final BroadcastReceiver mShutdownReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.startSession("PAR.sR");
+            try {
+                mPersister.flush(true /* waitForCompletion */);
+            } finally {
+                Log.endSession();
+            }
+        }
+    };
+
     public static final String FILE_NAME = "phone-account-registrar-state.xml";
+    private static final String XML_FILE_SUFFIX = ".xml";
+    private static final String BINARY_FILE_SUFFIX = ".pb";
     public static final String ICON_ERROR_MSG =
             "Icon cannot be written to memory. Try compressing or downsizing";
     @VisibleForTesting
     public static final int EXPECTED_STATE_VERSION = 9;
     public static final int MAX_PHONE_ACCOUNT_REGISTRATIONS = 10;
     public static final int MAX_PHONE_ACCOUNT_EXTRAS_KEY_PAIR_LIMIT = 100;
+    /** Directory under the Telecom files dir holding the PhoneAccount icon blobs. */
+    @VisibleForTesting
+    public static final String ICON_STORE_DIRECTORY = "phone_account_icons";
+    /** Upper bound on the memory used by decoded PhoneAccount icons. */
+    private static final int ICON_CACHE_MAX_BYTES = 1024 * 1024;
+
     public static final int MAX_PHONE_ACCOUNT_FIELD_CHAR_LIMIT = 256;
     public static final int MAX_SCHEMES_PER_ACCOUNT = 10;
 
@@ -172,6 +286,9 @@ public class PhoneAccountRegistrar {
 
     private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
     private final AtomicFile mAtomicFile;
+    /** The XML registry written by earlier versions; read only to migrate it. */
+    private final AtomicFile mLegacyXmlFile;
+    private final WriteBehindPersister mPersister;
     private final Context mContext;
     private final UserManager mUserManager;
     private final TelephonyManager mTelephonyManager;
@@ -179,12 +296,87 @@ public class PhoneAccountRegistrar {
     private final DefaultDialerCache mDefaultDialerCache;
     private final AppLabelProxy mAppLabelProxy;
     private final TelecomSystem.SyncRoot mLock;
-    private State mState;
-    private UserHandle mCurrentUserHandle;
+    private volatile State mState;
+    /**
+     * Completed by {@link #load()} with the state read from disk, or {@code null} if there was
+     * none, once it is ready to be installed.
+     */
+    private final CompletableFuture<State> mLoadedState = new CompletableFuture<>();
+    /** Completed once the loaded state has been installed as the registry. */
+    private final CompletableFuture<Void> mLoaded = new CompletableFuture<>();
+    /** Changes requested before the registry was loaded.  Guarded by {@link #mLock}. */
+    private final List<Runnable> mDeferredChanges = new ArrayList<>();
+    private final AtomicLong mDeferredChangeCount = new AtomicLong();
+    private final long mLoadTimeoutMillis;
+    private volatile long mLoadDurationMillis = -1;
+    private final AtomicLong mLoadWaits = new AtomicLong();
+    private final AtomicLong mLoadWaitMillis = new AtomicLong();
+    private final AtomicLong mLoadTimeouts = new AtomicLong();
+    private final PhoneAccountIndex mAccountIndex = new PhoneAccountIndex();
+    /** The accounts as of the last change to the registry; read without the Telecom lock. */
+    private volatile Snapshot mSnapshot = new Snapshot(0, Collections.emptyList(), null);
+    /** Orders snapshot publication, which is not always done with the Telecom lock held. */
+    private final Object mSnapshotLock = new Object();
+    private final AtomicLong mSnapshotReads = new AtomicLong();
+    private final AtomicLong mLiveReads = new AtomicLong();
+    private final PhoneAccountIconStore mIconStore;
+    /**
+     * Icons no account refers to any more.  They are deleted once a write of the registry which
+     * does not refer to them either has completed; guarded by the Telecom lock.
+     */
+    private final Set<String> mUnreferencedIconHashes = new HashSet<>();
+    /**
+     * Successful {@link ConnectionService} resolutions, keyed by component and user.  Invalidated
+     * by {@link #mComponentResolutionReceiver}.
+     */
+    private final Map<Pair<ComponentName, UserHandle>, List<ResolveInfo>> mResolvedComponents =
+            new ConcurrentHashMap<>();
+    private final AtomicLong mResolvedComponentHits = new AtomicLong();
+    private final AtomicLong mResolvedComponentMisses = new AtomicLong();
+    private volatile UserHandle mCurrentUserHandle;
+    /**
+     * Per-user profile group visibility, so that cross-profile queries do not call into
+     * {@link UserManager}.  Cleared on user, user switch and managed profile changes, and when the
+     * set of account owners changes.
+     */
+    private final Map<UserHandle, ProfileGroupVisibility> mProfileGroupVisibility =
+            new ConcurrentHashMap<>();
+    private volatile int mProfileGroupUsersVersion = -1;
+    private final AtomicLong mProfileGroupComputations = new AtomicLong();
+    private final AtomicLong mProfileGroupInvalidations = new AtomicLong();
+    private final long mOrphanCheckIntervalMillis;
+    private final CleanupStats mPackageCleanupStats = new CleanupStats("package");
+    private final CleanupStats mUserCleanupStats = new CleanupStats("user");
+    private final CleanupStats mPeriodicCleanupStats = new CleanupStats("periodic");
+    private final CleanupStats mFullCleanupStats = new CleanupStats("full");
+
+    /**
+     * Catches accounts whose package or user was removed without {@link #clearAccounts} or
+     * {@link #clearAccountsForUser} being called, e.g. while Telecom was not running.  Runs on the
+     * writer thread and reschedules itself.
+     */
+    private final Runnable mPeriodicOrphanCheck = new Runnable() {
+        @Override
+        public void run() {
+            Log.startSession("PAR.pOC");
+            try {
+                long startTime = SystemClock.elapsedRealtime();
+                // Package and user lookups are made without the Telecom lock.
+                List<PhoneAccount> orphaned = findOrphanedAccounts();
+                int removed = 0;
+                if (!orphaned.isEmpty()) {
+                    synchronized (mLock) {
+                        removed = removeAccounts(orphaned);
+                    }
+                }
+                mPeriodicCleanupStats.record(removed, startTime);
+            } finally {
+                Log.endSession();
+                mPersister.runOnWriterThread(this, mOrphanCheckIntervalMillis);
+            }
+        }
+    };
     private String mTestPhoneAccountPackageNameFilter;
-    private interface PhoneAccountRegistrarWriteLock {}
-    private final PhoneAccountRegistrarWriteLock mWriteLock =
-            new PhoneAccountRegistrarWriteLock() {};
 
     @VisibleForTesting
     public PhoneAccountRegistrar(Context context, TelecomSystem.SyncRoot lock,
@@ -196,11 +388,33 @@ public class PhoneAccountRegistrar {
     public PhoneAccountRegistrar(Context context, TelecomSystem.SyncRoot lock, String fileName,
             DefaultDialerCache defaultDialerCache, AppLabelProxy appLabelProxy) {
 
-        mAtomicFile = new AtomicFile(new File(context.getFilesDir(), fileName));
+        mAtomicFile = new AtomicFile(new File(context.getFilesDir(),
+                getBinaryFileName(fileName)));
+        mLegacyXmlFile = new AtomicFile(new File(context.getFilesDir(), fileName));
+        mIconStore = new PhoneAccountIconStore(
+                new File(context.getFilesDir(), ICON_STORE_DIRECTORY), ICON_CACHE_MAX_BYTES);
 
         mState = new State();
         mContext = context;
         mLock = lock;
+        mPersister = new WriteBehindPersister("PhoneAccountRegistrarWriter", mAtomicFile,
+                new WriteBehindPersister.StateSerializer() {
+                    @Override
+                    public byte[] serialize() throws IOException {
+                        return serializeState();
+                    }
+
+                    @Override
+                    public Runnable getOnWrittenTask() {
+                        return getDeleteUnreferencedIconsTask();
+                    }
+                }, lock,
+                Timeouts.getPhoneAccountRegistrarWriteCoalesceMillis(
+                        context.getContentResolver()));
+        mLoadTimeoutMillis = Timeouts.getPhoneAccountRegistrarLoadTimeoutMillis(
+                context.getContentResolver());
+        mOrphanCheckIntervalMillis = Timeouts.getPhoneAccountOrphanCheckIntervalMillis(
+                context.getContentResolver());
         mUserManager = UserManager.get(context);
         mDefaultDialerCache = defaultDialerCache;
         mSubscriptionManager = SubscriptionManager.from(mContext);
@@ -210,9 +424,42 @@ public class PhoneAccountRegistrar {
 
         // register context based receiver to clean up orphan phone accounts
         IntentFilter intentFilter = new IntentFilter(Intent.ACTION_MANAGED_PROFILE_REMOVED);
+        intentFilter.addAction(Intent.ACTION_MANAGED_PROFILE_ADDED);
+        intentFilter.addAction(Intent.ACTION_MANAGED_PROFILE_AVAILABLE);
+        intentFilter.addAction(Intent.ACTION_MANAGED_PROFILE_UNAVAILABLE);
+        intentFilter.addAction(Intent.ACTION_USER_ADDED);
+        intentFilter.addAction(Intent.ACTION_USER_REMOVED);
         mContext.registerReceiver(mManagedProfileReceiver, intentFilter);
 
-        read();
+        // register receivers which invalidate cached ConnectionService resolutions
+        IntentFilter packageIntentFilter = new IntentFilter();
+        packageIntentFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageIntentFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageIntentFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageIntentFilter.addDataScheme("package");
+        mContext.registerReceiverAsUser(mComponentResolutionReceiver, UserHandle.ALL,
+                packageIntentFilter, null, null);
+        mContext.registerReceiver(mComponentResolutionReceiver,
+                new IntentFilter(Intent.ACTION_USER_REMOVED));
+        mContext.registerReceiver(mShutdownReceiver, new IntentFilter(Intent.ACTION_SHUTDOWN));
+
+        // Load on the writer thread so that Telecom startup does not block on file I/O, and so
+        // that no write of the registry can overtake the load.
+        mPersister.runOnWriterThread(this::load);
+    }
+
+    /**
+     * Returns the name of the binary registry file which replaces the given XML registry file.
+     *
+     * @param xmlFileName The name of the XML registry file.
+     * @return The name of the binary registry file.
+     */
+    @VisibleForTesting
+    public static String getBinaryFileName(String xmlFileName) {
+        String baseName = xmlFileName.endsWith(XML_FILE_SUFFIX)
+                ? xmlFileName.substring(0, xmlFileName.length() - XML_FILE_SUFFIX.length())
+                : xmlFileName;
+        return baseName + BINARY_FILE_SUFFIX;
     }
 
     /**
@@ -278,6 +525,7 @@ public class PhoneAccountRegistrar {
      */
     @VisibleForTesting
     public PhoneAccountHandle getUserSelectedOutgoingPhoneAccount(UserHandle userHandle) {
+        awaitLoaded();
         if (userHandle == null) {
             return null;
         }
@@ -307,6 +555,7 @@ public class PhoneAccountRegistrar {
      * account and group Id for the {@link UserHandle} specified.
      */
     private DefaultPhoneAccountHandle getUserSelectedDefaultPhoneAccount(UserHandle userHandle) {
+        awaitLoaded();
         if (userHandle == null) {
             return null;
         }
@@ -348,6 +597,10 @@ public class PhoneAccountRegistrar {
      */
     public void setUserSelectedOutgoingPhoneAccount(PhoneAccountHandle accountHandle,
             UserHandle userHandle) {
+        if (deferUntilLoaded(() -> setUserSelectedOutgoingPhoneAccount(accountHandle,
+                userHandle))) {
+            return;
+        }
         if (userHandle == null) {
             return;
         }
@@ -626,6 +879,18 @@ public class PhoneAccountRegistrar {
         }
         Log.d(this, "setCurrentUserHandle, %s", userHandle);
         mCurrentUserHandle = userHandle;
+        invalidateProfileGroupVisibility();
+        // Don't leave changes made on behalf of the previous user waiting in the write window.
+        mPersister.flush(false /* waitForCompletion */);
+    }
+
+    /**
+     * Writes any pending change to the registry and waits for it to reach the disk.  Must not be
+     * called with the Telecom lock held.
+     */
+    @VisibleForTesting
+    public void flushPendingWrites() {
+        mPersister.flush(true /* waitForCompletion */);
     }
 
     /**
@@ -633,6 +898,9 @@ public class PhoneAccountRegistrar {
      *         otherwise.
      */
     public boolean enablePhoneAccount(PhoneAccountHandle accountHandle, boolean isEnabled) {
+        if (deferUntilLoaded(() -> enablePhoneAccount(accountHandle, isEnabled))) {
+            return true;
+        }
         PhoneAccount account = getPhoneAccountUnchecked(accountHandle);
         Log.i(this, "Phone account %s %s.", accountHandle, isEnabled ? "enabled" : "disabled");
         if (account == null) {
@@ -645,7 +913,10 @@ public class PhoneAccountRegistrar {
         }
 
         if (account.isEnabled() != isEnabled) {
-            account.setIsEnabled(isEnabled);
+            // Accounts are shared with published snapshots, so replace rather than update it.
+            PhoneAccount updated = account.toBuilder().setIsEnabled(isEnabled).build();
+            mState.accounts.set(mState.accounts.indexOf(account), updated);
+            mAccountIndex.replace(updated);
             if (!isEnabled) {
                 // If the disabled account is the default, remove it.
                 removeDefaultPhoneAccountHandle(accountHandle);
@@ -669,6 +940,14 @@ public class PhoneAccountRegistrar {
 
     private boolean isVisibleForUser(PhoneAccount account, UserHandle userHandle,
             boolean acrossProfiles) {
+        return isVisibleForUser(null /* snapshot */, account, userHandle, acrossProfiles);
+    }
+
+    /**
+     * @param snapshot The snapshot whose users apply, or {@code null} for the live registry.
+     */
+    private boolean isVisibleForUser(@Nullable Snapshot snapshot, PhoneAccount account,
+            UserHandle userHandle, boolean acrossProfiles) {
         if (account == null) {
             return false;
         }
@@ -689,20 +968,68 @@ public class PhoneAccountRegistrar {
             return false;
         }
 
-        if (mCurrentUserHandle == null) {
+        UserHandle currentUserHandle =
+                snapshot == null ? mCurrentUserHandle : snapshot.mCurrentUserHandle;
+        if (currentUserHandle == null) {
             // In case we need to have emergency phone calls from the lock screen.
             Log.d(this, "Current user is null; assuming true");
             return true;
         }
 
         if (acrossProfiles) {
-            return UserManager.get(mContext).isSameProfileGroup(userHandle.getIdentifier(),
-                    phoneAccountUserHandle.getIdentifier());
+            if (snapshot != null) {
+                // Computed against the snapshot's owners, and only once for each snapshot.
+                return snapshot.mProfileGroupVisibility.computeIfAbsent(userHandle,
+                        user -> computeProfileGroupVisibility(user, snapshot.getIndex().getUsers()))
+                        .visible.contains(phoneAccountUserHandle);
+            }
+            return isInSameProfileGroup(userHandle, phoneAccountUserHandle);
         } else {
             return phoneAccountUserHandle.equals(userHandle);
         }
     }
 
+    /**
+     * Determines whether an account owner is in the same profile group as a user, using the
+     * visibility computed for the user against all current account owners.
+     */
+    private boolean isInSameProfileGroup(UserHandle userHandle, UserHandle owner) {
+        int usersVersion = mAccountIndex.getUsersVersion();
+        if (usersVersion != mProfileGroupUsersVersion) {
+            // An owner was added or removed, so the visibility of every user may differ.
+            mProfileGroupVisibility.clear();
+            mProfileGroupUsersVersion = usersVersion;
+        }
+        ProfileGroupVisibility visibility = mProfileGroupVisibility.computeIfAbsent(userHandle,
+                user -> computeProfileGroupVisibility(user, mAccountIndex.getUsers()));
+        if (visibility.considered.contains(owner)) {
+            return visibility.visible.contains(owner);
+        }
+        // The owner is not in the live registry; ask directly.
+        return mUserManager.isSameProfileGroup(userHandle.getIdentifier(),
+                owner.getIdentifier());
+    }
+
+    private ProfileGroupVisibility computeProfileGroupVisibility(UserHandle userHandle,
+            Set<UserHandle> owners) {
+        mProfileGroupComputations.incrementAndGet();
+        Set<UserHandle> visible = new HashSet<>();
+        for (UserHandle owner : owners) {
+            if (mUserManager.isSameProfileGroup(userHandle.getIdentifier(),
+                    owner.getIdentifier())) {
+                visible.add(owner);
+            }
+        }
+        return new ProfileGroupVisibility(owners, visible);
+    }
+
+    private void invalidateProfileGroupVisibility() {
+        mProfileGroupInvalidations.incrementAndGet();
+        mProfileGroupVisibility.clear();
+        // Snapshots keep the users they were taken with, so take one with the new users.
+        republishSnapshot();
+    }
+
     private List<ResolveInfo> resolveComponent(PhoneAccountHandle phoneAccountHandle) {
         return resolveComponent(phoneAccountHandle.getComponentName(),
                 phoneAccountHandle.getUserHandle());
@@ -710,6 +1037,25 @@ public class PhoneAccountRegistrar {
 
     private List<ResolveInfo> resolveComponent(ComponentName componentName,
             UserHandle userHandle) {
+        Pair<ComponentName, UserHandle> key = new Pair<>(componentName, userHandle);
+        List<ResolveInfo> resolveInfos = mResolvedComponents.get(key);
+        if (resolveInfos != null) {
+            mResolvedComponentHits.incrementAndGet();
+            return resolveInfos;
+        }
+        mResolvedComponentMisses.incrementAndGet();
+        resolveInfos = queryComponent(componentName, userHandle);
+        // Only successful resolutions are cached; a component which does not resolve yet will be
+        // queried again rather than relying on a package broadcast to clear a negative entry.
+        if (!resolveInfos.isEmpty()) {
+            resolveInfos = Collections.unmodifiableList(resolveInfos);
+            mResolvedComponents.put(key, resolveInfos);
+        }
+        return resolveInfos;
+    }
+
+    private List<ResolveInfo> queryComponent(ComponentName componentName,
+            UserHandle userHandle) {
         PackageManager pm = mContext.getPackageManager();
         Intent intent = new Intent(ConnectionService.SERVICE_INTERFACE);
         intent.setComponent(componentName);
@@ -725,6 +1071,21 @@ public class PhoneAccountRegistrar {
         }
     }
 
+    /**
+     * Discards cached {@link ConnectionService} resolutions.
+     *
+     * @param packageName The package whose resolutions are discarded, or {@code null} for all
+     *                    packages.
+     * @param userHandle The user whose resolutions are discarded, or {@code null} for all users.
+     */
+    @VisibleForTesting
+    public void invalidateResolvedComponents(@Nullable String packageName,
+            @Nullable UserHandle userHandle) {
+        mResolvedComponents.keySet().removeIf(key ->
+                (packageName == null || packageName.equals(key.first.getPackageName()))
+                        && (userHandle == null || userHandle.equals(key.second)));
+    }
+
     /**
      * Retrieves a list of all {@link PhoneAccountHandle}s registered.
      * Only returns accounts which are enabled.
@@ -1051,6 +1412,9 @@ public class PhoneAccountRegistrar {
     private void addOrReplacePhoneAccount(PhoneAccount account) {
         Log.d(this, "addOrReplacePhoneAccount(%s -> %s)",
                 account.getAccountHandle(), account);
+        if (deferUntilLoaded(() -> addOrReplacePhoneAccount(account))) {
+            return;
+        }
 
         // Start _enabled_ property as false.
         // !!! IMPORTANT !!! It is important that we do not read the enabled state that the
@@ -1062,6 +1426,7 @@ public class PhoneAccountRegistrar {
         if (oldAccount != null) {
             enforceSelfManagedAccountUnmodified(account, oldAccount);
             mState.accounts.remove(oldAccount);
+            mAccountIndex.remove(oldAccount.getAccountHandle());
             isEnabled = oldAccount.isEnabled();
             Log.i(this, "Modify account: %s", getAccountDiffString(account, oldAccount));
             isNewAccount = false;
@@ -1091,15 +1456,18 @@ public class PhoneAccountRegistrar {
                     .build();
         }
 
-        mState.accounts.add(account);
-        // Set defaults and replace based on the group Id.
-        maybeReplaceOldAccount(account);
         // Reset enabled state to whatever the value was if the account was already registered,
         // or _true_ if this is a SIM-based account.  All SIM-based accounts are always enabled,
         // as are all self-managed phone accounts.
-        account.setIsEnabled(
-                isEnabled || account.hasCapabilities(PhoneAccount.CAPABILITY_SIM_SUBSCRIPTION)
-                || account.hasCapabilities(PhoneAccount.CAPABILITY_SELF_MANAGED));
+        account = moveIconToStore(account).toBuilder()
+                .setIsEnabled(isEnabled
+                        || account.hasCapabilities(PhoneAccount.CAPABILITY_SIM_SUBSCRIPTION)
+                        || account.hasCapabilities(PhoneAccount.CAPABILITY_SELF_MANAGED))
+                .build();
+        mState.accounts.add(account);
+        mAccountIndex.add(account);
+        // Set defaults and replace based on the group Id.
+        maybeReplaceOldAccount(account);
 
         write();
         fireAccountsChanged();
@@ -1114,9 +1482,14 @@ public class PhoneAccountRegistrar {
     }
 
     public void unregisterPhoneAccount(PhoneAccountHandle accountHandle) {
+        if (deferUntilLoaded(() -> unregisterPhoneAccount(accountHandle))) {
+            return;
+        }
         PhoneAccount account = getPhoneAccountUnchecked(accountHandle);
         if (account != null) {
             if (mState.accounts.remove(account)) {
+                mAccountIndex.remove(accountHandle);
+                releaseIcon(accountHandle);
                 write();
                 fireAccountsChanged();
                 fireAccountUnRegistered(accountHandle);
@@ -1147,23 +1520,61 @@ public class PhoneAccountRegistrar {
      * @param userHandle The {@link UserHandle} the package is running under.
      */
     public void clearAccounts(String packageName, UserHandle userHandle) {
-        boolean accountsRemoved = false;
-        Iterator<PhoneAccount> it = mState.accounts.iterator();
-        while (it.hasNext()) {
-            PhoneAccount phoneAccount = it.next();
-            PhoneAccountHandle handle = phoneAccount.getAccountHandle();
-            if (Objects.equals(packageName, handle.getComponentName().getPackageName())
-                    && Objects.equals(userHandle, handle.getUserHandle())) {
-                Log.i(this, "Removing phone account " + phoneAccount.getLabel());
-                mState.accounts.remove(phoneAccount);
-                accountsRemoved = true;
+        if (deferUntilLoaded(() -> clearAccounts(packageName, userHandle))) {
+            return;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        List<PhoneAccount> accounts = new ArrayList<>();
+        for (PhoneAccount phoneAccount : mAccountIndex.getCandidates(0, null, packageName)) {
+            if (Objects.equals(userHandle, phoneAccount.getAccountHandle().getUserHandle())) {
+                accounts.add(phoneAccount);
             }
         }
+        mPackageCleanupStats.record(removeAccounts(accounts), startTime);
+    }
+
+    /**
+     * Un-registers all phone accounts owned by a removed user or managed profile.
+     *
+     * @param userHandle The {@link UserHandle} which was removed.
+     * @return The number of phone accounts removed.
+     */
+    public int clearAccountsForUser(UserHandle userHandle) {
+        if (deferUntilLoaded(() -> clearAccountsForUser(userHandle))) {
+            return 0;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        int removed = removeAccounts(mAccountIndex.getOwnedBy(userHandle));
+        mUserCleanupStats.record(removed, startTime);
+        return removed;
+    }
 
-        if (accountsRemoved) {
+    /**
+     * Removes accounts which are still registered, then persists the registry and notifies
+     * listeners if anything was removed.
+     *
+     * @param accounts The accounts to remove; accounts which have since been unregistered or
+     *                 replaced are skipped.
+     * @return The number of accounts removed.
+     */
+    private int removeAccounts(List<PhoneAccount> accounts) {
+        List<PhoneAccount> removed = new ArrayList<>(accounts.size());
+        for (PhoneAccount phoneAccount : accounts) {
+            PhoneAccountHandle handle = phoneAccount.getAccountHandle();
+            if (mAccountIndex.get(handle) != phoneAccount) {
+                continue;
+            }
+            Log.i(this, "Removing phone account " + phoneAccount.getLabel());
+            mAccountIndex.remove(handle);
+            releaseIcon(handle);
+            removed.add(phoneAccount);
+        }
+        if (!removed.isEmpty()) {
+            mState.accounts.removeAll(removed);
             write();
             fireAccountsChanged();
         }
+        return removed.size();
     }
 
     public boolean isVoiceMailNumber(PhoneAccountHandle accountHandle, String number) {
@@ -1385,12 +1796,9 @@ public class PhoneAccountRegistrar {
      * @return The corresponding phone account if one exists.
      */
     public PhoneAccount getPhoneAccountUnchecked(PhoneAccountHandle handle) {
-        for (PhoneAccount m : mState.accounts) {
-            if (Objects.equals(handle, m.getAccountHandle())) {
-                return m;
-            }
-        }
-        return null;
+        awaitLoaded();
+        mLiveReads.incrementAndGet();
+        return mAccountIndex.get(handle);
     }
 
     /**
@@ -1415,6 +1823,194 @@ public class PhoneAccountRegistrar {
         return getPhoneAccount(handle, mCurrentUserHandle);
     }
 
+    /**
+     * Returns the accounts as of the last change to the registry.  The snapshot and the methods
+     * which query it do not require the Telecom lock, so they suit read-only binder calls which
+     * would otherwise contend with call processing.
+     *
+     * @return The current snapshot.
+     */
+    public Snapshot getSnapshot() {
+        awaitLoaded();
+        return mSnapshot;
+    }
+
+    /**
+     * Like {@link #getPhoneAccount(PhoneAccountHandle, UserHandle, boolean)}, but reads from a
+     * snapshot of the registry.
+     */
+    public @Nullable PhoneAccount getPhoneAccount(Snapshot snapshot, PhoneAccountHandle handle,
+            UserHandle userHandle, boolean acrossProfiles) {
+        mSnapshotReads.incrementAndGet();
+        PhoneAccount account = snapshot.getIndex().get(handle);
+        if (account != null && isVisibleForUser(snapshot, account, userHandle, acrossProfiles)) {
+            return account;
+        }
+        return null;
+    }
+
+    /**
+     * Like {@link #getAllPhoneAccounts(UserHandle)}, but reads from a snapshot of the registry.
+     */
+    public List<PhoneAccount> getAllPhoneAccounts(Snapshot snapshot, UserHandle userHandle) {
+        mSnapshotReads.incrementAndGet();
+        return getPhoneAccounts(snapshot, 0, 0, null, null, false, userHandle);
+    }
+
+    /**
+     * Like {@link #getSelfManagedPhoneAccounts(UserHandle)}, but reads from a snapshot of the
+     * registry.
+     */
+    public List<PhoneAccountHandle> getSelfManagedPhoneAccounts(Snapshot snapshot,
+            UserHandle userHandle) {
+        mSnapshotReads.incrementAndGet();
+        List<PhoneAccountHandle> handles = new ArrayList<>();
+        for (PhoneAccount account : getPhoneAccounts(snapshot,
+                PhoneAccount.CAPABILITY_SELF_MANAGED,
+                PhoneAccount.CAPABILITY_EMERGENCY_CALLS_ONLY /* excludedCapabilities */,
+                null /* uriScheme */, null /* packageName */, false /* includeDisabledAccounts */,
+                userHandle)) {
+            handles.add(account.getAccountHandle());
+        }
+        return handles;
+    }
+
+    /**
+     * Replaces the snapshot with one reflecting the current state.  Called after every change to
+     * the registry.
+     */
+    private void publishSnapshot() {
+        synchronized (mSnapshotLock) {
+            mSnapshot = new Snapshot(mSnapshot.version + 1, mState.accounts, mCurrentUserHandle);
+        }
+    }
+
+    /**
+     * Replaces the snapshot with one of the same accounts taken with the current users.  Called
+     * when the current user or a profile changes, which may happen without the Telecom lock.
+     */
+    private void republishSnapshot() {
+        synchronized (mSnapshotLock) {
+            mSnapshot = new Snapshot(mSnapshot.version + 1, mSnapshot, mCurrentUserHandle);
+        }
+    }
+
+    /**
+     * Registered accounts do not carry their icons; they are kept in the
+     * {@link PhoneAccountIconStore} and only loaded for callers which need them, such as apps
+     * retrieving accounts through {@link android.telecom.TelecomManager}.
+     *
+     * @param account An account returned by the registrar, or {@code null}.
+     * @return A copy of the account with its icon attached, or the account itself if it has no
+     *         stored icon.
+     */
+    public @Nullable PhoneAccount getPhoneAccountWithIcon(@Nullable PhoneAccount account) {
+        if (account == null || account.getIcon() != null) {
+            return account;
+        }
+        String iconHash = mState.iconHashes.get(account.getAccountHandle());
+        if (iconHash == null) {
+            return account;
+        }
+        Icon icon = mIconStore.get(iconHash);
+        if (icon == null) {
+            return account;
+        }
+        return account.toBuilder().setIcon(icon).build();
+    }
+
+    /**
+     * Moves the icon of an account about to be added to the registry into the icon store.  If the
+     * icon cannot be stored the account keeps it and it is persisted inline instead.
+     *
+     * @param account The account.
+     * @return The account without its icon, or the account itself if it has no icon or the icon
+     *         could not be stored.
+     */
+    private PhoneAccount moveIconToStore(PhoneAccount account) {
+        PhoneAccountHandle handle = account.getAccountHandle();
+        String iconHash = null;
+        if (account.getIcon() != null) {
+            try {
+                iconHash = mIconStore.put(account.getIcon());
+            } catch (IOException e) {
+                Log.e(this, e, "Unable to store icon for %s", handle);
+            }
+        }
+        String oldIconHash = iconHash == null ? mState.iconHashes.remove(handle)
+                : mState.iconHashes.put(handle, iconHash);
+        if (oldIconHash != null && !oldIconHash.equals(iconHash)) {
+            deleteIconIfUnreferenced(oldIconHash);
+        }
+        return iconHash == null ? account : account.toBuilder().setIcon(null).build();
+    }
+
+    /**
+     * Drops the icon reference of an account which was removed from the registry.
+     */
+    private void releaseIcon(PhoneAccountHandle handle) {
+        String iconHash = mState.iconHashes.remove(handle);
+        if (iconHash != null) {
+            deleteIconIfUnreferenced(iconHash);
+        }
+    }
+
+    /**
+     * Schedules an icon to be deleted if no account refers to it.  It is not deleted right away,
+     * as the registry on disk may still refer to it until the next write.
+     */
+    private void deleteIconIfUnreferenced(String iconHash) {
+        if (!mState.iconHashes.containsValue(iconHash)) {
+            mUnreferencedIconHashes.add(iconHash);
+        }
+    }
+
+    /**
+     * Called with the Telecom lock held as the registry is serialized.
+     *
+     * @return A task deleting the icons which the serialized registry does not refer to, to run
+     *         once it has been written, or {@code null} if there are none.  Icons left behind
+     *         by a failed write are deleted when the registry is next loaded.
+     */
+    private Runnable getDeleteUnreferencedIconsTask() {
+        if (mUnreferencedIconHashes.isEmpty()) {
+            return null;
+        }
+        final List<String> iconHashes = new ArrayList<>(mUnreferencedIconHashes);
+        mUnreferencedIconHashes.clear();
+        return () -> {
+            synchronized (mLock) {
+                for (String iconHash : iconHashes) {
+                    // An account registered since may have brought the icon back.
+                    if (!mState.iconHashes.containsValue(iconHash)) {
+                        mIconStore.delete(iconHash);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Stores the icon of an account about to be registered, so that registering it need not
+     * hash and write the icon while holding the Telecom lock.  Must be called without the
+     * Telecom lock held.  If the icon cannot be stored here, it is stored when the account is
+     * registered; if the account is never registered, the icon is deleted when the registry is
+     * next loaded.
+     *
+     * @param account The account about to be registered.
+     */
+    public void storeIcon(PhoneAccount account) {
+        if (account == null || account.getIcon() == null) {
+            return;
+        }
+        try {
+            mIconStore.put(account.getIcon());
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(this, "storeIcon: unable to store icon for %s: %s", account.getAccountHandle(),
+                    e);
+        }
+    }
+
     private List<PhoneAccountHandle> getPhoneAccountHandles(
             int capabilities,
             String uriScheme,
@@ -1474,8 +2070,32 @@ public class PhoneAccountRegistrar {
             String packageName,
             boolean includeDisabledAccounts,
             UserHandle userHandle) {
-        List<PhoneAccount> accounts = new ArrayList<>(mState.accounts.size());
-        for (PhoneAccount m : mState.accounts) {
+        awaitLoaded();
+        mLiveReads.incrementAndGet();
+        return getPhoneAccounts(null /* snapshot */, capabilities, excludedCapabilities,
+                uriScheme, packageName, includeDisabledAccounts, userHandle);
+    }
+
+    /**
+     * @param snapshot The snapshot to read, or {@code null} for the live registry.
+     */
+    private List<PhoneAccount> getPhoneAccounts(
+            @Nullable Snapshot snapshot,
+            int capabilities,
+            int excludedCapabilities,
+            String uriScheme,
+            String packageName,
+            boolean includeDisabledAccounts,
+            UserHandle userHandle) {
+        // Only visit the accounts indexed under the most selective of the query keys, including
+        // the user's own partition; the full set of checks below still applies to each candidate.
+        PhoneAccountIndex index = snapshot == null ? mAccountIndex : snapshot.getIndex();
+        UserHandle currentUserHandle =
+                snapshot == null ? mCurrentUserHandle : snapshot.mCurrentUserHandle;
+        List<PhoneAccount> candidates = index.getCandidates(capabilities, uriScheme,
+                packageName, currentUserHandle == null ? null : userHandle);
+        List<PhoneAccount> accounts = new ArrayList<>(candidates.size());
+        for (PhoneAccount m : candidates) {
             if (!(m.isEnabled() || includeDisabledAccounts)) {
                 // Do not include disabled accounts.
                 continue;
@@ -1505,7 +2125,7 @@ public class PhoneAccountRegistrar {
                 // Not the right package name; skip this one.
                 continue;
             }
-            if (!isVisibleForUser(m, userHandle, false)) {
+            if (!isVisibleForUser(snapshot, m, userHandle, false)) {
                 // Account is not visible for the current user; skip this one.
                 continue;
             }
@@ -1521,29 +2141,43 @@ public class PhoneAccountRegistrar {
      * @return the number of orphan {@code PhoneAccount} deleted.
      */
     public int cleanupOrphanedPhoneAccounts() {
-        ArrayList<PhoneAccount> badAccountsList = new ArrayList<>();
-        HashMap<String, Boolean> packageLookup = new HashMap<>();
-        HashMap<PhoneAccount, Boolean> userHandleLookup = new HashMap<>();
-
-        // iterate over all accounts in registrar
-        for (PhoneAccount pa : mState.accounts) {
-            String packageName = pa.getAccountHandle().getComponentName().getPackageName();
+        if (deferUntilLoaded(this::cleanupOrphanedPhoneAccounts)) {
+            return 0;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        int removed = removeAccounts(findOrphanedAccounts());
+        mFullCleanupStats.record(removed, startTime);
+        return removed;
+    }
 
+    /**
+     * Finds the accounts whose package is uninstalled or whose user was deleted.  Each package
+     * and user is looked up once, however many accounts it owns.
+     */
+    private List<PhoneAccount> findOrphanedAccounts() {
+        List<PhoneAccount> orphaned = new ArrayList<>();
+        Set<PhoneAccountHandle> found = new HashSet<>();
+        for (String packageName : mAccountIndex.getPackages()) {
             // check if the package for the PhoneAccount is uninstalled
-            if (packageLookup.computeIfAbsent(packageName,
-                    pn -> isPackageUninstalled(pn))) {
-                badAccountsList.add(pa);
+            if (isPackageUninstalled(packageName)) {
+                for (PhoneAccount pa : mAccountIndex.getCandidates(0, null, packageName)) {
+                    if (found.add(pa.getAccountHandle())) {
+                        orphaned.add(pa);
+                    }
+                }
             }
+        }
+        for (UserHandle userHandle : mAccountIndex.getUsers()) {
             // check if PhoneAccount does not have a valid UserHandle (user was deleted)
-            else if (userHandleLookup.computeIfAbsent(pa,
-                    a -> isUserHandleDeletedForPhoneAccount(a))) {
-                badAccountsList.add(pa);
+            if (isUserHandleDeleted(userHandle)) {
+                for (PhoneAccount pa : mAccountIndex.getOwnedBy(userHandle)) {
+                    if (found.add(pa.getAccountHandle())) {
+                        orphaned.add(pa);
+                    }
+                }
             }
         }
-
-        mState.accounts.removeAll(badAccountsList);
-
-        return badAccountsList.size();
+        return orphaned;
     }
 
     public Boolean isPackageUninstalled(String packageName) {
@@ -1555,8 +2189,7 @@ public class PhoneAccountRegistrar {
         }
     }
 
-    private Boolean isUserHandleDeletedForPhoneAccount(PhoneAccount phoneAccount) {
-        UserHandle userHandle = phoneAccount.getAccountHandle().getUserHandle();
+    private boolean isUserHandleDeleted(UserHandle userHandle) {
         return (userHandle == null) ||
                 (mUserManager.getSerialNumberForUser(userHandle) == -1L);
     }
@@ -1582,12 +2215,74 @@ public class PhoneAccountRegistrar {
          */
         public final List<PhoneAccount> accounts = new CopyOnWriteArrayList<>();
 
+        /**
+         * The hash of the icon of each account whose icon is held in the
+         * {@link PhoneAccountIconStore}.  Such accounts carry no icon in {@link #accounts}.
+         */
+        public final Map<PhoneAccountHandle, String> iconHashes = new ConcurrentHashMap<>();
+
         /**
          * The version number of the State data.
          */
         public int versionNumber;
     }
 
+    /**
+     * An immutable view of the registered accounts, in registrar order, and of the users which
+     * decide their visibility.  A new snapshot is published through a volatile reference on every
+     * change to the registry or to the users, so a reader which obtained one keeps a consistent
+     * view without holding the Telecom lock.
+     */
+    public static final class Snapshot {
+        /** Incremented with every published snapshot. */
+        public final long version;
+        private final List<PhoneAccount> mAccounts;
+        /** The current user when the snapshot was taken, or {@code null} if not yet known. */
+        private final UserHandle mCurrentUserHandle;
+        /** Cross-profile visibility for each user, computed against the snapshot's owners. */
+        private final Map<UserHandle, ProfileGroupVisibility> mProfileGroupVisibility =
+                new ConcurrentHashMap<>();
+        // Built on first read; most snapshots are replaced before anyone reads them.
+        private volatile PhoneAccountIndex mIndex;
+
+        private Snapshot(long version, List<PhoneAccount> accounts,
+                UserHandle currentUserHandle) {
+            this.version = version;
+            // Registered accounts are replaced rather than changed, so they can be shared.
+            mAccounts = Collections.unmodifiableList(new ArrayList<>(accounts));
+            mCurrentUserHandle = currentUserHandle;
+        }
+
+        private Snapshot(long version, Snapshot accounts, UserHandle currentUserHandle) {
+            this.version = version;
+            mAccounts = accounts.mAccounts;
+            mCurrentUserHandle = currentUserHandle;
+            mIndex = accounts.mIndex;
+        }
+
+        private PhoneAccountIndex getIndex() {
+            PhoneAccountIndex index = mIndex;
+            if (index == null) {
+                synchronized (this) {
+                    index = mIndex;
+                    if (index == null) {
+                        index = new PhoneAccountIndex();
+                        index.rebuild(mAccounts);
+                        mIndex = index;
+                    }
+                }
+            }
+            return index;
+        }
+
+        /**
+         * @return All accounts in the snapshot, regardless of user or enabled state.
+         */
+        public List<PhoneAccount> getAccounts() {
+            return mAccounts;
+        }
+    }
+
     /**
      * The default {@link PhoneAccountHandle} of a user.
      */
@@ -1628,6 +2323,32 @@ public class PhoneAccountRegistrar {
                 pw.println(defaultOutgoing);
             }
             pw.println("simCallManager: " + getSimCallManager(mCurrentUserHandle));
+            pw.println("load: done=" + mLoaded.isDone()
+                    + ", durationMillis=" + mLoadDurationMillis
+                    + ", waits=" + mLoadWaits.get()
+                    + ", waitMillis=" + mLoadWaitMillis.get()
+                    + ", timeouts=" + mLoadTimeouts.get()
+                    + ", deferredChanges=" + mDeferredChangeCount.get());
+            long snapshotReads = mSnapshotReads.get();
+            long liveReads = mLiveReads.get();
+            Snapshot snapshot = mSnapshot;
+            pw.println("snapshot: version=" + snapshot.version
+                    + ", accounts=" + snapshot.getAccounts().size()
+                    + ", lockFreeReads=" + snapshotReads
+                    + ", liveReads=" + liveReads
+                    + ", lockFreeShare=" + (snapshotReads + liveReads == 0 ? 0
+                            : snapshotReads * 100 / (snapshotReads + liveReads)) + "%");
+            pw.println("profileGroupVisibility: users=" + mProfileGroupVisibility.size()
+                    + ", owners=" + mAccountIndex.getUsers().size()
+                    + ", computations=" + mProfileGroupComputations.get()
+                    + ", invalidations=" + mProfileGroupInvalidations.get());
+            mPersister.dump(pw);
+            mIconStore.dump(pw);
+            pw.println("orphanCleanup: " + mPackageCleanupStats + ", " + mUserCleanupStats + ", "
+                    + mPeriodicCleanupStats + ", " + mFullCleanupStats);
+            pw.println("resolvedComponentCache: size=" + mResolvedComponents.size()
+                    + ", hits=" + mResolvedComponentHits.get()
+                    + ", misses=" + mResolvedComponentMisses.get());
             pw.println("phoneAccounts:");
             pw.increaseIndent();
             for (PhoneAccount phoneAccount : mState.accounts) {
@@ -1642,6 +2363,13 @@ public class PhoneAccountRegistrar {
 
     private void sortPhoneAccounts() {
         if (mState.accounts.size() > 1) {
+            sortPhoneAccounts(mState.accounts);
+            mAccountIndex.updateOrdering(mState.accounts);
+        }
+    }
+
+    private static void sortPhoneAccounts(List<PhoneAccount> accounts) {
+        if (accounts.size() > 1) {
             // Sort the phone accounts using sort order:
             // 1) SIM accounts first, followed by non-sim accounts
             // 2) Sort order, with those specifying no sort order last.
@@ -1682,7 +2410,7 @@ public class PhoneAccountRegistrar {
             };
 
             // Sort the phone accounts.
-            mState.accounts.sort(bySimCapability.thenComparing(bySortOrder.thenComparing(byLabel)));
+            accounts.sort(bySimCapability.thenComparing(bySortOrder.thenComparing(byLabel)));
         }
     }
 
@@ -1691,69 +2419,179 @@ public class PhoneAccountRegistrar {
     // State management
     //
 
-    private class AsyncXmlWriter extends AsyncTask<ByteArrayOutputStream, Void, Void> {
-        @Override
-        public Void doInBackground(ByteArrayOutputStream... args) {
-            final ByteArrayOutputStream buffer = args[0];
-            FileOutputStream fileOutput = null;
-            try {
-                synchronized (mWriteLock) {
-                    fileOutput = mAtomicFile.startWrite();
-                    buffer.writeTo(fileOutput);
-                    mAtomicFile.finishWrite(fileOutput);
-                }
-            } catch (IOException e) {
-                Log.e(this, e, "Writing state to XML file");
-                mAtomicFile.failWrite(fileOutput);
-            }
-            return null;
-        }
+    /**
+     * Re-sorts the accounts and schedules the state to be persisted.  Changes made within the
+     * persister's coalescing window are written out together.
+     */
+    private void write() {
+        sortPhoneAccounts();
+        publishSnapshot();
+        mPersister.markDirty();
     }
 
-    private void write() {
+    /**
+     * Serializes the current state in the binary registry format.  Called by {@link #mPersister}
+     * with the Telecom lock held.
+     */
+    private byte[] serializeState() throws IOException {
+        return PhoneAccountRegistryBinaryFormat.toBytes(mState, mContext);
+    }
+
+    /**
+     * Loads the registry from disk.  Runs on the writer thread; callers which need the registry
+     * before it completes wait in {@link #awaitLoaded()}.
+     */
+    private void load() {
+        final long startTime = SystemClock.elapsedRealtime();
+        boolean migratedFromXml = false;
+        boolean needsWrite = false;
+        State loadedState = null;
         try {
-            sortPhoneAccounts();
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            XmlSerializer serializer = Xml.resolveSerializer(os);
-            writeToXml(mState, serializer, mContext);
-            serializer.flush();
-            new AsyncXmlWriter().execute(os);
-        } catch (IOException e) {
-            Log.e(this, e, "Writing state to XML buffer");
+            State state = readBinaryState();
+            if (state == null) {
+                // Fall back to the XML registry written by earlier versions.
+                state = readXmlState();
+                migratedFromXml = state != null;
+            }
+            if (state != null) {
+                needsWrite = read(state) || migratedFromXml;
+                loadedState = state;
+            }
+        } finally {
+            mLoadedState.complete(loadedState);
+            synchronized (mLock) {
+                installLoadedState();
+            }
+            mLoadDurationMillis = SystemClock.elapsedRealtime() - startTime;
         }
+        Log.i(this, "load: loaded %d accounts in %d ms", mState.accounts.size(),
+                mLoadDurationMillis);
+
+        if (needsWrite) {
+            mPersister.markDirty();
+        }
+        if (migratedFromXml) {
+            // Only drop the XML registry once its contents are safely in the binary file.
+            mPersister.flush(true /* waitForCompletion */);
+            if (mAtomicFile.exists()) {
+                Log.i(this, "load: migrated %d accounts from XML", mState.accounts.size());
+                mLegacyXmlFile.delete();
+            }
+        }
+        mPersister.runOnWriterThread(mPeriodicOrphanCheck, mOrphanCheckIntervalMillis);
     }
 
-    private void read() {
-        final InputStream is;
-        try {
-            is = mAtomicFile.openRead();
-        } catch (FileNotFoundException ex) {
+    /**
+     * Installs the state read by {@link #load()} as the registry, along with its index and
+     * snapshot, then applies the changes deferred until the load.  Called with the Telecom lock
+     * held, by the writer thread or by a caller waiting for the load; only the first call after
+     * the state has been read has any effect.
+     */
+    private void installLoadedState() {
+        if (mLoaded.isDone() || !mLoadedState.isDone()) {
             return;
         }
+        State state = mLoadedState.join();
+        if (state != null) {
+            mState = state;
+        }
+        mAccountIndex.rebuild(mState.accounts);
+        publishSnapshot();
+        mLoaded.complete(null);
 
-        boolean versionChanged = false;
+        List<Runnable> deferredChanges = new ArrayList<>(mDeferredChanges);
+        mDeferredChanges.clear();
+        if (!deferredChanges.isEmpty()) {
+            Log.i(this, "installLoadedState: applying %d deferred changes",
+                    deferredChanges.size());
+        }
+        for (Runnable change : deferredChanges) {
+            change.run();
+        }
+    }
 
+    /**
+     * Blocks until the registry has been loaded, for at most the load timeout.  If the load does
+     * not finish in time the caller proceeds with whatever the registry holds.  Callers which
+     * change the registry use {@link #deferUntilLoaded(Runnable)} instead.
+     *
+     * @return {@code true} if the registry has been loaded.
+     */
+    private boolean awaitLoaded() {
+        if (mLoaded.isDone()) {
+            return true;
+        }
+        final long startTime = SystemClock.elapsedRealtime();
         try {
-            XmlPullParser parser = Xml.resolvePullParser(is);
-            parser.nextTag();
-            mState = readFromXml(parser, mContext);
-            migratePhoneAccountHandle(mState);
-            versionChanged = mState.versionNumber < EXPECTED_STATE_VERSION;
+            if (Thread.holdsLock(mLock)) {
+                // The writer thread needs the Telecom lock to install the state, so install it
+                // here once it has been read rather than waiting out the timeout.
+                mLoadedState.get(mLoadTimeoutMillis, TimeUnit.MILLISECONDS);
+                installLoadedState();
+            } else {
+                mLoaded.get(mLoadTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (TimeoutException e) {
+            mLoadTimeouts.incrementAndGet();
+            Log.w(this, "awaitLoaded: registry not loaded after %d ms", mLoadTimeoutMillis);
+        } catch (ExecutionException e) {
+            Log.e(this, e, "awaitLoaded: registry load failed");
+        } catch (InterruptedException e) {
+            Log.w(this, "awaitLoaded: interrupted");
+            Thread.currentThread().interrupt();
+        }
+        mLoadWaits.incrementAndGet();
+        mLoadWaitMillis.addAndGet(SystemClock.elapsedRealtime() - startTime);
+        return mLoaded.isDone();
+    }
 
-        } catch (IOException | XmlPullParserException e) {
-            Log.e(this, e, "Reading state from XML file");
-            mState = new State();
-        } finally {
-            try {
-                is.close();
-            } catch (IOException e) {
-                Log.e(this, e, "Closing InputStream");
+    /**
+     * Waits for the registry to be loaded, for at most the load timeout, before a change.  The
+     * loaded state replaces the registry, so a change requested before the load completes is
+     * queued and applied once it has been installed instead.
+     *
+     * @param change Makes the change again once the registry has been loaded.
+     * @return {@code true} if the change was deferred, in which case the caller returns without
+     *         making it.
+     */
+    private boolean deferUntilLoaded(Runnable change) {
+        if (awaitLoaded()) {
+            return false;
+        }
+        synchronized (mLock) {
+            if (mLoaded.isDone()) {
+                return false;
             }
+            Log.w(this, "deferUntilLoaded: registry not loaded; deferring change");
+            mDeferredChanges.add(change);
+            mDeferredChangeCount.incrementAndGet();
+            return true;
         }
+    }
+
+    /**
+     * @return A future completed once the registry has been loaded from disk.
+     */
+    @VisibleForTesting
+    public CompletableFuture<Void> getLoadFuture() {
+        return mLoaded;
+    }
+
+    /**
+     * Validates and upgrades state read from disk, ready to be installed by
+     * {@link #installLoadedState()}.  Runs on the writer thread without the Telecom lock, so only
+     * changes the given state and never the registry.
+     *
+     * @param state The state read from disk.
+     * @return {@code true} if the state was changed and needs to be written back.
+     */
+    private boolean read(State state) {
+        migratePhoneAccountHandle(state);
+        boolean versionChanged = state.versionNumber < EXPECTED_STATE_VERSION;
 
         // Verify all of the UserHandles.
         List<PhoneAccount> badAccounts = new ArrayList<>();
-        for (PhoneAccount phoneAccount : mState.accounts) {
+        for (PhoneAccount phoneAccount : state.accounts) {
             UserHandle userHandle = phoneAccount.getAccountHandle().getUserHandle();
             if (userHandle == null) {
                 Log.w(this, "Missing UserHandle for %s", phoneAccount);
@@ -1763,17 +2601,81 @@ public class PhoneAccountRegistrar {
                 badAccounts.add(phoneAccount);
             }
         }
-        mState.accounts.removeAll(badAccounts);
+        state.accounts.removeAll(badAccounts);
+        for (PhoneAccount phoneAccount : badAccounts) {
+            state.iconHashes.remove(phoneAccount.getAccountHandle());
+        }
+
+        // Move icons read inline, such as those migrated from XML, into the icon store.
+        boolean iconsMoved = false;
+        for (int i = 0; i < state.accounts.size(); i++) {
+            PhoneAccount phoneAccount = state.accounts.get(i);
+            if (phoneAccount.getIcon() != null) {
+                try {
+                    state.iconHashes.put(phoneAccount.getAccountHandle(),
+                            mIconStore.put(phoneAccount.getIcon()));
+                    state.accounts.set(i, phoneAccount.toBuilder().setIcon(null).build());
+                    iconsMoved = true;
+                } catch (IOException e) {
+                    Log.e(this, e, "Unable to store icon for %s",
+                            phoneAccount.getAccountHandle());
+                }
+            }
+        }
+        state.iconHashes.keySet().retainAll(state.accounts.stream()
+                .map(PhoneAccount::getAccountHandle)
+                .collect(Collectors.toSet()));
+        int orphanedIcons = mIconStore.retainOnly(new HashSet<>(state.iconHashes.values()));
+        if (orphanedIcons > 0) {
+            Log.i(this, "read: deleted %d orphaned icons", orphanedIcons);
+        }
+        sortPhoneAccounts(state.accounts);
 
-        // If an upgrade occurred, write out the changed data.
-        if (versionChanged || !badAccounts.isEmpty()) {
-            write();
+        // If an upgrade occurred, the changed data needs to be written out.
+        return versionChanged || !badAccounts.isEmpty() || iconsMoved;
+    }
+
+    /**
+     * @return The state read from the binary registry, or {@code null} if there is no readable
+     *         binary registry.
+     */
+    private State readBinaryState() {
+        try {
+            return PhoneAccountRegistryBinaryFormat.fromBytes(mAtomicFile.readFully(), mContext);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(this, e, "Reading state from binary file");
+            return null;
         }
     }
 
-    private static void writeToXml(State state, XmlSerializer serializer, Context context)
-            throws IOException {
-        sStateXml.writeToXml(state, serializer, context);
+    /**
+     * @return The state read from the legacy XML registry, an empty state if it could not be
+     *         parsed, or {@code null} if there is no XML registry.
+     */
+    private State readXmlState() {
+        final InputStream is;
+        try {
+            is = mLegacyXmlFile.openRead();
+        } catch (FileNotFoundException ex) {
+            return null;
+        }
+
+        try {
+            XmlPullParser parser = Xml.resolvePullParser(is);
+            parser.nextTag();
+            return readFromXml(parser, mContext);
+        } catch (IOException | XmlPullParserException e) {
+            Log.e(this, e, "Reading state from XML file");
+            return new State();
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                Log.e(this, e, "Closing InputStream");
+            }
+        }
     }
 
     private static State readFromXml(XmlPullParser parser, Context context)
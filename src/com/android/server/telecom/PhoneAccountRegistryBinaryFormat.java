@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.annotation.Nullable;
+import android.content.ComponentName;
+import android.content.Context;
+import android.graphics.drawable.Icon;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.telecom.Log;
+import android.telecom.PhoneAccount;
+import android.telecom.PhoneAccountHandle;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.telecom.PhoneAccountRegistrar.DefaultPhoneAccountHandle;
+import com.android.server.telecom.PhoneAccountRegistrar.State;
+import com.android.server.telecom.nano.PhoneAccountRegistryProto;
+
+import com.google.protobuf.nano.MessageNano;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Converts the {@link PhoneAccountRegistrar} {@link State} to and from the binary format defined
+ * in {@code phone_account_registry.proto}.  Icons are normally referenced by the hash of their
+ * blob in the {@link PhoneAccountIconStore}, with {@link State#iconHashes} carrying the mapping;
+ * an account which still holds its icon has it stored inline as raw bytes.  No per-field tags need
+ * to be parsed, which keeps the file small and fast to load at boot.
+ * <p>
+ * Unlike the XML format this does not carry any upgrade logic for old state versions; older
+ * registries are read through the XML reader, which upgrades them, and then written in this
+ * format.
+ */
+@VisibleForTesting
+public class PhoneAccountRegistryBinaryFormat {
+    /** Version of the binary layout itself, independent of the state version. */
+    public static final int FORMAT_VERSION = 1;
+
+    private PhoneAccountRegistryBinaryFormat() {
+    }
+
+    /**
+     * Serializes the state.
+     *
+     * @param state The state to serialize.
+     * @param context The context, used to map users to serial numbers.
+     * @return The serialized state.
+     * @throws IOException if an icon cannot be serialized.
+     */
+    public static byte[] toBytes(State state, Context context) throws IOException {
+        UserManager userManager = UserManager.get(context);
+        PhoneAccountRegistryProto.PhoneAccountRegistry registry =
+                new PhoneAccountRegistryProto.PhoneAccountRegistry()
+                        .setFormatVersion(FORMAT_VERSION)
+                        .setStateVersion(PhoneAccountRegistrar.EXPECTED_STATE_VERSION);
+
+        List<PhoneAccountRegistryProto.DefaultPhoneAccountHandle> defaults = new ArrayList<>();
+        for (DefaultPhoneAccountHandle defaultHandle
+                : state.defaultOutgoingAccountHandles.values()) {
+            long serialNumber = userManager.getSerialNumberForUser(defaultHandle.userHandle);
+            if (serialNumber == -1) {
+                continue;
+            }
+            PhoneAccountRegistryProto.DefaultPhoneAccountHandle proto =
+                    new PhoneAccountRegistryProto.DefaultPhoneAccountHandle()
+                            .setUserSerialNumber(serialNumber)
+                            .setGroupId(defaultHandle.groupId == null ? ""
+                                    : defaultHandle.groupId);
+            proto.accountHandle = toProto(defaultHandle.phoneAccountHandle, userManager);
+            defaults.add(proto);
+        }
+        registry.defaultOutgoing = defaults.toArray(
+                new PhoneAccountRegistryProto.DefaultPhoneAccountHandle[defaults.size()]);
+
+        List<PhoneAccountRegistryProto.PhoneAccount> accounts = new ArrayList<>();
+        for (PhoneAccount account : state.accounts) {
+            PhoneAccountRegistryProto.PhoneAccount proto = toProto(account, userManager);
+            String iconHash = state.iconHashes.get(account.getAccountHandle());
+            if (!proto.hasIcon() && iconHash != null) {
+                proto.setIconHash(iconHash);
+            }
+            accounts.add(proto);
+        }
+        registry.accounts = accounts.toArray(
+                new PhoneAccountRegistryProto.PhoneAccount[accounts.size()]);
+
+        return MessageNano.toByteArray(registry);
+    }
+
+    /**
+     * Deserializes state previously written by {@link #toBytes(State, Context)}.
+     *
+     * @param data The serialized state.
+     * @param context The context, used to map serial numbers to users.
+     * @return The state.
+     * @throws IOException if the data is not a valid registry.
+     */
+    public static State fromBytes(byte[] data, Context context) throws IOException {
+        PhoneAccountRegistryProto.PhoneAccountRegistry registry =
+                PhoneAccountRegistryProto.PhoneAccountRegistry.parseFrom(data);
+        if (registry.getFormatVersion() > FORMAT_VERSION) {
+            throw new IOException("Unsupported registry format version "
+                    + registry.getFormatVersion());
+        }
+        UserManager userManager = UserManager.get(context);
+
+        State state = new State();
+        state.versionNumber = registry.getStateVersion();
+        for (PhoneAccountRegistryProto.DefaultPhoneAccountHandle proto
+                : registry.defaultOutgoing) {
+            UserHandle userHandle = userManager.getUserForSerialNumber(
+                    proto.getUserSerialNumber());
+            PhoneAccountHandle accountHandle = fromProto(proto.accountHandle, userManager);
+            if (userHandle != null && accountHandle != null) {
+                state.defaultOutgoingAccountHandles.put(userHandle,
+                        new DefaultPhoneAccountHandle(userHandle, accountHandle,
+                                proto.getGroupId()));
+            }
+        }
+        for (PhoneAccountRegistryProto.PhoneAccount proto : registry.accounts) {
+            PhoneAccount account = fromProto(proto, userManager);
+            if (account != null) {
+                state.accounts.add(account);
+                if (proto.hasIconHash()) {
+                    state.iconHashes.put(account.getAccountHandle(), proto.getIconHash());
+                }
+            }
+        }
+        return state;
+    }
+
+    private static PhoneAccountRegistryProto.PhoneAccountHandle toProto(
+            PhoneAccountHandle handle, UserManager userManager) {
+        PhoneAccountRegistryProto.PhoneAccountHandle proto =
+                new PhoneAccountRegistryProto.PhoneAccountHandle();
+        if (handle.getComponentName() != null) {
+            proto.setComponentName(handle.getComponentName().flattenToString());
+        }
+        if (handle.getId() != null) {
+            proto.setId(handle.getId());
+        }
+        if (handle.getUserHandle() != null) {
+            proto.setUserSerialNumber(userManager.getSerialNumberForUser(handle.getUserHandle()));
+        }
+        return proto;
+    }
+
+    private static @Nullable PhoneAccountHandle fromProto(
+            @Nullable PhoneAccountRegistryProto.PhoneAccountHandle proto,
+            UserManager userManager) {
+        if (proto == null || !proto.hasComponentName()) {
+            return null;
+        }
+        UserHandle userHandle = proto.hasUserSerialNumber()
+                ? userManager.getUserForSerialNumber(proto.getUserSerialNumber()) : null;
+        return new PhoneAccountHandle(
+                ComponentName.unflattenFromString(proto.getComponentName()),
+                proto.hasId() ? proto.getId() : null,
+                userHandle);
+    }
+
+    private static PhoneAccountRegistryProto.PhoneAccount toProto(PhoneAccount account,
+            UserManager userManager) throws IOException {
+        PhoneAccountRegistryProto.PhoneAccount proto =
+                new PhoneAccountRegistryProto.PhoneAccount()
+                        .setCapabilities(account.getCapabilities())
+                        .setHighlightColor(account.getHighlightColor())
+                        .setEnabled(account.isEnabled())
+                        .setSupportedAudioRoutes(account.getSupportedAudioRoutes());
+        proto.accountHandle = toProto(account.getAccountHandle(), userManager);
+        if (account.getAddress() != null) {
+            proto.setAddress(account.getAddress().toString());
+        }
+        if (account.getSubscriptionAddress() != null) {
+            proto.setSubscriptionAddress(account.getSubscriptionAddress().toString());
+        }
+        if (account.getIcon() != null) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            account.getIcon().writeToStream(stream);
+            proto.setIcon(stream.toByteArray());
+        }
+        if (account.getLabel() != null) {
+            proto.setLabel(account.getLabel().toString());
+        }
+        if (account.getShortDescription() != null) {
+            proto.setShortDescription(account.getShortDescription().toString());
+        }
+        List<String> schemes = account.getSupportedUriSchemes();
+        if (schemes != null) {
+            proto.supportedUriSchemes = schemes.toArray(new String[schemes.size()]);
+        }
+        proto.extras = toProto(account.getExtras());
+        return proto;
+    }
+
+    private static @Nullable PhoneAccount fromProto(PhoneAccountRegistryProto.PhoneAccount proto,
+            UserManager userManager) {
+        PhoneAccountHandle handle = fromProto(proto.accountHandle, userManager);
+        if (handle == null) {
+            return null;
+        }
+        PhoneAccount.Builder builder = PhoneAccount.builder(handle,
+                        proto.hasLabel() ? proto.getLabel() : null)
+                .setAddress(proto.hasAddress() ? Uri.parse(proto.getAddress()) : null)
+                .setSubscriptionAddress(proto.hasSubscriptionAddress()
+                        ? Uri.parse(proto.getSubscriptionAddress()) : null)
+                .setCapabilities(proto.getCapabilities())
+                .setSupportedAudioRoutes(proto.getSupportedAudioRoutes())
+                .setShortDescription(proto.hasShortDescription()
+                        ? proto.getShortDescription() : null)
+                .setSupportedUriSchemes(Arrays.asList(proto.supportedUriSchemes))
+                .setHighlightColor(proto.getHighlightColor())
+                .setExtras(fromProto(proto.extras))
+                .setIsEnabled(proto.getEnabled());
+        if (proto.hasIcon()) {
+            try {
+                builder.setIcon(Icon.createFromStream(new ByteArrayInputStream(proto.getIcon())));
+            } catch (IOException | IllegalArgumentException e) {
+                Log.e(PhoneAccountRegistryBinaryFormat.class, e, "Could not read icon for %s",
+                        handle);
+            }
+        }
+        return builder.build();
+    }
+
+    private static PhoneAccountRegistryProto.Extra[] toProto(@Nullable Bundle extras) {
+        List<PhoneAccountRegistryProto.Extra> protos = new ArrayList<>();
+        if (extras != null) {
+            for (String key : extras.keySet()) {
+                Object value = extras.get(key);
+                PhoneAccountRegistryProto.Extra proto =
+                        new PhoneAccountRegistryProto.Extra().setKey(key);
+                if (value instanceof String) {
+                    proto.setValueType(PhoneAccountRegistryProto.Extra.VALUE_TYPE_STRING)
+                            .setStringValue((String) value);
+                } else if (value instanceof Integer) {
+                    proto.setValueType(PhoneAccountRegistryProto.Extra.VALUE_TYPE_INTEGER)
+                            .setIntValue((Integer) value);
+                } else if (value instanceof Boolean) {
+                    proto.setValueType(PhoneAccountRegistryProto.Extra.VALUE_TYPE_BOOLEAN)
+                            .setBoolValue((Boolean) value);
+                } else {
+                    // Same restriction as the XML format.
+                    continue;
+                }
+                protos.add(proto);
+            }
+        }
+        return protos.toArray(new PhoneAccountRegistryProto.Extra[protos.size()]);
+    }
+
+    private static @Nullable Bundle fromProto(PhoneAccountRegistryProto.Extra[] protos) {
+        if (protos.length == 0) {
+            return null;
+        }
+        Bundle extras = new Bundle();
+        for (PhoneAccountRegistryProto.Extra proto : protos) {
+            switch (proto.getValueType()) {
+                case PhoneAccountRegistryProto.Extra.VALUE_TYPE_STRING:
+                    extras.putString(proto.getKey(), proto.getStringValue());
+                    break;
+                case PhoneAccountRegistryProto.Extra.VALUE_TYPE_INTEGER:
+                    extras.putInt(proto.getKey(), proto.getIntValue());
+                    break;
+                case PhoneAccountRegistryProto.Extra.VALUE_TYPE_BOOLEAN:
+                    extras.putBoolean(proto.getKey(), proto.getBoolValue());
+                    break;
+                default:
+                    Log.w(PhoneAccountRegistryBinaryFormat.class, "Invalid extra type %d",
+                            proto.getValueType());
+            }
+        }
+        return extras;
+    }
+}
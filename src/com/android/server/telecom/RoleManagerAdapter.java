@@ -79,6 +79,13 @@ public interface RoleManagerAdapter {
      */
     void observeDefaultDialerApp(Executor executor, IntConsumer observer);
 
+    /**
+     * Observe changes to the package name of the app which fills the
+     * {@link android.app.role.RoleManager} {@link android.app.role.RoleManager#ROLE_CALL_SCREENING}
+     * role.
+     */
+    void observeCallScreeningApp(Executor executor, IntConsumer observer);
+
     /**
      * Override the {@link android.app.role.RoleManager} default dialer app with another value.
      * Used for testing purposes only.
@@ -73,6 +73,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 // TODO: Needed for move to system service: import com.android.internal.R;
 
@@ -235,18 +236,18 @@ public class TelecomServiceImpl {
                         "Requires READ_PHONE_STATE permission.")) {
                     throw new SecurityException("Requires READ_PHONE_STATE permission.");
                 }
-                synchronized (mLock) {
-                    final UserHandle callingUserHandle = Binder.getCallingUserHandle();
-                    long token = Binder.clearCallingIdentity();
-                    try {
-                        return new ParceledListSlice<>(mPhoneAccountRegistrar
-                                .getSelfManagedPhoneAccounts(callingUserHandle));
-                    } catch (Exception e) {
-                        Log.e(this, e, "getSelfManagedPhoneAccounts");
-                        throw e;
-                    } finally {
-                        Binder.restoreCallingIdentity(token);
-                    }
+                // Reads a snapshot of the registry rather than taking the Telecom lock.
+                final UserHandle callingUserHandle = Binder.getCallingUserHandle();
+                long token = Binder.clearCallingIdentity();
+                try {
+                    return new ParceledListSlice<>(mPhoneAccountRegistrar
+                            .getSelfManagedPhoneAccounts(mPhoneAccountRegistrar.getSnapshot(),
+                                    callingUserHandle));
+                } catch (Exception e) {
+                    Log.e(this, e, "getSelfManagedPhoneAccounts");
+                    throw e;
+                } finally {
+                    Binder.restoreCallingIdentity(token);
                 }
             } finally {
                 Log.endSession();
@@ -369,37 +370,36 @@ public class TelecomServiceImpl {
                         "getPhoneAccount: invalid calling package");
                 throw se;
             }
-            synchronized (mLock) {
-                final UserHandle callingUserHandle = Binder.getCallingUserHandle();
-                if (CompatChanges.isChangeEnabled(
-                        TelecomManager.ENABLE_GET_PHONE_ACCOUNT_PERMISSION_PROTECTION,
-                        callingPackage, Binder.getCallingUserHandle())) {
-                    if (Binder.getCallingUid() != Process.SHELL_UID &&
-                            !canGetPhoneAccount(callingPackage, accountHandle)) {
-                        SecurityException e = new SecurityException("getPhoneAccount API requires" +
-                                "READ_PHONE_NUMBERS");
-                        Log.e(this, e, "getPhoneAccount %s", accountHandle);
-                        throw e;
-                    }
-                }
-                long token = Binder.clearCallingIdentity();
-                try {
-                    Log.startSession("TSI.gPA");
-                    // In ideal case, we should not resolve the handle across profiles. But given
-                    // the fact that profile's call is handled by its parent user's in-call UI,
-                    // parent user's in call UI need to be able to get phone account from the
-                    // profile's phone account handle.
-                    return mPhoneAccountRegistrar
-                            .getPhoneAccount(accountHandle, callingUserHandle,
-                                    /* acrossProfiles */ true);
-                } catch (Exception e) {
+            final UserHandle callingUserHandle = Binder.getCallingUserHandle();
+            if (CompatChanges.isChangeEnabled(
+                    TelecomManager.ENABLE_GET_PHONE_ACCOUNT_PERMISSION_PROTECTION,
+                    callingPackage, Binder.getCallingUserHandle())) {
+                if (Binder.getCallingUid() != Process.SHELL_UID &&
+                        !canGetPhoneAccount(callingPackage, accountHandle)) {
+                    SecurityException e = new SecurityException("getPhoneAccount API requires" +
+                            "READ_PHONE_NUMBERS");
                     Log.e(this, e, "getPhoneAccount %s", accountHandle);
                     throw e;
-                } finally {
-                    Binder.restoreCallingIdentity(token);
-                    Log.endSession();
                 }
             }
+            // Reads a snapshot of the registry rather than taking the Telecom lock.
+            long token = Binder.clearCallingIdentity();
+            try {
+                Log.startSession("TSI.gPA");
+                // In ideal case, we should not resolve the handle across profiles. But given
+                // the fact that profile's call is handled by its parent user's in-call UI,
+                // parent user's in call UI need to be able to get phone account from the
+                // profile's phone account handle.
+                return mPhoneAccountRegistrar.getPhoneAccountWithIcon(mPhoneAccountRegistrar
+                        .getPhoneAccount(mPhoneAccountRegistrar.getSnapshot(), accountHandle,
+                                callingUserHandle, /* acrossProfiles */ true));
+            } catch (Exception e) {
+                Log.e(this, e, "getPhoneAccount %s", accountHandle);
+                throw e;
+            } finally {
+                Binder.restoreCallingIdentity(token);
+                Log.endSession();
+            }
         }
 
         @Override
@@ -415,15 +415,17 @@ public class TelecomServiceImpl {
                     throw e;
                 }
 
-                synchronized (mLock) {
-                    try {
-                        // This list is pre-filtered for the calling user.
-                        return getAllPhoneAccounts().getList().size();
-                    } catch (Exception e) {
-                        Log.e(this, e, "getAllPhoneAccountsCount");
-                        throw e;
-
-                    }
+                final UserHandle callingUserHandle = Binder.getCallingUserHandle();
+                long token = Binder.clearCallingIdentity();
+                try {
+                    // This list is pre-filtered for the calling user.
+                    return mPhoneAccountRegistrar.getAllPhoneAccounts(
+                            mPhoneAccountRegistrar.getSnapshot(), callingUserHandle).size();
+                } catch (Exception e) {
+                    Log.e(this, e, "getAllPhoneAccountsCount");
+                    throw e;
+                } finally {
+                    Binder.restoreCallingIdentity(token);
                 }
             } finally {
                 Log.endSession();
@@ -432,32 +434,34 @@ public class TelecomServiceImpl {
 
         @Override
         public ParceledListSlice<PhoneAccount> getAllPhoneAccounts() {
-            synchronized (mLock) {
+            try {
+                Log.startSession("TSI.gAPA");
                 try {
-                    Log.startSession("TSI.gAPA");
-                    try {
-                        enforceModifyPermission(
-                                "getAllPhoneAccounts requires MODIFY_PHONE_STATE permission.");
-                    } catch (SecurityException e) {
-                        EventLog.writeEvent(0x534e4554, "62347125", Binder.getCallingUid(),
-                                "getAllPhoneAccounts");
-                        throw e;
-                    }
+                    enforceModifyPermission(
+                            "getAllPhoneAccounts requires MODIFY_PHONE_STATE permission.");
+                } catch (SecurityException e) {
+                    EventLog.writeEvent(0x534e4554, "62347125", Binder.getCallingUid(),
+                            "getAllPhoneAccounts");
+                    throw e;
+                }
 
-                    final UserHandle callingUserHandle = Binder.getCallingUserHandle();
-                    long token = Binder.clearCallingIdentity();
-                    try {
-                        return new ParceledListSlice<>(mPhoneAccountRegistrar
-                                .getAllPhoneAccounts(callingUserHandle));
-                    } catch (Exception e) {
-                        Log.e(this, e, "getAllPhoneAccounts");
-                        throw e;
-                    } finally {
-                        Binder.restoreCallingIdentity(token);
-                    }
+                // Reads a snapshot of the registry rather than taking the Telecom lock.
+                final UserHandle callingUserHandle = Binder.getCallingUserHandle();
+                long token = Binder.clearCallingIdentity();
+                try {
+                    return new ParceledListSlice<>(mPhoneAccountRegistrar
+                            .getAllPhoneAccounts(mPhoneAccountRegistrar.getSnapshot(),
+                                    callingUserHandle).stream()
+                            .map(mPhoneAccountRegistrar::getPhoneAccountWithIcon)
+                            .collect(Collectors.toList()));
+                } catch (Exception e) {
+                    Log.e(this, e, "getAllPhoneAccounts");
+                    throw e;
                 } finally {
-                    Log.endSession();
+                    Binder.restoreCallingIdentity(token);
                 }
+            } finally {
+                Log.endSession();
             }
         }
 
@@ -545,72 +549,23 @@ public class TelecomServiceImpl {
         public void registerPhoneAccount(PhoneAccount account) {
             try {
                 Log.startSession("TSI.rPA");
-                synchronized (mLock) {
-                    try {
-                        enforcePhoneAccountModificationForPackage(
-                                account.getAccountHandle().getComponentName().getPackageName());
-                        if (account.hasCapabilities(PhoneAccount.CAPABILITY_SELF_MANAGED)) {
-                            enforceRegisterSelfManaged();
-                            if (account.hasCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER) ||
-                                    account.hasCapabilities(
-                                            PhoneAccount.CAPABILITY_CONNECTION_MANAGER) ||
-                                    account.hasCapabilities(
-                                            PhoneAccount.CAPABILITY_SIM_SUBSCRIPTION)) {
-                                throw new SecurityException("Self-managed ConnectionServices " +
-                                        "cannot also be call capable, connection managers, or " +
-                                        "SIM accounts.");
-                            }
-
-                            // For self-managed CS, the phone account registrar will override the
-                            // label the user has set for the phone account.  This ensures the
-                            // self-managed cs implementation can't spoof their app name.
-                        }
-                        if (account.hasCapabilities(PhoneAccount.CAPABILITY_SIM_SUBSCRIPTION)) {
-                            enforceRegisterSimSubscriptionPermission();
-                        }
-                        if (account.hasCapabilities(PhoneAccount.CAPABILITY_MULTI_USER)) {
-                            enforceRegisterMultiUser();
-                        }
-                        // These capabilities are for SIM-based accounts only, so only the platform
-                        // and carrier-designated SIM call manager can register accounts with these
-                        // capabilities.
-                        if (account.hasCapabilities(
-                                        PhoneAccount.CAPABILITY_SUPPORTS_VOICE_CALLING_INDICATIONS)
-                                || account.hasCapabilities(
-                                        PhoneAccount.CAPABILITY_VOICE_CALLING_AVAILABLE)) {
-                            enforceRegisterVoiceCallingIndicationCapabilities(account);
-                        }
-                        Bundle extras = account.getExtras();
-                        if (extras != null
-                                && extras.getBoolean(PhoneAccount.EXTRA_SKIP_CALL_FILTERING)) {
-                            enforceRegisterSkipCallFiltering();
-                        }
-                        final int callingUid = Binder.getCallingUid();
-                        if (callingUid != Process.SHELL_UID) {
-                            enforceUserHandleMatchesCaller(account.getAccountHandle());
-                        }
-
-                        if (TextUtils.isEmpty(account.getGroupId())
-                                && mContext.checkCallingOrSelfPermission(MODIFY_PHONE_STATE)
-                                != PackageManager.PERMISSION_GRANTED) {
-                            Log.w(this, "registerPhoneAccount - attempt to set a"
-                                    + " group from a non-system caller.");
-                            // Not permitted to set group, so null it out.
-                            account = new PhoneAccount.Builder(account)
-                                    .setGroupId(null)
-                                    .build();
-                        }
-
+                try {
+                    synchronized (mLock) {
+                        account = enforceRegisterPhoneAccountPermissions(account);
+                    }
+                    // Storing the icon hashes and writes it, so it is done without the lock.
+                    mPhoneAccountRegistrar.storeIcon(account);
+                    synchronized (mLock) {
                         final long token = Binder.clearCallingIdentity();
                         try {
                             mPhoneAccountRegistrar.registerPhoneAccount(account);
                         } finally {
                             Binder.restoreCallingIdentity(token);
                         }
-                    } catch (Exception e) {
-                        Log.e(this, e, "registerPhoneAccount %s", account);
-                        throw e;
                     }
+                } catch (Exception e) {
+                    Log.e(this, e, "registerPhoneAccount %s", account);
+                    throw e;
                 }
             } finally {
                 Log.endSession();
@@ -2354,6 +2309,70 @@ public class TelecomServiceImpl {
         }
     }
 
+    /**
+     * Checks that the caller may register the given account.
+     *
+     * @param account The account to register.
+     * @return The account to register, which may have fields the caller may not set cleared.
+     * @throws SecurityException if the caller may not register the account.
+     */
+    private PhoneAccount enforceRegisterPhoneAccountPermissions(PhoneAccount account) {
+        enforcePhoneAccountModificationForPackage(
+                account.getAccountHandle().getComponentName().getPackageName());
+        if (account.hasCapabilities(PhoneAccount.CAPABILITY_SELF_MANAGED)) {
+            enforceRegisterSelfManaged();
+            if (account.hasCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER) ||
+                    account.hasCapabilities(
+                            PhoneAccount.CAPABILITY_CONNECTION_MANAGER) ||
+                    account.hasCapabilities(
+                            PhoneAccount.CAPABILITY_SIM_SUBSCRIPTION)) {
+                throw new SecurityException("Self-managed ConnectionServices " +
+                        "cannot also be call capable, connection managers, or " +
+                        "SIM accounts.");
+            }
+
+            // For self-managed CS, the phone account registrar will override the
+            // label the user has set for the phone account.  This ensures the
+            // self-managed cs implementation can't spoof their app name.
+        }
+        if (account.hasCapabilities(PhoneAccount.CAPABILITY_SIM_SUBSCRIPTION)) {
+            enforceRegisterSimSubscriptionPermission();
+        }
+        if (account.hasCapabilities(PhoneAccount.CAPABILITY_MULTI_USER)) {
+            enforceRegisterMultiUser();
+        }
+        // These capabilities are for SIM-based accounts only, so only the platform
+        // and carrier-designated SIM call manager can register accounts with these
+        // capabilities.
+        if (account.hasCapabilities(
+                        PhoneAccount.CAPABILITY_SUPPORTS_VOICE_CALLING_INDICATIONS)
+                || account.hasCapabilities(
+                        PhoneAccount.CAPABILITY_VOICE_CALLING_AVAILABLE)) {
+            enforceRegisterVoiceCallingIndicationCapabilities(account);
+        }
+        Bundle extras = account.getExtras();
+        if (extras != null
+                && extras.getBoolean(PhoneAccount.EXTRA_SKIP_CALL_FILTERING)) {
+            enforceRegisterSkipCallFiltering();
+        }
+        final int callingUid = Binder.getCallingUid();
+        if (callingUid != Process.SHELL_UID) {
+            enforceUserHandleMatchesCaller(account.getAccountHandle());
+        }
+
+        if (TextUtils.isEmpty(account.getGroupId())
+                && mContext.checkCallingOrSelfPermission(MODIFY_PHONE_STATE)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.w(this, "registerPhoneAccount - attempt to set a"
+                    + " group from a non-system caller.");
+            // Not permitted to set group, so null it out.
+            account = new PhoneAccount.Builder(account)
+                    .setGroupId(null)
+                    .build();
+        }
+        return account;
+    }
+
     private void enforcePhoneAccountModificationForPackage(String packageName) {
         // TODO: Use a new telecomm permission for this instead of reusing modify.
 
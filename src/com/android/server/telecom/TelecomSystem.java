@@ -20,6 +20,7 @@ import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.telecom.bluetooth.BluetoothDeviceManager;
 import com.android.server.telecom.bluetooth.BluetoothRouteManager;
 import com.android.server.telecom.bluetooth.BluetoothStateReceiver;
+import com.android.server.telecom.callfiltering.CallFilteringExecutor;
 import com.android.server.telecom.components.UserCallIntentProcessor;
 import com.android.server.telecom.components.UserCallIntentProcessorFactory;
 import com.android.server.telecom.ui.AudioProcessingNotification;
@@ -252,7 +253,10 @@ public class TelecomSystem {
 
             CallerInfoLookupHelper callerInfoLookupHelper =
                     new CallerInfoLookupHelper(context, callerInfoAsyncQueryFactory,
-                            mContactsAsyncHelper, mLock);
+                            mContactsAsyncHelper, mLock, clockProxy,
+                            Timeouts.getCallerInfoCacheTtlMillis(context.getContentResolver()),
+                            Timeouts.getCallerInfoPrefetchTtlMillis(
+                                    context.getContentResolver()));
 
             EmergencyCallHelper emergencyCallHelper = new EmergencyCallHelper(mContext,
                     defaultDialerCache, timeoutsAdapter);
@@ -348,7 +352,9 @@ public class TelecomSystem {
                     inCallControllerFactory,
                     callDiagnosticServiceController,
                     roleManagerAdapter,
-                    toastFactory);
+                    toastFactory,
+                    new CallFilteringExecutor("CallFiltering",
+                            CallFilteringExecutor.DEFAULT_THREAD_COUNT));
 
             mIncomingCallNotifier = incomingCallNotifier;
             incomingCallNotifier.setCallsManagerProxy(new IncomingCallNotifier.CallsManagerProxy() {
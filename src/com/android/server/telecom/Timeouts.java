@@ -237,6 +237,86 @@ public final class Timeouts {
         return get(contentResolver, "call_diagnostic_service_timeout", 2000L /* 2 sec */);
     }
 
+    /**
+     * Returns the window within which changes to the phone account registry are coalesced into a
+     * single write of the registry file.
+     */
+    public static long getPhoneAccountRegistrarWriteCoalesceMillis(
+            ContentResolver contentResolver) {
+        return get(contentResolver, "phone_account_registrar_write_coalesce_millis",
+                250L /* 250 ms */);
+    }
+
+    /**
+     * Returns the longest time a caller needing phone accounts waits for the phone account
+     * registry to finish loading at startup.
+     */
+    public static long getPhoneAccountRegistrarLoadTimeoutMillis(
+            ContentResolver contentResolver) {
+        return get(contentResolver, "phone_account_registrar_load_timeout_millis",
+                3000L /* 3 sec */);
+    }
+
+    /**
+     * Returns the interval between background checks for phone accounts whose package or user was
+     * removed without the registry being notified.
+     */
+    public static long getPhoneAccountOrphanCheckIntervalMillis(
+            ContentResolver contentResolver) {
+        return get(contentResolver, "phone_account_orphan_check_interval_millis",
+                24 * 60 * 60 * 1000L /* 1 day */);
+    }
+
+    /**
+     * Returns the duration above which a callback to a call or calls manager listener is logged as
+     * slow.  These callbacks are generally made while holding the Telecom lock.
+     */
+    public static long getSlowListenerCallbackThresholdMillis(ContentResolver contentResolver) {
+        return get(contentResolver, "slow_listener_callback_threshold_millis",
+                ListenerLatencyStats.DEFAULT_SLOW_CALLBACK_THRESHOLD_MILLIS);
+    }
+
+    /**
+     * Returns how long the result of filtering an incoming call is reused for further calls from
+     * the same number; 0 disables the reuse.
+     */
+    public static long getCallFilteringResultCacheTtlMillis(ContentResolver contentResolver) {
+        return get(contentResolver, "call_filtering_result_cache_ttl_millis",
+                10000L /* 10 sec */);
+    }
+
+    /**
+     * Returns how long a call screening service stays bound after it was last used, so that the
+     * next incoming call does not wait for a bind; 0 unbinds it right away.
+     */
+    public static long getCallScreeningWarmConnectionIdleMillis(ContentResolver contentResolver) {
+        return get(contentResolver, "call_screening_warm_connection_idle_millis",
+                30000L /* 30 sec */);
+    }
+
+    /**
+     * Returns how long the caller info and contact photo of a handle are kept after they were
+     * looked up, unless the contacts change first; 0 disables keeping them.
+     */
+    public static long getCallerInfoCacheTtlMillis(ContentResolver contentResolver) {
+        return get(contentResolver, "caller_info_cache_ttl_millis", 300000L /* 5 min */);
+    }
+
+    /**
+     * Returns how long the caller info of a prefetched handle is kept.
+     */
+    public static long getCallerInfoPrefetchTtlMillis(ContentResolver contentResolver) {
+        return get(contentResolver, "caller_info_prefetch_ttl_millis", 3600000L /* 1 hour */);
+    }
+
+    /**
+     * Returns how long after an incoming call a further incoming call belongs to the same burst
+     * of calls; 0 disables burst detection.
+     */
+    public static long getIncomingCallBatchWindowMillis(ContentResolver contentResolver) {
+        return get(contentResolver, "incoming_call_batch_window_millis", 20L /* 20 ms */);
+    }
+
     public static long getCallStartAppOpDebounceIntervalMillis() {
         return DeviceConfig.getLong(DeviceConfig.NAMESPACE_PRIVACY, "app_op_debounce_time", 250L);
     }
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.telecom.Log;
+import android.util.AtomicFile;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persists a piece of Telecom state to an {@link AtomicFile} on a dedicated writer thread.
+ * <p>
+ * Callers report that the state changed via {@link #markDirty()}.  All notifications received
+ * within the coalescing window result in a single serialization of the state, taken under the
+ * Telecom lock on the writer thread, followed by a single file write.  {@link #flush(boolean)}
+ * bypasses the window and is used when the state must reach disk promptly, such as on shutdown.
+ */
+public class WriteBehindPersister {
+    /**
+     * Produces the bytes to persist.  Always invoked while holding the Telecom lock.
+     */
+    public interface StateSerializer {
+        byte[] serialize() throws IOException;
+
+        /**
+         * Called with the Telecom lock held, right after {@link #serialize()}.
+         *
+         * @return A task to run on the writer thread once the serialized bytes have been written,
+         *         or {@code null}.  It is not run if the write fails.
+         */
+        default Runnable getOnWrittenTask() {
+            return null;
+        }
+    }
+
+    private static final long FLUSH_TIMEOUT_MILLIS = 2000L;
+
+    private final String mName;
+    private final AtomicFile mAtomicFile;
+    private final StateSerializer mSerializer;
+    private final TelecomSystem.SyncRoot mLock;
+    private final long mCoalesceWindowMillis;
+    private final Handler mHandler;
+    private final AtomicLong mDirtyCount = new AtomicLong();
+    private final AtomicLong mWriteCount = new AtomicLong();
+    private final AtomicLong mWritesAvoided = new AtomicLong();
+    private volatile long mLastWriteDurationMillis = -1;
+    private boolean mWritePending = false;
+
+    private final Runnable mCoalescedWrite = new Runnable() {
+        @Override
+        public void run() {
+            byte[] data;
+            Runnable onWritten;
+            synchronized (mLock) {
+                synchronized (WriteBehindPersister.this) {
+                    // Cleared before serializing so that a change made after this point schedules
+                    // another write rather than being lost.
+                    mWritePending = false;
+                }
+                data = serialize();
+                onWritten = mSerializer.getOnWrittenTask();
+            }
+            writeToFile(data, onWritten);
+        }
+    };
+
+    public WriteBehindPersister(String name, AtomicFile atomicFile, StateSerializer serializer,
+            TelecomSystem.SyncRoot lock, long coalesceWindowMillis) {
+        mName = name;
+        mAtomicFile = atomicFile;
+        mSerializer = serializer;
+        mLock = lock;
+        mCoalesceWindowMillis = coalesceWindowMillis;
+        HandlerThread thread = new HandlerThread(name);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Notes that the state changed and schedules a write, unless one is already pending.
+     */
+    public void markDirty() {
+        mDirtyCount.incrementAndGet();
+        synchronized (this) {
+            if (mWritePending) {
+                mWritesAvoided.incrementAndGet();
+                return;
+            }
+            mWritePending = true;
+        }
+        mHandler.postDelayed(mCoalescedWrite, mCoalesceWindowMillis);
+    }
+
+    /**
+     * Runs a task on the writer thread.  Writes scheduled after this call are performed after the
+     * task completes, which makes the writer thread the place to load the persisted state.
+     *
+     * @param task The task to run.
+     */
+    public void runOnWriterThread(Runnable task) {
+        mHandler.post(task);
+    }
+
+    /**
+     * Runs a task on the writer thread after a delay.
+     *
+     * @param task The task to run.
+     * @param delayMillis How long to wait before running the task.
+     */
+    public void runOnWriterThread(Runnable task, long delayMillis) {
+        mHandler.postDelayed(task, delayMillis);
+    }
+
+    /**
+     * Writes any pending change immediately instead of waiting out the coalescing window.  The
+     * state is serialized on the calling thread.  When called on the writer thread the file is
+     * written before this method returns.
+     *
+     * @param waitForCompletion {@code true} to block until the file has been written, bounded by
+     *                          {@link #FLUSH_TIMEOUT_MILLIS}.  Must not be {@code true} when the
+     *                          caller holds the Telecom lock.
+     */
+    public void flush(boolean waitForCompletion) {
+        final boolean onWriterThread = Looper.myLooper() == mHandler.getLooper();
+        final boolean hadPendingWrite;
+        synchronized (this) {
+            hadPendingWrite = mWritePending;
+            mWritePending = false;
+        }
+        if (hadPendingWrite) {
+            mHandler.removeCallbacks(mCoalescedWrite);
+            final byte[] data;
+            final Runnable onWritten;
+            synchronized (mLock) {
+                data = serialize();
+                onWritten = mSerializer.getOnWrittenTask();
+            }
+            if (onWriterThread) {
+                writeToFile(data, onWritten);
+            } else {
+                mHandler.postAtFrontOfQueue(() -> writeToFile(data, onWritten));
+            }
+        }
+        if (!waitForCompletion || onWriterThread) {
+            return;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        mHandler.post(latch::countDown);
+        try {
+            if (!latch.await(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                Log.w(this, "flush: %s timed out waiting for write", mName);
+            }
+        } catch (InterruptedException e) {
+            Log.w(this, "flush: %s interrupted waiting for write", mName);
+        }
+    }
+
+    /**
+     * @return The number of dirty notifications folded into an already pending write.
+     */
+    public long getWritesAvoided() {
+        return mWritesAvoided.get();
+    }
+
+    /**
+     * @return The number of writes which reached the file.
+     */
+    public long getWriteCount() {
+        return mWriteCount.get();
+    }
+
+    /**
+     * @return How long the most recent write took, or -1 if nothing has been written yet.
+     */
+    public long getLastWriteDurationMillis() {
+        return mLastWriteDurationMillis;
+    }
+
+    @VisibleForTesting
+    public Handler getHandler() {
+        return mHandler;
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        pw.println(mName + ": coalesceWindowMillis=" + mCoalesceWindowMillis
+                + ", dirty=" + mDirtyCount.get()
+                + ", writes=" + mWriteCount.get()
+                + ", writesAvoided=" + mWritesAvoided.get()
+                + ", lastWriteDurationMillis=" + mLastWriteDurationMillis);
+    }
+
+    private byte[] serialize() {
+        try {
+            return mSerializer.serialize();
+        } catch (IOException e) {
+            Log.e(this, e, "Serializing state for %s", mName);
+            return null;
+        }
+    }
+
+    private void writeToFile(byte[] data, Runnable onWritten) {
+        if (data == null) {
+            return;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        FileOutputStream fileOutput = null;
+        boolean written = false;
+        try {
+            fileOutput = mAtomicFile.startWrite();
+            fileOutput.write(data);
+            mAtomicFile.finishWrite(fileOutput);
+            mWriteCount.incrementAndGet();
+            written = true;
+        } catch (IOException e) {
+            Log.e(this, e, "Writing state to %s", mName);
+            mAtomicFile.failWrite(fileOutput);
+        }
+        mLastWriteDurationMillis = SystemClock.elapsedRealtime() - startTime;
+        if (written && onWritten != null) {
+            onWritten.run();
+        }
+    }
+}
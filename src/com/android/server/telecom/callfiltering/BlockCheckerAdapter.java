@@ -24,7 +24,19 @@ import android.telecom.Log;
 public class BlockCheckerAdapter {
     private static final String TAG = BlockCheckerAdapter.class.getSimpleName();
 
-    public BlockCheckerAdapter() { }
+    private final BlockedNumberIndex mBlockedNumberIndex;
+
+    public BlockCheckerAdapter() {
+        this(null);
+    }
+
+    /**
+     * @param blockedNumberIndex An index used to answer lookups for numbers which are not
+     *        blocked without querying the provider, or {@code null}.
+     */
+    public BlockCheckerAdapter(BlockedNumberIndex blockedNumberIndex) {
+        mBlockedNumberIndex = blockedNumberIndex;
+    }
 
     /**
      * Returns the call blocking status for the {@code phoneNumber}.
@@ -48,6 +60,10 @@ public class BlockCheckerAdapter {
         long startTimeNano = System.nanoTime();
 
         try {
+            if (mBlockedNumberIndex != null
+                    && mBlockedNumberIndex.isKnownNotBlocked(phoneNumber, extras)) {
+                return blockStatus;
+            }
             blockStatus = BlockedNumberContract.SystemContract.shouldSystemBlockNumber(
                     context, phoneNumber, extras);
             if (blockStatus != BlockedNumberContract.STATUS_NOT_BLOCKED) {
@@ -19,22 +19,21 @@ package com.android.server.telecom.callfiltering;
 import android.content.Context;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.HandlerThread;
 import android.provider.BlockedNumberContract;
 import android.provider.CallLog;
 import android.telecom.CallerInfo;
 import android.telecom.Log;
 import android.telecom.TelecomManager;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.telecom.Call;
 import com.android.server.telecom.CallerInfoLookupHelper;
 import com.android.server.telecom.LogUtils;
-import com.android.server.telecom.LoggedHandlerExecutor;
 import com.android.server.telecom.settings.BlockedNumbersUtil;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 public class BlockCheckerFilter extends CallFilter {
     private final Call mCall;
@@ -43,22 +42,29 @@ public class BlockCheckerFilter extends CallFilter {
     private final BlockCheckerAdapter mBlockCheckerAdapter;
     private final String TAG = "BlockCheckerFilter";
     private boolean mContactExists;
-    private HandlerThread mHandlerThread;
-    private Handler mHandler;
+    private final CallFilteringExecutor.Lane mLane;
+    private final Executor mIoExecutor;
 
     public static final long CALLER_INFO_QUERY_TIMEOUT = 5000;
 
+    @VisibleForTesting
     public BlockCheckerFilter(Context context, Call call,
             CallerInfoLookupHelper callerInfoLookupHelper,
             BlockCheckerAdapter blockCheckerAdapter) {
+        this(context, call, callerInfoLookupHelper, blockCheckerAdapter,
+                CallFilteringExecutor.getDefault());
+    }
+
+    public BlockCheckerFilter(Context context, Call call,
+            CallerInfoLookupHelper callerInfoLookupHelper,
+            BlockCheckerAdapter blockCheckerAdapter, CallFilteringExecutor executor) {
         mCall = call;
         mContext = context;
         mCallerInfoLookupHelper = callerInfoLookupHelper;
         mBlockCheckerAdapter = blockCheckerAdapter;
         mContactExists = false;
-        mHandlerThread = new HandlerThread(TAG);
-        mHandlerThread.start();
-        mHandler = new Handler(mHandlerThread.getLooper());
+        mLane = executor.acquireLane();
+        mIoExecutor = executor.getIoExecutor();
     }
 
     @Override
@@ -94,6 +100,14 @@ public class BlockCheckerFilter extends CallFilter {
         return resultFuture;
     }
 
+    /**
+     * A number blocked by the user or the provider is rejected whatever the other filters decide.
+     */
+    @Override
+    public boolean isResultFinal(CallFilteringResult result) {
+        return !result.shouldAllowCall;
+    }
+
     private void getBlockStatus(
             CompletableFuture<CallFilteringResult> resultFuture) {
         // Set extras
@@ -110,11 +124,12 @@ public class BlockCheckerFilter extends CallFilter {
         final String number = mCall.getHandle() == null ? null :
                 mCall.getHandle().getSchemeSpecificPart();
 
+        // The provider query blocks, so it runs on the IO pool rather than on the call's lane.
         CompletableFuture.supplyAsync(
                 () -> mBlockCheckerAdapter.getBlockStatus(mContext, number, extras),
-                new LoggedHandlerExecutor(mHandler, "BCF.gBS", null))
+                CallFilteringExecutor.withLogSession(mIoExecutor, "BCF.gBS"))
                 .thenApplyAsync((x) -> completeResult(resultFuture, x),
-                        new LoggedHandlerExecutor(mHandler, "BCF.gBS", null));
+                        mLane.withLogSession("BCF.gBS"));
     }
 
     private int completeResult(CompletableFuture<CallFilteringResult> resultFuture,
@@ -145,7 +160,6 @@ public class BlockCheckerFilter extends CallFilter {
                 BlockedNumberContract.SystemContract.blockStatusToString(blockStatus) + " "
                         + result);
         resultFuture.complete(result);
-        mHandlerThread.quitSafely();
         return blockStatus;
     }
 
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.BlockedNumberContract;
+import android.telecom.Log;
+import android.telecom.TelecomManager;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory index of the blocked number list, used by {@link BlockCheckerAdapter} to answer
+ * the common case of a number which is not blocked without a round trip to the blocked number
+ * provider.
+ * <p>
+ * The index is deliberately loose: each number is reduced to a key (the trailing
+ * {@link #MIN_MATCH} digits) which every formatting of a blocked number shares, so a key which is
+ * not in the index means the number cannot be in the list.  A key which is in the index, or any
+ * call to which the enhanced blocking rules may apply, is still checked with the provider, which
+ * remains the source of truth.
+ * <p>
+ * The index is reloaded on the next lookup after the blocked number list changes.
+ */
+public class BlockedNumberIndex {
+    private static final String TAG = BlockedNumberIndex.class.getSimpleName();
+
+    /** The number of trailing digits used as the key of a number. */
+    @VisibleForTesting
+    public static final int MIN_MATCH = 7;
+
+    private static final String[] PROJECTION = new String[] {
+            BlockedNumberContract.BlockedNumbers.COLUMN_ORIGINAL_NUMBER,
+            BlockedNumberContract.BlockedNumbers.COLUMN_E164_NUMBER
+    };
+
+    private final Context mContext;
+    private final ContentObserver mBlockedNumbersObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            Log.i(TAG, "Blocked numbers changed, invalidating index.");
+            invalidate();
+        }
+    };
+    /** Incremented each time the blocked number list changes. */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final AtomicLong mLocalLookups = new AtomicLong();
+    private final AtomicLong mProviderLookups = new AtomicLong();
+    private final AtomicLong mLoads = new AtomicLong();
+    private final AtomicLong mLoadFailures = new AtomicLong();
+
+    // Guarded by this.
+    private Set<String> mKeys;
+    private int mKeysGeneration;
+    private boolean mObserverRegistered;
+
+    public BlockedNumberIndex(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Returns whether the number is certainly not blocked, in which case the blocked number
+     * provider need not be consulted.
+     *
+     * @param phoneNumber the number to check.
+     * @param extras the extras which would be passed to the provider; see
+     *        {@link BlockCheckerFilter}.
+     * @return {@code true} if the number is known not to be blocked, {@code false} if the
+     *         provider must be consulted.
+     */
+    public boolean isKnownNotBlocked(String phoneNumber, Bundle extras) {
+        if (TextUtils.isEmpty(phoneNumber) || mayApplyEnhancedBlocking(extras)) {
+            mProviderLookups.incrementAndGet();
+            return false;
+        }
+        Set<String> keys = getKeys();
+        if (keys == null || keys.contains(getKey(phoneNumber))) {
+            mProviderLookups.incrementAndGet();
+            return false;
+        }
+        mLocalLookups.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Loads the index if it is not loaded, so that the lookups which follow need not wait for it.
+     */
+    public void preload() {
+        getKeys();
+    }
+
+    /**
+     * Drops the index, so that it is reloaded on the next lookup.
+     */
+    public void invalidate() {
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * registerContentObserver is really hard to mock out, so here is a getter method for the
+     * content observer for testing instead.
+     * @return The content observer
+     */
+    @VisibleForTesting
+    public ContentObserver getContentObserver() {
+        return mBlockedNumbersObserver;
+    }
+
+    /**
+     * The enhanced blocking rules block on the presentation of the number and on whether the
+     * caller is a contact, and are only known to the provider.
+     */
+    private static boolean mayApplyEnhancedBlocking(Bundle extras) {
+        if (extras == null || !extras.containsKey(BlockedNumberContract.EXTRA_CALL_PRESENTATION)) {
+            return false;
+        }
+        return extras.getInt(BlockedNumberContract.EXTRA_CALL_PRESENTATION)
+                != TelecomManager.PRESENTATION_ALLOWED
+                || !extras.getBoolean(BlockedNumberContract.EXTRA_CONTACT_EXIST, false);
+    }
+
+    /**
+     * @return The keys of the blocked numbers, loading them if the list has changed, or
+     *         {@code null} if they could not be loaded.
+     */
+    private synchronized Set<String> getKeys() {
+        registerObserverIfNeeded();
+        int generation = mGeneration.get();
+        if (mKeys != null && mKeysGeneration == generation) {
+            return mKeys;
+        }
+        Collection<String> numbers = queryBlockedNumbers();
+        if (numbers == null) {
+            mLoadFailures.incrementAndGet();
+            mKeys = null;
+            return null;
+        }
+        Set<String> keys = new HashSet<>(numbers.size());
+        for (String number : numbers) {
+            if (!TextUtils.isEmpty(number)) {
+                keys.add(getKey(number));
+            }
+        }
+        mLoads.incrementAndGet();
+        mKeys = keys;
+        // A change while loading leaves the index stale, so it is loaded again next time.
+        mKeysGeneration = generation;
+        return mKeys;
+    }
+
+    private void registerObserverIfNeeded() {
+        if (mObserverRegistered) {
+            return;
+        }
+        try {
+            ContentResolver resolver = mContext.getContentResolver();
+            if (resolver != null) {
+                resolver.registerContentObserver(BlockedNumberContract.BlockedNumbers.CONTENT_URI,
+                        true, mBlockedNumbersObserver);
+                mObserverRegistered = true;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to observe blocked numbers: %s", e);
+        }
+    }
+
+    /**
+     * @return The original and E164 forms of every blocked number, or {@code null} on failure.
+     */
+    @VisibleForTesting
+    protected Collection<String> queryBlockedNumbers() {
+        if (!mObserverRegistered) {
+            // Without change notifications the index could go stale.
+            return null;
+        }
+        List<String> numbers = new ArrayList<>();
+        try (Cursor cursor = mContext.getContentResolver().query(
+                BlockedNumberContract.BlockedNumbers.CONTENT_URI, PROJECTION, null, null, null)) {
+            if (cursor == null) {
+                return null;
+            }
+            while (cursor.moveToNext()) {
+                numbers.add(cursor.getString(0));
+                numbers.add(cursor.getString(1));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to load blocked numbers: %s", e);
+            return null;
+        }
+        return numbers;
+    }
+
+    /**
+     * Reduces a number to its trailing {@link #MIN_MATCH} digits, which are the same whether the
+     * number is formatted, in E164 or dialed with a national prefix.  Numbers without digits,
+     * such as SIP addresses, are used as is.
+     */
+    @VisibleForTesting
+    public static String getKey(String number) {
+        String normalized = PhoneNumberUtils.normalizeNumber(number);
+        StringBuilder digits = new StringBuilder(normalized.length());
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        if (digits.length() == 0) {
+            return number.toLowerCase(Locale.ROOT);
+        }
+        return digits.length() <= MIN_MATCH ? digits.toString()
+                : digits.substring(digits.length() - MIN_MATCH);
+    }
+
+    public synchronized void dump(IndentingPrintWriter pw) {
+        pw.println("BlockedNumberIndex: size=" + (mKeys == null ? "unloaded" : mKeys.size())
+                + ", current=" + (mKeys != null && mKeysGeneration == mGeneration.get())
+                + ", localLookups=" + mLocalLookups.get()
+                + ", providerLookups=" + mProviderLookups.get()
+                + ", loads=" + mLoads.get()
+                + ", loadFailures=" + mLoadFailures.get());
+    }
+}
@@ -28,6 +28,10 @@ public class CallFilter {
     public CallFilteringResult mPriorStageResult;
     public CallFilteringResult result;
     private CompletableFuture<CallFilteringResult> mResultFuture;
+    // Timing of this filter, from SystemClock#elapsedRealtimeNanos; 0 until reached.
+    private volatile long mReadyNanos;
+    private volatile long mStartNanos;
+    private volatile long mEndNanos;
 
     public CallFilter() {
         mDependencies = new ArrayList<>();
@@ -40,6 +44,55 @@ public class CallFilter {
         return CompletableFuture.completedFuture(priorStageResult);
     }
 
+    /**
+     * Whether a result from this filter decides the outcome of filtering, in which case the
+     * {@link IncomingCallFilterGraph} completes without waiting for the remaining filters.
+     *
+     * @param result The result of this filter.
+     * @return {@code true} if no other filter can change the outcome.
+     */
+    public boolean isResultFinal(CallFilteringResult result) {
+        return false;
+    }
+
+    /**
+     * Called when filtering completed before this filter produced a result.  Filters which hold
+     * resources while waiting for their result should release them here.
+     */
+    public void cancel() {
+    }
+
+    /**
+     * @return The name under which the timing of this filter is reported.
+     */
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    void setReadyNanos(long readyNanos) {
+        mReadyNanos = readyNanos;
+    }
+
+    long getReadyNanos() {
+        return mReadyNanos;
+    }
+
+    void setStartNanos(long startNanos) {
+        mStartNanos = startNanos;
+    }
+
+    long getStartNanos() {
+        return mStartNanos;
+    }
+
+    void setEndNanos(long endNanos) {
+        mEndNanos = endNanos;
+    }
+
+    long getEndNanos() {
+        return mEndNanos;
+    }
+
     List<CallFilter> getDependencies() {
         return mDependencies;
     }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates the latency of each incoming call filter across calls, so that the filter which
+ * dominates filtering latency, and a suitable filtering timeout, can be read from dumpsys.
+ * Percentiles are computed over the most recent {@link #MAX_SAMPLES} calls for each filter.
+ */
+public class CallFilterLatencyStats {
+    @VisibleForTesting
+    public static final int MAX_SAMPLES = 100;
+
+    /**
+     * The recent timings of one filter.
+     */
+    @VisibleForTesting
+    public static final class FilterStats {
+        private final long[] mDurations = new long[MAX_SAMPLES];
+        private int mSamples;
+        private int mNext;
+        private long mRuns;
+        private long mUnfinished;
+        private long mOnCriticalPath;
+        private long mTotalQueueWaitMillis;
+
+        private void record(long durationMillis, long queueWaitMillis, boolean isOnCriticalPath) {
+            mRuns++;
+            mTotalQueueWaitMillis += queueWaitMillis;
+            if (isOnCriticalPath) {
+                mOnCriticalPath++;
+            }
+            if (durationMillis < 0) {
+                mUnfinished++;
+                return;
+            }
+            mDurations[mNext] = durationMillis;
+            mNext = (mNext + 1) % MAX_SAMPLES;
+            mSamples = Math.min(mSamples + 1, MAX_SAMPLES);
+        }
+
+        /**
+         * @param percentile The percentile, from 0 to 100.
+         * @return The duration at the percentile of the recent finished runs, or -1 if none.
+         */
+        public long getPercentileMillis(int percentile) {
+            if (mSamples == 0) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(mDurations, mSamples);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * mSamples) - 1;
+            return sorted[Math.max(0, Math.min(index, mSamples - 1))];
+        }
+
+        public long getRuns() {
+            return mRuns;
+        }
+
+        public long getOnCriticalPath() {
+            return mOnCriticalPath;
+        }
+
+        @Override
+        public String toString() {
+            return "runs=" + mRuns
+                    + ", p50=" + getPercentileMillis(50)
+                    + ", p90=" + getPercentileMillis(90)
+                    + ", p99=" + getPercentileMillis(99)
+                    + ", max=" + getPercentileMillis(100)
+                    + ", avgQueueWaitMillis=" + (mRuns == 0 ? 0 : mTotalQueueWaitMillis / mRuns)
+                    + ", onCriticalPath=" + mOnCriticalPath
+                    + ", unfinished=" + mUnfinished;
+        }
+    }
+
+    private static final Map<String, FilterStats> sStatsByFilter = new TreeMap<>();
+
+    private CallFilterLatencyStats() {
+    }
+
+    /**
+     * Records one run of a filter.
+     *
+     * @param filterName The name of the filter.
+     * @param durationMillis How long the filter took, or -1 if it did not produce a result.
+     * @param queueWaitMillis How long the filter waited to start after it became ready.
+     * @param isOnCriticalPath Whether the filter was on the critical path of filtering.
+     */
+    public static synchronized void record(String filterName, long durationMillis,
+            long queueWaitMillis, boolean isOnCriticalPath) {
+        FilterStats stats = sStatsByFilter.get(filterName);
+        if (stats == null) {
+            stats = new FilterStats();
+            sStatsByFilter.put(filterName, stats);
+        }
+        stats.record(durationMillis, queueWaitMillis, isOnCriticalPath);
+    }
+
+    @VisibleForTesting
+    public static synchronized FilterStats getStats(String filterName) {
+        return sStatsByFilter.get(filterName);
+    }
+
+    @VisibleForTesting
+    public static synchronized void reset() {
+        sStatsByFilter.clear();
+    }
+
+    public static synchronized void dump(IndentingPrintWriter pw) {
+        pw.println("CallFilterLatency (millis):");
+        pw.increaseIndent();
+        for (Map.Entry<String, FilterStats> entry : sStatsByFilter.entrySet()) {
+            pw.println(entry.getKey() + ": " + entry.getValue());
+        }
+        pw.decreaseIndent();
+    }
+}
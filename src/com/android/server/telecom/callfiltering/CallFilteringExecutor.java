@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.telecom.Logging;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed set of named worker threads shared by the incoming call filters of every call, so that
+ * no thread is created while filtering an incoming call.
+ * <p>
+ * Work is submitted through a {@link Lane}.  All of the work submitted through a lane runs on one
+ * worker, in submission order, which serializes the filtering of a call just as the dedicated
+ * thread per call used to.  Each new lane is placed on the worker with the fewest queued tasks.
+ * <p>
+ * Work which blocks on another process, such as a blocked number provider query, runs on a
+ * separate bounded {@link #getIoExecutor() IO pool} so that it cannot hold up the lanes of other
+ * calls, and filtering timeouts fire on a thread of their own which never runs blocking work.
+ */
+public class CallFilteringExecutor {
+    public static final int DEFAULT_THREAD_COUNT = 2;
+    public static final int DEFAULT_IO_THREAD_COUNT = 4;
+    private static final long IO_KEEP_ALIVE_SECONDS = 30;
+
+    private static CallFilteringExecutor sDefault;
+
+    /**
+     * Serializes the work submitted through it onto one of the executor's workers.
+     */
+    public final class Lane implements Executor {
+        private final Worker mWorker;
+
+        private Lane(Worker worker) {
+            mWorker = worker;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            postDelayed(command, 0);
+        }
+
+        /**
+         * Runs a task after a delay.
+         *
+         * @param command The task.
+         * @param delayMillis How long to wait before running the task.
+         * @return A token which can be passed to {@link #cancel(Runnable)}.
+         */
+        public Runnable postDelayed(Runnable command, long delayMillis) {
+            Task task = new Task(mWorker, command, delayMillis);
+            mWorker.queued.incrementAndGet();
+            mMaxQueueDepth.accumulateAndGet(getQueueDepth(), Math::max);
+            mWorker.handler.postDelayed(task, delayMillis);
+            return task;
+        }
+
+        /**
+         * Cancels a task which has not started yet.
+         *
+         * @param token The token returned by {@link #postDelayed(Runnable, long)}.
+         */
+        public void cancel(Runnable token) {
+            if (token instanceof Task && ((Task) token).claim()) {
+                mWorker.handler.removeCallbacks(token);
+                mWorker.queued.decrementAndGet();
+                mCancelled.incrementAndGet();
+            }
+        }
+
+        /**
+         * @param sessionName The name of the log session.
+         * @return An executor which runs each task on this lane in a new log session.
+         */
+        public Executor withLogSession(String sessionName) {
+            return CallFilteringExecutor.withLogSession(this, sessionName);
+        }
+
+        @VisibleForTesting
+        public Handler getHandler() {
+            return mWorker.handler;
+        }
+    }
+
+    private static final class Worker {
+        final HandlerThread thread;
+        final Handler handler;
+        final AtomicInteger queued = new AtomicInteger();
+
+        Worker(String name) {
+            thread = new HandlerThread(name);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+    }
+
+    private final class Task implements Runnable {
+        private final Worker mWorker;
+        private final Runnable mCommand;
+        private final long mDueNanos;
+        private final AtomicBoolean mClaimed = new AtomicBoolean();
+
+        Task(Worker worker, Runnable command, long delayMillis) {
+            mWorker = worker;
+            mCommand = command;
+            mDueNanos = SystemClock.elapsedRealtimeNanos()
+                    + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        /**
+         * @return {@code true} if the caller is the first to either run or cancel the task.
+         */
+        boolean claim() {
+            return mClaimed.compareAndSet(false, true);
+        }
+
+        @Override
+        public void run() {
+            if (!claim()) {
+                return;
+            }
+            mWorker.queued.decrementAndGet();
+            long startNanos = SystemClock.elapsedRealtimeNanos();
+            long waitNanos = Math.max(0, startNanos - mDueNanos);
+            mTotalWaitNanos.addAndGet(waitNanos);
+            mMaxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            try {
+                mCommand.run();
+            } finally {
+                mTotalRunNanos.addAndGet(SystemClock.elapsedRealtimeNanos() - startNanos);
+                mTasks.incrementAndGet();
+            }
+        }
+    }
+
+    private final class IoTask implements Runnable {
+        private final Runnable mCommand;
+        private final long mEnqueueNanos = SystemClock.elapsedRealtimeNanos();
+
+        IoTask(Runnable command) {
+            mCommand = command;
+        }
+
+        @Override
+        public void run() {
+            long waitNanos = SystemClock.elapsedRealtimeNanos() - mEnqueueNanos;
+            mMaxIoWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            try {
+                mCommand.run();
+            } finally {
+                mIoTasks.incrementAndGet();
+                synchronized (mIoInFlight) {
+                    mIoInFlight.decrementAndGet();
+                    mIoInFlight.notifyAll();
+                }
+            }
+        }
+    }
+
+    private final String mName;
+    private final Worker[] mWorkers;
+    private final Worker mTimeoutWorker;
+    private final ThreadPoolExecutor mIoPool;
+    private final Executor mIoExecutor = command -> {
+        if (mIoPool.isShutdown()) {
+            return;
+        }
+        mIoInFlight.incrementAndGet();
+        mIoPool.execute(new IoTask(command));
+    };
+    private final AtomicInteger mNextWorker = new AtomicInteger();
+    private final AtomicLong mLanes = new AtomicLong();
+    private final AtomicLong mTasks = new AtomicLong();
+    private final AtomicLong mCancelled = new AtomicLong();
+    private final AtomicLong mTotalWaitNanos = new AtomicLong();
+    private final AtomicLong mMaxWaitNanos = new AtomicLong();
+    private final AtomicLong mTotalRunNanos = new AtomicLong();
+    private final AtomicInteger mMaxQueueDepth = new AtomicInteger();
+    private final AtomicInteger mIoInFlight = new AtomicInteger();
+    private final AtomicLong mIoTasks = new AtomicLong();
+    private final AtomicLong mMaxIoWaitNanos = new AtomicLong();
+
+    /**
+     * @param name The name of the executor, used to name its threads.
+     * @param threadCount The number of worker threads.
+     */
+    public CallFilteringExecutor(String name, int threadCount) {
+        this(name, threadCount, DEFAULT_IO_THREAD_COUNT);
+    }
+
+    /**
+     * @param name The name of the executor, used to name its threads.
+     * @param threadCount The number of worker threads.
+     * @param ioThreadCount The most threads running blocking work at once.
+     */
+    public CallFilteringExecutor(String name, int threadCount, int ioThreadCount) {
+        mName = name;
+        mWorkers = new Worker[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            mWorkers[i] = new Worker(name + "-" + i);
+        }
+        mTimeoutWorker = new Worker(name + "-timeout");
+        AtomicInteger ioThreadNumber = new AtomicInteger();
+        mIoPool = new ThreadPoolExecutor(ioThreadCount, ioThreadCount,
+                IO_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> new Thread(r, name + "-io-" + ioThreadNumber.getAndIncrement()));
+        mIoPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return The executor used by filters constructed without one.
+     */
+    public static synchronized CallFilteringExecutor getDefault() {
+        if (sDefault == null) {
+            sDefault = new CallFilteringExecutor("CallFiltering", DEFAULT_THREAD_COUNT);
+        }
+        return sDefault;
+    }
+
+    /**
+     * @return A new lane on the least busy worker.
+     */
+    public Lane acquireLane() {
+        mLanes.incrementAndGet();
+        int start = Math.floorMod(mNextWorker.getAndIncrement(), mWorkers.length);
+        Worker best = mWorkers[start];
+        for (int i = 1; i < mWorkers.length; i++) {
+            Worker worker = mWorkers[(start + i) % mWorkers.length];
+            if (worker.queued.get() < best.queued.get()) {
+                best = worker;
+            }
+        }
+        return new Lane(best);
+    }
+
+    /**
+     * @return An executor for work which blocks, such as queries of another process.  Its tasks
+     *         may run concurrently with each other.
+     */
+    public Executor getIoExecutor() {
+        return mIoExecutor;
+    }
+
+    /**
+     * Runs a filtering timeout after a delay, on a thread which is never busy with filtering.
+     *
+     * @return A token which can be passed to {@link #cancelTimeout(Runnable)}.
+     */
+    public Runnable postTimeout(Runnable command, long delayMillis) {
+        mTimeoutWorker.handler.postDelayed(command, delayMillis);
+        return command;
+    }
+
+    /**
+     * Cancels a timeout which has not fired yet.
+     *
+     * @param token The token returned by {@link #postTimeout(Runnable, long)}.
+     */
+    public void cancelTimeout(Runnable token) {
+        if (token != null) {
+            mTimeoutWorker.handler.removeCallbacks(token);
+        }
+    }
+
+    /**
+     * @return An executor which runs each task on another executor in a new log session.
+     */
+    public static Executor withLogSession(Executor executor, String sessionName) {
+        return command -> executor.execute(new Logging.Runnable(sessionName, null) {
+            @Override
+            public void loggedRun() {
+                command.run();
+            }
+        }.prepare());
+    }
+
+    /**
+     * @return The number of tasks waiting to run, including delayed tasks.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Worker worker : mWorkers) {
+            depth += worker.queued.get();
+        }
+        return depth;
+    }
+
+    /**
+     * Waits for the tasks which are already due on every worker to run.  Used by tests.
+     */
+    @VisibleForTesting
+    public void waitForIdle(long timeoutMillis) throws InterruptedException {
+        // Work on a lane can hand off to the IO pool and back, so the workers are waited for on
+        // either side of it.
+        waitForWorkers(timeoutMillis);
+        long deadlineMillis = SystemClock.elapsedRealtime() + timeoutMillis;
+        synchronized (mIoInFlight) {
+            while (mIoInFlight.get() > 0) {
+                long remainingMillis = deadlineMillis - SystemClock.elapsedRealtime();
+                if (remainingMillis <= 0) {
+                    break;
+                }
+                mIoInFlight.wait(remainingMillis);
+            }
+        }
+        waitForWorkers(timeoutMillis);
+    }
+
+    /**
+     * Stops the worker threads once the tasks which are already due have run, and stops taking
+     * blocking work.  Tasks submitted afterwards are dropped.  Used by tests.
+     */
+    @VisibleForTesting
+    public void shutdown() {
+        for (Worker worker : mWorkers) {
+            worker.thread.quitSafely();
+        }
+        mTimeoutWorker.thread.quitSafely();
+        mIoPool.shutdown();
+    }
+
+    private void waitForWorkers(long timeoutMillis) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(mWorkers.length);
+        for (Worker worker : mWorkers) {
+            worker.handler.post(latch::countDown);
+        }
+        latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        long tasks = mTasks.get();
+        pw.println(mName + ": threads=" + mWorkers.length
+                + ", lanes=" + mLanes.get()
+                + ", queueDepth=" + getQueueDepth()
+                + ", maxQueueDepth=" + mMaxQueueDepth.get()
+                + ", tasks=" + tasks
+                + ", cancelled=" + mCancelled.get()
+                + ", avgWaitMicros=" + (tasks == 0 ? 0
+                        : TimeUnit.NANOSECONDS.toMicros(mTotalWaitNanos.get() / tasks))
+                + ", maxWaitMicros=" + TimeUnit.NANOSECONDS.toMicros(mMaxWaitNanos.get())
+                + ", avgRunMicros=" + (tasks == 0 ? 0
+                        : TimeUnit.NANOSECONDS.toMicros(mTotalRunNanos.get() / tasks))
+                + ", ioThreads=" + mIoPool.getMaximumPoolSize()
+                + ", ioInFlight=" + mIoInFlight.get()
+                + ", ioTasks=" + mIoTasks.get()
+                + ", maxIoWaitMicros=" + TimeUnit.NANOSECONDS.toMicros(mMaxIoWaitNanos.get()));
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.provider.BlockedNumberContract;
+import android.provider.ContactsContract;
+import android.telecom.Log;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.TelecomManager;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.Call;
+import com.android.server.telecom.ClockProxy;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the result of filtering an incoming call for a short time, so that a number which
+ * calls again within seconds, as during a spam wave, is not put through the whole filter graph
+ * again.
+ * <p>
+ * Results are keyed by the normalized number, the caller number verification status, the target
+ * phone account and the call screening apps the call would have been sent to, so a change of
+ * screening app is a cache miss.  The cache is cleared when the blocked number list or the
+ * contacts change, and when {@link #invalidate(String)} is called for changes it cannot observe,
+ * such as call blocking being suppressed after an emergency call.  It is disabled while those
+ * changes cannot be observed.
+ */
+public class CallFilteringResultCache {
+    private static final String TAG = CallFilteringResultCache.class.getSimpleName();
+
+    @VisibleForTesting
+    public static final int MAX_ENTRIES = 64;
+
+    private static final class Entry {
+        final CallFilteringResult result;
+        final long expiryMillis;
+
+        Entry(CallFilteringResult result, long expiryMillis) {
+            this.result = result;
+            this.expiryMillis = expiryMillis;
+        }
+    }
+
+    private final Context mContext;
+    private final ClockProxy mClockProxy;
+    private final long mTtlMillis;
+    private final ContentObserver mInvalidatingObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            invalidate("content changed: " + uri);
+        }
+    };
+
+    // Guarded by this.
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+    private boolean mObserversRegistered;
+    private long mLookups;
+    private long mHits;
+    private long mExpired;
+    private long mInvalidations;
+
+    /**
+     * @param context The context, used to observe the blocked numbers and contacts.
+     * @param clockProxy The clock.
+     * @param ttlMillis How long a result is used for; 0 disables the cache.
+     */
+    public CallFilteringResultCache(Context context, ClockProxy clockProxy, long ttlMillis) {
+        mContext = context;
+        mClockProxy = clockProxy;
+        mTtlMillis = ttlMillis;
+    }
+
+    /**
+     * @return {@code false} if the cache is disabled by a TTL of 0, or because the blocked
+     *         numbers and contacts cannot be observed.
+     */
+    public synchronized boolean isEnabled() {
+        return mTtlMillis > 0 && registerObserversIfNeeded();
+    }
+
+    /**
+     * @param call The incoming call.
+     * @param callScreeningPackages The call screening apps the call would be sent to.
+     * @return The key of the call's result, or {@code null} if its result must not be cached
+     *         because the caller cannot be identified.
+     */
+    public static String getKey(Call call, String... callScreeningPackages) {
+        if (call.getHandle() == null
+                || call.getHandlePresentation() != TelecomManager.PRESENTATION_ALLOWED) {
+            return null;
+        }
+        String number = call.getHandle().getSchemeSpecificPart();
+        if (TextUtils.isEmpty(number)) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder()
+                .append(call.getHandle().getScheme()).append(':')
+                .append(PhoneNumberUtils.normalizeNumber(number))
+                // A spoofed number must not reuse the result of a verified one.
+                .append('|').append(call.getCallerNumberVerificationStatus());
+        PhoneAccountHandle account = call.getTargetPhoneAccount();
+        key.append('|').append(account == null ? null : account.getComponentName()
+                .flattenToShortString() + "/" + account.getId() + "/" + account.getUserHandle());
+        for (String packageName : callScreeningPackages) {
+            key.append('|').append(packageName);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param key The key from {@link #getKey(Call, String...)}.
+     * @return The unexpired result for the key, or {@code null}.
+     */
+    public synchronized CallFilteringResult get(String key) {
+        if (key == null || !isEnabled()) {
+            return null;
+        }
+        mLookups++;
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (mClockProxy.elapsedRealtime() >= entry.expiryMillis) {
+            mEntries.remove(key);
+            mExpired++;
+            return null;
+        }
+        mHits++;
+        return entry.result;
+    }
+
+    /**
+     * Remembers the result of filtering a call.  Results of filtering which timed out, and
+     * requests to screen the call via audio, are specific to one call and are not cached.
+     */
+    public synchronized void put(String key, CallFilteringResult result) {
+        if (key == null || !isEnabled() || result.shouldScreenViaAudio) {
+            return;
+        }
+        mEntries.put(key, new Entry(result, mClockProxy.elapsedRealtime() + mTtlMillis));
+    }
+
+    /**
+     * Drops every cached result.
+     *
+     * @param reason Why, for the log.
+     */
+    public synchronized void invalidate(String reason) {
+        if (mEntries.isEmpty()) {
+            return;
+        }
+        Log.i(TAG, "Invalidating %d results: %s", mEntries.size(), reason);
+        mEntries.clear();
+        mInvalidations++;
+    }
+
+    /**
+     * registerContentObserver is really hard to mock out, so here is a getter method for the
+     * content observer for testing instead.
+     * @return The content observer
+     */
+    @VisibleForTesting
+    public ContentObserver getContentObserver() {
+        return mInvalidatingObserver;
+    }
+
+    /**
+     * @return {@code true} if the blocked numbers and contacts are observed.
+     */
+    private boolean registerObserversIfNeeded() {
+        if (mObserversRegistered) {
+            return true;
+        }
+        ContentResolver resolver = mContext.getContentResolver();
+        if (resolver == null) {
+            return false;
+        }
+        try {
+            resolver.registerContentObserver(BlockedNumberContract.BlockedNumbers.CONTENT_URI,
+                    true, mInvalidatingObserver);
+            resolver.registerContentObserver(ContactsContract.AUTHORITY_URI, true,
+                    mInvalidatingObserver);
+            mObserversRegistered = true;
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to observe blocked numbers and contacts: %s", e);
+            try {
+                resolver.unregisterContentObserver(mInvalidatingObserver);
+            } catch (Exception ignored) {
+            }
+        }
+        return mObserversRegistered;
+    }
+
+    private void removeExpired() {
+        long now = mClockProxy.elapsedRealtime();
+        for (Iterator<Entry> it = mEntries.values().iterator(); it.hasNext(); ) {
+            if (now >= it.next().expiryMillis) {
+                it.remove();
+                mExpired++;
+            }
+        }
+    }
+
+    public synchronized void dump(IndentingPrintWriter pw) {
+        removeExpired();
+        pw.println("CallFilteringResultCache: ttlMillis=" + mTtlMillis
+                + ", observing=" + mObserversRegistered
+                + ", size=" + mEntries.size()
+                + ", lookups=" + mLookups
+                + ", hits=" + mHits
+                + ", hitRate=" + (mLookups == 0 ? 0 : mHits * 100 / mLookups) + "%"
+                + ", expired=" + mExpired
+                + ", invalidations=" + mInvalidations);
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.content.ComponentCallbacks2;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ServiceConnection;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.telecom.Log;
+import android.text.TextUtils;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.telecom.ICallScreeningService;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.CallScreeningServiceHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps connections to {@link android.telecom.CallScreeningService}s bound for an idle window
+ * after they were last used, so that the screening of the next incoming call does not wait for a
+ * bind.  Connections can also be bound ahead of the first call, such as at boot and when the
+ * screening apps change, and idle connections are dropped under memory pressure.
+ * <p>
+ * A pooled connection is bound with {@link CallScreeningServiceHelper#BIND_FLAGS_IDLE}, which
+ * keeps the service running without raising the priority of its app.  While the connection is in
+ * use a second binding with {@link CallScreeningServiceHelper#BIND_FLAGS_ACTIVE} gives the app
+ * the priority it needs to screen the call promptly.  Prebound connections, such as the ones bound
+ * at boot, are unbound after the idle window like any other idle connection.
+ * <p>
+ * With an idle window of 0 a connection is bound for each use and unbound as soon as it is
+ * released, as {@link CallScreeningServiceFilter} always used to do.
+ */
+public class CallScreeningServiceConnectionPool implements ComponentCallbacks2 {
+    private static final String TAG = CallScreeningServiceConnectionPool.class.getSimpleName();
+
+    /**
+     * Receives the service of an acquired connection.
+     */
+    public interface Listener {
+        /**
+         * @param componentName The screening service.
+         * @param service The screening service's interface.
+         * @param isWarm {@code true} if the connection was already bound when acquired.
+         */
+        void onConnected(ComponentName componentName, ICallScreeningService service,
+                boolean isWarm);
+
+        /**
+         * The connection could not be bound, or was lost.  The connection is released.
+         *
+         * @param reason Why, for the log.
+         */
+        void onDisconnected(String reason);
+    }
+
+    /**
+     * Holds a binding only to set the priority of the service's app; the service itself is
+     * received and monitored through the {@link PooledConnection}.
+     */
+    private static final class ActiveBinding implements ServiceConnection {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+        }
+    }
+
+    private final class PooledConnection implements ServiceConnection {
+        final String key;
+        final String packageName;
+        final UserHandle userHandle;
+        final ComponentName resolvedComponentName;
+        final long bindStartMillis = SystemClock.elapsedRealtime();
+        final List<Listener> pendingListeners = new ArrayList<>();
+        final List<Listener> connectedListeners = new ArrayList<>();
+        ComponentName componentName;
+        ICallScreeningService service;
+        Runnable idleUnbind;
+        /** The higher priority binding held while the connection is in use, or {@code null}. */
+        ServiceConnection activeBinding;
+
+        PooledConnection(String key, String packageName, UserHandle userHandle,
+                ComponentName resolvedComponentName) {
+            this.key = key;
+            this.packageName = packageName;
+            this.userHandle = userHandle;
+            this.resolvedComponentName = resolvedComponentName;
+        }
+
+        boolean isIdle() {
+            return pendingListeners.isEmpty() && connectedListeners.isEmpty();
+        }
+
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            List<Listener> listeners;
+            ICallScreeningService service = ICallScreeningService.Stub.asInterface(binder);
+            synchronized (CallScreeningServiceConnectionPool.this) {
+                if (mConnections.get(key) != this) {
+                    return;
+                }
+                long bindMillis = SystemClock.elapsedRealtime() - bindStartMillis;
+                if (this.service == null) {
+                    mColdBinds++;
+                    mTotalColdBindMillis += bindMillis;
+                }
+                this.componentName = name;
+                this.service = service;
+                listeners = new ArrayList<>(pendingListeners);
+                connectedListeners.addAll(pendingListeners);
+                pendingListeners.clear();
+                Log.i(TAG, "Bound %s in %dms", name, bindMillis);
+            }
+            for (Listener listener : listeners) {
+                listener.onConnected(name, service, false);
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            drop(this, "service disconnected");
+        }
+
+        @Override
+        public void onBindingDied(ComponentName name) {
+            drop(this, "binding died");
+        }
+
+        @Override
+        public void onNullBinding(ComponentName name) {
+            drop(this, "null binding");
+        }
+
+        @Override
+        public String toString() {
+            return packageName + "/" + userHandle.getIdentifier()
+                    + (service == null ? " (binding)" : "")
+                    + (activeBinding == null ? "" : " (active)")
+                    + ", users=" + (pendingListeners.size() + connectedListeners.size());
+        }
+    }
+
+    private final Context mContext;
+    private final long mIdleMillis;
+    private final Handler mHandler;
+
+    // Guarded by this.
+    private final Map<String, PooledConnection> mConnections = new HashMap<>();
+    private long mWarmAcquires;
+    private long mColdAcquires;
+    private long mColdBinds;
+    private long mTotalColdBindMillis;
+    private long mIdleUnbinds;
+    private long mMemoryPressureUnbinds;
+
+    /**
+     * @param context The context to bind with.
+     * @param idleMillis How long a connection stays bound after its last use.
+     */
+    public CallScreeningServiceConnectionPool(Context context, long idleMillis) {
+        this(context, idleMillis, new Handler(Looper.getMainLooper()));
+    }
+
+    @VisibleForTesting
+    public CallScreeningServiceConnectionPool(Context context, long idleMillis, Handler handler) {
+        mContext = context;
+        mIdleMillis = idleMillis;
+        mHandler = handler;
+    }
+
+    /**
+     * Gets a connection to a screening service, binding to it if it is not already bound.  The
+     * listener is called synchronously if the connection is warm.  Every acquire must be matched
+     * by a {@link #release} unless {@link Listener#onDisconnected} is called.
+     */
+    public void acquire(String packageName, UserHandle userHandle, Listener listener) {
+        PooledConnection connection;
+        synchronized (this) {
+            connection = getOrBind(packageName, userHandle);
+            if (connection != null) {
+                setActive(connection, true);
+            }
+            if (connection == null) {
+                mColdAcquires++;
+            } else if (connection.service == null) {
+                mColdAcquires++;
+                connection.pendingListeners.add(listener);
+                return;
+            } else {
+                mWarmAcquires++;
+                connection.connectedListeners.add(listener);
+            }
+        }
+        if (connection == null) {
+            listener.onDisconnected("bind failed");
+        } else {
+            listener.onConnected(connection.componentName, connection.service, true);
+        }
+    }
+
+    /**
+     * Releases a connection acquired with {@link #acquire}; once it has no users it is unbound
+     * after the idle window.
+     */
+    public synchronized void release(String packageName, UserHandle userHandle,
+            Listener listener) {
+        PooledConnection connection = mConnections.get(getKey(packageName, userHandle));
+        if (connection == null) {
+            return;
+        }
+        connection.pendingListeners.remove(listener);
+        connection.connectedListeners.remove(listener);
+        if (connection.isIdle()) {
+            setActive(connection, false);
+            scheduleIdleUnbind(connection);
+        }
+    }
+
+    /**
+     * Binds to a screening service ahead of its first use, keeping it for the idle window.
+     */
+    public synchronized void prebind(String packageName, UserHandle userHandle) {
+        if (mIdleMillis <= 0 || TextUtils.isEmpty(packageName)) {
+            return;
+        }
+        PooledConnection connection = getOrBind(packageName, userHandle);
+        if (connection != null && connection.isIdle()) {
+            scheduleIdleUnbind(connection);
+        }
+    }
+
+    /**
+     * Unbinds every connection which is not in use.
+     *
+     * @param reason Why, for the log.
+     */
+    public synchronized void unbindIdle(String reason) {
+        List<PooledConnection> idle = new ArrayList<>();
+        for (PooledConnection connection : mConnections.values()) {
+            if (connection.isIdle()) {
+                idle.add(connection);
+            }
+        }
+        if (!idle.isEmpty()) {
+            Log.i(TAG, "Unbinding %d idle connections: %s", idle.size(), reason);
+        }
+        for (PooledConnection connection : idle) {
+            mMemoryPressureUnbinds++;
+            unbind(connection);
+        }
+    }
+
+    /**
+     * @return The average time a screening service took to bind, or 0 if none has been bound.
+     */
+    public synchronized long getAverageColdBindMillis() {
+        return mColdBinds == 0 ? 0 : mTotalColdBindMillis / mColdBinds;
+    }
+
+    @VisibleForTesting
+    public synchronized int getBoundCount() {
+        return mConnections.size();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            unbindIdle("trim memory " + level);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        unbindIdle("low memory");
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private PooledConnection getOrBind(String packageName, UserHandle userHandle) {
+        String key = getKey(packageName, userHandle);
+        PooledConnection connection = mConnections.get(key);
+        if (connection != null) {
+            if (connection.idleUnbind != null) {
+                mHandler.removeCallbacks(connection.idleUnbind);
+                connection.idleUnbind = null;
+            }
+            return connection;
+        }
+        ComponentName componentName = CallScreeningServiceHelper.resolveCallScreeningService(
+                mContext, userHandle, packageName);
+        if (componentName == null) {
+            Log.i(TAG, "No call screening service to bind for %s", packageName);
+            return null;
+        }
+        connection = new PooledConnection(key, packageName, userHandle, componentName);
+        // Without an idle window the connection is only bound while in use.
+        if (!CallScreeningServiceHelper.bindCallScreeningService(mContext, componentName,
+                connection, mIdleMillis > 0 ? CallScreeningServiceHelper.BIND_FLAGS_IDLE
+                        : CallScreeningServiceHelper.BIND_FLAGS_ACTIVE)) {
+            Log.i(TAG, "Call screening service binding failed for %s", packageName);
+            return null;
+        }
+        mConnections.put(key, connection);
+        return connection;
+    }
+
+    /**
+     * Raises the priority of the service's app while the connection is in use, and lowers it
+     * again once the connection is idle.
+     */
+    private void setActive(PooledConnection connection, boolean isActive) {
+        if (mIdleMillis <= 0 || isActive == (connection.activeBinding != null)) {
+            return;
+        }
+        if (isActive) {
+            ServiceConnection activeBinding = new ActiveBinding();
+            if (CallScreeningServiceHelper.bindCallScreeningService(mContext,
+                    connection.resolvedComponentName, activeBinding,
+                    CallScreeningServiceHelper.BIND_FLAGS_ACTIVE)) {
+                connection.activeBinding = activeBinding;
+            } else {
+                Log.i(TAG, "Unable to raise the priority of %s", connection.packageName);
+            }
+        } else {
+            unbindService(connection.activeBinding);
+            connection.activeBinding = null;
+        }
+    }
+
+    private void scheduleIdleUnbind(PooledConnection connection) {
+        if (mIdleMillis <= 0) {
+            unbind(connection);
+            return;
+        }
+        if (connection.idleUnbind != null) {
+            mHandler.removeCallbacks(connection.idleUnbind);
+        }
+        connection.idleUnbind = () -> {
+            synchronized (CallScreeningServiceConnectionPool.this) {
+                if (mConnections.get(connection.key) == connection && connection.isIdle()) {
+                    mIdleUnbinds++;
+                    unbind(connection);
+                }
+            }
+        };
+        mHandler.postDelayed(connection.idleUnbind, mIdleMillis);
+    }
+
+    /**
+     * Drops a connection which was lost, telling its users.
+     */
+    private void drop(PooledConnection connection, String reason) {
+        List<Listener> listeners;
+        synchronized (this) {
+            if (mConnections.get(connection.key) != connection) {
+                return;
+            }
+            Log.i(TAG, "Connection to %s lost: %s", connection.packageName, reason);
+            listeners = new ArrayList<>(connection.pendingListeners);
+            listeners.addAll(connection.connectedListeners);
+            connection.pendingListeners.clear();
+            connection.connectedListeners.clear();
+            unbind(connection);
+        }
+        for (Listener listener : listeners) {
+            listener.onDisconnected(reason);
+        }
+    }
+
+    private void unbind(PooledConnection connection) {
+        mConnections.remove(connection.key);
+        if (connection.idleUnbind != null) {
+            mHandler.removeCallbacks(connection.idleUnbind);
+            connection.idleUnbind = null;
+        }
+        setActive(connection, false);
+        unbindService(connection);
+    }
+
+    private void unbindService(ServiceConnection connection) {
+        try {
+            mContext.unbindService(connection);
+        } catch (IllegalArgumentException e) {
+            Log.i(TAG, "Exception when unbind service %s : %s", connection, e.getMessage());
+        }
+    }
+
+    private static String getKey(String packageName, UserHandle userHandle) {
+        return packageName + "/" + userHandle.getIdentifier();
+    }
+
+    public synchronized void dump(IndentingPrintWriter pw) {
+        long averageColdBindMillis = getAverageColdBindMillis();
+        pw.println("CallScreeningServiceConnectionPool: idleMillis=" + mIdleMillis
+                + ", warmAcquires=" + mWarmAcquires
+                + ", coldAcquires=" + mColdAcquires
+                + ", avgColdBindMillis=" + averageColdBindMillis
+                + ", estimatedSavedMillis=" + mWarmAcquires * averageColdBindMillis
+                + ", idleUnbinds=" + mIdleUnbinds
+                + ", memoryPressureUnbinds=" + mMemoryPressureUnbinds);
+        pw.increaseIndent();
+        for (PooledConnection connection : mConnections.values()) {
+            pw.println(connection);
+        }
+        pw.decreaseIndent();
+    }
+}
@@ -19,11 +19,10 @@ package com.android.server.telecom.callfiltering;
 import android.Manifest;
 import android.content.ComponentName;
 import android.content.Context;
-import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.Binder;
-import android.os.IBinder;
 import android.os.RemoteException;
+import android.os.UserHandle;
 import android.provider.CallLog;
 import android.telecom.CallScreeningService;
 import android.telecom.Log;
@@ -33,7 +32,6 @@ import com.android.internal.telecom.ICallScreeningAdapter;
 import com.android.internal.telecom.ICallScreeningService;
 import com.android.server.telecom.AppLabelProxy;
 import com.android.server.telecom.Call;
-import com.android.server.telecom.CallScreeningServiceHelper;
 import com.android.server.telecom.CallsManager;
 import com.android.server.telecom.LogUtils;
 import com.android.server.telecom.ParcelableCallUtils;
@@ -52,10 +50,12 @@ public class CallScreeningServiceFilter extends CallFilter {
     private final int mPackagetype;
     private PackageManager mPackageManager;
     private Context mContext;
-    private CallScreeningServiceConnection mConnection;
+    private volatile CallScreeningServiceConnection mConnection;
+    private UserHandle mUserHandle;
     private final CallsManager mCallsManager;
     private CharSequence mAppName;
     private final ParcelableCallUtils.Converter mParcelableCallUtilsConverter;
+    private final CallScreeningServiceConnectionPool mConnectionPool;
 
     private class CallScreeningAdapter extends ICallScreeningAdapter.Stub {
         private CompletableFuture<CallFilteringResult> mResultFuture;
@@ -208,7 +208,8 @@ public class CallScreeningServiceFilter extends CallFilter {
         }
     }
 
-    private class CallScreeningServiceConnection implements ServiceConnection {
+    private class CallScreeningServiceConnection
+            implements CallScreeningServiceConnectionPool.Listener {
         private CompletableFuture<CallFilteringResult> mResultFuture;
 
         public CallScreeningServiceConnection(CompletableFuture<CallFilteringResult> resultFuture) {
@@ -216,9 +217,8 @@ public class CallScreeningServiceFilter extends CallFilter {
         }
 
         @Override
-        public void onServiceConnected(ComponentName componentName, IBinder service) {
-            ICallScreeningService callScreeningService =
-                    ICallScreeningService.Stub.asInterface(service);
+        public void onConnected(ComponentName componentName,
+                ICallScreeningService callScreeningService, boolean isWarm) {
             try {
                 callScreeningService.screenCall(new CallScreeningAdapter(mResultFuture),
                         mParcelableCallUtilsConverter.
@@ -227,29 +227,24 @@ public class CallScreeningServiceFilter extends CallFilter {
                 Log.e(this, e, "Failed to set the call screening adapter");
                 mResultFuture.complete(mPriorStageResult);
             }
-            Log.addEvent(mCall, LogUtils.Events.SCREENING_BOUND, componentName);
+            if (isWarm) {
+                // The bind this call did not wait for took about as long as binds usually do.
+                Log.addEvent(mCall, LogUtils.Events.SCREENING_BOUND, componentName
+                        + " (warm, savedMillis="
+                        + mConnectionPool.getAverageColdBindMillis() + ")");
+            } else {
+                Log.addEvent(mCall, LogUtils.Events.SCREENING_BOUND, componentName);
+            }
             Log.i(this, "Binding completed.");
         }
 
         @Override
-        public void onServiceDisconnected(ComponentName componentName) {
+        public void onDisconnected(String reason) {
             mResultFuture.complete(mPriorStageResult);
-            Log.i(this, "Service disconnected.");
-            unbindCallScreeningService();
-        }
-
-        @Override
-        public void onBindingDied(ComponentName name) {
-            mResultFuture.complete(mPriorStageResult);
-            Log.i(this, "Binding died.");
-            unbindCallScreeningService();
-        }
-
-        @Override
-        public void onNullBinding(ComponentName name) {
-            mResultFuture.complete(mPriorStageResult);
-            Log.i(this, "Null binding.");
-            unbindCallScreeningService();
+            Log.i(this, "Connection lost: %s", reason);
+            if (mConnection == this) {
+                mConnection = null;
+            }
         }
     }
 
@@ -261,6 +256,19 @@ public class CallScreeningServiceFilter extends CallFilter {
             CallsManager callsManager,
             AppLabelProxy appLabelProxy,
             ParcelableCallUtils.Converter parcelableCallUtilsConverter) {
+        this(call, packageName, packageType, context, callsManager, appLabelProxy,
+                parcelableCallUtilsConverter, new CallScreeningServiceConnectionPool(context, 0));
+    }
+
+    public CallScreeningServiceFilter(
+            Call call,
+            String packageName,
+            int packageType,
+            Context context,
+            CallsManager callsManager,
+            AppLabelProxy appLabelProxy,
+            ParcelableCallUtils.Converter parcelableCallUtilsConverter,
+            CallScreeningServiceConnectionPool connectionPool) {
         super();
         mCall = call;
         mPackageName = packageName;
@@ -270,6 +278,7 @@ public class CallScreeningServiceFilter extends CallFilter {
         mCallsManager = callsManager;
         mAppName = appLabelProxy.getAppLabel(mPackageName);
         mParcelableCallUtilsConverter = parcelableCallUtilsConverter;
+        mConnectionPool = connectionPool;
     }
 
     @Override
@@ -297,6 +306,31 @@ public class CallScreeningServiceFilter extends CallFilter {
         return resultFuture;
     }
 
+    /**
+     * Stops waiting for the call screening service and unbinds from it.
+     */
+    @Override
+    public void cancel() {
+        if (mConnection != null) {
+            Log.i(this, "Filtering completed; no longer waiting for %s", mPackageName);
+            CompletableFuture<CallFilteringResult> resultFuture = mConnection.mResultFuture;
+            unbindCallScreeningService();
+            resultFuture.complete(mPriorStageResult);
+        }
+    }
+
+    @Override
+    public String getName() {
+        switch (mPackagetype) {
+            case PACKAGE_TYPE_CARRIER:
+                return super.getName() + "(carrier)";
+            case PACKAGE_TYPE_DEFAULT_DIALER:
+                return super.getName() + "(dialer)";
+            default:
+                return super.getName() + "(user)";
+        }
+    }
+
     @Override
     public String toString() {
         return super.toString() + ": " + mPackageName;
@@ -317,25 +351,22 @@ public class CallScreeningServiceFilter extends CallFilter {
             CompletableFuture<CallFilteringResult> resultFuture) {
         CallScreeningServiceConnection connection = new CallScreeningServiceConnection(
                 resultFuture);
-        if (!CallScreeningServiceHelper.bindCallScreeningService(mContext,
-                mCallsManager.getCurrentUserHandle(), mPackageName, connection)) {
-            Log.i(this, "Call screening service binding failed.");
-            resultFuture.complete(mPriorStageResult);
-        } else {
-            mConnection = connection;
-        }
+        mUserHandle = mCallsManager.getCurrentUserHandle();
+        mConnection = connection;
+        // Completes the future right away if the bind fails.
+        mConnectionPool.acquire(mPackageName, mUserHandle, connection);
     }
 
+    /**
+     * Releases the connection to the call screening service, which the connection pool unbinds
+     * once it has been idle for a while.
+     */
     public void unbindCallScreeningService() {
-        if (mConnection != null) {
-            try {
-                mContext.unbindService(mConnection);
-            } catch (IllegalArgumentException e) {
-                Log.i(this, "Exception when unbind service %s : %s", mConnection,
-                        e.getMessage());
-            }
-        }
+        CallScreeningServiceConnection connection = mConnection;
         mConnection = null;
+        if (connection != null) {
+            mConnectionPool.release(mPackageName, mUserHandle, connection);
+        }
     }
 
     private boolean isSystemDialer() {
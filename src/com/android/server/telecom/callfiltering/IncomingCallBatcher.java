@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.telecom.Log;
+
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.Call;
+import com.android.server.telecom.ClockProxy;
+
+/**
+ * Notices bursts of incoming calls, such as when a carrier trunk delivers many calls at once, so
+ * that the lookups which the calls of a burst share can be prepared once for the whole burst.
+ * <p>
+ * No call is held back: each call is admitted to filtering as soon as it arrives and is filtered
+ * with its own filter graph and timeouts.  A call which arrives within the burst window of the
+ * previous call belongs to the same burst.  Must be used with the Telecom lock held.
+ */
+public class IncomingCallBatcher {
+    private static final String TAG = IncomingCallBatcher.class.getSimpleName();
+
+    /**
+     * Prepares the lookups shared by the calls of a burst.
+     */
+    public interface BurstListener {
+        /**
+         * Called when a call starts a burst, before the call is filtered.
+         *
+         * @param call The second call of the burst.
+         */
+        void onBurstStarted(Call call);
+    }
+
+    private final ClockProxy mClockProxy;
+    private final long mWindowMillis;
+    private final BurstListener mBurstListener;
+
+    private long mLastAdmissionMillis = Long.MIN_VALUE;
+    private int mBurstSize;
+    private long mCalls;
+    private long mBursts;
+    private long mBurstCalls;
+    private int mMaxBurstSize;
+
+    /**
+     * @param clockProxy The clock.
+     * @param windowMillis How long after a call a further call belongs to the same burst; 0
+     *        disables burst detection.
+     * @param burstListener Prepares each burst.
+     */
+    public IncomingCallBatcher(ClockProxy clockProxy, long windowMillis,
+            BurstListener burstListener) {
+        mClockProxy = clockProxy;
+        mWindowMillis = windowMillis;
+        mBurstListener = burstListener;
+    }
+
+    /**
+     * Admits a call to filtering.
+     *
+     * @param call The incoming call.
+     * @param filter Filters the call; run before this returns.
+     */
+    public void admit(Call call, Runnable filter) {
+        long now = mClockProxy.elapsedRealtime();
+        boolean isInBurst = mWindowMillis > 0 && mLastAdmissionMillis != Long.MIN_VALUE
+                && now - mLastAdmissionMillis < mWindowMillis;
+        mLastAdmissionMillis = now;
+        mCalls++;
+        if (!isInBurst) {
+            mBurstSize = 1;
+        } else {
+            mBurstSize++;
+            mBurstCalls++;
+            if (mBurstSize == 2) {
+                // The first call of the burst was not counted when it arrived.
+                mBursts++;
+                mBurstCalls++;
+                Log.i(TAG, "%s starts a burst of incoming calls", call.getId());
+                mBurstListener.onBurstStarted(call);
+            }
+            mMaxBurstSize = Math.max(mMaxBurstSize, mBurstSize);
+        }
+        filter.run();
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        pw.println("IncomingCallBatcher: windowMillis=" + mWindowMillis
+                + ", calls=" + mCalls
+                + ", bursts=" + mBursts
+                + ", burstCalls=" + mBurstCalls
+                + ", maxBurstSize=" + mMaxBurstSize);
+    }
+}
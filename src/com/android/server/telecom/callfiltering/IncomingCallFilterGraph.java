@@ -17,20 +17,24 @@
 package com.android.server.telecom.callfiltering;
 
 import android.content.Context;
-import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.telecom.Log;
 import android.telecom.Logging.Runnable;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.telecom.Call;
-import com.android.server.telecom.LoggedHandlerExecutor;
 import com.android.server.telecom.LogUtils;
 import com.android.server.telecom.TelecomSystem;
 import com.android.server.telecom.Timeouts;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class IncomingCallFilterGraph {
     //TODO: Add logging for control flow.
@@ -45,15 +49,23 @@ public class IncomingCallFilterGraph {
 
     private final CallFilterResultCallback mListener;
     private final Call mCall;
-    private final Handler mHandler;
-    private final HandlerThread mHandlerThread;
+    private final CallFilteringExecutor mExecutor;
+    private final CallFilteringExecutor.Lane mLane;
     private final TelecomSystem.SyncRoot mLock;
     private List<CallFilter> mFiltersList;
     private CallFilter mCompletionSentinel;
-    private boolean mFinished;
-    private CallFilteringResult mCurrentResult;
+    private volatile boolean mFinished;
+    private volatile CallFilteringResult mCurrentResult;
     private Context mContext;
     private Timeouts.Adapter mTimeoutsAdapter;
+    private volatile java.lang.Runnable mTimeoutTask;
+    /** Filters which have been started but have not produced a result. */
+    private final Set<CallFilter> mRunningFilters = ConcurrentHashMap.newKeySet();
+    /** When filtering completed early because of a final result, or 0. */
+    private volatile long mEarlyCompletionTimeMillis;
+    /** When filtering started, from {@link SystemClock#elapsedRealtimeNanos()}. */
+    private long mFilteringStartNanos;
+    private final AtomicBoolean mTimingsRecorded = new AtomicBoolean();
 
     private class PostFilterTask {
         private final CallFilter mFilter;
@@ -64,7 +76,18 @@ public class IncomingCallFilterGraph {
 
         public CallFilteringResult whenDone(CallFilteringResult result) {
             Log.i(TAG, "Filter %s done, result: %s.", mFilter, result);
+            mFilter.setEndNanos(SystemClock.elapsedRealtimeNanos());
             mFilter.result = result;
+            mRunningFilters.remove(mFilter);
+            if (mFinished) {
+                // Filtering already completed, so the rest of the graph is not run.
+                maybeLogLatencySaved();
+                return result;
+            }
+            if (mFilter.isResultFinal(result)) {
+                completeEarly(mFilter);
+                return result;
+            }
             for (CallFilter filter : mFilter.getFollowings()) {
                 if (filter.decrementAndGetIndegree() == 0) {
                     scheduleFilter(filter);
@@ -72,25 +95,35 @@ public class IncomingCallFilterGraph {
             }
             if (mFilter.equals(mCompletionSentinel)) {
                 synchronized (mLock) {
+                    if (mFinished) {
+                        return result;
+                    }
                     mFinished = true;
                     mListener.onCallFilteringComplete(mCall, result, false);
                     Log.addEvent(mCall, LogUtils.Events.FILTERING_COMPLETED, result);
                 }
-                mHandlerThread.quit();
+                mExecutor.cancelTimeout(mTimeoutTask);
+                recordTimings(mCompletionSentinel);
             }
             return result;
         }
     }
 
+    @VisibleForTesting
     public IncomingCallFilterGraph(Call call, CallFilterResultCallback listener, Context context,
             Timeouts.Adapter timeoutsAdapter, TelecomSystem.SyncRoot lock) {
+        this(call, listener, context, timeoutsAdapter, lock, CallFilteringExecutor.getDefault());
+    }
+
+    public IncomingCallFilterGraph(Call call, CallFilterResultCallback listener, Context context,
+            Timeouts.Adapter timeoutsAdapter, TelecomSystem.SyncRoot lock,
+            CallFilteringExecutor executor) {
         mListener = listener;
         mCall = call;
         mFiltersList = new ArrayList<>();
 
-        mHandlerThread = new HandlerThread(TAG);
-        mHandlerThread.start();
-        mHandler = new Handler(mHandlerThread.getLooper());
+        mExecutor = executor;
+        mLane = executor.acquireLane();
         mLock = lock;
         mFinished = false;
         mContext = context;
@@ -104,6 +137,7 @@ public class IncomingCallFilterGraph {
 
     public void performFiltering() {
         Log.addEvent(mCall, LogUtils.Events.FILTERING_INITIATED);
+        mFilteringStartNanos = SystemClock.elapsedRealtimeNanos();
         CallFilter dummyStart = new CallFilter();
         mCompletionSentinel = new CallFilter();
 
@@ -115,8 +149,9 @@ public class IncomingCallFilterGraph {
         }
         addEdge(dummyStart, mCompletionSentinel);
 
-        scheduleFilter(dummyStart);
-        mHandler.postDelayed(new Runnable("ICFG.pF", mLock) {
+        // The timeout does not run on the lane, so that it fires on time even while a filter of
+        // this or another call is busy.
+        mTimeoutTask = mExecutor.postTimeout(new Runnable("ICFG.pF", mLock) {
             @Override
             public void loggedRun() {
                 if (!mFinished) {
@@ -124,7 +159,7 @@ public class IncomingCallFilterGraph {
                     Log.addEvent(mCall, LogUtils.Events.FILTERING_TIMED_OUT);
                     mListener.onCallFilteringComplete(mCall, mCurrentResult, true);
                     mFinished = true;
-                    mHandlerThread.quit();
+                    recordTimings(getSlowestRunningFilter());
                 }
                 for (CallFilter filter : mFiltersList) {
                     // unbind timed out call screening service
@@ -134,9 +169,137 @@ public class IncomingCallFilterGraph {
                 }
             }
         }.prepare(), mTimeoutsAdapter.getCallScreeningTimeoutMillis(mContext.getContentResolver()));
+        scheduleFilter(dummyStart);
     }
 
-    private void scheduleFilter(CallFilter filter) {
+    /**
+     * Completes filtering with the combined result of the filters which have finished, without
+     * waiting for the rest.  Filters which are still running are cancelled and filters which have
+     * not started are skipped.
+     */
+    private void completeEarly(CallFilter finalFilter) {
+        List<CallFilter> completed = new ArrayList<>();
+        for (CallFilter filter : mFiltersList) {
+            if (filter.result != null) {
+                completed.add(filter);
+            }
+        }
+        CallFilteringResult result = combineResults(completed);
+        synchronized (mLock) {
+            if (mFinished) {
+                return;
+            }
+            mFinished = true;
+            mEarlyCompletionTimeMillis = SystemClock.elapsedRealtime();
+            mListener.onCallFilteringComplete(mCall, result, false);
+            Log.addEvent(mCall, LogUtils.Events.FILTERING_COMPLETED, result);
+        }
+        mExecutor.cancelTimeout(mTimeoutTask);
+
+        int cancelled = mRunningFilters.size();
+        int skipped = mFiltersList.size() - completed.size() - cancelled;
+        Log.addEvent(mCall, LogUtils.Events.FILTERING_COMPLETED_EARLY,
+                "finalFilter=" + finalFilter + ", cancelled=" + cancelled
+                        + ", skipped=" + skipped);
+        recordTimings(finalFilter);
+        for (CallFilter filter : mRunningFilters) {
+            filter.cancel();
+        }
+        maybeLogLatencySaved();
+    }
+
+    /**
+     * @return The running filter which started first, which is the one filtering timed out
+     *         waiting on, or the completion sentinel if no filter is running.
+     */
+    private CallFilter getSlowestRunningFilter() {
+        CallFilter slowest = mCompletionSentinel;
+        for (CallFilter filter : mRunningFilters) {
+            if (!mFiltersList.contains(filter)) {
+                continue;
+            }
+            if (slowest == mCompletionSentinel
+                    || filter.getReadyNanos() < slowest.getReadyNanos()) {
+                slowest = filter;
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * Finds the critical path of filtering: walking back from the filter filtering finished on,
+     * at each step the dependency which finished last is the one which held up its following.
+     */
+    @VisibleForTesting
+    public Set<CallFilter> getCriticalPath(CallFilter terminal) {
+        Set<CallFilter> path = new HashSet<>();
+        CallFilter filter = terminal;
+        while (filter != null) {
+            path.add(filter);
+            CallFilter latest = null;
+            for (CallFilter dependency : filter.getDependencies()) {
+                if (dependency.getEndNanos() != 0 && (latest == null
+                        || dependency.getEndNanos() > latest.getEndNanos())) {
+                    latest = dependency;
+                }
+            }
+            filter = latest;
+        }
+        return path;
+    }
+
+    /**
+     * Records the timing of each filter to the call's analytics and to
+     * {@link CallFilterLatencyStats}, once per call.
+     */
+    private void recordTimings(CallFilter terminal) {
+        if (!mTimingsRecorded.compareAndSet(false, true)) {
+            return;
+        }
+        Set<CallFilter> criticalPath = getCriticalPath(terminal);
+        for (CallFilter filter : mFiltersList) {
+            if (filter.getReadyNanos() == 0) {
+                // Skipped because filtering completed before the filter was reached.
+                continue;
+            }
+            long readyMillis = toMillis(filter.getReadyNanos() - mFilteringStartNanos);
+            long queueWaitMillis = filter.getStartNanos() == 0 ? 0
+                    : toMillis(filter.getStartNanos() - filter.getReadyNanos());
+            long durationMillis = filter.getEndNanos() == 0 || filter.getStartNanos() == 0 ? -1
+                    : toMillis(filter.getEndNanos() - filter.getStartNanos());
+            boolean isOnCriticalPath = criticalPath.contains(filter);
+            if (mCall.getAnalytics() != null) {
+                mCall.getAnalytics().addCallFilterTiming(filter.getName(), readyMillis,
+                        queueWaitMillis, durationMillis, isOnCriticalPath);
+            }
+            CallFilterLatencyStats.record(filter.getName(), durationMillis, queueWaitMillis,
+                    isOnCriticalPath);
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Once every filter running at the time of an early completion has finished, logs how long
+     * after the early completion that was, which is the latency the early completion saved.
+     */
+    private void maybeLogLatencySaved() {
+        if (mEarlyCompletionTimeMillis == 0 || !mRunningFilters.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            if (mEarlyCompletionTimeMillis == 0) {
+                return;
+            }
+            Log.addEvent(mCall, LogUtils.Events.FILTERING_LATENCY_SAVED, "savedMillis="
+                    + (SystemClock.elapsedRealtime() - mEarlyCompletionTimeMillis));
+            mEarlyCompletionTimeMillis = 0;
+        }
+    }
+
+    private static CallFilteringResult combineResults(List<CallFilter> filters) {
         CallFilteringResult result = new CallFilteringResult.Builder()
                 .setShouldAllowCall(true)
                 .setShouldReject(false)
@@ -144,11 +307,18 @@ public class IncomingCallFilterGraph {
                 .setShouldAddToCallLog(true)
                 .setShouldShowNotification(true)
                 .build();
-        for (CallFilter dependencyFilter : filter.getDependencies()) {
-            result = result.combine(dependencyFilter.getResult());
+        for (CallFilter filter : filters) {
+            result = result.combine(filter.getResult());
         }
+        return result;
+    }
+
+    private void scheduleFilter(CallFilter filter) {
+        CallFilteringResult result = combineResults(filter.getDependencies());
         mCurrentResult = result;
         final CallFilteringResult input = result;
+        mRunningFilters.add(filter);
+        filter.setReadyNanos(SystemClock.elapsedRealtimeNanos());
 
         CompletableFuture<CallFilteringResult> startFuture =
                 CompletableFuture.completedFuture(input);
@@ -156,10 +326,11 @@ public class IncomingCallFilterGraph {
 
         // TODO: improve these filter logging names to be more reflective of the filters that are
         // executing
-        startFuture.thenComposeAsync(filter::startFilterLookup,
-                new LoggedHandlerExecutor(mHandler, "ICFG.sF", null))
-                .thenApplyAsync(postFilterTask::whenDone,
-                        new LoggedHandlerExecutor(mHandler, "ICFG.sF", null))
+        startFuture.thenComposeAsync(r -> {
+                    filter.setStartNanos(SystemClock.elapsedRealtimeNanos());
+                    return filter.startFilterLookup(r);
+                }, mLane.withLogSession("ICFG.sF"))
+                .thenApplyAsync(postFilterTask::whenDone, mLane.withLogSession("ICFG.sF"))
                 .exceptionally((t) -> {
                     Log.e(filter, t, "Encountered exception running filter");
                     return null;
@@ -171,8 +342,4 @@ public class IncomingCallFilterGraph {
         before.addFollowings(after);
         after.addDependency(before);
     }
-
-    public HandlerThread getHandlerThread() {
-        return mHandlerThread;
-    }
 }
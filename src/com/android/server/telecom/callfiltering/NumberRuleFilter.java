@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.content.Context;
+import android.provider.BlockedNumberContract;
+import android.provider.CallLog;
+import android.telecom.Log;
+import android.telecom.PhoneAccount;
+import android.telecom.TelecomManager;
+import android.telephony.PhoneNumberUtils;
+import android.telephony.TelephonyManager;
+import android.text.TextUtils;
+
+import com.android.server.telecom.Call;
+import com.android.server.telecom.LogUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Rejects incoming calls from numbers matching the prefix, wildcard and range rules of a
+ * {@link NumberRuleStore}, such as the spoofed and premium ranges a carrier asks to block.
+ * <p>
+ * Like the blocked number list, the rules are not applied while blocking is suppressed after an
+ * emergency call, so that a callback from the emergency services is never rejected.
+ */
+public class NumberRuleFilter extends CallFilter {
+    private final Context mContext;
+    private final Call mCall;
+    private final NumberRuleStore mNumberRuleStore;
+    private final Executor mIoExecutor;
+
+    /**
+     * @param ioExecutor Runs the block suppression query, which blocks.
+     */
+    public NumberRuleFilter(Context context, Call call, NumberRuleStore numberRuleStore,
+            Executor ioExecutor) {
+        mContext = context;
+        mCall = call;
+        mNumberRuleStore = numberRuleStore;
+        mIoExecutor = ioExecutor;
+    }
+
+    @Override
+    public CompletionStage<CallFilteringResult> startFilterLookup(CallFilteringResult result) {
+        boolean matched = false;
+        if (mCall.getHandlePresentation() == TelecomManager.PRESENTATION_ALLOWED
+                && mCall.getHandle() != null
+                && PhoneAccount.SCHEME_TEL.equals(mCall.getHandle().getScheme())) {
+            matched = matches(mCall.getHandle().getSchemeSpecificPart());
+        }
+        if (!matched) {
+            Log.addEvent(mCall, LogUtils.Events.NUMBER_RULE_CHECK_FINISHED, false);
+            return CompletableFuture.completedFuture(IncomingCallFilterGraph.DEFAULT_RESULT);
+        }
+        // Only a matching number needs the suppression status, which is a provider query.
+        return CompletableFuture.supplyAsync(this::isBlockingSuppressed,
+                CallFilteringExecutor.withLogSession(mIoExecutor, "NRF.sFL"))
+                .thenApply(this::getResult);
+    }
+
+    private CallFilteringResult getResult(boolean isBlockingSuppressed) {
+        CallFilteringResult filteringResult;
+        if (isBlockingSuppressed) {
+            Log.i(this, "Number matches a rule, but blocking is suppressed after an emergency "
+                    + "call.");
+            filteringResult = IncomingCallFilterGraph.DEFAULT_RESULT;
+        } else {
+            filteringResult = new CallFilteringResult.Builder()
+                    .setShouldAllowCall(false)
+                    .setShouldReject(true)
+                    .setShouldAddToCallLog(true)
+                    .setShouldShowNotification(false)
+                    .setCallBlockReason(CallLog.Calls.BLOCK_REASON_BLOCKED_NUMBER)
+                    .setCallScreeningAppName(null)
+                    .setCallScreeningComponentName(null)
+                    .build();
+        }
+        Log.addEvent(mCall, LogUtils.Events.NUMBER_RULE_CHECK_FINISHED,
+                !isBlockingSuppressed);
+        return filteringResult;
+    }
+
+    private boolean isBlockingSuppressed() {
+        try {
+            return BlockedNumberContract.SystemContract.getBlockSuppressionStatus(mContext)
+                    .isSuppressed;
+        } catch (Exception e) {
+            Log.w(this, "Unable to read the block suppression status: %s", e);
+            return false;
+        }
+    }
+
+    /**
+     * A number matching a blocking rule is rejected whatever the other filters decide.
+     */
+    @Override
+    public boolean isResultFinal(CallFilteringResult result) {
+        return !result.shouldAllowCall;
+    }
+
+    /**
+     * Matches both the number as received and, as rules are usually written for full numbers,
+     * its E164 form.
+     */
+    private boolean matches(String number) {
+        if (TextUtils.isEmpty(number)) {
+            return false;
+        }
+        NumberRuleTrie rules = mNumberRuleStore.getRules();
+        if (rules.getRuleCount() == 0) {
+            return false;
+        }
+        if (rules.matches(getDigits(number))) {
+            return true;
+        }
+        String countryIso = getNetworkCountryIso();
+        if (countryIso == null) {
+            return false;
+        }
+        String e164 = PhoneNumberUtils.formatNumberToE164(number, countryIso);
+        return e164 != null && rules.matches(getDigits(e164));
+    }
+
+    private String getNetworkCountryIso() {
+        TelephonyManager tm = mContext.getSystemService(TelephonyManager.class);
+        if (tm == null) {
+            return null;
+        }
+        String countryIso = tm.getNetworkCountryIso();
+        return TextUtils.isEmpty(countryIso) ? null : countryIso;
+    }
+
+    private static String getDigits(String number) {
+        String normalized = PhoneNumberUtils.normalizeNumber(number);
+        return normalized.startsWith("+") ? normalized.substring(1) : normalized;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.os.FileObserver;
+import android.os.SystemClock;
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads the number blocking rules used by {@link NumberRuleFilter} from a file with one rule per
+ * line (see {@link NumberRuleTrie}); blank lines and lines starting with {@code #} are ignored.
+ * The rules are reloaded when the file changes, and are empty while the file does not exist.
+ * <p>
+ * Building the rules can take a while for a large file, so it is never done on the call path:
+ * the rules are loaded in the background at startup and whenever the file changes, and
+ * {@link #getRules()} returns whichever rules were loaded last.
+ */
+public class NumberRuleStore {
+    private static final String TAG = NumberRuleStore.class.getSimpleName();
+
+    public static final String RULES_FILE_NAME = "call-blocking-rules.txt";
+
+    /**
+     * Notified on the loading thread after the rules are replaced.
+     */
+    public interface Listener {
+        void onRulesChanged(NumberRuleStore store);
+    }
+
+    private final File mFile;
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private FileObserver mFileObserver;
+    private volatile NumberRuleTrie mRules = NumberRuleTrie.EMPTY;
+
+    // Guarded by this.
+    private long mLoadedModified;
+    private long mLoadedLength;
+    private int mMalformedRules;
+    private long mLoadMillis;
+
+    /**
+     * @param file The rules file.
+     */
+    public NumberRuleStore(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Loads the rules, and reloads them whenever the rules file changes.
+     *
+     * @param executor Runs the loads.
+     */
+    public void startWatching(Executor executor) {
+        File directory = mFile.getParentFile();
+        if (directory != null) {
+            mFileObserver = new FileObserver(directory, FileObserver.CLOSE_WRITE
+                    | FileObserver.MOVED_TO | FileObserver.MOVED_FROM | FileObserver.DELETE) {
+                @Override
+                public void onEvent(int event, String path) {
+                    if (mFile.getName().equals(path)) {
+                        executor.execute(NumberRuleStore.this::reload);
+                    }
+                }
+            };
+            mFileObserver.startWatching();
+        }
+        executor.execute(this::reload);
+    }
+
+    /**
+     * @return The rules which were loaded last; never blocks on a load.
+     */
+    public NumberRuleTrie getRules() {
+        return mRules;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Reloads the rules if the file has changed since they were last loaded, and notifies the
+     * listeners if it had.
+     */
+    public void reload() {
+        synchronized (this) {
+            long modified = mFile.lastModified();
+            long length = mFile.length();
+            if (modified == mLoadedModified && length == mLoadedLength) {
+                return;
+            }
+            mLoadedModified = modified;
+            mLoadedLength = length;
+            mRules = modified == 0 ? NumberRuleTrie.EMPTY : load();
+        }
+        for (Listener listener : mListeners) {
+            listener.onRulesChanged(this);
+        }
+    }
+
+    private NumberRuleTrie load() {
+        long startMillis = SystemClock.elapsedRealtime();
+        NumberRuleTrie.Builder builder = new NumberRuleTrie.Builder();
+        int malformed = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(mFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    builder.addRule(line);
+                } catch (IllegalArgumentException e) {
+                    malformed++;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read number rules: %s", e);
+            return NumberRuleTrie.EMPTY;
+        }
+        NumberRuleTrie rules = builder.build();
+        mMalformedRules = malformed;
+        mLoadMillis = SystemClock.elapsedRealtime() - startMillis;
+        Log.i(TAG, "Loaded %d number rules (%d malformed) in %dms", rules.getRuleCount(),
+                malformed, mLoadMillis);
+        return rules;
+    }
+
+    @VisibleForTesting
+    public File getFile() {
+        return mFile;
+    }
+
+    public synchronized void dump(IndentingPrintWriter pw) {
+        pw.println("NumberRuleStore: rules=" + mRules.getRuleCount()
+                + ", nodes=" + mRules.getNodeCount()
+                + ", bytes=" + mRules.getRetainedBytes()
+                + ", malformed=" + mMalformedRules
+                + ", loadMillis=" + mLoadMillis);
+    }
+}
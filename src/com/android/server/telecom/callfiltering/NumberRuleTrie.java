@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable prefix trie of number blocking rules over the digits of a number.  Rules are:
+ * <ul>
+ *     <li>{@code 16505551234} matches exactly that number.</li>
+ *     <li>{@code 1900*} matches every number starting with {@code 1900}.</li>
+ *     <li>{@code 1650555????} matches any digit in place of each {@code ?}.</li>
+ *     <li>{@code 16505550000-16505554999} matches every number of the same length in the
+ *     inclusive range.</li>
+ * </ul>
+ * Any {@code +}, spaces and parentheses in a rule are ignored; a dash always separates a range.
+ * Ranges are stored as the handful of {@code ?} patterns which cover them, so a lookup only
+ * visits one node per digit of the number, plus one per {@code ?} branch.
+ * <p>
+ * Nodes are stored in parallel arrays in first-child / next-sibling form, sorted by digit, which
+ * takes ten bytes per node.  The arrays grow as nodes are added while the trie is built, and are
+ * trimmed to the number of nodes once it has been.
+ */
+public class NumberRuleTrie {
+    private static final byte WILDCARD = 10;
+    private static final byte FLAG_EXACT = 1;
+    private static final byte FLAG_PREFIX = 2;
+    /** The size of a node across the parallel arrays. */
+    private static final int BYTES_PER_NODE = 2 * Integer.BYTES + 2;
+    private static final int MIN_CAPACITY = 16;
+
+    public static final NumberRuleTrie EMPTY = new Builder().build();
+
+    private final int[] mFirstChild;
+    private final int[] mNextSibling;
+    private final byte[] mLabel;
+    private final byte[] mFlags;
+    private final int mNodeCount;
+    private final int mRuleCount;
+    private final long mBuildPeakBytes;
+
+    /**
+     * Collects rules; the trie is built once all of them have been added.
+     */
+    public static class Builder {
+        private final List<String> mPatterns = new ArrayList<>();
+        private int mRuleCount;
+
+        /**
+         * Adds a rule.
+         *
+         * @param rule The rule; see {@link NumberRuleTrie}.
+         * @return This builder.
+         * @throws IllegalArgumentException if the rule is malformed.
+         */
+        public Builder addRule(String rule) {
+            String stripped = strip(rule);
+            int dash = stripped.indexOf('-');
+            if (dash >= 0) {
+                addRange(stripped.substring(0, dash), stripped.substring(dash + 1), rule);
+            } else {
+                checkPattern(stripped, rule);
+                mPatterns.add(stripped);
+            }
+            mRuleCount++;
+            return this;
+        }
+
+        public NumberRuleTrie build() {
+            // Sorting lets the trie be built by appending nodes with siblings in label order, as
+            // '?' sorts after the digits.
+            Collections.sort(mPatterns);
+            return new NumberRuleTrie(mPatterns, mRuleCount);
+        }
+
+        private void addRange(String low, String high, String rule) {
+            if (low.isEmpty() || low.length() != high.length() || !isDigits(low)
+                    || !isDigits(high) || low.compareTo(high) > 0) {
+                throw new IllegalArgumentException("Malformed range rule: " + rule);
+            }
+            addRange(low, high);
+        }
+
+        /**
+         * Adds the patterns covering the range between two numbers of the same length.
+         */
+        private void addRange(String low, String high) {
+            int prefixLength = 0;
+            while (prefixLength < low.length()
+                    && low.charAt(prefixLength) == high.charAt(prefixLength)) {
+                prefixLength++;
+            }
+            if (prefixLength == low.length()) {
+                mPatterns.add(low);
+                return;
+            }
+            String prefix = low.substring(0, prefixLength);
+            char lowDigit = low.charAt(prefixLength);
+            char highDigit = high.charAt(prefixLength);
+            String lowRest = low.substring(prefixLength + 1);
+            String highRest = high.substring(prefixLength + 1);
+            String wildcards = repeat('?', lowRest.length());
+
+            char firstFull = lowDigit;
+            if (!lowRest.equals(repeat('0', lowRest.length()))) {
+                addRange(prefix + lowDigit + lowRest,
+                        prefix + lowDigit + repeat('9', lowRest.length()));
+                firstFull++;
+            }
+            char lastFull = highDigit;
+            if (!highRest.equals(repeat('9', highRest.length()))) {
+                addRange(prefix + highDigit + repeat('0', highRest.length()),
+                        prefix + highDigit + highRest);
+                lastFull--;
+            }
+            for (char digit = firstFull; digit <= lastFull; digit++) {
+                mPatterns.add(prefix + digit + wildcards);
+            }
+        }
+
+        private static void checkPattern(String pattern, String rule) {
+            if (pattern.isEmpty()) {
+                throw new IllegalArgumentException("Empty rule: " + rule);
+            }
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                boolean valid = (c >= '0' && c <= '9') || c == '?'
+                        || (c == '*' && i == pattern.length() - 1);
+                if (!valid) {
+                    throw new IllegalArgumentException("Malformed rule: " + rule);
+                }
+            }
+        }
+
+        private static String strip(String rule) {
+            StringBuilder sb = new StringBuilder(rule.length());
+            for (int i = 0; i < rule.length(); i++) {
+                char c = rule.charAt(i);
+                if (c != '+' && c != ' ' && c != '(' && c != ')') {
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+        private static boolean isDigits(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String repeat(char c, int count) {
+            char[] chars = new char[count];
+            Arrays.fill(chars, c);
+            return new String(chars);
+        }
+    }
+
+    private NumberRuleTrie(List<String> sortedPatterns, int ruleCount) {
+        int maxLength = 0;
+        for (String pattern : sortedPatterns) {
+            maxLength = Math.max(maxLength, pattern.length());
+        }
+        // Every distinct pattern ends at its own node, so there are at least about as many nodes
+        // as patterns; the arrays grow from there as nodes are added.
+        int capacity = Math.max(MIN_CAPACITY, sortedPatterns.size() + 1);
+        int[] firstChild = grow(new int[0], capacity);
+        int[] nextSibling = grow(new int[0], capacity);
+        byte[] label = new byte[capacity];
+        byte[] flags = new byte[capacity];
+        long peakBytes = (long) capacity * BYTES_PER_NODE;
+
+        // The path of nodes for the previous pattern; patterns sharing a prefix with it share
+        // those nodes, and any new node is the last child of its parent because of the sort.
+        int[] path = new int[maxLength + 1];
+        String previous = "";
+        int nodeCount = 1;
+        for (String pattern : sortedPatterns) {
+            boolean isPrefix = pattern.endsWith("*");
+            String digits = isPrefix ? pattern.substring(0, pattern.length() - 1) : pattern;
+            int common = 0;
+            while (common < digits.length() && common < previous.length()
+                    && digits.charAt(common) == previous.charAt(common)) {
+                common++;
+            }
+            int node = path[common];
+            for (int i = common; i < digits.length(); i++) {
+                if (nodeCount == capacity) {
+                    int newCapacity = capacity + (capacity >> 1);
+                    // The old and new arrays are both live while they are copied.
+                    peakBytes = Math.max(peakBytes,
+                            (long) (capacity + newCapacity) * BYTES_PER_NODE);
+                    firstChild = grow(firstChild, newCapacity);
+                    nextSibling = grow(nextSibling, newCapacity);
+                    label = Arrays.copyOf(label, newCapacity);
+                    flags = Arrays.copyOf(flags, newCapacity);
+                    capacity = newCapacity;
+                }
+                int child = nodeCount++;
+                label[child] = toLabel(digits.charAt(i));
+                if (firstChild[node] < 0) {
+                    firstChild[node] = child;
+                } else {
+                    int sibling = firstChild[node];
+                    while (nextSibling[sibling] >= 0) {
+                        sibling = nextSibling[sibling];
+                    }
+                    nextSibling[sibling] = child;
+                }
+                node = child;
+                path[i + 1] = node;
+            }
+            flags[node] |= isPrefix ? FLAG_PREFIX : FLAG_EXACT;
+            previous = digits;
+        }
+
+        if (nodeCount < capacity) {
+            peakBytes = Math.max(peakBytes, (long) (capacity + nodeCount) * BYTES_PER_NODE);
+            firstChild = Arrays.copyOf(firstChild, nodeCount);
+            nextSibling = Arrays.copyOf(nextSibling, nodeCount);
+            label = Arrays.copyOf(label, nodeCount);
+            flags = Arrays.copyOf(flags, nodeCount);
+        }
+        mFirstChild = firstChild;
+        mNextSibling = nextSibling;
+        mLabel = label;
+        mFlags = flags;
+        mNodeCount = nodeCount;
+        mRuleCount = ruleCount;
+        mBuildPeakBytes = peakBytes;
+    }
+
+    /**
+     * @return A copy of the array with the given length, with any new entries set to -1.
+     */
+    private static int[] grow(int[] array, int length) {
+        int[] grown = Arrays.copyOf(array, length);
+        Arrays.fill(grown, array.length, length, -1);
+        return grown;
+    }
+
+    /**
+     * @param digits The digits of a number, without any formatting.
+     * @return {@code true} if any rule matches the number.
+     */
+    public boolean matches(String digits) {
+        return mNodeCount > 1 && !digits.isEmpty() && matches(0, digits, 0);
+    }
+
+    private boolean matches(int node, String digits, int position) {
+        if ((mFlags[node] & FLAG_PREFIX) != 0) {
+            return true;
+        }
+        if (position == digits.length()) {
+            return (mFlags[node] & FLAG_EXACT) != 0;
+        }
+        byte digit = toLabel(digits.charAt(position));
+        for (int child = mFirstChild[node]; child >= 0; child = mNextSibling[child]) {
+            if ((mLabel[child] == digit || mLabel[child] == WILDCARD)
+                    && matches(child, digits, position + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getRuleCount() {
+        return mRuleCount;
+    }
+
+    public int getNodeCount() {
+        return mNodeCount;
+    }
+
+    /**
+     * @return The bytes held by the nodes of the trie.
+     */
+    public long getRetainedBytes() {
+        return (long) mNodeCount * BYTES_PER_NODE;
+    }
+
+    /**
+     * @return The most bytes held by the node arrays at any point while the trie was built, not
+     *         counting the patterns collected by the {@link Builder}.
+     */
+    public long getBuildPeakBytes() {
+        return mBuildPeakBytes;
+    }
+
+    private static byte toLabel(char c) {
+        return c == '?' ? WILDCARD : (byte) (c - '0');
+    }
+}
@@ -82,6 +82,15 @@ public class TelecomService extends Service implements TelecomSystem.Component {
         };
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        TelecomSystem telecomSystem = getTelecomSystem();
+        if (telecomSystem != null) {
+            telecomSystem.getCallsManager().onTrimMemory(level);
+        }
+    }
+
     /**
      * This method is to be called by components (Activitys, Services, ...) to initialize the
      * Telecom singleton. It should only be called on the main thread. As such, it is atomic
@@ -646,6 +646,7 @@ public class MissedCallNotifierImpl extends CallsManagerListenerBase implements
                                                 handleString, null);
                             }
 
+                            // Reloads wait behind the lookups of calls being set up.
                             callerInfoLookupHelper.startLookup(handle,
                                     new CallerInfoLookupHelper.OnQueryCompleteListener() {
                                         @Override
@@ -680,8 +681,7 @@ public class MissedCallNotifierImpl extends CallsManagerListenerBase implements
                                                     info, null, handle, date);
                                             showMissedCallNotification(callInfo, userHandle);
                                         }
-                                    }
-                            );
+                                    }, true);
                         }
                     } finally {
                         cursor.close();
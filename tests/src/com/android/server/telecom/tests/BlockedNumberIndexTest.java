@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.provider.BlockedNumberContract;
+import android.telecom.TelecomManager;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.callfiltering.BlockedNumberIndex;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class BlockedNumberIndexTest extends TelecomTestCase {
+    @Mock private Context mMockContext;
+
+    private final List<String> mBlockedNumbers = new ArrayList<>();
+    private int mQueries;
+    private BlockedNumberIndex mIndex;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mIndex = new BlockedNumberIndex(mMockContext) {
+            @Override
+            protected Collection<String> queryBlockedNumbers() {
+                mQueries++;
+                return new ArrayList<>(mBlockedNumbers);
+            }
+        };
+    }
+
+    @SmallTest
+    @Test
+    public void testBlockedNumberGoesToProvider() {
+        mBlockedNumbers.addAll(Arrays.asList("(650) 555-1234", "+16505551234"));
+
+        // Any formatting of a blocked number must be checked with the provider.
+        assertFalse(mIndex.isKnownNotBlocked("6505551234", null));
+        assertFalse(mIndex.isKnownNotBlocked("+16505551234", null));
+        assertFalse(mIndex.isKnownNotBlocked("1-650-555-1234", null));
+        assertTrue(mIndex.isKnownNotBlocked("6505550000", null));
+        assertEquals(1, mQueries);
+    }
+
+    @SmallTest
+    @Test
+    public void testEnhancedBlockingGoesToProvider() {
+        Bundle restricted = new Bundle();
+        restricted.putInt(BlockedNumberContract.EXTRA_CALL_PRESENTATION,
+                TelecomManager.PRESENTATION_RESTRICTED);
+        assertFalse(mIndex.isKnownNotBlocked("6505550000", restricted));
+
+        Bundle notContact = new Bundle();
+        notContact.putInt(BlockedNumberContract.EXTRA_CALL_PRESENTATION,
+                TelecomManager.PRESENTATION_ALLOWED);
+        notContact.putBoolean(BlockedNumberContract.EXTRA_CONTACT_EXIST, false);
+        assertFalse(mIndex.isKnownNotBlocked("6505550000", notContact));
+
+        Bundle contact = new Bundle();
+        contact.putInt(BlockedNumberContract.EXTRA_CALL_PRESENTATION,
+                TelecomManager.PRESENTATION_ALLOWED);
+        contact.putBoolean(BlockedNumberContract.EXTRA_CONTACT_EXIST, true);
+        assertTrue(mIndex.isKnownNotBlocked("6505550000", contact));
+    }
+
+    @SmallTest
+    @Test
+    public void testReloadAfterChange() {
+        assertTrue(mIndex.isKnownNotBlocked("6505551234", null));
+
+        mBlockedNumbers.add("6505551234");
+        mIndex.getContentObserver().onChange(false, BlockedNumberContract.AUTHORITY_URI);
+
+        assertFalse(mIndex.isKnownNotBlocked("6505551234", null));
+        assertEquals(2, mQueries);
+    }
+}
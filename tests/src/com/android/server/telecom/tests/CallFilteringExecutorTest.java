@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.callfiltering.CallFilteringExecutor;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(JUnit4.class)
+public class CallFilteringExecutorTest {
+    private static final long TEST_TIMEOUT = 5000;
+
+    @SmallTest
+    @Test
+    public void testLaneRunsTasksInOrder() throws Exception {
+        CallFilteringExecutor executor = new CallFilteringExecutor("TestFiltering", 2);
+        CallFilteringExecutor.Lane lane = executor.acquireLane();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            final int task = i;
+            lane.execute(() -> order.add(task));
+        }
+        executor.waitForIdle(TEST_TIMEOUT);
+
+        assertEquals(100, order.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    @SmallTest
+    @Test
+    public void testLanesSpreadAcrossThreads() throws Exception {
+        CallFilteringExecutor executor = new CallFilteringExecutor("TestFiltering", 2);
+        CallFilteringExecutor.Lane lane1 = executor.acquireLane();
+        CountDownLatch blocked = new CountDownLatch(1);
+        lane1.execute(() -> {
+            try {
+                blocked.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Fall through.
+            }
+        });
+        lane1.execute(() -> { });
+
+        // The second lane goes to the idle worker, so it is not held up by the first.
+        CallFilteringExecutor.Lane lane2 = executor.acquireLane();
+        assertNotSame(lane1.getHandler().getLooper(), lane2.getHandler().getLooper());
+        CountDownLatch ran = new CountDownLatch(1);
+        lane2.execute(ran::countDown);
+        assertTrue(ran.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        blocked.countDown();
+    }
+
+    @SmallTest
+    @Test
+    public void testCancelDelayedTask() throws Exception {
+        CallFilteringExecutor executor = new CallFilteringExecutor("TestFiltering", 1);
+        CallFilteringExecutor.Lane lane = executor.acquireLane();
+        AtomicBoolean ran = new AtomicBoolean();
+        Runnable token = lane.postDelayed(() -> ran.set(true), 50);
+        assertEquals(1, executor.getQueueDepth());
+
+        lane.cancel(token);
+        assertEquals(0, executor.getQueueDepth());
+        Thread.sleep(100);
+        executor.waitForIdle(TEST_TIMEOUT);
+        assertFalse(ran.get());
+    }
+
+    @SmallTest
+    @Test
+    public void testBlockingWorkDoesNotHoldUpLanesOrTimeouts() throws Exception {
+        CallFilteringExecutor executor = new CallFilteringExecutor("TestFiltering", 1, 1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch ioStarted = new CountDownLatch(1);
+        executor.getIoExecutor().execute(() -> {
+            ioStarted.countDown();
+            try {
+                blocked.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Fall through.
+            }
+        });
+        assertTrue(ioStarted.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        CallFilteringExecutor.Lane lane = executor.acquireLane();
+        CountDownLatch ran = new CountDownLatch(1);
+        lane.execute(ran::countDown);
+        assertTrue(ran.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // The timeout fires although the only worker is busy.
+        CountDownLatch laneBlocked = new CountDownLatch(1);
+        lane.execute(() -> {
+            try {
+                laneBlocked.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Fall through.
+            }
+        });
+        CountDownLatch timedOut = new CountDownLatch(1);
+        executor.postTimeout(timedOut::countDown, 10);
+        assertTrue(timedOut.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        laneBlocked.countDown();
+        blocked.countDown();
+        executor.waitForIdle(TEST_TIMEOUT);
+    }
+
+    @SmallTest
+    @Test
+    public void testCancelTimeout() throws Exception {
+        CallFilteringExecutor executor = new CallFilteringExecutor("TestFiltering", 1, 1);
+        AtomicBoolean ran = new AtomicBoolean();
+        Runnable token = executor.postTimeout(() -> ran.set(true), 50);
+        executor.cancelTimeout(token);
+        Thread.sleep(100);
+        assertFalse(ran.get());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Process;
+import android.provider.ContactsContract;
+import android.telecom.Connection;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.TelecomManager;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.Call;
+import com.android.server.telecom.ClockProxy;
+import com.android.server.telecom.callfiltering.CallFilteringResult;
+import com.android.server.telecom.callfiltering.CallFilteringResultCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+
+@RunWith(JUnit4.class)
+public class CallFilteringResultCacheTest extends TelecomTestCase {
+    private static final long TTL_MILLIS = 10000;
+    private static final PhoneAccountHandle ACCOUNT = new PhoneAccountHandle(
+            new ComponentName("com.foo", "com.foo.Service"), "sim1", Process.myUserHandle());
+    private static final CallFilteringResult BLOCK_RESULT = new CallFilteringResult.Builder()
+            .setShouldAllowCall(false)
+            .setShouldReject(true)
+            .setShouldAddToCallLog(true)
+            .setShouldShowNotification(false)
+            .build();
+
+    @Mock private Context mMockContext;
+    @Mock private ClockProxy mClockProxy;
+
+    private CallFilteringResultCache mCache;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        when(mClockProxy.elapsedRealtime()).thenReturn(1000L);
+        mCache = new CallFilteringResultCache(mContext, mClockProxy, TTL_MILLIS);
+    }
+
+    @SmallTest
+    @Test
+    public void testKey() {
+        String key = CallFilteringResultCache.getKey(makeCall("650-555-1234",
+                TelecomManager.PRESENTATION_ALLOWED), "com.dialer");
+        assertEquals(key, CallFilteringResultCache.getKey(makeCall("6505551234",
+                TelecomManager.PRESENTATION_ALLOWED), "com.dialer"));
+        // A different screening app must not reuse the result.
+        assertNotEquals(key, CallFilteringResultCache.getKey(makeCall("6505551234",
+                TelecomManager.PRESENTATION_ALLOWED), "com.other.dialer"));
+        assertNull(CallFilteringResultCache.getKey(makeCall("6505551234",
+                TelecomManager.PRESENTATION_RESTRICTED), "com.dialer"));
+    }
+
+    @SmallTest
+    @Test
+    public void testKeyIncludesVerificationStatus() {
+        Call verifiedCall = makeCall("6505551234", TelecomManager.PRESENTATION_ALLOWED);
+        when(verifiedCall.getCallerNumberVerificationStatus())
+                .thenReturn(Connection.VERIFICATION_STATUS_PASSED);
+        Call spoofedCall = makeCall("6505551234", TelecomManager.PRESENTATION_ALLOWED);
+        when(spoofedCall.getCallerNumberVerificationStatus())
+                .thenReturn(Connection.VERIFICATION_STATUS_FAILED);
+        assertNotEquals(CallFilteringResultCache.getKey(verifiedCall, "com.dialer"),
+                CallFilteringResultCache.getKey(spoofedCall, "com.dialer"));
+    }
+
+    @SmallTest
+    @Test
+    public void testResultExpires() {
+        String key = getKey("6505551234");
+        mCache.put(key, BLOCK_RESULT);
+        assertEquals(BLOCK_RESULT, mCache.get(key));
+
+        when(mClockProxy.elapsedRealtime()).thenReturn(1000L + TTL_MILLIS);
+        assertNull(mCache.get(key));
+    }
+
+    @SmallTest
+    @Test
+    public void testInvalidatedOnContentChange() {
+        String key = getKey("6505551234");
+        assertNull(mCache.get(key));
+        mCache.put(key, BLOCK_RESULT);
+
+        mCache.getContentObserver().onChange(false, ContactsContract.AUTHORITY_URI);
+        assertNull(mCache.get(key));
+
+        mCache.put(key, BLOCK_RESULT);
+        mCache.invalidate("test");
+        assertNull(mCache.get(key));
+    }
+
+    @SmallTest
+    @Test
+    public void testDisabledWhenContentCannotBeObserved() {
+        // The mock context has no content resolver, so changes to the contacts would be missed.
+        CallFilteringResultCache cache =
+                new CallFilteringResultCache(mMockContext, mClockProxy, TTL_MILLIS);
+        assertFalse(cache.isEnabled());
+
+        String key = getKey("6505551234");
+        cache.put(key, BLOCK_RESULT);
+        assertNull(cache.get(key));
+    }
+
+    @SmallTest
+    @Test
+    public void testSizeBounded() {
+        for (int i = 0; i <= CallFilteringResultCache.MAX_ENTRIES; i++) {
+            mCache.put(getKey("650555" + (1000 + i)), BLOCK_RESULT);
+        }
+        assertNull(mCache.get(getKey("6505551000")));
+        assertEquals(BLOCK_RESULT, mCache.get(getKey("6505551001")));
+    }
+
+    private static String getKey(String number) {
+        return CallFilteringResultCache.getKey(
+                makeCall(number, TelecomManager.PRESENTATION_ALLOWED), "com.dialer");
+    }
+
+    private static Call makeCall(String number, int presentation) {
+        Call call = mock(Call.class);
+        when(call.getHandle()).thenReturn(Uri.fromParts("tel", number, null));
+        when(call.getHandlePresentation()).thenReturn(presentation);
+        when(call.getTargetPhoneAccount()).thenReturn(ACCOUNT);
+        return call;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.Manifest;
+import android.content.ComponentCallbacks2;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.UserHandle;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.internal.telecom.ICallScreeningService;
+import com.android.server.telecom.CallScreeningServiceHelper;
+import com.android.server.telecom.callfiltering.CallScreeningServiceConnectionPool;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import java.util.Collections;
+
+@RunWith(JUnit4.class)
+public class CallScreeningServiceConnectionPoolTest extends TelecomTestCase {
+    private static final String PKG_NAME = "com.android.services.telecom.tests";
+    private static final String CLS_NAME = "CallScreeningService";
+    private static final ComponentName COMPONENT_NAME = new ComponentName(PKG_NAME, CLS_NAME);
+    private static final long IDLE_MILLIS = 30000L;
+
+    @Mock Context mContext;
+    @Mock PackageManager mPackageManager;
+    @Mock ICallScreeningService mCallScreeningService;
+    @Mock IBinder mBinder;
+    @Mock CallScreeningServiceConnectionPool.Listener mListener;
+    @Mock CallScreeningServiceConnectionPool.Listener mOtherListener;
+
+    private Handler mHandler;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mHandler = new Handler(Looper.getMainLooper());
+        ResolveInfo resolveInfo = new ResolveInfo() {{
+            serviceInfo = new ServiceInfo();
+            serviceInfo.packageName = PKG_NAME;
+            serviceInfo.name = CLS_NAME;
+            serviceInfo.permission = Manifest.permission.BIND_SCREENING_SERVICE;
+        }};
+        when(mContext.getPackageManager()).thenReturn(mPackageManager);
+        when(mPackageManager.queryIntentServicesAsUser(nullable(Intent.class), anyInt(), anyInt()))
+                .thenReturn(Collections.singletonList(resolveInfo));
+        when(mContext.bindServiceAsUser(nullable(Intent.class), nullable(ServiceConnection.class),
+                anyInt(), eq(UserHandle.CURRENT))).thenReturn(true);
+        doReturn(mCallScreeningService).when(mBinder).queryLocalInterface(anyString());
+    }
+
+    @SmallTest
+    @Test
+    public void testWarmConnectionReused() {
+        CallScreeningServiceConnectionPool pool =
+                new CallScreeningServiceConnectionPool(mContext, IDLE_MILLIS, mHandler);
+        pool.acquire(PKG_NAME, UserHandle.CURRENT, mListener);
+        ServiceConnection connection = verifyBind(1, CallScreeningServiceHelper.BIND_FLAGS_IDLE);
+        connection.onServiceConnected(COMPONENT_NAME, mBinder);
+        verify(mListener).onConnected(COMPONENT_NAME, mCallScreeningService, false);
+        pool.release(PKG_NAME, UserHandle.CURRENT, mListener);
+
+        pool.acquire(PKG_NAME, UserHandle.CURRENT, mOtherListener);
+        verify(mOtherListener).onConnected(COMPONENT_NAME, mCallScreeningService, true);
+        verifyBind(1, CallScreeningServiceHelper.BIND_FLAGS_IDLE);
+        verify(mContext, never()).unbindService(connection);
+        assertEquals(1, pool.getBoundCount());
+        pool.release(PKG_NAME, UserHandle.CURRENT, mOtherListener);
+        pool.unbindIdle("test");
+    }
+
+    @SmallTest
+    @Test
+    public void testUnboundOnReleaseWithoutIdleWindow() {
+        CallScreeningServiceConnectionPool pool =
+                new CallScreeningServiceConnectionPool(mContext, 0, mHandler);
+        pool.acquire(PKG_NAME, UserHandle.CURRENT, mListener);
+        ServiceConnection connection = verifyBind(1, CallScreeningServiceHelper.BIND_FLAGS_ACTIVE);
+        connection.onServiceConnected(COMPONENT_NAME, mBinder);
+        pool.release(PKG_NAME, UserHandle.CURRENT, mListener);
+
+        verify(mContext).unbindService(connection);
+        assertEquals(0, pool.getBoundCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testIdleConnectionsUnboundUnderMemoryPressure() {
+        CallScreeningServiceConnectionPool pool =
+                new CallScreeningServiceConnectionPool(mContext, IDLE_MILLIS, mHandler);
+        pool.prebind(PKG_NAME, UserHandle.CURRENT);
+        ServiceConnection connection = verifyBind(1, CallScreeningServiceHelper.BIND_FLAGS_IDLE);
+        verifyBind(0, CallScreeningServiceHelper.BIND_FLAGS_ACTIVE);
+        connection.onServiceConnected(COMPONENT_NAME, mBinder);
+
+        pool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(1, pool.getBoundCount());
+
+        pool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        verify(mContext).unbindService(connection);
+        assertEquals(0, pool.getBoundCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testConnectionInUseKeptUnderMemoryPressure() {
+        CallScreeningServiceConnectionPool pool =
+                new CallScreeningServiceConnectionPool(mContext, IDLE_MILLIS, mHandler);
+        pool.acquire(PKG_NAME, UserHandle.CURRENT, mListener);
+        verifyBind(1, CallScreeningServiceHelper.BIND_FLAGS_IDLE)
+                .onServiceConnected(COMPONENT_NAME, mBinder);
+
+        pool.onLowMemory();
+        assertEquals(1, pool.getBoundCount());
+        pool.release(PKG_NAME, UserHandle.CURRENT, mListener);
+        pool.unbindIdle("test");
+    }
+
+    @SmallTest
+    @Test
+    public void testBindFailure() {
+        when(mContext.bindServiceAsUser(nullable(Intent.class), nullable(ServiceConnection.class),
+                anyInt(), eq(UserHandle.CURRENT))).thenReturn(false);
+        CallScreeningServiceConnectionPool pool =
+                new CallScreeningServiceConnectionPool(mContext, IDLE_MILLIS, mHandler);
+        pool.acquire(PKG_NAME, UserHandle.CURRENT, mListener);
+
+        verify(mListener).onDisconnected(anyString());
+        assertEquals(0, pool.getBoundCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testLostConnectionDisconnectsUsers() {
+        CallScreeningServiceConnectionPool pool =
+                new CallScreeningServiceConnectionPool(mContext, IDLE_MILLIS, mHandler);
+        pool.acquire(PKG_NAME, UserHandle.CURRENT, mListener);
+        ServiceConnection connection = verifyBind(1, CallScreeningServiceHelper.BIND_FLAGS_IDLE);
+        ServiceConnection activeBinding =
+                verifyBind(1, CallScreeningServiceHelper.BIND_FLAGS_ACTIVE);
+        connection.onBindingDied(COMPONENT_NAME);
+
+        verify(mListener).onDisconnected(anyString());
+        verify(mContext).unbindService(connection);
+        verify(mContext).unbindService(activeBinding);
+        assertEquals(0, pool.getBoundCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testPriorityRaisedOnlyWhileInUse() {
+        CallScreeningServiceConnectionPool pool =
+                new CallScreeningServiceConnectionPool(mContext, IDLE_MILLIS, mHandler);
+        pool.acquire(PKG_NAME, UserHandle.CURRENT, mListener);
+        ServiceConnection connection = verifyBind(1, CallScreeningServiceHelper.BIND_FLAGS_IDLE);
+        ServiceConnection activeBinding =
+                verifyBind(1, CallScreeningServiceHelper.BIND_FLAGS_ACTIVE);
+        connection.onServiceConnected(COMPONENT_NAME, mBinder);
+
+        // A second user shares the raised priority.
+        pool.acquire(PKG_NAME, UserHandle.CURRENT, mOtherListener);
+        verifyBind(1, CallScreeningServiceHelper.BIND_FLAGS_ACTIVE);
+        pool.release(PKG_NAME, UserHandle.CURRENT, mListener);
+        verify(mContext, never()).unbindService(activeBinding);
+
+        // Once idle, only the low priority binding is kept.
+        pool.release(PKG_NAME, UserHandle.CURRENT, mOtherListener);
+        verify(mContext).unbindService(activeBinding);
+        verify(mContext, never()).unbindService(connection);
+        assertEquals(1, pool.getBoundCount());
+        pool.unbindIdle("test");
+    }
+
+    private ServiceConnection verifyBind(int times, int flags) {
+        ArgumentCaptor<ServiceConnection> connectionCaptor =
+                ArgumentCaptor.forClass(ServiceConnection.class);
+        verify(mContext, times(times)).bindServiceAsUser(nullable(Intent.class),
+                connectionCaptor.capture(), eq(flags), eq(UserHandle.CURRENT));
+        return times == 0 ? null : connectionCaptor.getValue();
+    }
+}
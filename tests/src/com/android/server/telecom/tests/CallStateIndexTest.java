@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.os.Process;
+import android.telecom.PhoneAccountHandle;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.Call;
+import com.android.server.telecom.CallState;
+import com.android.server.telecom.CallStateIndex;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CallStateIndexTest {
+    private static final PhoneAccountHandle HANDLE_1 = new PhoneAccountHandle(
+            new ComponentName("pkg", "cls"), "1", Process.myUserHandle());
+    private static final PhoneAccountHandle HANDLE_2 = new PhoneAccountHandle(
+            new ComponentName("pkg", "cls"), "2", Process.myUserHandle());
+
+    @SmallTest
+    @Test
+    public void testCountsByCategory() {
+        CallStateIndex index = new CallStateIndex();
+        Call managed = makeCall(CallState.ACTIVE, false, HANDLE_1);
+        Call selfManaged = makeCall(CallState.ACTIVE, true, HANDLE_2);
+        Call external = makeCall(CallState.ACTIVE, false, HANDLE_1);
+        when(external.isExternalCall()).thenReturn(true);
+        Call child = makeCall(CallState.ACTIVE, false, HANDLE_1);
+        when(child.getParentCall()).thenReturn(managed);
+        index.add(managed);
+        index.add(selfManaged);
+        index.add(external);
+        index.add(child);
+
+        assertEquals(2, index.getCount(CallState.ACTIVE, true, true, null, null));
+        assertEquals(1, index.getCount(CallState.ACTIVE, true, false, null, null));
+        assertEquals(1, index.getCount(CallState.ACTIVE, false, true, null, null));
+        assertEquals(1, index.getCount(CallState.ACTIVE, true, true, managed, null));
+        assertEquals(2, index.getCount(CallState.ACTIVE, true, true, child, null));
+        assertEquals(1, index.getCount(CallState.ACTIVE, true, true, null, HANDLE_1));
+        assertEquals(0, index.getCount(CallState.ACTIVE, true, true, managed, HANDLE_1));
+        assertEquals(1, index.getExternalCount(CallState.ACTIVE));
+        assertEquals(0, index.getCount(CallState.ON_HOLD, true, true, null, null));
+    }
+
+    @SmallTest
+    @Test
+    public void testUpdateAndRemove() {
+        CallStateIndex index = new CallStateIndex();
+        Call call = makeCall(CallState.RINGING, false, HANDLE_1);
+        index.add(call);
+
+        when(call.getState()).thenReturn(CallState.ACTIVE);
+        index.update(call);
+        assertEquals(0, index.getCount(CallState.RINGING, true, true, null, null));
+        assertEquals(1, index.getCount(CallState.ACTIVE, true, true, null, null));
+
+        when(call.isSelfManaged()).thenReturn(true);
+        index.update(call);
+        assertEquals(0, index.getCount(CallState.ACTIVE, true, false, null, null));
+        assertEquals(1, index.getCount(CallState.ACTIVE, false, true, null, null));
+
+        // Calls which were never added are ignored.
+        index.update(makeCall(CallState.ACTIVE, false, HANDLE_1));
+        assertEquals(1, index.size());
+
+        index.remove(call);
+        assertEquals(0, index.getCount(CallState.ACTIVE, true, true, null, null));
+        assertEquals(0, index.size());
+    }
+
+    @SmallTest
+    @Test
+    public void testGetFirstCall() {
+        CallStateIndex index = new CallStateIndex();
+        Call external = makeCall(CallState.ON_HOLD, false, HANDLE_1);
+        when(external.isExternalCall()).thenReturn(true);
+        Call parent = makeCall(CallState.ACTIVE, false, HANDLE_1);
+        Call child = makeCall(CallState.ON_HOLD, false, HANDLE_1);
+        when(child.getParentCall()).thenReturn(parent);
+        index.add(external);
+        index.add(parent);
+        index.add(child);
+
+        // Only top-level, non-external calls are returned.
+        assertNull(index.getFirstCall(CallState.ON_HOLD, null));
+        assertSame(parent, index.getFirstCall(CallState.ACTIVE, null));
+        assertNull(index.getFirstCall(CallState.ACTIVE, parent));
+
+        Call selfManaged = makeCall(CallState.ON_HOLD, true, HANDLE_2);
+        index.add(selfManaged);
+        assertSame(selfManaged, index.getFirstCall(CallState.ON_HOLD, null));
+
+        when(selfManaged.getState()).thenReturn(CallState.ACTIVE);
+        index.update(selfManaged);
+        assertNull(index.getFirstCall(CallState.ON_HOLD, null));
+        assertSame(selfManaged, index.getFirstCall(CallState.ACTIVE, parent));
+    }
+
+    private static Call makeCall(int state, boolean isSelfManaged,
+            PhoneAccountHandle targetPhoneAccount) {
+        Call call = mock(Call.class);
+        when(call.getState()).thenReturn(state);
+        when(call.isSelfManaged()).thenReturn(isSelfManaged);
+        when(call.getTargetPhoneAccount()).thenReturn(targetPhoneAccount);
+        return call;
+    }
+}
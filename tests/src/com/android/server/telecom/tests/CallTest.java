@@ -18,6 +18,8 @@ package com.android.server.telecom.tests;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
@@ -32,7 +34,9 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
 import android.content.ComponentName;
+import android.graphics.Bitmap;
 import android.net.Uri;
+import android.telecom.CallerInfo;
 import android.telecom.Connection;
 import android.telecom.DisconnectCause;
 import android.telecom.PhoneAccount;
@@ -60,6 +64,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 
@@ -346,4 +351,47 @@ public class CallTest extends TelecomTestCase {
         assertTrue(hasCallDirectionChanged[0]);
         assertTrue(call.isIncoming());
     }
+
+    @Test
+    @SmallTest
+    public void testDestroyKeepsPhotoOfSharedCallerInfo() {
+        Call call1 = createIncomingCall("1");
+        Call call2 = createIncomingCall("2");
+        ArgumentCaptor<CallerInfoLookupHelper.OnQueryCompleteListener> listeners =
+                ArgumentCaptor.forClass(CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        verify(mMockCallerInfoLookupHelper, Mockito.times(2)).startLookup(eq(TEST_ADDRESS),
+                listeners.capture());
+
+        // Both calls are from the same number, so they are given the same caller info.
+        CallerInfo callerInfo = new CallerInfo();
+        Bitmap photoIcon = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+        callerInfo.cachedPhotoIcon = photoIcon;
+        for (CallerInfoLookupHelper.OnQueryCompleteListener listener : listeners.getAllValues()) {
+            listener.onContactPhotoQueryComplete(TEST_ADDRESS, callerInfo);
+        }
+
+        call1.destroy();
+        assertNull(call1.getPhotoIcon());
+        assertSame(photoIcon, call2.getPhotoIcon());
+        assertSame(photoIcon, callerInfo.cachedPhotoIcon);
+    }
+
+    private Call createIncomingCall(String callId) {
+        return new Call(
+                callId,
+                mContext,
+                mMockCallsManager,
+                mLock,
+                null /* ConnectionServiceRepository */,
+                mMockPhoneNumberUtilsAdapter,
+                TEST_ADDRESS,
+                null /* GatewayInfo */,
+                null /* connectionManagerPhoneAccountHandle */,
+                SIM_1_HANDLE,
+                Call.CALL_DIRECTION_INCOMING,
+                false /* shouldAttachToExistingConnection*/,
+                false /* isConference */,
+                mMockClockProxy,
+                mMockToastProxy);
+    }
 }
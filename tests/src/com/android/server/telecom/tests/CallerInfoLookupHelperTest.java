@@ -17,12 +17,15 @@
 package com.android.server.telecom.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -32,6 +35,7 @@ import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.provider.ContactsContract;
 import android.telecom.Logging.Session;
 import android.test.suitebuilder.annotation.SmallTest;
 
@@ -41,6 +45,7 @@ import android.telecom.CallerInfo;
 import android.telecom.CallerInfoAsyncQuery;
 import com.android.server.telecom.CallerInfoAsyncQueryFactory;
 import com.android.server.telecom.CallerInfoLookupHelper;
+import com.android.server.telecom.ClockProxy;
 import com.android.server.telecom.ContactsAsyncHelper;
 import com.android.server.telecom.TelecomSystem;
 
@@ -62,12 +67,15 @@ public class CallerInfoLookupHelperTest extends TelecomTestCase {
     @Mock CallerInfoAsyncQueryFactory mFactory;
     @Mock ContactsAsyncHelper mContactsAsyncHelper;
     @Mock Drawable mDrawable2;
+    @Mock ClockProxy mClockProxy;
 
     CallerInfo mCallerInfo1;
     CallerInfo mCallerInfo2;
 
     @Mock Drawable mDrawable1;
     CallerInfoLookupHelper mCallerInfoLookupHelper;
+    static final long CACHE_TTL_MILLIS = 300000L;
+    static final long PREFETCH_TTL_MILLIS = 3600000L;
     static final Uri URI1 = Uri.parse("tel:555-555-7010");
     static final Uri URI2 = Uri.parse("tel:555-555-7016");
 
@@ -239,13 +247,133 @@ public class CallerInfoLookupHelperTest extends TelecomTestCase {
         verifyProperCleanup();
     }
 
+    @SmallTest
+    @Test
+    public void testRepeatLookupUsesCache() {
+        CallerInfoLookupHelper cachingHelper = makeCachingHelper();
+        CallerInfoLookupHelper.OnQueryCompleteListener listener = mock(
+                CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        CallerInfoLookupHelper.OnQueryCompleteListener repeatListener = mock(
+                CallerInfoLookupHelper.OnQueryCompleteListener.class);
+
+        completeLookup(cachingHelper, URI1, listener, mCallerInfo1);
+        // The same number, formatted differently.
+        Uri repeatHandle = Uri.parse("tel:5555557010");
+        cachingHelper.startLookup(repeatHandle, repeatListener);
+        waitForActionCompletion(cachingHelper);
+
+        verify(repeatListener).onCallerInfoQueryComplete(repeatHandle, mCallerInfo1);
+        verify(mFactory, times(1)).startQuery(anyInt(), eq(mContext), anyString(),
+                any(CallerInfoAsyncQuery.OnQueryCompleteListener.class), any());
+        assertEquals(0, cachingHelper.getCallerInfoEntries().size());
+    }
+
+    @SmallTest
+    @Test
+    public void testCacheInvalidatedByContactsChange() {
+        CallerInfoLookupHelper cachingHelper = makeCachingHelper();
+        CallerInfoLookupHelper.OnQueryCompleteListener listener = mock(
+                CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        completeLookup(cachingHelper, URI1, listener, mCallerInfo1);
+
+        cachingHelper.getContentObserver().onChange(false, ContactsContract.AUTHORITY_URI);
+        cachingHelper.startLookup(URI1, listener);
+        waitForActionCompletion(cachingHelper);
+
+        verify(mFactory, times(2)).startQuery(anyInt(), eq(mContext),
+                eq(URI1.getSchemeSpecificPart()),
+                any(CallerInfoAsyncQuery.OnQueryCompleteListener.class), any());
+    }
+
+    @SmallTest
+    @Test
+    public void testCachedCallerInfoExpires() {
+        CallerInfoLookupHelper cachingHelper = makeCachingHelper();
+        CallerInfoLookupHelper.OnQueryCompleteListener listener = mock(
+                CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        CallerInfoLookupHelper.OnQueryCompleteListener otherListener = mock(
+                CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        completeLookup(cachingHelper, URI1, listener, mCallerInfo1);
+
+        when(mClockProxy.elapsedRealtime()).thenReturn(
+                1000L + CACHE_TTL_MILLIS);
+        cachingHelper.startLookup(URI1, otherListener);
+        waitForActionCompletion(cachingHelper);
+
+        verify(otherListener, never()).onCallerInfoQueryComplete(URI1, mCallerInfo1);
+        verify(mFactory, times(2)).startQuery(anyInt(), eq(mContext),
+                eq(URI1.getSchemeSpecificPart()),
+                any(CallerInfoAsyncQuery.OnQueryCompleteListener.class), any());
+    }
+
+    @SmallTest
+    @Test
+    public void testPrefetchedCallerInfoKeptLonger() {
+        CallerInfoLookupHelper cachingHelper = new CallerInfoLookupHelper(mContext, mFactory,
+                mContactsAsyncHelper, new TelecomSystem.SyncRoot() { }, mClockProxy,
+                CACHE_TTL_MILLIS,
+                PREFETCH_TTL_MILLIS);
+        when(mClockProxy.elapsedRealtime()).thenReturn(1000L);
+        assertTrue(cachingHelper.prefetch(URI1));
+        waitForActionCompletion(cachingHelper);
+
+        ArgumentCaptor<CallerInfoAsyncQuery.OnQueryCompleteListener> queryListenerCaptor =
+                ArgumentCaptor.forClass(CallerInfoAsyncQuery.OnQueryCompleteListener.class);
+        ArgumentCaptor<Session> logSessionCaptor = ArgumentCaptor.forClass(Session.class);
+        verify(mFactory).startQuery(anyInt(), eq(mContext), eq(URI1.getSchemeSpecificPart()),
+                queryListenerCaptor.capture(), logSessionCaptor.capture());
+        queryListenerCaptor.getValue().onQueryComplete(
+                0, logSessionCaptor.getValue(), mCallerInfo1);
+        assertFalse(cachingHelper.prefetch(URI1));
+
+        CallerInfoLookupHelper.OnQueryCompleteListener listener = mock(
+                CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        when(mClockProxy.elapsedRealtime()).thenReturn(
+                1000L + CACHE_TTL_MILLIS);
+        cachingHelper.startLookup(URI1, listener);
+        waitForActionCompletion(cachingHelper);
+
+        verify(listener).onCallerInfoQueryComplete(URI1, mCallerInfo1);
+        verify(mFactory, times(1)).startQuery(anyInt(), eq(mContext), anyString(),
+                any(CallerInfoAsyncQuery.OnQueryCompleteListener.class), any());
+    }
+
+    private CallerInfoLookupHelper makeCachingHelper() {
+        when(mClockProxy.elapsedRealtime()).thenReturn(1000L);
+        return new CallerInfoLookupHelper(mContext, mFactory, mContactsAsyncHelper,
+                new TelecomSystem.SyncRoot() { }, mClockProxy,
+                CACHE_TTL_MILLIS);
+    }
+
+    /**
+     * Looks up a handle whose caller info has no photo.
+     */
+    private void completeLookup(CallerInfoLookupHelper helper, Uri handle,
+            CallerInfoLookupHelper.OnQueryCompleteListener listener, CallerInfo callerInfo) {
+        helper.startLookup(handle, listener);
+        waitForActionCompletion(helper);
+
+        ArgumentCaptor<CallerInfoAsyncQuery.OnQueryCompleteListener> queryListenerCaptor =
+                ArgumentCaptor.forClass(CallerInfoAsyncQuery.OnQueryCompleteListener.class);
+        ArgumentCaptor<Session> logSessionCaptor = ArgumentCaptor.forClass(Session.class);
+        verify(mFactory).startQuery(anyInt(), eq(mContext), eq(handle.getSchemeSpecificPart()),
+                queryListenerCaptor.capture(), logSessionCaptor.capture());
+        queryListenerCaptor.getValue().onQueryComplete(
+                0, logSessionCaptor.getValue(), callerInfo);
+        verify(listener).onCallerInfoQueryComplete(handle, callerInfo);
+    }
+
     private void verifyProperCleanup() {
         assertEquals(0, mCallerInfoLookupHelper.getCallerInfoEntries().size());
     }
 
     private void waitForActionCompletion() {
+        waitForActionCompletion(mCallerInfoLookupHelper);
+    }
+
+    private void waitForActionCompletion(CallerInfoLookupHelper helper) {
         final CountDownLatch lock = new CountDownLatch(1);
-        mCallerInfoLookupHelper.getHandler().post(lock::countDown);
+        helper.getHandler().post(lock::countDown);
         while (lock.getCount() > 0) {
             try {
                 lock.await();
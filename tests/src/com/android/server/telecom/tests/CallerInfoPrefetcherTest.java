@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.CallerInfoLookupHelper;
+import com.android.server.telecom.CallerInfoPrefetcher;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class CallerInfoPrefetcherTest extends TelecomTestCase {
+    private static final Uri HANDLE1 = Uri.parse("tel:5550001");
+    private static final Uri HANDLE2 = Uri.parse("tel:5550002");
+
+    /**
+     * Holds posted runnables until the test runs them, rather than waiting for their delays.
+     */
+    private static class ManualHandler extends Handler {
+        final List<Runnable> mRunnables = new ArrayList<>();
+        final List<Long> mDelays = new ArrayList<>();
+
+        ManualHandler() {
+            super(Looper.getMainLooper());
+        }
+
+        @Override
+        public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+            mRunnables.add(msg.getCallback());
+            mDelays.add(uptimeMillis - SystemClock.uptimeMillis());
+            return true;
+        }
+
+        long runNext() {
+            long delay = mDelays.remove(0);
+            mRunnables.remove(0).run();
+            return delay;
+        }
+    }
+
+    private static class FakeAdapter implements CallerInfoPrefetcher.Adapter {
+        List<String> mNumbers = Collections.emptyList();
+        boolean mIsConstrained;
+        int mCandidateReads;
+
+        @Override
+        public List<String> getCandidateNumbers(Context context, UserHandle userHandle,
+                int maxNumbers) {
+            mCandidateReads++;
+            return mNumbers;
+        }
+
+        @Override
+        public boolean isConstrained(Context context) {
+            return mIsConstrained;
+        }
+    }
+
+    @Mock CallerInfoLookupHelper mCallerInfoLookupHelper;
+
+    private final ManualHandler mHandler = new ManualHandler();
+    private final FakeAdapter mAdapter = new FakeAdapter();
+    private CallerInfoPrefetcher mPrefetcher;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        when(mCallerInfoLookupHelper.prefetch(any(Uri.class))).thenReturn(true);
+        mAdapter.mNumbers = Arrays.asList("5550001", "5550002");
+        mPrefetcher = new CallerInfoPrefetcher(mContext, mCallerInfoLookupHelper, mAdapter,
+                CallerInfoPrefetcher.DEFAULT_MAX_NUMBERS, mHandler);
+    }
+
+    @SmallTest
+    @Test
+    public void testHandlesPrefetchedOneAtATime() {
+        mPrefetcher.prefetch("test", UserHandle.SYSTEM);
+        assertTrue(mHandler.runNext() > CallerInfoPrefetcher.LOOKUP_INTERVAL_MILLIS);
+        verify(mCallerInfoLookupHelper).prefetch(HANDLE1);
+        verify(mCallerInfoLookupHelper, never()).prefetch(HANDLE2);
+
+        mHandler.runNext();
+        verify(mCallerInfoLookupHelper).prefetch(HANDLE2);
+        assertEquals(0, mHandler.mRunnables.size());
+    }
+
+    @SmallTest
+    @Test
+    public void testHandlesAlreadyKeptSkipped() {
+        when(mCallerInfoLookupHelper.prefetch(HANDLE1)).thenReturn(false);
+        mPrefetcher.prefetch("test", UserHandle.SYSTEM);
+        mHandler.runNext();
+
+        verify(mCallerInfoLookupHelper).prefetch(HANDLE2);
+        assertEquals(0, mHandler.mRunnables.size());
+    }
+
+    @SmallTest
+    @Test
+    public void testConstrainedRunRetried() {
+        mAdapter.mIsConstrained = true;
+        mPrefetcher.prefetch("test", UserHandle.SYSTEM);
+        mHandler.runNext();
+        assertEquals(0, mAdapter.mCandidateReads);
+        assertTrue(mHandler.runNext() > CallerInfoPrefetcher.START_DELAY_MILLIS);
+        assertEquals(0, mAdapter.mCandidateReads);
+
+        mAdapter.mIsConstrained = false;
+        mHandler.runNext();
+        assertEquals(1, mAdapter.mCandidateReads);
+        verify(mCallerInfoLookupHelper).prefetch(HANDLE1);
+
+        // Becoming constrained part way through pauses the remaining handles.
+        mAdapter.mIsConstrained = true;
+        mHandler.runNext();
+        verify(mCallerInfoLookupHelper, never()).prefetch(HANDLE2);
+        mAdapter.mIsConstrained = false;
+        mHandler.runNext();
+        verify(mCallerInfoLookupHelper).prefetch(HANDLE2);
+    }
+
+    @SmallTest
+    @Test
+    public void testPhotoBudgetStopsRun() {
+        mPrefetcher.prefetch("test", UserHandle.SYSTEM);
+        mHandler.runNext();
+        verify(mCallerInfoLookupHelper).prefetch(HANDLE1);
+
+        when(mCallerInfoLookupHelper.getCachedPhotoBytes())
+                .thenReturn(CallerInfoPrefetcher.MAX_PREFETCH_PHOTO_BYTES);
+        mHandler.runNext();
+        verify(mCallerInfoLookupHelper, never()).prefetch(HANDLE2);
+        assertEquals(0, mHandler.mRunnables.size());
+    }
+
+    @SmallTest
+    @Test
+    public void testCandidatesInterleaved() {
+        assertEquals(Arrays.asList("5550001", "5550002", "5550003", "5550004"),
+                CallerInfoPrefetcher.mergeCandidates(10,
+                        Arrays.asList("5550001", "5550004"),
+                        Arrays.asList("5550002"),
+                        Arrays.asList("5550003")));
+    }
+
+    @SmallTest
+    @Test
+    public void testRepeatedNumbersDropped() {
+        assertEquals(Arrays.asList("555-0001", "5550002"),
+                CallerInfoPrefetcher.mergeCandidates(10,
+                        Arrays.asList("555-0001"),
+                        Arrays.asList("5550001", "5550002"),
+                        Collections.emptyList()));
+    }
+
+    @SmallTest
+    @Test
+    public void testCandidatesBounded() {
+        assertEquals(Arrays.asList("5550001", "5550002"),
+                CallerInfoPrefetcher.mergeCandidates(2,
+                        Arrays.asList("5550001", "5550003"),
+                        Arrays.asList("5550002", "5550004")));
+    }
+}
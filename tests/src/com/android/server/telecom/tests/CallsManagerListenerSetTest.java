@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.Call;
+import com.android.server.telecom.CallsManager;
+import com.android.server.telecom.CallsManagerListenerBase;
+import com.android.server.telecom.CallsManagerListenerSet;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class CallsManagerListenerSetTest {
+    private static class CallAddedListener extends CallsManagerListenerBase {
+        private final String mName;
+        private final List<String> mCalls;
+
+        CallAddedListener(String name, List<String> calls) {
+            mName = name;
+            mCalls = calls;
+        }
+
+        @Override
+        public void onCallAdded(Call call) {
+            mCalls.add(mName);
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testInterestsFromOverriddenCallbacks() {
+        CallsManagerListenerSet listeners = new CallsManagerListenerSet();
+        CallAddedListener callAdded = new CallAddedListener("a", new ArrayList<>());
+        CallsManager.CallsManagerListener direct = mock(CallsManager.CallsManagerListener.class);
+        CallsManagerListenerBase mockBase = mock(CallsManagerListenerBase.class);
+        listeners.add(callAdded);
+        listeners.add(direct);
+        listeners.add(mockBase);
+
+        assertTrue(listeners.isInterested(CallsManagerListenerSet.EVENT_CALL_ADDED, callAdded));
+        assertFalse(listeners.isInterested(CallsManagerListenerSet.EVENT_CALL_REMOVED,
+                callAdded));
+        assertFalse(listeners.isInterested(CallsManagerListenerSet.EVENT_SET_CAMERA, callAdded));
+        // Listeners which do not extend the base class, and mocks, receive every event.
+        assertTrue(listeners.isInterested(CallsManagerListenerSet.EVENT_CALL_REMOVED, direct));
+        assertTrue(listeners.isInterested(CallsManagerListenerSet.EVENT_SET_CAMERA, mockBase));
+    }
+
+    @SmallTest
+    @Test
+    public void testDispatchOnlyToInterestedListeners() {
+        CallsManagerListenerSet listeners = new CallsManagerListenerSet();
+        CallsManager.CallsManagerListener direct = mock(CallsManager.CallsManagerListener.class);
+        List<String> calls = new ArrayList<>();
+        CallAddedListener first = new CallAddedListener("first", calls);
+        CallAddedListener second = new CallAddedListener("second", calls);
+        listeners.add(first);
+        listeners.add(direct);
+        listeners.add(second);
+        Call call = mock(Call.class);
+
+        listeners.dispatch(CallsManagerListenerSet.EVENT_CALL_ADDED,
+                listener -> listener.onCallAdded(call));
+        listeners.dispatch(CallsManagerListenerSet.EVENT_CALL_REMOVED,
+                listener -> listener.onCallRemoved(call));
+
+        assertEquals(List.of("first", "second"), calls);
+        verify(direct).onCallAdded(call);
+        verify(direct).onCallRemoved(call);
+
+        listeners.remove(first);
+        listeners.remove(direct);
+        calls.clear();
+        listeners.dispatch(CallsManagerListenerSet.EVENT_CALL_ADDED,
+                listener -> listener.onCallAdded(call));
+        assertEquals(List.of("second"), calls);
+        verify(direct).onCallAdded(call);
+        verify(direct, never()).onCallStateChanged(call, 0, 0);
+    }
+}
@@ -57,11 +57,13 @@ import android.telecom.CallerInfo;
 import android.telecom.Connection;
 import android.telecom.DisconnectCause;
 import android.telecom.GatewayInfo;
+import android.telecom.Log;
 import android.telecom.PhoneAccount;
 import android.telecom.PhoneAccountHandle;
 import android.telecom.TelecomManager;
 import android.telecom.VideoProfile;
 import android.telephony.TelephonyManager;
+import android.test.suitebuilder.annotation.LargeTest;
 import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
 import android.util.Pair;
@@ -101,6 +103,7 @@ import com.android.server.telecom.Timeouts;
 import com.android.server.telecom.WiredHeadsetManager;
 import com.android.server.telecom.bluetooth.BluetoothRouteManager;
 import com.android.server.telecom.bluetooth.BluetoothStateReceiver;
+import com.android.server.telecom.callfiltering.CallFilteringExecutor;
 import com.android.server.telecom.callfiltering.CallFilteringResult;
 import com.android.server.telecom.ui.AudioProcessingNotification;
 import com.android.server.telecom.ui.DisconnectedCallNotifier;
@@ -132,6 +135,7 @@ import java.util.concurrent.TimeUnit;
 public class CallsManagerTest extends TelecomTestCase {
     private static final int TEST_TIMEOUT = 5000;  // milliseconds
     private static final int SECONDARY_USER_ID = 12;
+    private static final int STATE_QUERY_ITERATIONS = 1000;
     private static final PhoneAccountHandle SIM_1_HANDLE = new PhoneAccountHandle(
             ComponentName.unflattenFromString("com.foo/.Blah"), "Sim1");
     private static final PhoneAccountHandle SIM_1_HANDLE_SECONDARY = new PhoneAccountHandle(
@@ -213,6 +217,7 @@ public class CallsManagerTest extends TelecomTestCase {
     @Mock private Toast mToast;
 
     private CallsManager mCallsManager;
+    private CallFilteringExecutor mCallFilteringExecutor;
 
     @Override
     @Before
@@ -239,6 +244,7 @@ public class CallsManagerTest extends TelecomTestCase {
                 .thenReturn(mDisconnectedCallNotifier);
         when(mTimeoutsAdapter.getCallDiagnosticServiceTimeoutMillis(any(ContentResolver.class)))
                 .thenReturn(2000L);
+        mCallFilteringExecutor = new CallFilteringExecutor("CallsManagerTest", 1);
         mCallsManager = new CallsManager(
                 mComponentContextFixture.getTestDouble().getApplicationContext(),
                 mLock,
@@ -268,7 +274,8 @@ public class CallsManagerTest extends TelecomTestCase {
                 mInCallControllerFactory,
                 mCallDiagnosticServiceController,
                 mRoleManagerAdapter,
-                mToastFactory);
+                mToastFactory,
+                mCallFilteringExecutor);
 
         when(mPhoneAccountRegistrar.getPhoneAccount(
                 eq(SELF_MANAGED_HANDLE), any())).thenReturn(SELF_MANAGED_ACCOUNT);
@@ -283,6 +290,7 @@ public class CallsManagerTest extends TelecomTestCase {
     @Override
     @After
     public void tearDown() throws Exception {
+        mCallFilteringExecutor.shutdown();
         super.tearDown();
     }
 
@@ -1695,6 +1703,51 @@ public class CallsManagerTest extends TelecomTestCase {
         assertTrue(argumentCaptor.getValue().contains("Unavailable phoneAccountHandle"));
     }
 
+    /**
+     * Verifies that counting and finding calls by state agree with a scan of every call for 10,
+     * 100 and 1000 calls.  Timings are logged; the test only asserts that both paths agree.
+     */
+    @LargeTest
+    @Test
+    public void testCallStateQueriesScale() {
+        int[] states = {CallState.ACTIVE, CallState.ON_HOLD};
+        int added = 0;
+        for (int count : new int[] {10, 100, 1000}) {
+            for (; added < count; added++) {
+                mCallsManager.addCall(createCall(SIM_2_HANDLE,
+                        added % 4 == 0 ? CallState.ON_HOLD : CallState.DISCONNECTED));
+            }
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            long scanned = 0;
+            for (int i = 0; i < STATE_QUERY_ITERATIONS; i++) {
+                scanned = mCallsManager.getCalls().stream()
+                        .filter(call -> (call.getState() == CallState.ACTIVE
+                                || call.getState() == CallState.ON_HOLD)
+                                && call.getParentCall() == null && !call.isExternalCall())
+                        .count();
+            }
+            long scanNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            int counted = 0;
+            Call found = null;
+            for (int i = 0; i < STATE_QUERY_ITERATIONS; i++) {
+                counted = mCallsManager.getNumCallsWithState(false /* isSelfManaged */,
+                        null /* excludeCall */, null /* phoneAccountHandle */, states);
+                found = mCallsManager.getFirstCallWithState(states);
+            }
+            long indexNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            assertEquals(scanned, counted);
+            assertNotNull(found);
+            assertEquals(CallState.ON_HOLD, found.getState());
+            assertNull(mCallsManager.getFirstCallWithState(CallState.RINGING));
+            Log.i(this, "testCallStateQueriesScale: calls=%d, scan=%dns, index=%dns", count,
+                    scanNanos / STATE_QUERY_ITERATIONS, indexNanos / STATE_QUERY_ITERATIONS);
+        }
+    }
+
     private Call addSpyCall() {
         return addSpyCall(SIM_2_HANDLE, CallState.ACTIVE);
     }
@@ -16,6 +16,7 @@
 
 package com.android.server.telecom.tests;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
@@ -49,7 +50,12 @@ import org.mockito.ArgumentCaptor;
 
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(JUnit4.class)
 public class ContactsAsyncHelperTest extends TelecomTestCase {
@@ -129,7 +135,7 @@ public class ContactsAsyncHelperTest extends TelecomTestCase {
         cah.startObtainPhotoAsync(TOKEN, mContext, SAMPLE_CONTACT_PHOTO_URI, mListener, COOKIE);
 
         verify(mListener, timeout(TEST_TIMEOUT)).onImageLoadComplete(eq(TOKEN),
-                isNull(Drawable.class), isNull(Bitmap.class), eq(COOKIE));
+                isNull(), isNull(), eq(COOKIE));
     }
 
     @SmallTest
@@ -145,14 +151,60 @@ public class ContactsAsyncHelperTest extends TelecomTestCase {
         verify(mListener, timeout(TEST_TIMEOUT)).onImageLoadComplete(eq(TOKEN),
                 photoCaptor.capture(), iconCaptor.capture(), eq(COOKIE));
 
+        // The photo is only decoded as large as needed for the icon.
         Bitmap capturedPhoto = ((BitmapDrawable) photoCaptor.getValue()).getBitmap();
-        assertTrue(getExpectedPhoto(SAMPLE_CONTACT_PHOTO_URI).sameAs(capturedPhoto));
         int iconSize = mContext.getResources()
                 .getDimensionPixelSize(R.dimen.notification_icon_size);
+        int longerEdge = Math.max(capturedPhoto.getWidth(), capturedPhoto.getHeight());
+        assertTrue(longerEdge >= iconSize);
+        assertTrue(longerEdge < 2 * iconSize);
         assertTrue(iconSize >= iconCaptor.getValue().getHeight());
         assertTrue(iconSize >= iconCaptor.getValue().getWidth());
     }
 
+    @SmallTest
+    @Test
+    public void testConcurrentLoadsShareOneDecode() {
+        int[] opens = new int[1];
+        ContactsAsyncHelper cah = new ContactsAsyncHelper((context, uri) -> {
+            opens[0]++;
+            return context.getContentResolver().openInputStream(uri);
+        }, Looper.getMainLooper());
+        ImageLoadListenerImpl otherListener = spy(new ImageLoadListenerImpl());
+        cah.startObtainPhotoAsync(TOKEN, mContext, SAMPLE_CONTACT_PHOTO_URI_SMALL,
+                mListener, COOKIE);
+        cah.startObtainPhotoAsync(TOKEN + 1, mContext, SAMPLE_CONTACT_PHOTO_URI_SMALL,
+                otherListener, null);
+
+        ArgumentCaptor<Bitmap> iconCaptor = ArgumentCaptor.forClass(Bitmap.class);
+        verify(mListener, timeout(TEST_TIMEOUT)).onImageLoadComplete(eq(TOKEN),
+                any(Drawable.class), iconCaptor.capture(), eq(COOKIE));
+        verify(otherListener, timeout(TEST_TIMEOUT)).onImageLoadComplete(eq(TOKEN + 1),
+                any(Drawable.class), eq(iconCaptor.getValue()), isNull());
+        assertEquals(1, opens[0]);
+    }
+
+    @SmallTest
+    @Test
+    public void testCachedPhotoReused() {
+        int[] opens = new int[1];
+        ContactsAsyncHelper cah = new ContactsAsyncHelper((context, uri) -> {
+            opens[0]++;
+            return context.getContentResolver().openInputStream(uri);
+        }, Looper.getMainLooper());
+        ImageLoadListenerImpl otherListener = spy(new ImageLoadListenerImpl());
+        cah.startObtainPhotoAsync(TOKEN, mContext, SAMPLE_CONTACT_PHOTO_URI_SMALL,
+                mListener, COOKIE);
+        verify(mListener, timeout(TEST_TIMEOUT)).onImageLoadComplete(eq(TOKEN),
+                any(Drawable.class), any(Bitmap.class), eq(COOKIE));
+
+        cah.startObtainPhotoAsync(TOKEN, mContext, SAMPLE_CONTACT_PHOTO_URI_SMALL,
+                otherListener, COOKIE);
+        verify(otherListener, timeout(TEST_TIMEOUT)).onImageLoadComplete(eq(TOKEN),
+                any(Drawable.class), any(Bitmap.class), eq(COOKIE));
+        assertEquals(1, opens[0]);
+    }
+
     @SmallTest
     @Test
     public void testNoScaling() {
@@ -172,6 +224,43 @@ public class ContactsAsyncHelperTest extends TelecomTestCase {
         assertTrue(capturedPhoto.sameAs(iconCaptor.getValue()));
     }
 
+    @SmallTest
+    @Test
+    public void testForegroundLoadsRunFirst() throws Exception {
+        CountDownLatch workersBusy = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Uri> opened = Collections.synchronizedList(new ArrayList<>());
+        ContactsAsyncHelper cah = new ContactsAsyncHelper((context, uri) -> {
+            opened.add(uri);
+            if (uri.getPath().startsWith("/busy")) {
+                workersBusy.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Fall through.
+                }
+            }
+            return null;
+        });
+        cah.startObtainPhotoAsync(TOKEN, mContext, Uri.parse("content://test/busy1"),
+                mListener, COOKIE);
+        cah.startObtainPhotoAsync(TOKEN, mContext, Uri.parse("content://test/busy2"),
+                mListener, COOKIE);
+        assertTrue(workersBusy.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        Uri background = Uri.parse("content://test/background");
+        Uri foreground = Uri.parse("content://test/foreground");
+        cah.startObtainPhotoAsync(TOKEN, mContext, background, mListener, COOKIE,
+                ContactsAsyncHelper.PRIORITY_BACKGROUND);
+        cah.startObtainPhotoAsync(TOKEN, mContext, foreground, mListener, COOKIE,
+                ContactsAsyncHelper.PRIORITY_FOREGROUND);
+        release.countDown();
+
+        verify(mListener, timeout(TEST_TIMEOUT).times(4)).onImageLoadComplete(eq(TOKEN),
+                isNull(), isNull(), eq(COOKIE));
+        assertTrue(opened.indexOf(foreground) < opened.indexOf(background));
+    }
+
     private Bitmap getExpectedPhoto(Uri uri) {
         InputStream is;
         try {
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.Call;
+import com.android.server.telecom.ClockProxy;
+import com.android.server.telecom.callfiltering.IncomingCallBatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class IncomingCallBatcherTest extends TelecomTestCase {
+    private static final long WINDOW_MILLIS = 20L;
+
+    @Mock private ClockProxy mClockProxy;
+    @Mock private Call mCall1;
+    @Mock private Call mCall2;
+    @Mock private Call mCall3;
+
+    private final List<Call> mBursts = new ArrayList<>();
+    private final List<Call> mFiltered = new ArrayList<>();
+    private IncomingCallBatcher mBatcher;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        when(mClockProxy.elapsedRealtime()).thenReturn(1000L);
+        mBatcher = new IncomingCallBatcher(mClockProxy, WINDOW_MILLIS, mBursts::add);
+    }
+
+    @SmallTest
+    @Test
+    public void testBurstCallsNotHeld() {
+        admit(mCall1);
+        admit(mCall2);
+        admit(mCall3);
+        // Every call is filtered as soon as it arrives.
+        assertEquals(Arrays.asList(mCall1, mCall2, mCall3), mFiltered);
+        // The listener hears about the burst once, when its second call arrives.
+        assertEquals(Arrays.asList(mCall2), mBursts);
+    }
+
+    @SmallTest
+    @Test
+    public void testCallAfterQuietPeriodStartsNoBurst() {
+        admit(mCall1);
+        when(mClockProxy.elapsedRealtime()).thenReturn(1000L + WINDOW_MILLIS);
+        admit(mCall2);
+        assertEquals(Arrays.asList(mCall1, mCall2), mFiltered);
+        assertEquals(0, mBursts.size());
+
+        admit(mCall3);
+        assertEquals(Arrays.asList(mCall3), mBursts);
+    }
+
+    @SmallTest
+    @Test
+    public void testNoBurstsWhenDisabled() {
+        mBatcher = new IncomingCallBatcher(mClockProxy, 0 /* windowMillis */, mBursts::add);
+        admit(mCall1);
+        admit(mCall2);
+        assertEquals(Arrays.asList(mCall1, mCall2), mFiltered);
+        assertEquals(0, mBursts.size());
+    }
+
+    private void admit(Call call) {
+        mBatcher.admit(call, () -> mFiltered.add(call));
+    }
+}
@@ -20,17 +20,22 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.test.suitebuilder.annotation.SmallTest;
 
 import com.android.server.telecom.Call;
 import com.android.server.telecom.TelecomSystem;
 import com.android.server.telecom.Timeouts;
 import com.android.server.telecom.callfiltering.CallFilter;
+import com.android.server.telecom.callfiltering.CallFilterLatencyStats;
 import com.android.server.telecom.callfiltering.CallFilterResultCallback;
+import com.android.server.telecom.callfiltering.CallFilteringExecutor;
 import com.android.server.telecom.callfiltering.CallFilteringResult;
 import com.android.server.telecom.callfiltering.IncomingCallFilterGraph;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.when;
 
@@ -42,6 +47,7 @@ import org.junit.Test;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 @RunWith(JUnit4.class)
@@ -66,6 +72,7 @@ public class IncomingCallFilterGraphTest extends TelecomTestCase {
     private final long FILTER_TIMEOUT = 5000;
     private final long TEST_TIMEOUT = 7000;
     private final long TIMEOUT_FILTER_SLEEP_TIME = 10000;
+    private static final long SLOW_FILTER_TIME = 100;
 
     private class AllowFilter extends CallFilter {
         @Override
@@ -98,6 +105,44 @@ public class IncomingCallFilterGraphTest extends TelecomTestCase {
         }
     }
 
+    private class FinalDisallowFilter extends DisallowFilter {
+        @Override
+        public boolean isResultFinal(CallFilteringResult result) {
+            return true;
+        }
+    }
+
+    private class PendingFilter extends CallFilter {
+        final CompletableFuture<CallFilteringResult> mResultFuture = new CompletableFuture<>();
+        final CountDownLatch mCancelled = new CountDownLatch(1);
+
+        @Override
+        public CompletionStage<CallFilteringResult> startFilterLookup(
+                CallFilteringResult priorStageResult) {
+            return mResultFuture;
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled.countDown();
+            mResultFuture.complete(PASS_CALL_RESULT);
+        }
+    }
+
+    private class SlowFilter extends CallFilter {
+        @Override
+        public CompletionStage<CallFilteringResult> startFilterLookup(
+                CallFilteringResult priorStageResult) {
+            return CompletableFuture.supplyAsync(() -> {
+                SystemClock.sleep(SLOW_FILTER_TIME);
+                return PASS_CALL_RESULT;
+            });
+        }
+    }
+
+    private class FollowingFilter extends AllowFilter {
+    }
+
     @Before
     @Override
     public void setUp() throws Exception {
@@ -175,4 +220,67 @@ public class IncomingCallFilterGraphTest extends TelecomTestCase {
 
         assertEquals(REJECT_CALL_RESULT, testResult.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
     }
+
+    @SmallTest
+    @Test
+    public void testFinalResultCompletesEarly() throws Exception {
+        CompletableFuture<Boolean> testTimeout = new CompletableFuture<>();
+        CompletableFuture<CallFilteringResult> testResult = new CompletableFuture<>();
+        CallFilterResultCallback listener = (call, result, timeout) -> {
+            testTimeout.complete(timeout);
+            testResult.complete(result);
+        };
+
+        IncomingCallFilterGraph graph = new IncomingCallFilterGraph(mCall, listener, mContext,
+                mTimeoutsAdapter, mLock);
+        FinalDisallowFilter finalFilter = new FinalDisallowFilter();
+        PendingFilter pendingFilter = new PendingFilter();
+        AllowFilter skippedFilter = new AllowFilter();
+        graph.addFilter(finalFilter);
+        graph.addFilter(pendingFilter);
+        graph.addFilter(skippedFilter);
+        IncomingCallFilterGraph.addEdge(pendingFilter, skippedFilter);
+        graph.performFiltering();
+
+        // The pending filter never completes on its own, so only an early completion can return
+        // a result before the filtering timeout.
+        assertEquals(REJECT_CALL_RESULT, testResult.get(FILTER_TIMEOUT / 2,
+                TimeUnit.MILLISECONDS));
+        assertFalse(testTimeout.get());
+        assertTrue(pendingFilter.mCancelled.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @SmallTest
+    @Test
+    public void testCriticalPathTiming() throws Exception {
+        CallFilterLatencyStats.reset();
+        CompletableFuture<CallFilteringResult> testResult = new CompletableFuture<>();
+        CallFilterResultCallback listener = (call, result, timeout) -> testResult.complete(result);
+
+        IncomingCallFilterGraph graph = new IncomingCallFilterGraph(mCall, listener, mContext,
+                mTimeoutsAdapter, mLock);
+        SlowFilter slowFilter = new SlowFilter();
+        FollowingFilter followingFilter = new FollowingFilter();
+        AllowFilter fastFilter = new AllowFilter();
+        graph.addFilter(slowFilter);
+        graph.addFilter(followingFilter);
+        graph.addFilter(fastFilter);
+        IncomingCallFilterGraph.addEdge(slowFilter, followingFilter);
+        graph.performFiltering();
+
+        assertEquals(PASS_CALL_RESULT, testResult.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        // Timings are recorded on the filtering thread after the listener is notified.
+        CallFilteringExecutor.getDefault().waitForIdle(TEST_TIMEOUT);
+
+        CallFilterLatencyStats.FilterStats slowStats =
+                CallFilterLatencyStats.getStats(slowFilter.getName());
+        assertEquals(1, slowStats.getRuns());
+        assertEquals(1, slowStats.getOnCriticalPath());
+        assertTrue(slowStats.getPercentileMillis(50) >= SLOW_FILTER_TIME);
+        assertEquals(1, CallFilterLatencyStats.getStats(followingFilter.getName())
+                .getOnCriticalPath());
+        assertEquals(0, CallFilterLatencyStats.getStats(fastFilter.getName())
+                .getOnCriticalPath());
+        CallFilterLatencyStats.reset();
+    }
 }
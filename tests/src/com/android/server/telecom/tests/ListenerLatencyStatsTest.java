@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.ListenerLatencyStats;
+import com.android.server.telecom.TelecomLogClass;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class ListenerLatencyStatsTest {
+    private static class FastListener {}
+    private static class SlowListener {}
+
+    @Before
+    public void setUp() {
+        ListenerLatencyStats.reset();
+        ListenerLatencyStats.setSlowCallbackThresholdMillis(100L);
+    }
+
+    @After
+    public void tearDown() {
+        ListenerLatencyStats.reset();
+        ListenerLatencyStats.setSlowCallbackThresholdMillis(
+                ListenerLatencyStats.DEFAULT_SLOW_CALLBACK_THRESHOLD_MILLIS);
+    }
+
+    @SmallTest
+    @Test
+    public void testHistogramBuckets() {
+        FastListener listener = new FastListener();
+        ListenerLatencyStats.record(listener, "onCallAdded", TimeUnit.MICROSECONDS.toNanos(500));
+        ListenerLatencyStats.record(listener, "onCallAdded", TimeUnit.MILLISECONDS.toNanos(3));
+        ListenerLatencyStats.record(listener, "onCallRemoved", TimeUnit.MILLISECONDS.toNanos(4));
+        ListenerLatencyStats.record(listener, "onCallRemoved", TimeUnit.SECONDS.toNanos(2));
+
+        ListenerLatencyStats.Histogram histogram = ListenerLatencyStats.getHistogram(listener);
+        assertEquals(FastListener.class.getName(), histogram.getListenerName());
+        assertEquals(4, histogram.getCount());
+        assertEquals(2000, histogram.getMaxMillis());
+        assertEquals(1, histogram.getSlowCount());
+        long[] buckets = histogram.getBucketCounts();
+        assertEquals(ListenerLatencyStats.BUCKET_UPPER_BOUNDS_MILLIS.length + 1, buckets.length);
+        assertEquals(1, buckets[0]);
+        assertEquals(1, buckets[2]);
+        assertEquals(1, buckets[3]);
+        assertEquals(1, buckets[buckets.length - 1]);
+    }
+
+    @SmallTest
+    @Test
+    public void testHistogramsPerListenerClass() {
+        ListenerLatencyStats.record(new FastListener(), "onCallAdded",
+                TimeUnit.MILLISECONDS.toNanos(1));
+        ListenerLatencyStats.record(new SlowListener(), "onCallAdded",
+                TimeUnit.MILLISECONDS.toNanos(150));
+        ListenerLatencyStats.record(new SlowListener(), "onCallAdded",
+                TimeUnit.MILLISECONDS.toNanos(50));
+
+        List<ListenerLatencyStats.Histogram> histograms = ListenerLatencyStats.getHistograms();
+        assertEquals(2, histograms.size());
+        // Slowest listener first.
+        assertEquals(SlowListener.class.getName(), histograms.get(0).getListenerName());
+        assertEquals(2, histograms.get(0).getCount());
+        assertEquals(1, histograms.get(0).getSlowCount());
+
+        TelecomLogClass.ListenerLatency[] protos = ListenerLatencyStats.toProto();
+        assertEquals(2, protos.length);
+        assertEquals(SlowListener.class.getName(), protos[0].getListenerName());
+        assertEquals(2, protos[0].getCallbackCount());
+        assertEquals(200, protos[0].getTotalTimeMillis());
+        assertEquals(150, protos[0].getMaxTimeMillis());
+        assertEquals(1, protos[0].getSlowCallbackCount());
+        assertArrayEquals(ListenerLatencyStats.BUCKET_UPPER_BOUNDS_MILLIS,
+                protos[0].bucketUpperBoundsMillis);
+    }
+
+    @SmallTest
+    @Test
+    public void testHeldHistogramRecordsAfterReset() {
+        FastListener listener = new FastListener();
+        ListenerLatencyStats.Histogram histogram = ListenerLatencyStats.getHistogram(listener);
+        histogram.record("onCallAdded", TimeUnit.MILLISECONDS.toNanos(1));
+
+        ListenerLatencyStats.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, ListenerLatencyStats.getHistograms().size());
+
+        // A listener set holds on to its histograms, so they must still be reported.
+        histogram.record("onCallAdded", TimeUnit.MILLISECONDS.toNanos(3));
+        List<ListenerLatencyStats.Histogram> histograms = ListenerLatencyStats.getHistograms();
+        assertEquals(1, histograms.size());
+        assertEquals(1, histograms.get(0).getCount());
+        assertEquals(3, histograms.get(0).getMaxMillis());
+    }
+}
@@ -76,6 +76,7 @@ import java.util.List;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.nullable;
@@ -537,7 +538,7 @@ public class MissedCallNotifierImplTest extends TelecomTestCase {
         // TelecomSystem.getInstance returns null in this test, so we expect that nothing will
         // happen.
         verify(mockCallerInfoLookupHelper, never()).startLookup(any(Uri.class),
-                any(CallerInfoLookupHelper.OnQueryCompleteListener.class));
+                any(CallerInfoLookupHelper.OnQueryCompleteListener.class), anyBoolean());
         // Simulate a boot-complete
         TelecomSystem.setInstance(mTelecomSystem);
         when(mTelecomSystem.isBootComplete()).thenReturn(true);
@@ -550,7 +551,7 @@ public class MissedCallNotifierImplTest extends TelecomTestCase {
         ArgumentCaptor<CallerInfoLookupHelper.OnQueryCompleteListener> listenerCaptor =
                 ArgumentCaptor.forClass(CallerInfoLookupHelper.OnQueryCompleteListener.class);
         verify(mockCallerInfoLookupHelper, timeout(TEST_TIMEOUT)).startLookup(eq(escapedHandle),
-                listenerCaptor.capture());
+                listenerCaptor.capture(), eq(true));
 
         CallerInfo ci = new CallerInfo();
         listenerCaptor.getValue().onCallerInfoQueryComplete(escapedHandle, ci);
@@ -612,9 +613,9 @@ public class MissedCallNotifierImplTest extends TelecomTestCase {
         ArgumentCaptor<CallerInfoLookupHelper.OnQueryCompleteListener> listenerCaptor =
                 ArgumentCaptor.forClass(CallerInfoLookupHelper.OnQueryCompleteListener.class);
         verify(mockCallerInfoLookupHelper, timeout(TEST_TIMEOUT)).startLookup(eq(escapedTelHandle),
-                listenerCaptor.capture());
+                listenerCaptor.capture(), eq(true));
         verify(mockCallerInfoLookupHelper, timeout(TEST_TIMEOUT)).startLookup(eq(escapedSipHandle),
-                listenerCaptor.capture());
+                listenerCaptor.capture(), eq(true));
 
         CallerInfo ci = new CallerInfo();
         listenerCaptor.getAllValues().get(0).onCallerInfoQueryComplete(escapedTelHandle, ci);
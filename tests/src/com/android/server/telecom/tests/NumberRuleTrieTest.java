@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.os.SystemClock;
+import android.telecom.Log;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.callfiltering.NumberRuleStore;
+import com.android.server.telecom.callfiltering.NumberRuleTrie;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class NumberRuleTrieTest {
+    private static final int BENCHMARK_RULES = 100000;
+    private static final int FULL_BENCHMARK_RULES = 1000000;
+    private static final int BENCHMARK_LOOKUPS = 100000;
+
+    @SmallTest
+    @Test
+    public void testExactAndPrefixRules() {
+        NumberRuleTrie rules = new NumberRuleTrie.Builder()
+                .addRule("+1 (900) *")
+                .addRule("16505551234")
+                .build();
+
+        assertTrue(rules.matches("1900"));
+        assertTrue(rules.matches("19005551234"));
+        assertTrue(rules.matches("16505551234"));
+        assertFalse(rules.matches("190"));
+        assertFalse(rules.matches("1650555123"));
+        assertFalse(rules.matches("165055512345"));
+        assertEquals(2, rules.getRuleCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testWildcardRules() {
+        NumberRuleTrie rules = new NumberRuleTrie.Builder()
+                .addRule("1408555????")
+                .addRule("14085551234")
+                .build();
+
+        assertTrue(rules.matches("14085550000"));
+        assertTrue(rules.matches("14085559999"));
+        assertFalse(rules.matches("1408555999"));
+        assertFalse(rules.matches("14085569999"));
+    }
+
+    @SmallTest
+    @Test
+    public void testRangeRules() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            int low = random.nextInt(1000000);
+            int high = low + random.nextInt(1000000 - low);
+            NumberRuleTrie rules = new NumberRuleTrie.Builder()
+                    .addRule(String.format("%06d-%06d", low, high))
+                    .build();
+            for (int j = 0; j < 100; j++) {
+                int number = random.nextInt(1000000);
+                assertEquals(low + "-" + high + " " + number, number >= low && number <= high,
+                        rules.matches(String.format("%06d", number)));
+            }
+            assertTrue(rules.matches(String.format("%06d", low)));
+            assertTrue(rules.matches(String.format("%06d", high)));
+            assertFalse(rules.matches(String.format("%07d", low)));
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testMalformedRules() {
+        for (String rule : new String[] {"", "12*3", "1a2", "123-45", "456-123"}) {
+            try {
+                new NumberRuleTrie.Builder().addRule(rule);
+                fail("Accepted " + rule);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testStoreReloadsChangedFile() throws Exception {
+        File file = File.createTempFile("rules", ".txt");
+        try {
+            NumberRuleStore store = new NumberRuleStore(file);
+            NumberRuleStore.Listener listener = mock(NumberRuleStore.Listener.class);
+            store.addListener(listener);
+            writeRules(file, "# Premium\n1900*\nnot a rule\n");
+            // The rules are only read by a reload, never on the lookup path.
+            assertFalse(store.getRules().matches("19001234"));
+            store.reload();
+            assertTrue(store.getRules().matches("19001234"));
+            assertEquals(1, store.getRules().getRuleCount());
+            verify(listener).onRulesChanged(store);
+
+            // An unchanged file is not reloaded.
+            store.reload();
+            verify(listener).onRulesChanged(store);
+
+            writeRules(file, "1900*\n16505550000-16505559999\n");
+            file.setLastModified(file.lastModified() + 1000);
+            store.reload();
+            assertTrue(store.getRules().matches("16505551234"));
+
+            file.delete();
+            store.reload();
+            assertFalse(store.getRules().matches("19001234"));
+            verify(listener, times(3)).onRulesChanged(store);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Builds a trie of random numbers and ranges and times lookups against it.  Timings and the
+     * memory held by the trie are logged.
+     */
+    @LargeTest
+    @Test
+    public void testLookupBenchmark() {
+        runLookupBenchmark(BENCHMARK_RULES);
+    }
+
+    /**
+     * The benchmark at a million rules.  The patterns alone take over a hundred megabytes, more
+     * than the test process may have, so it is only run by hand.
+     */
+    @Ignore("Needs a large heap; run by hand")
+    @LargeTest
+    @Test
+    public void testLookupBenchmarkMillionRules() {
+        runLookupBenchmark(FULL_BENCHMARK_RULES);
+    }
+
+    private void runLookupBenchmark(int ruleCount) {
+        Random random = new Random(1);
+        String[] numbers = new String[ruleCount];
+        NumberRuleTrie.Builder builder = new NumberRuleTrie.Builder();
+        for (int i = 0; i < ruleCount; i++) {
+            numbers[i] = String.format("1%010d", Math.floorMod(random.nextLong(), 10000000000L));
+            if (i % 100 == 0) {
+                builder.addRule(numbers[i] + "-" + numbers[i].substring(0, 8) + "999");
+            } else {
+                builder.addRule(numbers[i]);
+            }
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        NumberRuleTrie rules = builder.build();
+        long buildNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < BENCHMARK_LOOKUPS; i++) {
+            assertTrue(rules.matches(numbers[i % ruleCount]));
+        }
+        long lookupNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        Log.i(this, "runLookupBenchmark: rules=%d, nodes=%d, retainedBytes=%d, "
+                + "buildPeakBytes=%d, build=%dms, lookup=%dns", rules.getRuleCount(),
+                rules.getNodeCount(), rules.getRetainedBytes(), rules.getBuildPeakBytes(),
+                buildNanos / 1000000, lookupNanos / BENCHMARK_LOOKUPS);
+        // The arrays are trimmed to the nodes, and grow by half, so at most the old and new
+        // arrays are held at once.
+        assertEquals(rules.getNodeCount() * 10L, rules.getRetainedBytes());
+        assertTrue(rules.getBuildPeakBytes() <= rules.getRetainedBytes() * 5 / 2);
+    }
+
+    private static void writeRules(File file, String rules) throws Exception {
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(rules);
+        }
+    }
+}
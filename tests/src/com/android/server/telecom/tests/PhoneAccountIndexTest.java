@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.telecom.Log;
+import android.telecom.PhoneAccount;
+import android.telecom.PhoneAccountHandle;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.PhoneAccountIndex;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class PhoneAccountIndexTest {
+    private static final int LOOKUP_ITERATIONS = 1000;
+
+    @SmallTest
+    @Test
+    public void testLookupByHandle() {
+        PhoneAccountIndex index = new PhoneAccountIndex();
+        PhoneAccount account = makeAccount("pkg", "1", PhoneAccount.CAPABILITY_CALL_PROVIDER,
+                PhoneAccount.SCHEME_TEL);
+        index.add(account);
+
+        assertSame(account, index.get(account.getAccountHandle()));
+        assertNull(index.get(makeHandle("pkg", "2")));
+        assertNull(index.get(null));
+
+        assertTrue(index.remove(account.getAccountHandle()));
+        assertFalse(index.remove(account.getAccountHandle()));
+        assertNull(index.get(account.getAccountHandle()));
+        assertEquals(0, index.size());
+    }
+
+    @SmallTest
+    @Test
+    public void testReplaceUpdatesBuckets() {
+        PhoneAccountIndex index = new PhoneAccountIndex();
+        index.add(makeAccount("pkg", "1", PhoneAccount.CAPABILITY_CALL_PROVIDER,
+                PhoneAccount.SCHEME_TEL));
+        index.add(makeAccount("pkg", "1", PhoneAccount.CAPABILITY_SELF_MANAGED,
+                PhoneAccount.SCHEME_SIP));
+
+        assertEquals(1, index.size());
+        assertTrue(index.getCandidates(PhoneAccount.CAPABILITY_CALL_PROVIDER, null, null)
+                .isEmpty());
+        assertTrue(index.getCandidates(0, PhoneAccount.SCHEME_TEL, null).isEmpty());
+        assertEquals(1, index.getCandidates(PhoneAccount.CAPABILITY_SELF_MANAGED,
+                PhoneAccount.SCHEME_SIP, "pkg").size());
+    }
+
+    @SmallTest
+    @Test
+    public void testCandidatesFollowRegistrarOrder() {
+        PhoneAccountIndex index = new PhoneAccountIndex();
+        PhoneAccount a = makeAccount("pkg", "a", PhoneAccount.CAPABILITY_CALL_PROVIDER,
+                PhoneAccount.SCHEME_TEL);
+        PhoneAccount b = makeAccount("pkg", "b", PhoneAccount.CAPABILITY_CALL_PROVIDER,
+                PhoneAccount.SCHEME_TEL);
+        PhoneAccount c = makeAccount("other", "c", PhoneAccount.CAPABILITY_CALL_PROVIDER,
+                PhoneAccount.SCHEME_SIP);
+        index.rebuild(Arrays.asList(a, b, c));
+        assertEquals(Arrays.asList(a, b, c), index.getCandidates(0, null, null));
+        assertEquals(Arrays.asList(a, b), index.getCandidates(0, null, "pkg"));
+
+        index.updateOrdering(Arrays.asList(c, b, a));
+        assertEquals(Arrays.asList(c, b, a),
+                index.getCandidates(PhoneAccount.CAPABILITY_CALL_PROVIDER, null, null));
+        assertEquals(Arrays.asList(b, a), index.getCandidates(0, PhoneAccount.SCHEME_TEL, null));
+        assertTrue(index.getCandidates(0, null, "missing").isEmpty());
+
+        // A replaced account keeps its place.
+        PhoneAccount disabled = a.toBuilder().setIsEnabled(false).build();
+        index.replace(disabled);
+        assertSame(disabled, index.getCandidates(0, null, null).get(2));
+        assertSame(disabled, index.get(a.getAccountHandle()));
+    }
+
+    @SmallTest
+    @Test
+    public void testCandidatesPartitionedByUser() {
+        PhoneAccountIndex index = new PhoneAccountIndex();
+        UserHandle other = UserHandle.of(Process.myUserHandle().getIdentifier() + 10);
+        PhoneAccount own = makeAccount("pkg", "own", PhoneAccount.CAPABILITY_CALL_PROVIDER,
+                PhoneAccount.SCHEME_TEL);
+        PhoneAccount multiUser = makeAccount("pkg", "multi",
+                PhoneAccount.CAPABILITY_MULTI_USER, PhoneAccount.SCHEME_TEL);
+        PhoneAccount foreign = new PhoneAccount.Builder(new PhoneAccountHandle(
+                new ComponentName("pkg", "cls"), "foreign", other), "foreign")
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER)
+                .build();
+        index.rebuild(Arrays.asList(own, multiUser, foreign));
+        int usersVersion = index.getUsersVersion();
+
+        assertEquals(Arrays.asList(own, multiUser),
+                index.getCandidates(0, null, null, Process.myUserHandle()));
+        assertEquals(Arrays.asList(multiUser, foreign), index.getCandidates(0, null, null, other));
+        assertEquals(2, index.getUsers().size());
+
+        index.remove(own.getAccountHandle());
+        assertEquals(usersVersion, index.getUsersVersion());
+        index.remove(multiUser.getAccountHandle());
+        assertTrue(index.getUsersVersion() != usersVersion);
+        assertTrue(index.getCandidates(0, null, null, Process.myUserHandle()).isEmpty());
+    }
+
+    /**
+     * Compares index lookups against a linear scan of the account list for registries of 10, 100
+     * and 1000 accounts.  Timings are logged; the test only asserts that both paths agree.
+     */
+    @MediumTest
+    @Test
+    public void testLookupScaling() {
+        for (int count : new int[] {10, 100, 1000}) {
+            List<PhoneAccount> accounts = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                accounts.add(makeAccount("pkg" + (i % 10), Integer.toString(i),
+                        i % 4 == 0 ? PhoneAccount.CAPABILITY_SIM_SUBSCRIPTION
+                                : PhoneAccount.CAPABILITY_SELF_MANAGED,
+                        i % 2 == 0 ? PhoneAccount.SCHEME_TEL : PhoneAccount.SCHEME_SIP));
+            }
+            PhoneAccountIndex index = new PhoneAccountIndex();
+            index.rebuild(accounts);
+            PhoneAccountHandle target = accounts.get(count - 1).getAccountHandle();
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            PhoneAccount scanned = null;
+            for (int i = 0; i < LOOKUP_ITERATIONS; i++) {
+                for (PhoneAccount account : accounts) {
+                    if (target.equals(account.getAccountHandle())) {
+                        scanned = account;
+                        break;
+                    }
+                }
+            }
+            long scanNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            PhoneAccount indexed = null;
+            for (int i = 0; i < LOOKUP_ITERATIONS; i++) {
+                indexed = index.get(target);
+            }
+            long indexNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            assertSame(scanned, indexed);
+            assertEquals((count + 3) / 4, index.getCandidates(
+                    PhoneAccount.CAPABILITY_SIM_SUBSCRIPTION, null, null).size());
+            assertEquals(count / 10, index.getCandidates(0, null, "pkg3").size());
+            Log.i(this, "testLookupScaling: accounts=%d, scan=%dns, index=%dns", count,
+                    scanNanos / LOOKUP_ITERATIONS, indexNanos / LOOKUP_ITERATIONS);
+        }
+    }
+
+    private static PhoneAccountHandle makeHandle(String packageName, String id) {
+        return new PhoneAccountHandle(new ComponentName(packageName, "cls"), id,
+                Process.myUserHandle());
+    }
+
+    private static PhoneAccount makeAccount(String packageName, String id, int capabilities,
+            String scheme) {
+        return new PhoneAccount.Builder(makeHandle(packageName, id), "label" + id)
+                .setCapabilities(capabilities)
+                .setSupportedUriSchemes(Arrays.asList(scheme))
+                .build();
+    }
+}
@@ -20,6 +20,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyBoolean;
@@ -43,6 +44,7 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Rect;
 import android.graphics.drawable.Icon;
@@ -72,6 +74,7 @@ import com.android.server.telecom.AppLabelProxy;
 import com.android.server.telecom.DefaultDialerCache;
 import com.android.server.telecom.PhoneAccountRegistrar;
 import com.android.server.telecom.PhoneAccountRegistrar.DefaultPhoneAccountHandle;
+import com.android.server.telecom.PhoneAccountRegistryBinaryFormat;
 import com.android.server.telecom.TelecomSystem;
 
 import org.junit.After;
@@ -90,6 +93,7 @@ import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -98,10 +102,12 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(JUnit4.class)
 public class PhoneAccountRegistrarTest extends TelecomTestCase {
 
+    private static final long TEST_TIMEOUT = 5000L;
     private static final int MAX_VERSION = Integer.MAX_VALUE;
     private static final String FILE_NAME = "phone-account-registrar-test-1223.xml";
     private static final String TEST_LABEL = "right";
@@ -127,6 +133,11 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
                 mComponentContextFixture.getTestDouble().getApplicationContext().getFilesDir(),
                 FILE_NAME)
                 .delete();
+        new File(
+                mComponentContextFixture.getTestDouble().getApplicationContext().getFilesDir(),
+                PhoneAccountRegistrar.getBinaryFileName(FILE_NAME))
+                .delete();
+        deleteIconStore();
         when(mDefaultDialerCache.getDefaultDialerApplication(anyInt()))
                 .thenReturn("com.android.dialer");
         when(mAppLabelProxy.getAppLabel(anyString()))
@@ -144,9 +155,29 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
                 mComponentContextFixture.getTestDouble().getApplicationContext().getFilesDir(),
                 FILE_NAME)
                 .delete();
+        new File(
+                mComponentContextFixture.getTestDouble().getApplicationContext().getFilesDir(),
+                PhoneAccountRegistrar.getBinaryFileName(FILE_NAME))
+                .delete();
+        deleteIconStore();
         super.tearDown();
     }
 
+    private File getIconStoreDirectory() {
+        return new File(
+                mComponentContextFixture.getTestDouble().getApplicationContext().getFilesDir(),
+                PhoneAccountRegistrar.ICON_STORE_DIRECTORY);
+    }
+
+    private void deleteIconStore() {
+        File[] blobs = getIconStoreDirectory().listFiles();
+        if (blobs != null) {
+            for (File blob : blobs) {
+                blob.delete();
+            }
+        }
+    }
+
     @MediumTest
     @Test
     public void testPhoneAccountHandle() throws Exception {
@@ -306,6 +337,291 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
         assertStateEquals(input, result);
     }
 
+    @MediumTest
+    @Test
+    public void testBinaryState() throws Exception {
+        PhoneAccountRegistrar.State input = makeQuickState();
+        PhoneAccountRegistrar.State result = PhoneAccountRegistryBinaryFormat.fromBytes(
+                PhoneAccountRegistryBinaryFormat.toBytes(input, mContext), mContext);
+        assertStateEquals(input, result);
+        assertEquals(PhoneAccountRegistrar.EXPECTED_STATE_VERSION, result.versionNumber);
+    }
+
+    /**
+     * Compares the size and parse time of the binary registry format against the XML format for
+     * the same state.  Parse times are logged; only the size is asserted.
+     */
+    @MediumTest
+    @Test
+    public void testBinaryStateSmallerThanXml() throws Exception {
+        PhoneAccountRegistrar.State input = makeQuickState();
+        byte[] binary = PhoneAccountRegistryBinaryFormat.toBytes(input, mContext);
+        ByteArrayOutputStream xmlStream = new ByteArrayOutputStream();
+        XmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(new BufferedOutputStream(xmlStream), "utf-8");
+        PhoneAccountRegistrar.sStateXml.writeToXml(input, serializer, mContext);
+        serializer.flush();
+        byte[] xml = xmlStream.toByteArray();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setInput(new ByteArrayInputStream(xml), null);
+            parser.nextTag();
+            PhoneAccountRegistrar.sStateXml.readFromXml(parser, MAX_VERSION, mContext);
+        }
+        long xmlNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            PhoneAccountRegistryBinaryFormat.fromBytes(binary, mContext);
+        }
+        long binaryNanos = System.nanoTime() - start;
+
+        Log.i(this, "testBinaryStateSmallerThanXml: xml=%d bytes/%dus, binary=%d bytes/%dus",
+                xml.length, xmlNanos / 100000, binary.length, binaryNanos / 100000);
+        assertTrue(binary.length < xml.length);
+    }
+
+    @MediumTest
+    @Test
+    public void testMigrateXmlStateToBinary() throws Exception {
+        PhoneAccountRegistrar.State input = makeQuickState();
+        File filesDir = mComponentContextFixture.getTestDouble().getApplicationContext()
+                .getFilesDir();
+        File xmlFile = new File(filesDir, FILE_NAME);
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(xmlFile))) {
+            XmlSerializer serializer = new FastXmlSerializer();
+            serializer.setOutput(os, "utf-8");
+            PhoneAccountRegistrar.sStateXml.writeToXml(input, serializer, mContext);
+            serializer.flush();
+        }
+
+        mRegistrar = new PhoneAccountRegistrar(
+                mComponentContextFixture.getTestDouble().getApplicationContext(),
+                mLock, FILE_NAME, mDefaultDialerCache, mAppLabelProxy);
+        // The XML registry is deleted on the writer thread once the binary registry is written.
+        mRegistrar.getLoadFuture().get(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+        mRegistrar.flushPendingWrites();
+
+        assertFalse(xmlFile.exists());
+        File binaryFile = new File(filesDir, PhoneAccountRegistrar.getBinaryFileName(FILE_NAME));
+        assertTrue(binaryFile.exists());
+        for (PhoneAccount account : input.accounts) {
+            assertPhoneAccountEquals(account, mRegistrar.getPhoneAccountWithIcon(
+                    mRegistrar.getPhoneAccountUnchecked(account.getAccountHandle())));
+        }
+    }
+
+    /**
+     * Verifies that the registry is loaded off the constructing thread and that callers needing
+     * accounts wait for the load to finish.
+     */
+    @MediumTest
+    @Test
+    public void testAsynchronousLoad() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        PhoneAccount account = makeQuickAccount("id1", 1);
+        registerAndEnableAccount(account);
+        mRegistrar.flushPendingWrites();
+
+        mRegistrar = new PhoneAccountRegistrar(
+                mComponentContextFixture.getTestDouble().getApplicationContext(),
+                mLock, FILE_NAME, mDefaultDialerCache, mAppLabelProxy);
+        // Does not return until the load completes.
+        assertNotNull(mRegistrar.getPhoneAccountUnchecked(account.getAccountHandle()));
+        assertTrue(mRegistrar.getLoadFuture().isDone());
+        assertEquals(1, mRegistrar.getAllPhoneAccounts(Process.myUserHandle()).size());
+    }
+
+    /**
+     * Verifies that an account registered while the registry is loading, with the Telecom lock
+     * held, is not lost when the loaded state is installed.
+     */
+    @MediumTest
+    @Test
+    public void testRegisterDuringLoad() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        PhoneAccount account1 = makeQuickAccount("id1", 1);
+        registerAndEnableAccount(account1);
+        mRegistrar.flushPendingWrites();
+
+        mRegistrar = new PhoneAccountRegistrar(
+                mComponentContextFixture.getTestDouble().getApplicationContext(),
+                mLock, FILE_NAME, mDefaultDialerCache, mAppLabelProxy);
+        PhoneAccount account2 = makeQuickAccount("id2", 2);
+        synchronized (mLock) {
+            mRegistrar.registerPhoneAccount(account2);
+            // Waiting with the lock held installs the loaded state rather than stalling it.
+            assertTrue(mRegistrar.getLoadFuture().isDone());
+        }
+
+        assertNotNull(mRegistrar.getPhoneAccountUnchecked(account1.getAccountHandle()));
+        assertNotNull(mRegistrar.getPhoneAccountUnchecked(account2.getAccountHandle()));
+    }
+
+    /**
+     * Verifies that a snapshot is published for every change to the registry and is not affected
+     * by later changes.
+     */
+    @MediumTest
+    @Test
+    public void testSnapshot() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        PhoneAccount account = makeQuickAccount("id1", 1);
+        PhoneAccountRegistrar.Snapshot before = mRegistrar.getSnapshot();
+        registerAndEnableAccount(account);
+
+        PhoneAccountRegistrar.Snapshot enabled = mRegistrar.getSnapshot();
+        assertTrue(enabled.version > before.version);
+        assertTrue(before.getAccounts().isEmpty());
+        assertEquals(1, mRegistrar.getAllPhoneAccounts(enabled, Process.myUserHandle()).size());
+        assertSame(mRegistrar.getPhoneAccountUnchecked(account.getAccountHandle()),
+                mRegistrar.getPhoneAccount(enabled, account.getAccountHandle(),
+                        Process.myUserHandle(), false /* acrossProfiles */));
+
+        mRegistrar.enablePhoneAccount(account.getAccountHandle(), false);
+        assertTrue(mRegistrar.getSnapshot().version > enabled.version);
+        assertTrue(mRegistrar.getPhoneAccount(enabled, account.getAccountHandle(),
+                Process.myUserHandle(), false /* acrossProfiles */).isEnabled());
+        assertTrue(mRegistrar.getAllPhoneAccounts(mRegistrar.getSnapshot(),
+                Process.myUserHandle()).isEmpty());
+    }
+
+    /**
+     * Verifies that cross-profile visibility is computed once per user and recomputed after a
+     * user switch.
+     */
+    @SmallTest
+    @Test
+    public void testProfileGroupVisibilityCached() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        PhoneAccount account = makeQuickAccount("id1", 1);
+        registerAndEnableAccount(account);
+        UserHandle profile = UserHandle.of(Process.myUserHandle().getIdentifier() + 10);
+        UserManager userManager = UserManager.get(mContext);
+        when(userManager.isSameProfileGroup(anyInt(), anyInt())).thenReturn(true);
+
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(mRegistrar.getPhoneAccount(account.getAccountHandle(), profile,
+                    true /* acrossProfiles */));
+        }
+        assertNull(mRegistrar.getPhoneAccount(account.getAccountHandle(), profile,
+                false /* acrossProfiles */));
+        verify(userManager, times(1)).isSameProfileGroup(anyInt(), anyInt());
+
+        when(userManager.isSameProfileGroup(anyInt(), anyInt())).thenReturn(false);
+        mRegistrar.setCurrentUserHandle(Process.myUserHandle());
+        assertNull(mRegistrar.getPhoneAccount(account.getAccountHandle(), profile,
+                true /* acrossProfiles */));
+        verify(userManager, times(2)).isSameProfileGroup(anyInt(), anyInt());
+    }
+
+    /**
+     * Verifies that a snapshot answers cross-profile queries with the users it was taken with,
+     * and that a change to the users publishes a new snapshot.
+     */
+    @SmallTest
+    @Test
+    public void testSnapshotKeepsUsers() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        PhoneAccount account = makeQuickAccount("id1", 1);
+        registerAndEnableAccount(account);
+        UserHandle profile = UserHandle.of(Process.myUserHandle().getIdentifier() + 10);
+        UserManager userManager = UserManager.get(mContext);
+        when(userManager.isSameProfileGroup(anyInt(), anyInt())).thenReturn(true);
+        PhoneAccountRegistrar.Snapshot before = mRegistrar.getSnapshot();
+        assertNotNull(mRegistrar.getPhoneAccount(before, account.getAccountHandle(), profile,
+                true /* acrossProfiles */));
+
+        when(userManager.isSameProfileGroup(anyInt(), anyInt())).thenReturn(false);
+        mRegistrar.setCurrentUserHandle(Process.myUserHandle());
+        PhoneAccountRegistrar.Snapshot after = mRegistrar.getSnapshot();
+        assertTrue(after.version > before.version);
+        assertSame(before.getAccounts(), after.getAccounts());
+        assertNotNull(mRegistrar.getPhoneAccount(before, account.getAccountHandle(), profile,
+                true /* acrossProfiles */));
+        assertNull(mRegistrar.getPhoneAccount(after, account.getAccountHandle(), profile,
+                true /* acrossProfiles */));
+    }
+
+    /**
+     * Verifies that icons are held in the icon store rather than in the registered accounts, that
+     * accounts with the same icon share a single blob, and that the blob is deleted once the
+     * registry without the last account referring to it has been written.
+     */
+    @MediumTest
+    @Test
+    public void testIconStore() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        PhoneAccount account1 = makeQuickAccount("id1", 1);
+        PhoneAccount account2 = makeQuickAccount("id2", 2);
+        registerAndEnableAccount(account1);
+        registerAndEnableAccount(account2);
+
+        assertEquals(1, getIconStoreDirectory().list().length);
+        PhoneAccount registered = mRegistrar.getPhoneAccountUnchecked(
+                account1.getAccountHandle());
+        assertNull(registered.getIcon());
+        assertIconEquals(account1.getIcon(),
+                mRegistrar.getPhoneAccountWithIcon(registered).getIcon());
+
+        // The icons survive a reload of the registry.
+        mRegistrar.flushPendingWrites();
+        mRegistrar = new PhoneAccountRegistrar(
+                mComponentContextFixture.getTestDouble().getApplicationContext(),
+                mLock, FILE_NAME, mDefaultDialerCache, mAppLabelProxy);
+        assertIconEquals(account2.getIcon(), mRegistrar.getPhoneAccountWithIcon(
+                mRegistrar.getPhoneAccountUnchecked(account2.getAccountHandle())).getIcon());
+
+        mRegistrar.unregisterPhoneAccount(account1.getAccountHandle());
+        mRegistrar.flushPendingWrites();
+        assertEquals(1, getIconStoreDirectory().list().length);
+        mRegistrar.unregisterPhoneAccount(account2.getAccountHandle());
+        // The registry on disk still refers to the icon until it is written.
+        assertEquals(1, getIconStoreDirectory().list().length);
+        mRegistrar.flushPendingWrites();
+        assertEquals(0, getIconStoreDirectory().list().length);
+    }
+
+    /**
+     * Verifies that an icon stored ahead of registration is used by the registration, and that
+     * an icon stored for an account which is never registered is deleted on the next load.
+     */
+    @MediumTest
+    @Test
+    public void testStoreIconAhead() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        PhoneAccount account1 = makeQuickAccount("id1", 1);
+        mRegistrar.storeIcon(account1);
+        assertEquals(1, getIconStoreDirectory().list().length);
+        registerAndEnableAccount(account1);
+        assertEquals(1, getIconStoreDirectory().list().length);
+        assertIconEquals(account1.getIcon(), mRegistrar.getPhoneAccountWithIcon(
+                mRegistrar.getPhoneAccountUnchecked(account1.getAccountHandle())).getIcon());
+
+        PhoneAccount unregistered = new PhoneAccount.Builder(
+                makeQuickAccountHandle("id2"), "label")
+                .setIcon(Icon.createWithBitmap(
+                        Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888)))
+                .build();
+        mRegistrar.storeIcon(unregistered);
+        assertEquals(2, getIconStoreDirectory().list().length);
+
+        mRegistrar.flushPendingWrites();
+        mRegistrar = new PhoneAccountRegistrar(
+                mComponentContextFixture.getTestDouble().getApplicationContext(),
+                mLock, FILE_NAME, mDefaultDialerCache, mAppLabelProxy);
+        mRegistrar.getLoadFuture().get(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(1, getIconStoreDirectory().list().length);
+    }
+
     private void registerAndEnableAccount(PhoneAccount account) {
         mRegistrar.registerPhoneAccount(account);
         mRegistrar.enablePhoneAccount(account.getAccountHandle(), true);
@@ -987,6 +1303,32 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
                 PhoneAccount.CAPABILITY_RTT);
     }
 
+    /**
+     * Tests that {@link ConnectionService} resolutions are cached across queries and re-queried
+     * once invalidated for the package.
+     */
+    @MediumTest
+    @Test
+    public void testResolvedComponentCache() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        registerAndEnableAccount(makeQuickAccountBuilder("id1", 1)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER)
+                .build());
+        PackageManager pm = mContext.getPackageManager();
+
+        clearInvocations(pm);
+        assertEquals(1, mRegistrar.getCallCapablePhoneAccounts(null, false /* includeDisabled */,
+                Process.myUserHandle()).size());
+        verify(pm, never()).queryIntentServicesAsUser(any(), anyInt(), anyInt());
+
+        mRegistrar.invalidateResolvedComponents(
+                makeQuickConnectionServiceComponentName().getPackageName(), null);
+        assertEquals(1, mRegistrar.getCallCapablePhoneAccounts(null, false /* includeDisabled */,
+                Process.myUserHandle()).size());
+        verify(pm, times(1)).queryIntentServicesAsUser(any(), anyInt(), anyInt());
+    }
+
     /**
      * Tests {@link PhoneAccount#equals(Object)} operator.
      * @throws Exception
@@ -1091,6 +1433,42 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
         assertEquals(1, deletedAccounts);
     }
 
+    /**
+     * Tests that {@link PhoneAccountRegistrar#clearAccountsForUser} and
+     * {@link PhoneAccountRegistrar#clearAccounts} only remove the accounts of the given user and
+     * package.
+     */
+    @SmallTest
+    @Test
+    public void testIncrementalAccountCleanup() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        UserHandle user0 = new UserHandle(0);
+        UserHandle user10 = new UserHandle(10);
+        PhoneAccount pa1 = new PhoneAccount.Builder(new PhoneAccountHandle(
+                new ComponentName(PACKAGE_1, COMPONENT_NAME), "1", user0), "l1").build();
+        PhoneAccount pa2 = new PhoneAccount.Builder(new PhoneAccountHandle(
+                new ComponentName(PACKAGE_1, COMPONENT_NAME), "2", user10), "l2").build();
+        PhoneAccount pa3 = new PhoneAccount.Builder(new PhoneAccountHandle(
+                new ComponentName(PACKAGE_2, COMPONENT_NAME), "3", user10), "l3").build();
+        registerAndEnableAccount(pa1);
+        registerAndEnableAccount(pa2);
+        registerAndEnableAccount(pa3);
+        PhoneAccountRegistrar.Listener listener = mock(PhoneAccountRegistrar.Listener.class);
+        mRegistrar.addListener(listener);
+
+        mRegistrar.clearAccounts(PACKAGE_1, user10);
+        assertNull(mRegistrar.getPhoneAccountUnchecked(pa2.getAccountHandle()));
+        assertNotNull(mRegistrar.getPhoneAccountUnchecked(pa1.getAccountHandle()));
+        assertNotNull(mRegistrar.getPhoneAccountUnchecked(pa3.getAccountHandle()));
+
+        assertEquals(1, mRegistrar.clearAccountsForUser(user10));
+        assertEquals(0, mRegistrar.clearAccountsForUser(user10));
+        assertNull(mRegistrar.getPhoneAccountUnchecked(pa3.getAccountHandle()));
+        assertNotNull(mRegistrar.getPhoneAccountUnchecked(pa1.getAccountHandle()));
+        verify(listener, times(2)).onAccountsChanged(eq(mRegistrar));
+    }
+
     @Test
     public void testGetSimPhoneAccountsFromSimCallManager() throws Exception {
         // Register the SIM PhoneAccounts
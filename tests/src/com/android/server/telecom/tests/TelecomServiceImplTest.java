@@ -238,6 +238,8 @@ public class TelecomServiceImplTest extends TelecomTestCase {
 
         mPackageManager = mContext.getPackageManager();
         when(mPackageManager.getPackageUid(anyString(), eq(0))).thenReturn(Binder.getCallingUid());
+        when(mFakePhoneAccountRegistrar.getPhoneAccountWithIcon(any()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
     }
 
     @Override
@@ -484,10 +486,12 @@ public class TelecomServiceImplTest extends TelecomTestCase {
             add(makePhoneAccount(TEL_PA_HANDLE_16).build());
             add(makePhoneAccount(SIP_PA_HANDLE_17).build());
         }};
-        when(mFakePhoneAccountRegistrar.getAllPhoneAccounts(any(UserHandle.class)))
+        when(mFakePhoneAccountRegistrar.getAllPhoneAccounts(
+                nullable(PhoneAccountRegistrar.Snapshot.class), any(UserHandle.class)))
                 .thenReturn(phoneAccountList);
 
         assertEquals(2, mTSIBinder.getAllPhoneAccounts().getList().size());
+        assertEquals(2, mTSIBinder.getAllPhoneAccountsCount());
     }
 
     @SmallTest
@@ -1279,6 +1283,10 @@ public class TelecomServiceImplTest extends TelecomTestCase {
             when(mFakePhoneAccountRegistrar
                     .getPhoneAccount(eq(ph), nullable(UserHandle.class)))
                     .thenReturn(makeMultiUserPhoneAccount(ph).build());
+            when(mFakePhoneAccountRegistrar
+                    .getPhoneAccount(nullable(PhoneAccountRegistrar.Snapshot.class), eq(ph),
+                            nullable(UserHandle.class), anyBoolean()))
+                    .thenReturn(makeMultiUserPhoneAccount(ph).build());
         }
     }
 
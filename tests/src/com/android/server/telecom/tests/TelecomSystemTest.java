@@ -109,7 +109,6 @@ import org.mockito.stubbing.Answer;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -380,12 +379,8 @@ public class TelecomSystemTest extends TelecomTestCase {
     @Override
     public void tearDown() throws Exception {
         mTelecomSystem.getCallsManager().waitOnHandlers();
-        LinkedList<HandlerThread> handlerThreads = mTelecomSystem.getCallsManager()
-                .getGraphHandlerThreads();
-        for (HandlerThread handlerThread : handlerThreads) {
-            handlerThread.quitSafely();
-        }
-        handlerThreads.clear();
+        mTelecomSystem.getCallsManager().getCallFilteringExecutor().waitForIdle(TEST_TIMEOUT);
+        mTelecomSystem.getCallsManager().getCallFilteringExecutor().shutdown();
         waitForHandlerAction(new Handler(Looper.getMainLooper()), TEST_TIMEOUT);
         waitForHandlerAction(mHandlerThread.getThreadHandler(), TEST_TIMEOUT);
         // Bring down the threads that are active.
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.AtomicFile;
+
+import com.android.server.telecom.TelecomSystem;
+import com.android.server.telecom.WriteBehindPersister;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class WriteBehindPersisterTest extends TelecomTestCase {
+    private static final String FILE_NAME = "write-behind-persister-test.bin";
+    private static final long LONG_WINDOW_MILLIS = 60000L;
+    private static final long TEST_TIMEOUT_MILLIS = 1000L;
+
+    private final TelecomSystem.SyncRoot mLock = new TelecomSystem.SyncRoot() { };
+    private final AtomicInteger mSerializeCount = new AtomicInteger();
+    private File mFile;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(mContext.getFilesDir(), FILE_NAME);
+        mFile.delete();
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    @SmallTest
+    @Test
+    public void testDirtyNotificationsAreCoalesced() throws Exception {
+        WriteBehindPersister persister = createPersister(LONG_WINDOW_MILLIS);
+        for (int i = 0; i < 30; i++) {
+            persister.markDirty();
+        }
+        persister.flush(true /* waitForCompletion */);
+
+        assertEquals(1, mSerializeCount.get());
+        assertEquals(1, persister.getWriteCount());
+        assertEquals(29, persister.getWritesAvoided());
+        assertArrayEquals(new byte[] {1}, new AtomicFile(mFile).readFully());
+    }
+
+    @SmallTest
+    @Test
+    public void testWriteAfterWindow() throws Exception {
+        WriteBehindPersister persister = createPersister(0L);
+        persister.markDirty();
+        waitForHandlerAction(persister.getHandler(), TEST_TIMEOUT_MILLIS);
+
+        assertEquals(1, persister.getWriteCount());
+        persister.markDirty();
+        waitForHandlerAction(persister.getHandler(), TEST_TIMEOUT_MILLIS);
+
+        assertEquals(2, persister.getWriteCount());
+        assertEquals(0, persister.getWritesAvoided());
+        assertArrayEquals(new byte[] {2}, new AtomicFile(mFile).readFully());
+    }
+
+    @SmallTest
+    @Test
+    public void testFlushWithoutChangesDoesNotWrite() throws Exception {
+        WriteBehindPersister persister = createPersister(LONG_WINDOW_MILLIS);
+        persister.flush(true /* waitForCompletion */);
+
+        assertEquals(0, mSerializeCount.get());
+        assertEquals(0, persister.getWriteCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testOnWrittenTaskRunsAfterWrite() throws Exception {
+        byte[][] fileContents = new byte[1][];
+        WriteBehindPersister persister = new WriteBehindPersister("WriteBehindPersisterTest",
+                new AtomicFile(mFile), new WriteBehindPersister.StateSerializer() {
+                    @Override
+                    public byte[] serialize() {
+                        return new byte[] {(byte) mSerializeCount.incrementAndGet()};
+                    }
+
+                    @Override
+                    public Runnable getOnWrittenTask() {
+                        return () -> {
+                            try {
+                                fileContents[0] = new AtomicFile(mFile).readFully();
+                            } catch (IOException e) {
+                                fileContents[0] = null;
+                            }
+                        };
+                    }
+                }, mLock, LONG_WINDOW_MILLIS);
+        persister.markDirty();
+        persister.flush(true /* waitForCompletion */);
+
+        assertArrayEquals(new byte[] {1}, fileContents[0]);
+    }
+
+    private WriteBehindPersister createPersister(long windowMillis) {
+        return new WriteBehindPersister("WriteBehindPersisterTest", new AtomicFile(mFile),
+                () -> new byte[] {(byte) mSerializeCount.incrementAndGet()}, mLock,
+                windowMillis);
+    }
+}